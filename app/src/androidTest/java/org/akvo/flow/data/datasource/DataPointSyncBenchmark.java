@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.data.datasource;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.squareup.sqlbrite2.BriteDatabase;
+import com.squareup.sqlbrite2.SqlBrite;
+
+import org.akvo.flow.data.entity.ApiDataPoint;
+import org.akvo.flow.data.entity.ApiQuestionAnswer;
+import org.akvo.flow.data.entity.ApiSurveyInstance;
+import org.akvo.flow.database.DatabaseHelper;
+import org.akvo.flow.database.LanguageTable;
+import org.akvo.flow.database.Tables;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.reactivex.schedulers.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures the data point sync write throughput on a synthetic page, logging the number of
+ * rows written per second. Runs against an in-memory database with the app schema.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class DataPointSyncBenchmark {
+
+    private static final String TAG = "DataPointSyncBenchmark";
+
+    private static final int DATA_POINTS = 200;
+    private static final int ANSWERS = 80;
+    private static final int REPEATED_ANSWERS = 10;
+    private static final long SURVEY_GROUP_ID = 1L;
+
+    private BriteDatabase briteDatabase;
+    private DatabaseDataSource dataSource;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        final DatabaseHelper schema = new DatabaseHelper(context, new LanguageTable(), null);
+        SQLiteOpenHelper helper = new SQLiteOpenHelper(context, null, null, 1) {
+            @Override
+            public void onCreate(SQLiteDatabase db) {
+                schema.onCreate(db);
+            }
+
+            @Override
+            public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            }
+        };
+        briteDatabase = new SqlBrite.Builder().build()
+                .wrapDatabaseHelper(helper, Schedulers.trampoline());
+        dataSource = new DatabaseDataSource(briteDatabase);
+    }
+
+    @After
+    public void tearDown() {
+        briteDatabase.close();
+    }
+
+    @Test
+    public void syncDataPointsThroughput() {
+        List<ApiDataPoint> page = createPage();
+        int rows = DATA_POINTS * (ANSWERS + 3); // record, instance and transmission
+
+        long insertTime = sync(page);
+        // Second run updates the existing survey instances and replaces their responses
+        long updateTime = sync(page);
+
+        Log.i(TAG, String.format("Insert: %d rows in %d ms, %d rows/s", rows, insertTime,
+                rows * 1000L / Math.max(insertTime, 1)));
+        Log.i(TAG, String.format("Update: %d rows in %d ms, %d rows/s", rows, updateTime,
+                rows * 1000L / Math.max(updateTime, 1)));
+
+        assertEquals(DATA_POINTS, count(Tables.RECORD));
+        assertEquals(DATA_POINTS, count(Tables.SURVEY_INSTANCE));
+        assertEquals(DATA_POINTS * ANSWERS, count(Tables.RESPONSE));
+    }
+
+    private long sync(List<ApiDataPoint> page) {
+        long start = System.currentTimeMillis();
+        dataSource.syncDataPoints(page);
+        return System.currentTimeMillis() - start;
+    }
+
+    private int count(String table) {
+        Cursor cursor = briteDatabase.query("SELECT COUNT(*) FROM " + table);
+        try {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private List<ApiDataPoint> createPage() {
+        List<ApiDataPoint> dataPoints = new ArrayList<>(DATA_POINTS);
+        for (int i = 0; i < DATA_POINTS; i++) {
+            List<ApiQuestionAnswer> answers = new ArrayList<>(ANSWERS);
+            for (int j = 0; j < ANSWERS; j++) {
+                // Some questions are answered twice, as in a repeated question group
+                int question = j < ANSWERS - REPEATED_ANSWERS ? j : j - REPEATED_ANSWERS / 2;
+                ApiQuestionAnswer answer = new ApiQuestionAnswer();
+                answer.setQuestionId("q" + question);
+                answer.setType("VALUE");
+                answer.setAnswer("answer " + i + "-" + j);
+                answers.add(answer);
+            }
+
+            ApiSurveyInstance surveyInstance = new ApiSurveyInstance();
+            surveyInstance.setUuid("uuid-" + i);
+            surveyInstance.setSurveyId(2L);
+            surveyInstance.setSubmitter("submitter");
+            surveyInstance.setCollectionDate(i);
+            surveyInstance.setQasList(answers);
+
+            ApiDataPoint dataPoint = new ApiDataPoint();
+            dataPoint.setId("dp-" + i);
+            dataPoint.setSurveyGroupId(SURVEY_GROUP_ID);
+            dataPoint.setDisplayName("Data point " + i);
+            dataPoint.setLatitude(52.0 + i / 1000.0);
+            dataPoint.setLongitude(4.0 + i / 1000.0);
+            dataPoint.setLastModified(i);
+            dataPoint.setSurveyInstances(Collections.singletonList(surveyInstance));
+            dataPoints.add(dataPoint);
+        }
+        return dataPoints;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.serialization.form;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.akvo.flow.domain.Survey;
+import org.akvo.flow.util.FileUtil;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.akvo.flow.tests.R.raw.all_questions_form;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the time needed to build a form from its xml against loading its compiled copy.
+ * The form is built by repeating the question groups of all_questions_form, to get close to
+ * the size of the larger production forms (400+ questions).
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class CompiledSurveyBenchmark {
+
+    private static final String TAG = "CompiledSurveyBenchmark";
+
+    private static final String GROUP_START = "<questionGroup";
+    private static final String GROUP_END = "</questionGroup>";
+
+    private static final int GROUP_COPIES = 25;
+    private static final int WARM_UP_RUNS = 3;
+    private static final int RUNS = 10;
+
+    private byte[] xml;
+    private byte[] compiled;
+
+    @Before
+    public void setUp() throws IOException {
+        InputStream in = InstrumentationRegistry.getContext().getResources()
+                .openRawResource(all_questions_form);
+        String form = FileUtil.readText(in);
+
+        int start = form.indexOf(GROUP_START);
+        int end = form.lastIndexOf(GROUP_END) + GROUP_END.length();
+        String groups = form.substring(start, end);
+        StringBuilder builder = new StringBuilder(form.length() * GROUP_COPIES);
+        builder.append(form, 0, start);
+        for (int i = 0; i < GROUP_COPIES; i++) {
+            builder.append(groups);
+        }
+        builder.append(form, end, form.length());
+        xml = builder.toString().getBytes("UTF-8");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CompiledSurveyWriter(out).write(parseXml(), 1.0, xml.length, 0L);
+        compiled = out.toByteArray();
+    }
+
+    @Test
+    public void compareXmlAndCompiledLoad() throws IOException {
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            parseXml();
+            loadCompiled();
+        }
+
+        long xmlTime = 0;
+        long compiledTime = 0;
+        Survey parsed = null;
+        Survey loaded = null;
+        for (int i = 0; i < RUNS; i++) {
+            long t0 = System.nanoTime();
+            parsed = parseXml();
+            long t1 = System.nanoTime();
+            loaded = loadCompiled();
+            long t2 = System.nanoTime();
+            xmlTime += t1 - t0;
+            compiledTime += t2 - t1;
+        }
+
+        assertEquals(countQuestions(parsed), countQuestions(loaded));
+        Log.i(TAG, String.format("%d questions. xml: %d bytes, %d ms. compiled: %d bytes, %d ms",
+                countQuestions(parsed), xml.length, xmlTime / RUNS / 1000000, compiled.length,
+                compiledTime / RUNS / 1000000));
+    }
+
+    private Survey parseXml() {
+        return new SaxSurveyParser().parse(new ByteArrayInputStream(xml));
+    }
+
+    private Survey loadCompiled() throws IOException {
+        return new CompiledSurveyReader(new ByteArrayInputStream(compiled))
+                .read(1.0, xml.length, 0L);
+    }
+
+    private int countQuestions(Survey survey) {
+        int count = 0;
+        for (int i = 0; i < survey.getQuestionGroups().size(); i++) {
+            count += survey.getQuestionGroups().get(i).getQuestions().size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.serialization.form;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.akvo.flow.domain.Option;
+import org.akvo.flow.domain.Question;
+import org.akvo.flow.domain.QuestionGroup;
+import org.akvo.flow.domain.Survey;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.akvo.flow.tests.R.raw.all_questions_form;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class CompiledSurveyTest {
+
+    private static final double FORM_VERSION = 2.0;
+    private static final long SOURCE_LENGTH = 6457L;
+    private static final long SOURCE_MODIFIED = 1500000000000L;
+
+    private Survey survey;
+
+    @Before
+    public void setUp() {
+        InputStream in = InstrumentationRegistry.getContext().getResources()
+                .openRawResource(all_questions_form);
+        survey = new SaxSurveyParser().parse(in);
+    }
+
+    @Test
+    public void readShouldRestoreTheParsedSurvey() throws IOException {
+        Survey compiled = read(write(survey), FORM_VERSION);
+
+        assertNotNull(compiled);
+        assertEquals(survey.getName(), compiled.getName());
+        assertEquals(survey.getVersion(), compiled.getVersion(), 0);
+        assertEquals(survey.getLanguage(), compiled.getLanguage());
+        assertEquals(survey.getSurveyGroup().getId(), compiled.getSurveyGroup().getId());
+        assertEquals(survey.getQuestionGroups().size(), compiled.getQuestionGroups().size());
+        for (int i = 0; i < survey.getQuestionGroups().size(); i++) {
+            QuestionGroup group = survey.getQuestionGroups().get(i);
+            QuestionGroup compiledGroup = compiled.getQuestionGroups().get(i);
+            assertEquals(group.getHeading(), compiledGroup.getHeading());
+            assertEquals(group.isRepeatable(), compiledGroup.isRepeatable());
+            assertEquals(group.getQuestions().size(), compiledGroup.getQuestions().size());
+            for (int j = 0; j < group.getQuestions().size(); j++) {
+                assertQuestion(group.getQuestions().get(j), compiledGroup.getQuestions().get(j));
+            }
+        }
+    }
+
+    @Test
+    public void readShouldIgnoreOtherFormVersions() throws IOException {
+        assertNull(read(write(survey), FORM_VERSION + 1));
+    }
+
+    @Test
+    public void readShouldFailOnTruncatedFiles() {
+        try {
+            byte[] data = write(survey);
+            read(Arrays.copyOf(data, data.length - 1), FORM_VERSION);
+            fail("Truncated file should not be loaded");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private void assertQuestion(Question expected, Question actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getText(), actual.getText());
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getOrder(), actual.getOrder());
+        assertEquals(expected.isMandatory(), actual.isMandatory());
+        assertEquals(expected.isAllowMultiple(), actual.isAllowMultiple());
+        assertEquals(expected.isAllowOther(), actual.isAllowOther());
+        assertEquals(expected.getSrc(), actual.getSrc());
+        assertEquals(expected.getLanguageTranslationMap().keySet(),
+                actual.getLanguageTranslationMap().keySet());
+
+        List<Option> options = expected.getOptions();
+        if (options == null) {
+            assertNull(actual.getOptions());
+        } else {
+            assertEquals(options.size(), actual.getOptions().size());
+            for (int i = 0; i < options.size(); i++) {
+                assertEquals(options.get(i).getText(), actual.getOptions().get(i).getText());
+                assertEquals(options.get(i).getCode(), actual.getOptions().get(i).getCode());
+            }
+        }
+    }
+
+    private byte[] write(Survey survey) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CompiledSurveyWriter(out).write(survey, FORM_VERSION, SOURCE_LENGTH, SOURCE_MODIFIED);
+        return out.toByteArray();
+    }
+
+    private Survey read(byte[] data, double formVersion) throws IOException {
+        return new CompiledSurveyReader(new ByteArrayInputStream(data))
+                .read(formVersion, SOURCE_LENGTH, SOURCE_MODIFIED);
+    }
+}
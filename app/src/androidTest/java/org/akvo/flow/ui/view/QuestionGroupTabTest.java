@@ -18,7 +18,9 @@ public class QuestionGroupTabTest extends AndroidTestCase {
         QuestionInteractionListener qil = Mockito.mock(QuestionInteractionListener.class);
         QuestionGroup qg = Mockito.mock(QuestionGroup.class);
 
-        QuestionGroupTab tab = new QuestionGroupTab(c, qg, l, qil);
+        DependencyEngine engine = Mockito.mock(DependencyEngine.class);
+
+        QuestionGroupTab tab = new QuestionGroupTab(c, qg, l, qil, engine);
 
         assertEquals(false, tab.isLoaded());
         tab.load();
@@ -35,6 +35,7 @@ import org.akvo.flow.data.preference.Prefs;
 import org.akvo.flow.util.ConnectivityStateManager;
 import org.akvo.flow.util.FileUtil;
 import org.akvo.flow.util.FileUtil.FileType;
+import org.akvo.flow.util.HttpUtil;
 import org.akvo.flow.util.PlatformUtil;
 
 import java.io.BufferedInputStream;
@@ -274,7 +275,7 @@ public class AppUpdateActivity extends Activity {
             HttpURLConnection conn = null;
             try {
                 URL url = new URL(location);
-                conn = (HttpURLConnection) url.openConnection();
+                conn = HttpUtil.openConnection(url);
 
                 in = new BufferedInputStream(conn.getInputStream());
                 out = new BufferedOutputStream(new FileOutputStream(localPath));
@@ -43,6 +43,7 @@ import android.widget.Toast;
 import org.akvo.flow.R;
 import org.akvo.flow.app.FlowApp;
 import org.akvo.flow.data.dao.SurveyDao;
+import org.akvo.flow.data.database.ResponseStore;
 import org.akvo.flow.data.database.SurveyDbDataSource;
 import org.akvo.flow.data.migration.FlowMigrationListener;
 import org.akvo.flow.data.migration.languages.MigrationLanguageMapper;
@@ -74,12 +75,10 @@ import org.akvo.flow.util.MediaFileHelper;
 import org.akvo.flow.util.PlatformUtil;
 import org.akvo.flow.util.StorageHelper;
 import org.akvo.flow.util.ViewUtil;
+import org.akvo.flow.util.image.MediaProcessor;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -118,6 +117,9 @@ public class FormActivity extends BackActivity implements SurveyListener,
     @Inject
     SurveyDbDataSource mDatabase;
 
+    @Inject
+    MediaProcessor mediaProcessor;
+
     private SurveyLanguagesDataSource surveyLanguagesDataSource;
     private Prefs prefs;
 
@@ -125,6 +127,7 @@ public class FormActivity extends BackActivity implements SurveyListener,
     private LanguageMapper languageMapper;
 
     private Map<String, QuestionResponse> mQuestionResponses;// QuestionId - QuestionResponse
+    private ResponseStore mResponseStore;
     private String surveyId;
 
     @Override
@@ -142,6 +145,7 @@ public class FormActivity extends BackActivity implements SurveyListener,
 
         mQuestionResponses = new HashMap<>();
         mDatabase.open();
+        mResponseStore = new ResponseStore(mDatabase, mSurveyInstanceId);
 
         Context context = getApplicationContext();
         prefs = new Prefs(context);
@@ -172,7 +176,7 @@ public class FormActivity extends BackActivity implements SurveyListener,
             mPager.setAdapter(mAdapter);
 
             // Initialize new survey or load previous responses
-            Map<String, QuestionResponse> responses = mDatabase.getResponses(mSurveyInstanceId);
+            Map<String, QuestionResponse> responses = mResponseStore.load();
             if (!responses.isEmpty()) {
                 displayResponses(responses);
             }
@@ -233,23 +237,13 @@ public class FormActivity extends BackActivity implements SurveyListener,
 
     private void loadSurvey(String surveyId) {
         Survey surveyMeta = mDatabase.getSurvey(surveyId);
-        InputStream in = null;
         try {
-            // load from file
+            // load from file, or its compiled copy
             File file = new File(FileUtil.getFilesDir(FileType.FORMS), surveyMeta.getFileName());
-            in = new FileInputStream(file);
-            mSurvey = SurveyDao.loadSurvey(surveyMeta, in);
+            mSurvey = SurveyDao.loadSurvey(surveyMeta, file);
             mSurvey.setId(surveyId);
         } catch (FileNotFoundException e) {
             Timber.e(e, "Could not load survey xml file");
-        } finally {
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    //EMPTY
-                }
-            }
         }
     }
 
@@ -272,7 +266,7 @@ public class FormActivity extends BackActivity implements SurveyListener,
      * Load state for the current survey instance
      */
     private void loadResponses() {
-        Map<String, QuestionResponse> responses = mDatabase.getResponses(mSurveyInstanceId);
+        Map<String, QuestionResponse> responses = mResponseStore.load();
         displayResponses(responses);
     }
 
@@ -309,6 +303,7 @@ public class FormActivity extends BackActivity implements SurveyListener,
     }
 
     private void saveState() {
+        mResponseStore.flush();// Record meta-data is read back from the database
         if (!mReadOnly) {
             mDatabase.updateSurveyStatus(mSurveyInstanceId, SurveyInstanceStatus.SAVED);
             mDatabase.updateRecordModifiedDate(mRecordId, System.currentTimeMillis());
@@ -318,6 +313,7 @@ public class FormActivity extends BackActivity implements SurveyListener,
                     .equals(mSurveyGroup.getRegisterSurveyId())) {
                 saveRecordMetaData();
             }
+            mDatabase.updateSearchIndex(mRecordId);
         }
     }
 
@@ -402,6 +398,9 @@ public class FormActivity extends BackActivity implements SurveyListener,
         if (mAdapter != null) {
             mAdapter.onDestroy();
         }
+        if (mResponseStore != null) {
+            mResponseStore.close();
+        }
         if (mDatabase != null) {
             mDatabase.close();
         }
@@ -453,7 +452,7 @@ public class FormActivity extends BackActivity implements SurveyListener,
                 new DialogInterface.OnClickListener() {
                     @Override
                     public void onClick(DialogInterface dialog, int which) {
-                        mDatabase.deleteResponses(String.valueOf(mSurveyInstanceId));
+                        mResponseStore.deleteAll();
                         resetRecordName();
                         loadResponses();
                         spaceLeftOnCard();
@@ -539,13 +538,16 @@ public class FormActivity extends BackActivity implements SurveyListener,
 
         switch (requestCode) {
             case ConstantUtil.PHOTO_ACTIVITY_REQUEST:
-                String imageAbsolutePath = mediaFileHelper.getImageFilePath(prefs
+                // The file is stored right away, and becomes available once processed
+                File image = mediaFileHelper.getNamedImageFile();
+                mediaProcessor.processImage(mediaFileHelper.getImageTmpFile(), image, prefs
                         .getInt(Prefs.KEY_MAX_IMG_SIZE, Prefs.DEFAULT_VALUE_IMAGE_SIZE));
-                onMediaAcquired(imageAbsolutePath);
+                onMediaAcquired(image.getAbsolutePath());
                 break;
             case ConstantUtil.VIDEO_ACTIVITY_REQUEST:
-                String videoAbsolutePath = mediaFileHelper.getVideoFilePath();
-                onMediaAcquired(videoAbsolutePath);
+                File video = mediaFileHelper.getNamedVideoFile();
+                mediaProcessor.processVideo(mediaFileHelper.getVideoTmpFile(), video);
+                onMediaAcquired(video.getAbsolutePath());
                 break;
             case ConstantUtil.EXTERNAL_SOURCE_REQUEST:
             case ConstantUtil.CADDISFLY_REQUEST:
@@ -648,16 +650,26 @@ public class FormActivity extends BackActivity implements SurveyListener,
     public void deleteResponse(String questionId) {
         QuestionResponse questionResponse = mQuestionResponses.remove(questionId);
         if (questionResponse != null && questionResponse.isAnswerToRepeatableGroup()) {
-            mDatabase.deleteResponse(mSurveyInstanceId, questionResponse.getQuestionId(),
+            mResponseStore.delete(questionResponse.getQuestionId(),
                     questionResponse.getIteration() + "");
         } else {
-            mDatabase.deleteResponse(mSurveyInstanceId, questionId);
+            mResponseStore.delete(questionId);
         }
     }
 
     public void deleteResponse(String questionId, String iteration) {
         mQuestionResponses.remove(questionId);
-        mDatabase.deleteResponse(mSurveyInstanceId, questionId, iteration);
+        mResponseStore.delete(questionId, iteration);
+    }
+
+    @Override
+    public void setIncludeFlag(String questionId, boolean includeFlag) {
+        QuestionResponse response = new QuestionResponse.QuestionResponseBuilder()
+                .createFromQuestionResponse(mQuestionResponses.get(questionId), includeFlag);
+        if (response != null) {
+            mResponseStore.save(response);
+            mQuestionResponses.put(questionId, response);
+        }
     }
 
     @Override
@@ -695,6 +707,7 @@ public class FormActivity extends BackActivity implements SurveyListener,
             clearQuestion(event);
         } else if (QuestionInteractionEvent.QUESTION_ANSWER_EVENT.equals(event.getEventType())) {
             storeAnswer(event);
+            mAdapter.onResponseChanged(event.getSource().getQuestion().getId());
         } else if (QuestionInteractionEvent.EXTERNAL_SOURCE_EVENT.equals(event.getEventType())) {
             navigateToExternalSource(event);
         } else if (QuestionInteractionEvent.CADDISFLY.equals(event.getEventType())) {
@@ -733,19 +746,16 @@ public class FormActivity extends BackActivity implements SurveyListener,
 
         // Store the response if it contains a value. Otherwise, delete it
         if (eventResponse != null && eventResponse.hasValue()) {
-            Long id = mQuestionResponses.containsKey(questionIdKey) ?
-                    mQuestionResponses.get(questionIdKey).getId() : null;
             QuestionResponse responseToSave = new QuestionResponse.QuestionResponseBuilder()
                     .setValue(eventResponse.getValue())
                     .setType(eventResponse.getType())
-                    .setId(id)
                     .setSurveyInstanceId(mSurveyInstanceId)
                     .setQuestionId(eventResponse.getQuestionId())
                     .setFilename(eventResponse.getFilename())
                     .setIncludeFlag(eventResponse.getIncludeFlag())
                     .setIteration(eventResponse.getIteration())
                     .createQuestionResponse();
-            responseToSave = mDatabase.createOrUpdateSurveyResponse(responseToSave);
+            mResponseStore.save(responseToSave);
             mQuestionResponses.put(questionIdKey, responseToSave);
         } else {
             event.getSource().setResponse(null, true);// Invalidate previous response
@@ -25,6 +25,8 @@ import android.content.Intent;
 import android.graphics.Color;
 import android.location.Location;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.support.annotation.Nullable;
 import android.support.v4.content.ContextCompat;
 import android.text.TextUtils;
@@ -43,26 +45,33 @@ import com.google.android.gms.maps.GoogleMap.OnMarkerDragListener;
 import com.google.android.gms.maps.GoogleMap.OnMyLocationChangeListener;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
+import com.google.android.gms.maps.model.CameraPosition;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.maps.model.Marker;
 
 import org.akvo.flow.R;
+import org.akvo.flow.domain.geometry.Geometry;
+import org.akvo.flow.domain.geometry.Vertices;
 import org.akvo.flow.presentation.geoshape.DeletePointDialog;
 import org.akvo.flow.presentation.geoshape.DeleteShapeDialog;
+import org.akvo.flow.serialization.geo.GeoJsonReader;
+import org.akvo.flow.serialization.geo.GeoJsonWriter;
 import org.akvo.flow.ui.map.Feature;
 import org.akvo.flow.ui.map.PointsFeature;
 import org.akvo.flow.ui.map.PolygonFeature;
 import org.akvo.flow.ui.map.PolylineFeature;
 import org.akvo.flow.util.ConstantUtil;
+import org.akvo.flow.util.LocationFilter;
 import org.akvo.flow.util.ViewUtil;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import timber.log.Timber;
 
@@ -72,17 +81,21 @@ public class GeoshapeActivity extends BackActivity
         DeletePointDialog.PointDeleteListener,
         DeleteShapeDialog.ShapeDeleteListener {
 
-    private static final String JSON_TYPE = "type";
-    private static final String JSON_GEOMETRY = "geometry";
-    private static final String JSON_COORDINATES = "coordinates";
-    private static final String JSON_FEATURES = "features";
-    private static final String JSON_PROPERTIES = "properties";
-    private static final String TYPE_FEATURE = "Feature";
-    private static final String TYPE_FEATURE_COLLECTION = "FeatureCollection";
-
     private static final float ACCURACY_THRESHOLD = 20f;
     public static final int MAP_ZOOM_LEVEL = 10;
 
+    /**
+     * Large shapes are drawn simplified, within this many pixels of the actual shape
+     */
+    private static final double DISPLAY_TOLERANCE = 2;
+    private static final double METERS_PER_PIXEL_AT_ZOOM_0 = 156543.03392;
+    private static final double METERS_PER_DEGREE = 111320;
+
+    /**
+     * Pixels the loaded shapes are expected to span, before the camera is fitted to them
+     */
+    private static final int LOADED_SHAPE_SIZE = 500;
+
     private List<Feature> mFeatures;// Saved features
     private Feature mCurrentFeature;// Ongoing feature
 
@@ -99,6 +112,14 @@ public class GeoshapeActivity extends BackActivity
     @Nullable
     private GoogleMap mMap;
 
+    // Parsing, serialization and simplification are done off the UI thread
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mHandler = new Handler();
+    private boolean mSaving;
+
+    // Points are added at the averaged location, rather than the latest fix
+    private final LocationFilter mLocationFilter = new LocationFilter(ACCURACY_THRESHOLD);
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -150,6 +171,40 @@ public class GeoshapeActivity extends BackActivity
                 mMap.setOnMapLongClickListener(this);
                 mMap.setOnMarkerDragListener(this);
             }
+            mMap.setOnCameraChangeListener(new GoogleMap.OnCameraChangeListener() {
+                @Override
+                public void onCameraChange(CameraPosition cameraPosition) {
+                    updateDisplayedVertices(cameraPosition.zoom);
+                }
+            });
+        }
+    }
+
+    /**
+     * Simplify the large features for the given zoom level. Features edited in the meantime
+     * ignore the result.
+     */
+    private void updateDisplayedVertices(float zoom) {
+        for (final Feature feature : mFeatures) {
+            if (feature.getVertices().size() <= Feature.SIMPLIFY_THRESHOLD) {
+                continue;
+            }
+            final Vertices vertices = feature.getVertices().copy();
+            final int version = feature.getVersion();
+            final double tolerance = DISPLAY_TOLERANCE * METERS_PER_PIXEL_AT_ZOOM_0
+                    * Math.cos(Math.toRadians(vertices.getLatitude(0))) / Math.pow(2, zoom);
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final int[] displayed = feature.getDisplayedVertices(vertices, tolerance);
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            feature.setDisplayedVertices(displayed, version);
+                        }
+                    });
+                }
+            });
         }
     }
 
@@ -234,10 +289,7 @@ public class GeoshapeActivity extends BackActivity
                 mFeatures.add(mCurrentFeature);
                 break;
             case R.id.save:
-                Intent intent = new Intent();
-                intent.putExtra(ConstantUtil.GEOSHAPE_RESULT, geoJson());
-                setResult(RESULT_OK, intent);
-                finish();
+                save();
                 break;
             case android.R.id.home:
                 onBackPressed();
@@ -252,6 +304,13 @@ public class GeoshapeActivity extends BackActivity
         super.onResume();
     }
 
+    @Override
+    protected void onDestroy() {
+        mExecutor.shutdownNow();
+        mHandler.removeCallbacksAndMessages(null);
+        super.onDestroy();
+    }
+
     private View.OnClickListener mFeatureMenuListener = new View.OnClickListener() {
         @Override
         public void onClick(View v) {
@@ -261,7 +320,7 @@ public class GeoshapeActivity extends BackActivity
 
             switch (v.getId()) {
                 case R.id.add_point_btn:
-                    Location location = mMap == null? null : mMap.getMyLocation();
+                    LocationFilter.Estimate location = mLocationFilter.getEstimate();
                     if (location != null && location.getAccuracy() <= ACCURACY_THRESHOLD) {
                         addPoint(new LatLng(location.getLatitude(), location.getLongitude()));
                     } else {
@@ -295,127 +354,166 @@ public class GeoshapeActivity extends BackActivity
     }
 
     /**
-     * Marshall GeoJSON string, storing all the features collected so far.
+     * Serialize the features in the background, finishing the activity with the result
+     */
+    private void save() {
+        if (mSaving) {
+            return;
+        }
+        mSaving = true;
+        final List<Feature> features = new ArrayList<>();
+        final List<Vertices> vertices = new ArrayList<>();
+        for (Feature feature : mFeatures) {
+            if (!feature.isEmpty()) {
+                features.add(feature);
+                vertices.add(feature.getVertices().copy());
+            }
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final String geoJson = geoJson(features, vertices);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        Intent intent = new Intent();
+                        intent.putExtra(ConstantUtil.GEOSHAPE_RESULT, geoJson);
+                        setResult(RESULT_OK, intent);
+                        finish();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Marshall GeoJSON string, storing all the features collected so far. Large shapes are
+     * stored simplified, with the properties of the stored vertices.
      * GeoJSON reference: http://geojson.org/geojson-spec.html
      */
-    private String geoJson() {
-        JSONObject jObject = new JSONObject();
+    @Nullable
+    private static String geoJson(List<Feature> features, List<Vertices> vertices) {
+        StringWriter out = new StringWriter();
         try {
-            jObject.put(JSON_TYPE, TYPE_FEATURE_COLLECTION);
-            JSONArray jFeatures = new JSONArray();
-            for (Feature feature : mFeatures) {
-                if (feature.getPoints().isEmpty()) {
-                    continue;
-                }
-
-                // Type
-                JSONObject jFeature = new JSONObject();
-                jFeature.put(JSON_TYPE, TYPE_FEATURE);// Top level type (always "Feature")
-
-                // Geometry
-                JSONObject jGeometry = new JSONObject();
-                jGeometry.put(JSON_TYPE, feature.geoGeometryType());
-
-                // Coordinates
-                JSONArray jCoordinates = new JSONArray();
-                for (LatLng point : feature.getPoints()) {
-                    JSONArray jCoordinate = new JSONArray();
-                    jCoordinate.put(point.longitude);
-                    jCoordinate.put(point.latitude);
-                    jCoordinates.put(jCoordinate);
-                }
-                if (PolygonFeature.GEOMETRY_TYPE.equals(feature.geoGeometryType())) {
-                    // Polygon features enclose coordinates in a 'LinearRing'.
-                    // It also 'closes' the feature, duplicating the first point at the end
-                    jCoordinates.put(jCoordinates.get(0));
-                    JSONArray ring = jCoordinates;
-                    jCoordinates = new JSONArray();
-                    jCoordinates.put(ring);
-                }
-                jGeometry.put(JSON_COORDINATES, jCoordinates);
-                jFeature.put(JSON_GEOMETRY, jGeometry);
-
-                // Properties
-                JSONObject jProperties = new JSONObject();
-                for (Feature.Property property : feature.getProperties()) {
-                    jProperties.put(property.mKey, property.mValue);
-                }
-                jFeature.put(JSON_PROPERTIES, jProperties);
-
-                jFeatures.put(jFeature);
+            GeoJsonWriter writer = new GeoJsonWriter(out);
+            writer.beginFeatureCollection();
+            for (int i = 0; i < features.size(); i++) {
+                Feature feature = features.get(i);
+                Vertices stored = feature.getStoredVertices(vertices.get(i));
+                writer.writeFeature(feature.geoGeometryType(), stored,
+                        feature.getPropertyValues(stored));
             }
-            jObject.put(JSON_FEATURES, jFeatures);
-        } catch (JSONException e) {
+            writer.endFeatureCollection();
+        } catch (IOException e) {
             Timber.e("geoJSON() - " + e.getMessage());
             return null;
         }
-        return jObject.toString();
+        return out.toString();
     }
 
     /**
-     * Unmarshall a GeoJSON string into a features collection. Note that properties are ignored,
-     * for they will be recomputed anyway while loading the data.
+     * Unmarshall a GeoJSON string into a features collection, parsing it in the background.
+     * Note that properties are ignored, for they will be recomputed anyway while loading the
+     * data.
      */
-    private void load(String geoJSON) {
-        try {
-            // Keep track of all points, so we can later center the map
-            LatLngBounds.Builder builder = new LatLngBounds.Builder();
-            JSONObject jObject = new JSONObject(geoJSON);
-            JSONArray jFeatures = jObject.getJSONArray(JSON_FEATURES);
-            if (jFeatures == null || jFeatures.length() == 0) {
-                return;
-            }
-            for (int i = 0; i < jFeatures.length(); i++) {
-                JSONObject jFeature = jFeatures.getJSONObject(i);
-                JSONObject jGeometry = jFeature.getJSONObject(JSON_GEOMETRY);
-                JSONArray jCoordinates = jGeometry.getJSONArray(JSON_COORDINATES);
-                int lastCoordinate = jCoordinates.length();
-                if (PolygonFeature.GEOMETRY_TYPE.equals(jGeometry.getString(JSON_TYPE))) {
-                    // Polygon features enclose coordinates in a 'LinearRing'
-                    // It also 'closes' the feature, duplicating the first point at the end
-                    jCoordinates = jCoordinates.getJSONArray(0);
-                    lastCoordinate = jCoordinates.length() - 1;
-                }
-                // Load point list
-                List<LatLng> points = new ArrayList<>();
-                for (int j = 0; j < lastCoordinate; j++) {
-                    JSONArray jPoint = jCoordinates.getJSONArray(j);
-                    LatLng point =
-                        new LatLng(jPoint.getDouble(1), jPoint.getDouble(0));// [lon, lat] -> LatLng(lat, lon)
-                    points.add(point);
-                    builder.include(point);
+    private void load(final String geoJSON) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<Geometry> geometries;
+                try {
+                    geometries = new GeoJsonReader(new StringReader(geoJSON))
+                            .readFeatureCollection();
+                } catch (IOException e) {
+                    Timber.e("geoJSON() - " + e.getMessage());
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            //TODO: extract this string, what should the error message even be?
+                            Toast.makeText(GeoshapeActivity.this, "Error", Toast.LENGTH_LONG)
+                                    .show();
+                        }
+                    });
+                    return;
                 }
 
-                Feature feature;
-                switch (jGeometry.getString(JSON_TYPE)) {
-                    case PointsFeature.GEOMETRY_TYPE:
-                        feature = new PointsFeature(mMap);
-                        break;
-                    case PolylineFeature.GEOMETRY_TYPE:
-                        feature = new PolylineFeature(mMap);
-                        break;
-                    case PolygonFeature.GEOMETRY_TYPE:
-                        feature = new PolygonFeature(mMap);
-                        break;
-                    default:
-                        continue;// Unknown geometry type.
+                // Until the camera is fitted to the shapes, assume they span a few hundred px
+                final double[] bounds = getBounds(geometries);
+                double extent = Math.max((bounds[2] - bounds[0]) * METERS_PER_DEGREE,
+                        (bounds[3] - bounds[1]) * METERS_PER_DEGREE
+                                * Math.cos(Math.toRadians(bounds[0])));
+                final List<int[]> displayed = new ArrayList<>();
+                for (Geometry geometry : geometries) {
+                    displayed.add(Feature.getDisplayedVertices(geometry.getVertices(),
+                            !PointsFeature.GEOMETRY_TYPE.equals(geometry.getType()),
+                            DISPLAY_TOLERANCE * extent / LOADED_SHAPE_SIZE));
                 }
-                feature.load(points);
-                mFeatures.add(feature);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onGeometriesLoaded(geometries, displayed, bounds);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onGeometriesLoaded(List<Geometry> geometries, List<int[]> displayed,
+            double[] bounds) {
+        if (mMap == null || geometries.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < geometries.size(); i++) {
+            Geometry geometry = geometries.get(i);
+            if (geometry.getType() == null) {
+                continue;
+            }
+            Feature feature;
+            switch (geometry.getType()) {
+                case PointsFeature.GEOMETRY_TYPE:
+                    feature = new PointsFeature(mMap);
+                    break;
+                case PolylineFeature.GEOMETRY_TYPE:
+                    feature = new PolylineFeature(mMap);
+                    break;
+                case PolygonFeature.GEOMETRY_TYPE:
+                    feature = new PolygonFeature(mMap);
+                    break;
+                default:
+                    continue;// Unknown geometry type.
+            }
+            feature.load(geometry.getVertices(), displayed.get(i));
+            mFeatures.add(feature);
+        }
+        if (bounds[0] > bounds[2]) {
+            return;// No points
+        }
+        final LatLngBounds latLngBounds = new LatLngBounds(new LatLng(bounds[0], bounds[1]),
+                new LatLng(bounds[2], bounds[3]));
+        mMap.setOnMapLoadedCallback(new GoogleMap.OnMapLoadedCallback() {
+            @Override
+            public void onMapLoaded() {
+                mMap.animateCamera(CameraUpdateFactory.newLatLngBounds(latLngBounds, 60));
+            }
+        });
+    }
+
+    /**
+     * @return south, west, north and east bounds of all the geometries. South is greater than
+     * north if there are no points.
+     */
+    private static double[] getBounds(List<Geometry> geometries) {
+        double[] bounds = { 90, 180, -90, -180 };
+        for (Geometry geometry : geometries) {
+            Vertices vertices = geometry.getVertices();
+            for (int i = 0; i < vertices.size(); i++) {
+                bounds[0] = Math.min(bounds[0], vertices.getLatitude(i));
+                bounds[1] = Math.min(bounds[1], vertices.getLongitude(i));
+                bounds[2] = Math.max(bounds[2], vertices.getLatitude(i));
+                bounds[3] = Math.max(bounds[3], vertices.getLongitude(i));
             }
-            final LatLngBounds bounds = builder.build();
-            mMap.setOnMapLoadedCallback(new GoogleMap.OnMapLoadedCallback() {
-                @Override
-                public void onMapLoaded() {
-                    mMap.animateCamera(CameraUpdateFactory.newLatLngBounds(bounds, 60));
-                }
-            });
-        } catch (JSONException e) {
-            //TODO: extract this string, what should the error message even be?
-            Toast.makeText(this, "Error", Toast.LENGTH_LONG).show();
-            Timber.e("geoJSON() - " + e.getMessage());
-            // TODO: Remove features?
         }
+        return bounds;
     }
 
     @Override
@@ -470,10 +568,15 @@ public class GeoshapeActivity extends BackActivity
     @Override
     public void onMyLocationChange(Location location) {
         Timber.i("onMyLocationChange() - %s", location);
-        if (location != null && location.hasAccuracy()) {
-            String formattedAccuracy = new DecimalFormat("#").format(location.getAccuracy());
+        if (location != null && location.hasAccuracy() && location.getAccuracy() > 0) {
+            mLocationFilter.add(SystemClock.elapsedRealtime(), location.getLatitude(),
+                    location.getLongitude(), location.getAltitude(), location.getAccuracy(),
+                    location.hasSpeed() ? location.getSpeed() : Float.NaN);
+            LocationFilter.Estimate estimate = mLocationFilter.getEstimate();
+            float accuracy = estimate != null ? estimate.getAccuracy() : location.getAccuracy();
+            String formattedAccuracy = new DecimalFormat("#").format(accuracy);
             mAccuracy.setText(getString(R.string.geo_location_accuracy, formattedAccuracy));
-            if (location.getAccuracy() <= ACCURACY_THRESHOLD) {
+            if (accuracy <= ACCURACY_THRESHOLD) {
                 mAccuracy.setTextColor(ContextCompat.getColor(this, R.color.button_green));
             } else {
                 mAccuracy.setTextColor(Color.RED);
@@ -28,7 +28,6 @@ import android.text.TextUtils;
 import org.akvo.flow.BuildConfig;
 import org.akvo.flow.data.preference.Prefs;
 import org.akvo.flow.domain.Survey;
-import org.akvo.flow.exception.HttpException;
 import org.akvo.flow.serialization.form.SurveyMetaParser;
 import org.akvo.flow.util.HttpUtil;
 import org.akvo.flow.util.PlatformUtil;
@@ -37,10 +36,11 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
-import java.net.HttpURLConnection;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import timber.log.Timber;
 
@@ -52,8 +52,6 @@ public class FlowApi {
 
     private final String deviceIdentifier;
 
-    private static final int ERROR_UNKNOWN = -1;
-
     private static final String HTTPS_PREFIX = "https";
     private static final String HTTP_PREFIX = "http";
     private final String baseUrl;
@@ -167,44 +165,33 @@ public class FlowApi {
     }
 
     /**
-     * Notify GAE back-end that data is available
-     * Sends a message to the service with the file name that was just uploaded
-     * so it can start processing the file
+     * Create a notifier to let GAE back-end know that data is available. Uploaded file names
+     * are sent in batches, so the service can start processing them
      */
-    public int sendProcessingNotification(@NonNull String formId, @NonNull String action,
-            @NonNull String fileName) {
-        String url = buildProcessingNotificationUrl(baseUrl, formId, action, fileName);
-        try {
-            HttpUtil.httpGet(url);
-            return HttpURLConnection.HTTP_OK;
-        } catch (HttpException e) {
-            Timber.e(e.getStatus() + " response for formId: " + formId);
-            return e.getStatus();
-        } catch (Exception e) {
-            Timber.e("GAE sync notification failed for file: " + fileName);
-            return ERROR_UNKNOWN;
-        }
+    @NonNull
+    public ProcessingNotifier createProcessingNotifier(
+            @NonNull ProcessingNotifier.Listener listener) {
+        Uri.Builder builder = Uri.parse(baseUrl).buildUpon();
+        builder.appendPath(Path.NOTIFICATION);
+        return new ProcessingNotifier(builder.build().toString(), getDeviceParams(),
+                ProcessingNotifier.DEFAULT_BATCH_SIZE, listener);
     }
 
     @NonNull
-    private String buildProcessingNotificationUrl(@NonNull String serverBaseUrl,
-            @NonNull String formId, @NonNull
-            String action, @NonNull String fileName) {
-        Uri.Builder builder = Uri.parse(serverBaseUrl).buildUpon();
-        builder.appendPath(Path.NOTIFICATION);
-        builder.appendQueryParameter(Param.PARAM_ACTION, action);
-        builder.appendQueryParameter(Param.FORM_ID, formId);
-        builder.appendQueryParameter(Param.FILENAME, fileName);
-        appendDeviceParams(builder);
-        return builder.build().toString();
+    private Map<String, String> getDeviceParams() {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put(Param.PHONE_NUMBER, phoneNumber);
+        params.put(Param.ANDROID_ID, androidId);
+        params.put(Param.IMEI, imei);
+        params.put(Param.VERSION, BuildConfig.VERSION_NAME);
+        params.put(Param.DEVICE_ID, deviceIdentifier);
+        return params;
     }
 
     private void appendDeviceParams(@NonNull Uri.Builder builder) {
-        builder.appendQueryParameter(Param.PHONE_NUMBER, phoneNumber);
-        builder.appendQueryParameter(Param.ANDROID_ID, androidId);
-        builder.appendQueryParameter(Param.IMEI, imei);
-        builder.appendQueryParameter(Param.VERSION, BuildConfig.VERSION_NAME);
-        builder.appendQueryParameter(Param.DEVICE_ID, deviceIdentifier);
+        for (Map.Entry<String, String> param : getDeviceParams().entrySet()) {
+            builder.appendQueryParameter(param.getKey(), param.getValue());
+        }
     }
 
     interface Path {
@@ -228,7 +215,6 @@ public class FlowApi {
         String PARAM_ACTION = "action";
         String FORM_ID = "formID";
         String SURVEY_ID = "surveyId";
-        String FILENAME = "fileName";
 
         String VALUE_HEADER = "getSurveyHeader";
         String VALUE_SURVEY = "getAvailableSurveysDevice";
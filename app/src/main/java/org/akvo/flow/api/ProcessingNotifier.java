@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.api;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+
+import org.akvo.flow.util.HttpUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import timber.log.Timber;
+
+/**
+ * Notifies the back-end that uploaded files are ready to be processed. Filenames are collected
+ * per form and sent in batches, using the 'fileNames' parameter. The server acknowledges the
+ * files it has accepted in a 'processed' JSON array. Files not acknowledged, or any file if
+ * the batch request fails, are notified one by one with the 'fileName' parameter, as before.
+ * Batching is only disabled once the server turns out not to support it, transient failures
+ * keep it enabled for the next batches.
+ * Connections are not explicitly disconnected, so the underlying socket is kept alive and
+ * reused across requests.
+ */
+public class ProcessingNotifier {
+
+    public static final int DEFAULT_BATCH_SIZE = 25;
+
+    public static final int ERROR_UNKNOWN = -1;
+
+    static final String PARAM_ACTION = "action";
+    static final String PARAM_FORM_ID = "formID";
+    static final String PARAM_FILENAME = "fileName";
+    static final String PARAM_FILENAMES = "fileNames";
+    static final String RESPONSE_PROCESSED = "processed";
+
+    private static final String UTF_8_CHARSET = "UTF-8";
+    private static final int BUFFER_SIZE = 2048;
+
+    private final String notificationUrl;
+    private final Map<String, String> deviceParams;
+    private final int batchSize;
+    private final Listener listener;
+
+    private final Map<String, PendingBatch> pendingBatches = new LinkedHashMap<>();
+    private volatile boolean batchingSupported = true;
+    private int requestCount;
+
+    /**
+     * @param notificationUrl absolute URL of the processing notification endpoint
+     * @param deviceParams    query parameters identifying the device, sent with every request
+     */
+    public ProcessingNotifier(@NonNull String notificationUrl,
+            @NonNull Map<String, String> deviceParams, int batchSize,
+            @NonNull Listener listener) {
+        this.notificationUrl = notificationUrl;
+        this.deviceParams = deviceParams;
+        this.batchSize = Math.max(1, batchSize);
+        this.listener = listener;
+    }
+
+    /**
+     * Enqueue a file notification. If the batch for this form is full, it is sent right away
+     * from the calling thread.
+     *
+     * @param id passed back to the listener, as different files may have the same name
+     */
+    public void add(@NonNull String formId, @NonNull String action, @NonNull String fileName,
+            long id) {
+        PendingBatch fullBatch = null;
+        synchronized (pendingBatches) {
+            String key = formId + "|" + action;
+            PendingBatch batch = pendingBatches.get(key);
+            if (batch == null) {
+                batch = new PendingBatch(formId, action);
+                pendingBatches.put(key, batch);
+            }
+            batch.files.add(new PendingFile(fileName, id));
+            if (batch.files.size() >= batchSize) {
+                fullBatch = pendingBatches.remove(key);
+            }
+        }
+        if (fullBatch != null) {
+            send(fullBatch);
+        }
+    }
+
+    /**
+     * Send all the pending notifications
+     */
+    public void flush() {
+        List<PendingBatch> batches;
+        synchronized (pendingBatches) {
+            batches = new ArrayList<>(pendingBatches.values());
+            pendingBatches.clear();
+        }
+        for (PendingBatch batch : batches) {
+            send(batch);
+        }
+    }
+
+    /**
+     * @return number of HTTP requests sent so far
+     */
+    public synchronized int getRequestCount() {
+        return requestCount;
+    }
+
+    private void send(@NonNull PendingBatch batch) {
+        List<PendingFile> remaining = batch.files;
+        int batchStatus = HttpURLConnection.HTTP_OK;
+        if (batchingSupported && remaining.size() > 1) {
+            remaining = new ArrayList<>();
+            batchStatus = sendBatch(batch, remaining);
+        }
+        boolean formDeleted = false;
+        for (PendingFile file : remaining) {
+            int status;
+            if (formDeleted) {
+                status = HttpURLConnection.HTTP_NOT_FOUND;
+            } else {
+                status = sendSingle(batch.formId, batch.action, file.name);
+            }
+            if (batchStatus == HttpURLConnection.HTTP_NOT_FOUND) {
+                // The batch 404 means either the form has been deleted in the dashboard,
+                // or the server does not know about batches. The first single request tells.
+                if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                    formDeleted = true;
+                } else if (status == HttpURLConnection.HTTP_OK && batchingSupported) {
+                    Timber.w("Batch notifications not supported. Notifying files one by one");
+                    batchingSupported = false;
+                }
+            }
+            listener.onNotified(batch.formId, file.name, file.id, status);
+        }
+    }
+
+    /**
+     * @param remaining filled with the files which could not be notified as part of the batch
+     * @return the HTTP status code of the batch request
+     */
+    private int sendBatch(@NonNull PendingBatch batch, @NonNull List<PendingFile> remaining) {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put(PARAM_ACTION, batch.action);
+        params.put(PARAM_FORM_ID, batch.formId);
+        StringBuilder url = buildUrl(params);
+        for (PendingFile file : batch.files) {
+            appendParam(url, PARAM_FILENAMES, file.name);
+        }
+
+        StringBuilder body = new StringBuilder();
+        int status = get(url.toString(), body);
+        Set<String> processed = null;
+        if (status == HttpURLConnection.HTTP_OK) {
+            processed = parseProcessedFiles(body.toString());
+            if (processed == null) {
+                // The request was accepted, but the files were not acknowledged
+                Timber.w("Batch notifications not supported. Notifying files one by one");
+                batchingSupported = false;
+            }
+        } else if (status == HttpURLConnection.HTTP_BAD_REQUEST) {
+            Timber.w("Batch notifications not supported (status %d). Notifying files one by one",
+                    status);
+            batchingSupported = false;
+        } else {
+            Timber.w("Batch notification failed (status %d). Notifying files one by one",
+                    status);
+        }
+
+        if (processed == null) {
+            remaining.addAll(batch.files);
+            return status;
+        }
+        for (PendingFile file : batch.files) {
+            if (processed.contains(file.name)) {
+                listener.onNotified(batch.formId, file.name, file.id, HttpURLConnection.HTTP_OK);
+            } else {
+                remaining.add(file);
+            }
+        }
+        return status;
+    }
+
+    private int sendSingle(@NonNull String formId, @NonNull String action,
+            @NonNull String fileName) {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put(PARAM_ACTION, action);
+        params.put(PARAM_FORM_ID, formId);
+        params.put(PARAM_FILENAME, fileName);
+        int status = get(buildUrl(params).toString(), null);
+        if (status != HttpURLConnection.HTTP_OK) {
+            Timber.e(status + " response for formId: " + formId + ", file: " + fileName);
+        }
+        return status;
+    }
+
+    @Nullable
+    private Set<String> parseProcessedFiles(@NonNull String body) {
+        try {
+            JsonElement json = new JsonParser().parse(body);
+            if (!json.isJsonObject()) {
+                return null;
+            }
+            JsonObject jsonObject = json.getAsJsonObject();
+            if (!jsonObject.has(RESPONSE_PROCESSED)
+                    || !jsonObject.get(RESPONSE_PROCESSED).isJsonArray()) {
+                return null;
+            }
+            JsonArray files = jsonObject.getAsJsonArray(RESPONSE_PROCESSED);
+            Set<String> processed = new HashSet<>();
+            for (JsonElement file : files) {
+                processed.add(file.getAsString());
+            }
+            return processed;
+        } catch (JsonSyntaxException | IllegalStateException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    @NonNull
+    private StringBuilder buildUrl(@NonNull Map<String, String> params) {
+        StringBuilder url = new StringBuilder(notificationUrl);
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            appendParam(url, param.getKey(), param.getValue());
+        }
+        for (Map.Entry<String, String> param : deviceParams.entrySet()) {
+            appendParam(url, param.getKey(), param.getValue());
+        }
+        return url;
+    }
+
+    private void appendParam(@NonNull StringBuilder url, @NonNull String name,
+            @Nullable String value) {
+        url.append(url.indexOf("?") < 0 ? '?' : '&');
+        try {
+            url.append(URLEncoder.encode(name, UTF_8_CHARSET)).append('=');
+            if (value != null) {
+                url.append(URLEncoder.encode(value, UTF_8_CHARSET));
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Perform a GET request, reading the whole response so the connection can be reused.
+     *
+     * @return the HTTP status code, or ERROR_UNKNOWN if the request could not be sent
+     */
+    private int get(@NonNull String url, @Nullable StringBuilder body) {
+        synchronized (this) {
+            requestCount++;
+        }
+        HttpURLConnection conn = null;
+        try {
+            conn = HttpUtil.openConnection(new URL(url));
+            int status = conn.getResponseCode();
+            InputStream in = status < HttpURLConnection.HTTP_BAD_REQUEST ?
+                    conn.getInputStream() : conn.getErrorStream();
+            String response = readFully(in);
+            if (body != null) {
+                body.append(response);
+            }
+            return status;
+        } catch (IOException e) {
+            Timber.e(e, "Processing notification failed: %s", url);
+            if (conn != null) {
+                // Do not reuse a connection in an unknown state
+                conn.disconnect();
+            }
+            return ERROR_UNKNOWN;
+        }
+    }
+
+    @NonNull
+    private static String readFully(@Nullable InputStream in) throws IOException {
+        if (in == null) {
+            return "";
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString(UTF_8_CHARSET);
+        } finally {
+            // Closing the stream (instead of disconnecting) returns the socket to the pool
+            in.close();
+        }
+    }
+
+    public interface Listener {
+
+        /**
+         * @param id     the id the file was added with
+         * @param status HTTP status code of the notification for this file, or ERROR_UNKNOWN
+         */
+        void onNotified(@NonNull String formId, @NonNull String fileName, long id, int status);
+    }
+
+    private static class PendingBatch {
+
+        final String formId;
+        final String action;
+        final List<PendingFile> files = new ArrayList<>();
+
+        PendingBatch(String formId, String action) {
+            this.formId = formId;
+            this.action = action;
+        }
+    }
+
+    private static class PendingFile {
+
+        final String name;
+        final long id;
+
+        PendingFile(String name, long id) {
+            this.name = name;
+            this.id = id;
+        }
+    }
+}
@@ -20,25 +20,33 @@
 package org.akvo.flow.api;
 
 import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 import android.util.Base64;
 
 import org.akvo.flow.BuildConfig;
+import org.akvo.flow.domain.MultipartUpload;
 import org.akvo.flow.exception.HttpException;
+import org.akvo.flow.util.ChecksummedFile;
 import org.akvo.flow.util.FileUtil;
 import org.akvo.flow.util.HttpUtil;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLEncoder;
+import java.security.DigestInputStream;
 import java.security.InvalidKeyException;
 import java.security.Key;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -57,6 +65,27 @@ public class S3Api {
     private static final String PAYLOAD_PUT_PUBLIC = "PUT\n%s\n%s\n%s\nx-amz-acl:public-read\n/%s/%s";// md5, type, date, bucket, obj
     private static final String PAYLOAD_PUT_PRIVATE = "PUT\n%s\n%s\n%s\n/%s/%s";// md5, type, date, bucket, obj
     private static final String PAYLOAD_HEAD = "HEAD\n\n\n%s\n/%s/%s";// date, bucket, obj
+    private static final String PAYLOAD_POST_PUBLIC = "POST\n\n%s\n%s\nx-amz-acl:public-read\n/%s/%s";// type, date, bucket, obj
+    private static final String PAYLOAD_POST_PRIVATE = "POST\n\n%s\n%s\n/%s/%s";// type, date, bucket, obj
+    private static final String PAYLOAD_DELETE = "DELETE\n\n\n%s\n/%s/%s";// date, bucket, obj
+
+    private static final String QUERY_UPLOADS = "?uploads";
+    private static final String QUERY_UPLOAD_ID = "?uploadId=%s";
+    private static final String QUERY_PART = "?partNumber=%d&uploadId=%s";
+
+    private static final String XML_CONTENT_TYPE = "application/xml";
+    private static final String PART_CONTENT_TYPE = "application/octet-stream";
+    private static final String UTF_8_CHARSET = "UTF-8";
+
+    /**
+     * S3 does not accept parts smaller than 5 MB, except for the last one
+     */
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    /**
+     * Files bigger than this will be sent with a multipart upload
+     */
+    public static final long MULTIPART_THRESHOLD = 2L * PART_SIZE;
 
     private String mBucket;
     private String mAccessKey;
@@ -78,7 +107,7 @@ public class S3Api {
         HttpURLConnection conn = null;
         String etag = null;
         try {
-            conn = (HttpURLConnection) url.openConnection();
+            conn = openConnection(url);
             conn.setRequestProperty("Date", date);
             conn.setRequestProperty("Authorization", "AWS " + mAccessKey + ":" + signature);
             // Handle EOS bug in Android pre Jelly Bean: https://code.google.com/p/android/issues/detail?id=24672
@@ -105,10 +134,19 @@ public class S3Api {
             // No need to re-fetch the file. The integrity of the local copy has been verified
             return;
         }
-        get(objectKey, dst);
+        get(objectKey, dst, etag);
     }
 
     public void get(String objectKey, File dst) throws IOException {
+        get(objectKey, dst, null);
+    }
+
+    /**
+     * Download an object into the given file. If the expected ETag is known, the MD5 checksum
+     * is computed while the file is being written, and compared against it.
+     */
+    private void get(String objectKey, File dst, @Nullable String expectedEtag)
+            throws IOException {
         // Get date and signature
         final String date = getDate();
         final String payload = String.format(PAYLOAD_GET, date, mBucket, objectKey);
@@ -119,11 +157,12 @@ public class S3Api {
         OutputStream out = null;
         HttpURLConnection conn = null;
         try {
-            conn = (HttpURLConnection) url.openConnection();
+            conn = openConnection(url);
             conn.setRequestProperty("Date", date);
             conn.setRequestProperty("Authorization", "AWS " + mAccessKey + ":" + signature);
 
-            in = new BufferedInputStream(conn.getInputStream());
+            MessageDigest md = getMd5Digest();
+            in = new DigestInputStream(new BufferedInputStream(conn.getInputStream()), md);
             out = new BufferedOutputStream(new FileOutputStream(dst));
 
             HttpUtil.copyStream(in, out);
@@ -132,6 +171,11 @@ public class S3Api {
             if (status != HttpURLConnection.HTTP_OK) {
                 throw new IOException("Status Code: " + status + ". Expected: 200 - OK");
             }
+            String md5Hex = FileUtil.hexMd5(md.digest());
+            if (expectedEtag != null && !expectedEtag.equals(md5Hex)) {
+                throw new IOException("ETag comparison failed. Response ETag: " + expectedEtag
+                        + " Downloaded file MD5: " + md5Hex);
+            }
         } finally {
             if (conn != null) {
                 conn.disconnect();
@@ -141,12 +185,18 @@ public class S3Api {
         }
     }
 
-    public boolean put(String objectKey, File file, String type, boolean isPublic) throws IOException {
+    /**
+     * Upload a file with a single PUT request. The file is read only once if its checksum has
+     * already been computed.
+     */
+    public boolean put(String objectKey, ChecksummedFile file, String type, boolean isPublic)
+            throws IOException {
         // Calculate data size, up to 2 GB
-        final int size = file.length() < Integer.MAX_VALUE ? (int)file.length() : -1;
+        final long length = file.length();
+        final int size = length < Integer.MAX_VALUE ? (int) length : -1;
 
         // Get date and signature
-        final byte[] rawMd5 = FileUtil.getMD5Checksum(file);
+        final byte[] rawMd5 = file.getMd5();
         final String md5Base64 = Base64.encodeToString(rawMd5, Base64.NO_WRAP);
         final String md5Hex = FileUtil.hexMd5(rawMd5);
         final String date = getDate();
@@ -155,11 +205,10 @@ public class S3Api {
         final String signature = getSignature(payload);
         final URL url = new URL(String.format(URL, mBucket, objectKey));
 
-        InputStream in = null;
         OutputStream out = null;
         HttpURLConnection conn = null;
         try {
-            conn = (HttpURLConnection) url.openConnection();
+            conn = openConnection(url);
             conn.setDoOutput(true);
             if (size > 0) {
                 conn.setFixedLengthStreamingMode(size);
@@ -176,13 +225,15 @@ public class S3Api {
             }
             conn.setRequestProperty("Authorization", "AWS " + mAccessKey + ":" + signature);
 
-            in = new BufferedInputStream(new FileInputStream(file));
-            out = new BufferedOutputStream(conn.getOutputStream());
-
-            HttpUtil.copyStream(in, out);
+            out = conn.getOutputStream();
+            file.writeTo(out);
             out.flush();
 
             int status = conn.getResponseCode();
+            if (status == HttpURLConnection.HTTP_BAD_REQUEST) {
+                // BadDigest: the file does not match the checksum we sent
+                file.invalidateChecksum();
+            }
             if (status != 200 && status != 201) {
                 Timber.e("Status Code: " + status + ". Expected: 200 or 201");
                 return false;
@@ -191,19 +242,323 @@ public class S3Api {
             if (!md5Hex.equals(etag)) {
                 Timber.e("ETag comparison failed. Response ETag: " + etag +
                         "Locally computed MD5: " + md5Hex);
+                file.invalidateChecksum();
                 return false;
             }
-            Timber.d("File successfully uploaded: " + file.getName());
+            Timber.d("File successfully uploaded: %s. %d bytes read, %d bytes sent",
+                    file.getFile().getName(), file.getBytesRead(), length);
             return true;
         } finally {
             if (conn != null) {
                 conn.disconnect();
             }
-            FileUtil.close(in);
             FileUtil.close(out);
         }
     }
 
+    /**
+     * Upload a file in parts of PART_SIZE bytes. If the given upload has already been started,
+     * only the parts after the last confirmed one will be sent. The listener is notified
+     * every time the upload state changes, so it can be persisted.
+     * Once all the parts are uploaded, the object ETag is compared against the multipart
+     * checksum computed from the part checksums.
+     * An upload that can't be resumed is aborted before starting over, otherwise S3 would keep
+     * (and bill) its parts.
+     */
+    public boolean putMultipart(String objectKey, File file, String type, boolean isPublic,
+            @NonNull MultipartUpload upload, @NonNull MultipartUploadListener listener)
+            throws IOException {
+        if (upload.isStarted() && !upload.isStartedFor(file)) {
+            // The file has changed since the upload was started
+            if (!abortMultipartUpload(objectKey, upload)) {
+                return false;
+            }
+            upload.reset();
+            listener.onUploadUpdated(upload);
+        }
+        if (!upload.isStarted()) {
+            String uploadId = initiateMultipartUpload(objectKey, type, isPublic);
+            if (uploadId == null) {
+                return false;
+            }
+            upload.start(uploadId, file);
+            listener.onUploadUpdated(upload);
+        }
+
+        final long length = file.length();
+        final int parts = (int) ((length + PART_SIZE - 1) / PART_SIZE);
+
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            byte[] buffer = new byte[(int) Math.min(PART_SIZE, length)];
+            for (int partNumber = upload.getPartCount() + 1; partNumber <= parts; partNumber++) {
+                final long offset = (long) (partNumber - 1) * PART_SIZE;
+                final int partSize = (int) Math.min(PART_SIZE, length - offset);
+                raf.seek(offset);
+                raf.readFully(buffer, 0, partSize);
+
+                String etag = uploadPart(objectKey, upload.getUploadId(), partNumber, buffer,
+                        partSize);
+                if (etag == null) {
+                    return false;
+                }
+                upload.addPart(etag);
+                listener.onUploadUpdated(upload);
+            }
+        } catch (HttpException e) {
+            if (e.getStatus() == HttpURLConnection.HTTP_NOT_FOUND) {
+                // NoSuchUpload. The upload has been aborted or has expired, start over
+                upload.reset();
+                listener.onUploadUpdated(upload);
+            }
+            Timber.e(e, "Multipart upload failed: %s", objectKey);
+            return false;
+        } finally {
+            FileUtil.close(raf);
+        }
+
+        String etag = completeMultipartUpload(objectKey, upload);
+        String expectedEtag = getMultipartEtag(upload);
+        if (expectedEtag == null || !expectedEtag.equals(etag)) {
+            Timber.e("Multipart ETag comparison failed. Response ETag: " + etag
+                    + " Locally computed ETag: " + expectedEtag);
+            if (abortMultipartUpload(objectKey, upload)) {
+                upload.reset();
+                listener.onUploadUpdated(upload);
+            }
+            return false;
+        }
+        Timber.d("File successfully uploaded in %d parts: %s", parts, file.getName());
+        return true;
+    }
+
+    @Nullable
+    private String initiateMultipartUpload(String objectKey, String type, boolean isPublic)
+            throws IOException {
+        final String date = getDate();
+        final String payloadStr = isPublic ? PAYLOAD_POST_PUBLIC : PAYLOAD_POST_PRIVATE;
+        final String payload = String.format(payloadStr, type, date, mBucket,
+                objectKey + QUERY_UPLOADS);
+        final String signature = getSignature(payload);
+        final URL url = new URL(String.format(URL, mBucket, objectKey + QUERY_UPLOADS));
+
+        HttpURLConnection conn = null;
+        try {
+            conn = openConnection(url);
+            conn.setRequestMethod("POST");
+            conn.setRequestProperty("Content-Type", type);
+            conn.setRequestProperty("Date", date);
+            if (isPublic) {
+                // The ACL is set when the upload is initiated
+                conn.setRequestProperty("x-amz-acl", "public-read");
+            }
+            conn.setRequestProperty("Authorization", "AWS " + mAccessKey + ":" + signature);
+
+            int status = conn.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                Timber.e("Status Code: " + status + ". Expected: 200 - OK");
+                return null;
+            }
+            return getXmlValue(FileUtil.readText(conn.getInputStream()), "UploadId");
+        } finally {
+            if (conn != null) {
+                conn.disconnect();
+            }
+        }
+    }
+
+    /**
+     * @return the ETag of the uploaded part, or null if the upload or the integrity check failed
+     */
+    @Nullable
+    private String uploadPart(String objectKey, String uploadId, int partNumber, byte[] data,
+            int size) throws IOException {
+        final byte[] rawMd5 = md5(data, size);
+        final String md5Base64 = Base64.encodeToString(rawMd5, Base64.NO_WRAP);
+        final String md5Hex = FileUtil.hexMd5(rawMd5);
+        final String date = getDate();
+        final String query = String.format(Locale.US, QUERY_PART, partNumber, uploadId);
+        final String payload = String.format(PAYLOAD_PUT_PRIVATE, md5Base64, PART_CONTENT_TYPE,
+                date, mBucket, objectKey + query);
+        final String signature = getSignature(payload);
+        final URL url = new URL(String.format(URL, mBucket,
+                objectKey + String.format(Locale.US, QUERY_PART, partNumber,
+                        URLEncoder.encode(uploadId, UTF_8_CHARSET))));
+
+        OutputStream out = null;
+        HttpURLConnection conn = null;
+        try {
+            conn = openConnection(url);
+            conn.setDoOutput(true);
+            conn.setFixedLengthStreamingMode(size);
+            conn.setRequestMethod("PUT");
+            conn.setRequestProperty("Content-MD5", md5Base64);
+            conn.setRequestProperty("Content-Type", PART_CONTENT_TYPE);
+            conn.setRequestProperty("Date", date);
+            conn.setRequestProperty("Authorization", "AWS " + mAccessKey + ":" + signature);
+
+            out = new BufferedOutputStream(conn.getOutputStream());
+            out.write(data, 0, size);
+            out.flush();
+
+            int status = conn.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                throw new HttpException("Upload not found: " + uploadId, status);
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                Timber.e("Status Code: " + status + ". Expected: 200 - OK");
+                return null;
+            }
+            String etag = getEtag(conn);
+            if (!md5Hex.equals(etag)) {
+                Timber.e("Part ETag comparison failed. Response ETag: " + etag +
+                        "Locally computed MD5: " + md5Hex);
+                return null;
+            }
+            return etag;
+        } finally {
+            if (conn != null) {
+                conn.disconnect();
+            }
+            FileUtil.close(out);
+        }
+    }
+
+    /**
+     * Abort the given upload, so S3 discards its parts. An upload which does not exist anymore
+     * (completed, expired or already aborted) is considered aborted.
+     *
+     * @return true if the upload is gone, false if it may still exist
+     */
+    private boolean abortMultipartUpload(String objectKey, MultipartUpload upload)
+            throws IOException {
+        final String uploadId = upload.getUploadId();
+        final String date = getDate();
+        final String payload = String.format(PAYLOAD_DELETE, date, mBucket,
+                objectKey + String.format(QUERY_UPLOAD_ID, uploadId));
+        final String signature = getSignature(payload);
+        final URL url = new URL(String.format(URL, mBucket, objectKey
+                + String.format(QUERY_UPLOAD_ID, URLEncoder.encode(uploadId, UTF_8_CHARSET))));
+
+        HttpURLConnection conn = null;
+        try {
+            conn = openConnection(url);
+            conn.setRequestMethod("DELETE");
+            conn.setRequestProperty("Date", date);
+            conn.setRequestProperty("Authorization", "AWS " + mAccessKey + ":" + signature);
+
+            int status = conn.getResponseCode();
+            if (status != HttpURLConnection.HTTP_NO_CONTENT
+                    && status != HttpURLConnection.HTTP_NOT_FOUND) {
+                Timber.e("Status Code: " + status + ". Expected: 204 - No Content");
+                return false;
+            }
+            return true;
+        } finally {
+            if (conn != null) {
+                conn.disconnect();
+            }
+        }
+    }
+
+    @Nullable
+    private String completeMultipartUpload(String objectKey, MultipartUpload upload)
+            throws IOException {
+        final String uploadId = upload.getUploadId();
+        final String date = getDate();
+        final String payload = String.format(PAYLOAD_POST_PRIVATE, XML_CONTENT_TYPE, date,
+                mBucket, objectKey + String.format(QUERY_UPLOAD_ID, uploadId));
+        final String signature = getSignature(payload);
+        final URL url = new URL(String.format(URL, mBucket, objectKey
+                + String.format(QUERY_UPLOAD_ID, URLEncoder.encode(uploadId, UTF_8_CHARSET))));
+
+        StringBuilder body = new StringBuilder("<CompleteMultipartUpload>");
+        int partNumber = 1;
+        for (String etag : upload.getPartEtags()) {
+            body.append("<Part><PartNumber>").append(partNumber++).append("</PartNumber>")
+                    .append("<ETag>\"").append(etag).append("\"</ETag></Part>");
+        }
+        body.append("</CompleteMultipartUpload>");
+        final byte[] content = body.toString().getBytes(UTF_8_CHARSET);
+
+        OutputStream out = null;
+        HttpURLConnection conn = null;
+        try {
+            conn = openConnection(url);
+            conn.setDoOutput(true);
+            conn.setFixedLengthStreamingMode(content.length);
+            conn.setRequestMethod("POST");
+            conn.setRequestProperty("Content-Type", XML_CONTENT_TYPE);
+            conn.setRequestProperty("Date", date);
+            conn.setRequestProperty("Authorization", "AWS " + mAccessKey + ":" + signature);
+
+            out = new BufferedOutputStream(conn.getOutputStream());
+            out.write(content);
+            out.flush();
+
+            int status = conn.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                Timber.e("Status Code: " + status + ". Expected: 200 - OK");
+                return null;
+            }
+            // Errors may be reported in the body of a 200 response
+            String etag = getXmlValue(FileUtil.readText(conn.getInputStream()), "ETag");
+            return etag != null ? etag.replaceAll("&quot;|\"", "") : null;
+        } finally {
+            if (conn != null) {
+                conn.disconnect();
+            }
+            FileUtil.close(out);
+        }
+    }
+
+    /**
+     * The ETag of an object uploaded in parts is the MD5 of the concatenated binary part
+     * MD5s, followed by a dash and the number of parts.
+     */
+    @Nullable
+    private String getMultipartEtag(MultipartUpload upload) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            for (String etag : upload.getPartEtags()) {
+                md.update(FileUtil.hexToBytes(etag));
+            }
+            return FileUtil.hexMd5(md.digest()) + "-" + upload.getPartCount();
+        } catch (NoSuchAlgorithmException e) {
+            Timber.e(e, e.getMessage());
+            return null;
+        }
+    }
+
+    private byte[] md5(byte[] data, int size) throws IOException {
+        MessageDigest md = getMd5Digest();
+        md.update(data, 0, size);
+        return md.digest();
+    }
+
+    private MessageDigest getMd5Digest() throws IOException {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    @Nullable
+    private static String getXmlValue(@Nullable String xml, String tag) {
+        if (xml == null) {
+            return null;
+        }
+        final String openTag = "<" + tag + ">";
+        int start = xml.indexOf(openTag);
+        int end = xml.indexOf("</" + tag + ">");
+        if (start < 0 || end < start) {
+            return null;
+        }
+        return xml.substring(start + openTag.length(), end).trim();
+    }
+
     private String getDate() {
         final DateFormat df = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss ", Locale.US);
         df.setTimeZone(TimeZone.getTimeZone("GMT"));
@@ -226,9 +581,18 @@ public class S3Api {
         }
     }
 
+    @VisibleForTesting
+    HttpURLConnection openConnection(URL url) throws IOException {
+        return HttpUtil.openConnection(url);
+    }
+
     private String getEtag(HttpURLConnection conn) {
         String etag = conn.getHeaderField("ETag");
         return etag != null ? etag.replaceAll("\"", "") : null;// Remove quotes
     }
 
+    public interface MultipartUploadListener {
+
+        void onUploadUpdated(@NonNull MultipartUpload upload);
+    }
 }
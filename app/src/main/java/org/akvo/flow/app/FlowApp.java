@@ -37,12 +37,14 @@ import org.akvo.flow.injector.component.DaggerApplicationComponent;
 import org.akvo.flow.injector.module.ApplicationModule;
 import org.akvo.flow.service.ApkUpdateService;
 import org.akvo.flow.service.FileChangeTrackingService;
+import org.akvo.flow.util.HttpUtil;
 import org.akvo.flow.util.logging.LoggingHelper;
 
 import java.util.Locale;
 
 import javax.inject.Inject;
 
+import okhttp3.OkHttpClient;
 import timber.log.Timber;
 
 public class FlowApp extends Application {
@@ -56,10 +58,14 @@ public class FlowApp extends Application {
     @Inject
     LoggingHelper loggingHelper;
 
+    @Inject
+    OkHttpClient httpClient;
+
     @Override
     public void onCreate() {
         super.onCreate();
         initializeInjector();
+        HttpUtil.setHttpClient(httpClient);
         prefs = new Prefs(getApplicationContext());
         initLogging();
         init();
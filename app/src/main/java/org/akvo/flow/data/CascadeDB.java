@@ -25,64 +25,292 @@ import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
+import org.akvo.flow.data.cascade.CascadeNodeCache;
+import org.akvo.flow.data.cascade.CascadeNodes;
 import org.akvo.flow.domain.Node;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import timber.log.Timber;
+
+/**
+ * Cascade resource lookups. All the instances pointing to the same resource file share a single
+ * database handle and a cache of the child lists, so repeated questions and groups do not
+ * re-open and re-query the same database.
+ */
 public class CascadeDB {
 
     private static final String TABLE_NODE = "nodes";
+    private static final String INDEX_PARENT_NAME = "nodes_parent_name";
+
+    /**
+     * Number of databases no longer in use whose node cache is kept, in case they are opened
+     * again. Each cache may hold up to CascadeNodeCache.DEFAULT_MAX_NODES nodes.
+     */
+    private static final int MAX_IDLE_DATABASES = 2;
+
+    /**
+     * Shared databases, keyed by resource path, in access order
+     */
+    private static final Map<String, SharedDatabase> sDatabases = new LinkedHashMap<>(16, 0.75f,
+            true);
 
     private final String mDBPath;
     private final Context mContext;
 
-    private SQLiteDatabase mDatabase;
-    private DatabaseHelper mHelper;
+    private SharedDatabase mDatabase;
 
     public CascadeDB(Context context, String dbPath) {
-        mContext = context;
+        mContext = context.getApplicationContext();
         mDBPath = dbPath;
     }
 
     public void open() throws SQLException {
-        mHelper = new DatabaseHelper(mContext, mDBPath);
-        mDatabase = mHelper.getReadableDatabase();
+        if (mDatabase != null) {
+            return;
+        }
+        synchronized (sDatabases) {
+            SharedDatabase database = sDatabases.get(mDBPath);
+            if (database == null) {
+                database = new SharedDatabase(mContext, mDBPath);
+                sDatabases.put(mDBPath, database);
+            }
+            database.acquire();
+            mDatabase = database;
+        }
     }
 
     public void close() {
-        mHelper.close();
+        if (mDatabase == null) {
+            return;
+        }
+        synchronized (sDatabases) {
+            mDatabase.release();
+            trimIdleDatabases();
+        }
         mDatabase = null;
     }
 
+    /**
+     * Drop the least recently used databases which are not open anymore, along with their
+     * node caches, keeping at most MAX_IDLE_DATABASES of them
+     */
+    private static void trimIdleDatabases() {
+        int idle = 0;
+        for (SharedDatabase database : sDatabases.values()) {
+            if (database.isIdle()) {
+                idle++;
+            }
+        }
+        Iterator<SharedDatabase> iterator = sDatabases.values().iterator();
+        while (idle > MAX_IDLE_DATABASES && iterator.hasNext()) {
+            if (iterator.next().isIdle()) {
+                iterator.remove();
+                idle--;
+            }
+        }
+    }
+
     public boolean isOpen() {
         return mDatabase != null;
     }
 
+    /**
+     * @return a new, modifiable list with the children of the given node, sorted by name
+     */
     public List<Node> getValues(long parent) {
-        final List<Node> result = new ArrayList<>();
-        if (!isOpen()) {
-            return result;
+        CascadeNodes nodes = getChildren(parent);
+        return nodes != null ? nodes.toNodes() : new ArrayList<Node>();
+    }
+
+    /**
+     * Find the children of the given node whose name starts with the prefix, ignoring case
+     * and accents.
+     *
+     * @return a new, modifiable list with the matching nodes, sorted by name
+     */
+    public List<Node> search(long parent, @NonNull String prefix) {
+        CascadeNodes nodes = getChildren(parent);
+        return nodes != null ? nodes.search(prefix) : new ArrayList<Node>();
+    }
+
+    @Nullable
+    private CascadeNodes getChildren(long parent) {
+        SharedDatabase database = mDatabase;
+        if (database == null) {
+            return null;
+        }
+        return database.cache.getChildren(parent);
+    }
+
+    /**
+     * Reference counted database handle. The node cache outlives the handle, so reopening a
+     * form does not need to query the same levels again. It is dropped if the resource file is
+     * replaced, or once other databases have been used more recently.
+     */
+    private static class SharedDatabase implements CascadeNodeCache.Source {
+
+        final CascadeNodeCache cache;
+
+        private final File file;
+        private final DatabaseHelper helper;
+
+        private volatile SQLiteDatabase database;
+        private volatile String[] projection;
+        private int refCount;
+
+        private long fileLength = -1;
+        private long fileModified = -1;
+
+        SharedDatabase(Context context, String dbPath) {
+            this.file = new File(dbPath);
+            this.helper = new DatabaseHelper(context, dbPath);
+            this.cache = new CascadeNodeCache(this, CascadeNodeCache.DEFAULT_MAX_NODES);
         }
-        Cursor c = mDatabase.query(TABLE_NODE, null,
-                NodeColumns.PARENT + "=?",
-                new String[]{String.valueOf(parent)},
-                null, null, NodeColumns.NAME);
 
-        if (c != null) {
-            if (c.moveToFirst()) {
+        void acquire() throws SQLException {
+            if (refCount == 0) {
+                SQLiteDatabase db = helper.getReadableDatabase();
+                if (file.length() != fileLength || file.lastModified() != fileModified) {
+                    // New or updated resource
+                    cache.clear();
+                    projection = getProjection(db);
+                    ensureIndex(db);
+                    fileLength = file.length();
+                    fileModified = file.lastModified();
+                }
+                database = db;
+            }
+            refCount++;
+        }
+
+        void release() {
+            if (refCount > 0 && --refCount == 0) {
+                database = null;
+                helper.close();
+            }
+        }
+
+        boolean isIdle() {
+            return refCount == 0;
+        }
+
+        @Nullable
+        @Override
+        public CascadeNodes loadChildren(long parent) {
+            SQLiteDatabase db = database;
+            if (db == null) {
+                return null;
+            }
+            Cursor c = db.query(TABLE_NODE, projection,
+                    NodeColumns.PARENT + "=?",
+                    new String[]{String.valueOf(parent)},
+                    null, null, NodeColumns.NAME);
+            if (c == null) {
+                return null;
+            }
+            try {
+                final int count = c.getCount();
+                final int idCol = c.getColumnIndexOrThrow(NodeColumns.ID);
+                final int nameCol = c.getColumnIndexOrThrow(NodeColumns.NAME);
                 final int codeCol = c.getColumnIndex(NodeColumns.CODE);
-                do {
-                    Long id = c.getLong(c.getColumnIndex(NodeColumns.ID));
-                    String name = c.getString(c.getColumnIndex(NodeColumns.NAME));
-                    String code = codeCol > -1 ? c.getString(codeCol) : null;
-                    result.add(new Node(id, name, code));
-                } while (c.moveToNext());
+                long[] ids = new long[count];
+                String[] names = new String[count];
+                String[] codes = new String[count];
+                for (int i = 0; i < count && c.moveToNext(); i++) {
+                    ids[i] = c.getLong(idCol);
+                    names[i] = c.getString(nameCol);
+                    codes[i] = codeCol > -1 ? c.getString(codeCol) : null;
+                }
+                return new CascadeNodes(ids, names, codes);
+            } finally {
+                c.close();
+            }
+        }
+
+        /**
+         * Older resources do not contain the code column
+         */
+        private String[] getProjection(SQLiteDatabase db) {
+            boolean hasCode = false;
+            Cursor c = db.rawQuery("PRAGMA table_info(" + TABLE_NODE + ")", null);
+            try {
+                final int nameCol = c.getColumnIndexOrThrow("name");
+                while (c.moveToNext()) {
+                    hasCode |= NodeColumns.CODE.equals(c.getString(nameCol));
+                }
+            } finally {
+                c.close();
+            }
+            return hasCode ?
+                    new String[] { NodeColumns.ID, NodeColumns.NAME, NodeColumns.CODE } :
+                    new String[] { NodeColumns.ID, NodeColumns.NAME };
+        }
+
+        /**
+         * Child lookups filter by parent and sort by name. Resources generated by the
+         * server are only indexed by (name, parent), which forces a full table scan
+         */
+        private void ensureIndex(SQLiteDatabase db) {
+            if (hasParentNameIndex(db)) {
+                return;
+            }
+            if (db.isReadOnly()) {
+                Timber.w("Cannot index read-only cascade resource %s", file.getName());
+                return;
+            }
+            try {
+                db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_PARENT_NAME + " ON "
+                        + TABLE_NODE + " (" + NodeColumns.PARENT + ", " + NodeColumns.NAME + ")");
+            } catch (SQLException e) {
+                Timber.e(e, "Could not index cascade resource %s", file.getName());
+            }
+        }
+
+        private boolean hasParentNameIndex(SQLiteDatabase db) {
+            List<String> indexes = new ArrayList<>();
+            Cursor c = db.rawQuery("PRAGMA index_list(" + TABLE_NODE + ")", null);
+            try {
+                final int nameCol = c.getColumnIndexOrThrow("name");
+                while (c.moveToNext()) {
+                    indexes.add(c.getString(nameCol));
+                }
+            } finally {
+                c.close();
+            }
+            for (String index : indexes) {
+                if (isParentNameIndex(db, index)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean isParentNameIndex(SQLiteDatabase db, String index) {
+            String[] columns = new String[2];
+            Cursor c = db.rawQuery("PRAGMA index_info(\"" + index + "\")", null);
+            try {
+                final int seqCol = c.getColumnIndexOrThrow("seqno");
+                final int nameCol = c.getColumnIndexOrThrow("name");
+                while (c.moveToNext()) {
+                    int seq = c.getInt(seqCol);
+                    if (seq < columns.length) {
+                        columns[seq] = c.getString(nameCol);
+                    }
+                }
+            } finally {
+                c.close();
             }
-            c.close();
+            return NodeColumns.PARENT.equals(columns[0]) && NodeColumns.NAME.equals(columns[1]);
         }
-        return result;
     }
 
     static class DatabaseHelper extends SQLiteOpenHelper {
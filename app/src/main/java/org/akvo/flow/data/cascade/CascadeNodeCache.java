@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.data.cascade;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of cascade child lists, keyed by parent id. The cache is bounded by the total
+ * number of nodes it holds rather than the number of lists, as a single level of an
+ * administrative-boundary cascade can be several thousand nodes long.
+ */
+public class CascadeNodeCache {
+
+    public static final int DEFAULT_MAX_NODES = 20000;
+
+    private final Source source;
+    private final int maxNodes;
+    private final LinkedHashMap<Long, CascadeNodes> lists;
+
+    private int nodeCount;
+    private int hits;
+    private int misses;
+
+    public CascadeNodeCache(@NonNull Source source, int maxNodes) {
+        this.source = source;
+        this.maxNodes = maxNodes;
+        this.lists = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @return the children of the given node, or null if they could not be loaded
+     */
+    @Nullable
+    public synchronized CascadeNodes getChildren(long parent) {
+        CascadeNodes nodes = lists.get(parent);
+        if (nodes != null) {
+            hits++;
+            return nodes;
+        }
+        misses++;
+        nodes = source.loadChildren(parent);
+        if (nodes != null) {
+            lists.put(parent, nodes);
+            nodeCount += nodes.size();
+            trim();
+        }
+        return nodes;
+    }
+
+    public synchronized void clear() {
+        lists.clear();
+        nodeCount = 0;
+    }
+
+    public synchronized int getNodeCount() {
+        return nodeCount;
+    }
+
+    public synchronized int getHitCount() {
+        return hits;
+    }
+
+    public synchronized int getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Evict the least recently used lists until the cache fits in its budget. The most
+     * recent list is always kept, even if it is bigger than the budget on its own.
+     */
+    private void trim() {
+        Iterator<Map.Entry<Long, CascadeNodes>> it = lists.entrySet().iterator();
+        while (nodeCount > maxNodes && lists.size() > 1 && it.hasNext()) {
+            nodeCount -= it.next().getValue().size();
+            it.remove();
+        }
+    }
+
+    public interface Source {
+
+        /**
+         * @return the children of the given node, sorted by name, or null if they could
+         * not be loaded
+         */
+        @Nullable
+        CascadeNodes loadChildren(long parent);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.data.cascade;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.akvo.flow.domain.Node;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Children of a cascade node, stored as parallel arrays in the order they are displayed.
+ * Instances are immutable, so they can be shared by every view using the same resource.
+ */
+public class CascadeNodes {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{Mn}+");
+
+    private final long[] ids;
+    private final String[] names;
+    private final String[] codes;
+
+    /**
+     * Normalized names, sorted, and the position of each of them in the original arrays.
+     * Built the first time the list is searched.
+     */
+    private String[] searchKeys;
+    private int[] searchPositions;
+
+    public CascadeNodes(@NonNull long[] ids, @NonNull String[] names, @NonNull String[] codes) {
+        if (ids.length != names.length || ids.length != codes.length) {
+            throw new IllegalArgumentException("Node arrays must have the same length");
+        }
+        this.ids = ids;
+        this.names = names;
+        this.codes = codes;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public long getId(int position) {
+        return ids[position];
+    }
+
+    public String getName(int position) {
+        return names[position];
+    }
+
+    @Nullable
+    public String getCode(int position) {
+        return codes[position];
+    }
+
+    /**
+     * @return a new, modifiable list with all the nodes
+     */
+    @NonNull
+    public List<Node> toNodes() {
+        List<Node> nodes = new ArrayList<>(ids.length + 1);
+        for (int i = 0; i < ids.length; i++) {
+            nodes.add(new Node(ids[i], names[i], codes[i]));
+        }
+        return nodes;
+    }
+
+    /**
+     * Find the nodes whose name starts with the given prefix, ignoring case and accents.
+     *
+     * @return a new, modifiable list with the matching nodes, in display order
+     */
+    @NonNull
+    public List<Node> search(@NonNull String prefix) {
+        int[] positions = findPositions(prefix);
+        List<Node> nodes = new ArrayList<>(positions.length + 1);
+        for (int position : positions) {
+            nodes.add(new Node(ids[position], names[position], codes[position]));
+        }
+        return nodes;
+    }
+
+    /**
+     * @return the positions of the matching nodes, in ascending order
+     */
+    @NonNull
+    int[] findPositions(@NonNull String prefix) {
+        buildSearchIndex();
+        String key = normalize(prefix);
+        int start = Arrays.binarySearch(searchKeys, key);
+        if (start < 0) {
+            start = -start - 1;
+        }
+        int end = start;
+        while (end < searchKeys.length && searchKeys[end].startsWith(key)) {
+            end++;
+        }
+        int[] positions = Arrays.copyOfRange(searchPositions, start, end);
+        Arrays.sort(positions);
+        return positions;
+    }
+
+    private synchronized void buildSearchIndex() {
+        if (searchKeys != null) {
+            return;
+        }
+        final String[] keys = new String[names.length];
+        Integer[] order = new Integer[names.length];
+        for (int i = 0; i < names.length; i++) {
+            keys[i] = normalize(names[i]);
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return keys[lhs].compareTo(keys[rhs]);
+            }
+        });
+        String[] sortedKeys = new String[keys.length];
+        int[] positions = new int[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            positions[i] = order[i];
+            sortedKeys[i] = keys[order[i]];
+        }
+        searchPositions = positions;
+        searchKeys = sortedKeys;
+    }
+
+    @NonNull
+    static String normalize(@Nullable String name) {
+        if (name == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(name.trim(), Normalizer.Form.NFD);
+        return DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+}
@@ -19,13 +19,26 @@
 
 package org.akvo.flow.data.dao;
 
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.text.TextUtils;
 
 import org.akvo.flow.domain.Survey;
+import org.akvo.flow.serialization.form.CompiledSurveyReader;
+import org.akvo.flow.serialization.form.CompiledSurveyWriter;
 import org.akvo.flow.serialization.form.SaxSurveyParser;
+import org.akvo.flow.util.ConstantUtil;
+import org.akvo.flow.util.FileUtil;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+
+import timber.log.Timber;
 
 /**
  * utility to read survey xml files from wherever they may reside
@@ -42,18 +55,106 @@ public class SurveyDao {
     public static Survey loadSurvey(Survey survey, InputStream in)
             throws FileNotFoundException {
         if (survey != null) {
-            String tempName = survey.getName();
-            String id = survey.getId();
-            SaxSurveyParser parser = new SaxSurveyParser();
-            survey = parser.parse(in);
-
-            if (survey != null) {
-                survey.setId(id);
-                if (TextUtils.isEmpty(survey.getName())) {
-                    survey.setName(tempName);
-                }
-            }
+            survey = hydrate(survey, new SaxSurveyParser().parse(in));
         }
         return survey;
     }
+
+    /**
+     * Loads a survey xml file, using the compiled copy stored next to it when it was built
+     * from the same xml and form version. Otherwise the xml is parsed and compiled again.
+     */
+    public static Survey loadSurvey(Survey survey, @NonNull File file)
+            throws FileNotFoundException {
+        if (survey == null) {
+            return null;
+        }
+        Survey compiled = readCompiledSurvey(survey.getVersion(), file);
+        if (compiled != null) {
+            return hydrate(survey, compiled);
+        }
+        return hydrate(survey, compileSurvey(survey, file));
+    }
+
+    /**
+     * Parses the survey xml file and stores the compiled copy next to it, replacing any
+     * previous one. Meant to be called once the form has been installed.
+     *
+     * @return the parsed survey, without the metadata of the survey passed in
+     */
+    public static Survey compileSurvey(@NonNull Survey survey, @NonNull File file)
+            throws FileNotFoundException {
+        Survey parsed;
+        InputStream in = new FileInputStream(file);
+        try {
+            parsed = new SaxSurveyParser().parse(in);
+        } finally {
+            FileUtil.close(in);
+        }
+        if (parsed != null) {
+            writeCompiledSurvey(parsed, survey.getVersion(), file);
+        }
+        return parsed;
+    }
+
+    private static Survey hydrate(@NonNull Survey survey, @Nullable Survey parsed) {
+        if (parsed != null) {
+            parsed.setId(survey.getId());
+            if (TextUtils.isEmpty(parsed.getName())) {
+                parsed.setName(survey.getName());
+            }
+        }
+        return parsed;
+    }
+
+    @NonNull
+    private static File getCompiledFile(@NonNull File file) {
+        return new File(file.getPath() + ConstantUtil.COMPILED_FORM_SUFFIX);
+    }
+
+    @Nullable
+    private static Survey readCompiledSurvey(double formVersion, @NonNull File file) {
+        File compiled = getCompiledFile(file);
+        if (!compiled.exists()) {
+            return null;
+        }
+        InputStream in = null;
+        try {
+            in = new FileInputStream(compiled);
+            return new CompiledSurveyReader(in)
+                    .read(formVersion, file.length(), file.lastModified());
+        } catch (IOException e) {
+            Timber.w(e, "Could not read compiled form %s", compiled.getName());
+            return null;
+        } finally {
+            FileUtil.close(in);
+        }
+    }
+
+    /**
+     * The file is written to a temporary location first, so concurrent readers never
+     * see a partially written form.
+     */
+    private static void writeCompiledSurvey(@NonNull Survey survey, double formVersion,
+            @NonNull File file) {
+        File compiled = getCompiledFile(file);
+        File tmp = new File(compiled.getPath() + ".tmp");
+        OutputStream out = null;
+        boolean success = false;
+        try {
+            out = new FileOutputStream(tmp);
+            new CompiledSurveyWriter(out)
+                    .write(survey, formVersion, file.length(), file.lastModified());
+            FileUtil.close(out);
+            out = null;
+            success = tmp.renameTo(compiled);
+        } catch (IOException e) {
+            Timber.w(e, "Could not write compiled form %s", compiled.getName());
+        } finally {
+            FileUtil.close(out);
+            if (!success && tmp.exists() && !tmp.delete()) {
+                Timber.w("Could not delete %s", tmp.getName());
+            }
+        }
+    }
 }
@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.data.database;
+
+import android.database.SQLException;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.akvo.flow.domain.QuestionResponse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import timber.log.Timber;
+
+/**
+ * Write-behind store for the responses of the form instance being edited. Changes are kept
+ * in memory, where consecutive edits of the same response replace each other, and written
+ * to the database in a single transaction shortly after, from a background thread.
+ * {@link #flush()} must be called before reading the responses back from the database,
+ * and whenever the form is paused, as pending changes would be lost with the process.
+ */
+public class ResponseStore {
+
+    private static final long FLUSH_DELAY_MS = 2000;
+
+    private final SurveyDbDataSource database;
+    private final long surveyInstanceId;
+    private final ScheduledExecutorService writer;
+
+    /**
+     * Changes not written yet, by response key. Guarded by itself.
+     */
+    private final Map<String, Change> pending = new LinkedHashMap<>();
+    private boolean flushScheduled;
+
+    /**
+     * Responses as stored in the database, by response key, so saving them needs no lookup.
+     * Guarded by writeLock, which is held while writing.
+     */
+    private final Map<String, QuestionResponse> saved = new HashMap<>();
+    private final Object writeLock = new Object();
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (pending) {
+                flushScheduled = false;
+            }
+            flush();
+        }
+    };
+
+    public ResponseStore(@NonNull SurveyDbDataSource database, long surveyInstanceId) {
+        this.database = database;
+        this.surveyInstanceId = surveyInstanceId;
+        this.writer = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * Read the stored responses, discarding any pending change
+     *
+     * @return the responses, by question id (and iteration for the repeatable groups)
+     */
+    @NonNull
+    public Map<String, QuestionResponse> load() {
+        synchronized (writeLock) {
+            synchronized (pending) {
+                pending.clear();
+            }
+            Map<String, QuestionResponse> responses = database.getResponses(surveyInstanceId);
+            saved.clear();
+            for (QuestionResponse response : responses.values()) {
+                saved.put(getKey(response.getQuestionId(), response.getIteration(),
+                        response.isAnswerToRepeatableGroup()), response);
+            }
+            return responses;
+        }
+    }
+
+    /**
+     * Insert or update the given response. Its id, if any, is ignored.
+     */
+    public void save(@NonNull QuestionResponse response) {
+        String key = getKey(response.getQuestionId(), response.getIteration(),
+                response.isAnswerToRepeatableGroup());
+        queue(key, new Change(response, response.getQuestionId(), null));
+    }
+
+    /**
+     * Delete the responses to the given question, in every iteration
+     */
+    public void delete(@NonNull String questionId) {
+        queue(questionId, new Change(null, questionId, null));
+    }
+
+    /**
+     * Delete the response to the given question in one iteration of its repeatable group
+     */
+    public void delete(@NonNull String questionId, @NonNull String iteration) {
+        queue(questionId + "|" + iteration, new Change(null, questionId, iteration));
+    }
+
+    /**
+     * Delete all the responses of the form instance, along with any pending change
+     */
+    public void deleteAll() {
+        synchronized (writeLock) {
+            synchronized (pending) {
+                pending.clear();
+            }
+            database.deleteResponses(String.valueOf(surveyInstanceId));
+            saved.clear();
+        }
+    }
+
+    private void queue(String key, Change change) {
+        synchronized (pending) {
+            // Move the key to the end, so changes are written in the order they were made
+            pending.remove(key);
+            pending.put(key, change);
+            if (!flushScheduled && !writer.isShutdown()) {
+                flushScheduled = true;
+                writer.schedule(flushTask, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Write the pending changes, blocking until they are stored
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            List<Map.Entry<String, Change>> changes;
+            synchronized (pending) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                changes = new ArrayList<>(pending.entrySet());
+                pending.clear();
+            }
+
+            Map<String, QuestionResponse> written = new HashMap<>();
+            try {
+                database.beginTransaction();
+                try {
+                    for (Map.Entry<String, Change> change : changes) {
+                        written.put(change.getKey(), write(change.getKey(), change.getValue()));
+                    }
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+            } catch (SQLException e) {
+                Timber.e(e, "Could not write %d responses", changes.size());
+                requeue(changes);
+                return;
+            }
+
+            for (Map.Entry<String, QuestionResponse> response : written.entrySet()) {
+                if (response.getValue() != null) {
+                    saved.put(response.getKey(), response.getValue());
+                } else {
+                    saved.remove(response.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the response as stored, or null if it was deleted
+     */
+    @Nullable
+    private QuestionResponse write(String key, Change change) {
+        if (change.response == null) {
+            if (change.iteration != null) {
+                database.deleteResponse(surveyInstanceId, change.questionId, change.iteration);
+            } else {
+                database.deleteResponse(surveyInstanceId, change.questionId);
+            }
+            return null;
+        }
+
+        // Keep the stored type and iteration unless the new response sets them
+        QuestionResponse response = change.response;
+        QuestionResponse previous = saved.get(key);
+        String type = response.getType();
+        int iteration = response.getIteration();
+        Long id = null;
+        if (previous != null) {
+            id = previous.getId();
+            iteration = previous.getIteration();
+            if (type == null) {
+                type = previous.getType();
+            }
+        }
+        QuestionResponse.QuestionResponseBuilder builder =
+                new QuestionResponse.QuestionResponseBuilder()
+                        .setValue(response.getValue())
+                        .setType(type)
+                        .setSurveyInstanceId(surveyInstanceId)
+                        .setQuestionId(response.getQuestionId())
+                        .setFilename(response.getFilename())
+                        .setIncludeFlag(response.getIncludeFlag())
+                        .setIteration(iteration);
+        QuestionResponse stored = database.saveSurveyResponse(builder.setId(id)
+                .createQuestionResponse());
+        if (id != null && stored.getId() == -1) {
+            // The row is gone, deleted along with the whole form instance
+            stored = database.saveSurveyResponse(builder.setId(null).createQuestionResponse());
+        }
+        return stored;
+    }
+
+    /**
+     * Put back the changes of a failed write, unless they were replaced in the meantime
+     */
+    private void requeue(List<Map.Entry<String, Change>> changes) {
+        synchronized (pending) {
+            Map<String, Change> newer = new LinkedHashMap<>(pending);
+            pending.clear();
+            for (Map.Entry<String, Change> change : changes) {
+                if (!newer.containsKey(change.getKey())) {
+                    pending.put(change.getKey(), change.getValue());
+                }
+            }
+            pending.putAll(newer);
+        }
+    }
+
+    /**
+     * Write the pending changes and stop the background writer
+     */
+    public void close() {
+        writer.shutdownNow();
+        flush();
+    }
+
+    private static String getKey(String questionId, int iteration, boolean repeatable) {
+        return repeatable ? questionId + "|" + iteration : questionId;
+    }
+
+    private static class Change {
+
+        @Nullable
+        final QuestionResponse response;// Null to delete
+        final String questionId;
+        @Nullable
+        final String iteration;
+
+        Change(@Nullable QuestionResponse response, String questionId,
+                @Nullable String iteration) {
+            this.response = response;
+            this.questionId = questionId;
+            this.iteration = iteration;
+        }
+    }
+}
@@ -32,6 +32,7 @@ import com.squareup.sqlbrite2.BriteDatabase;
 import org.akvo.flow.data.migration.FlowMigrationListener;
 import org.akvo.flow.data.migration.languages.MigrationLanguageMapper;
 import org.akvo.flow.data.preference.Prefs;
+import org.akvo.flow.database.GeoGrid;
 import org.akvo.flow.database.RecordColumns;
 import org.akvo.flow.database.ResponseColumns;
 import org.akvo.flow.database.SurveyColumns;
@@ -43,6 +44,7 @@ import org.akvo.flow.database.TransmissionColumns;
 import org.akvo.flow.database.TransmissionStatus;
 import org.akvo.flow.database.britedb.BriteSurveyDbAdapter;
 import org.akvo.flow.domain.FileTransmission;
+import org.akvo.flow.domain.MultipartUpload;
 import org.akvo.flow.domain.QuestionResponse;
 import org.akvo.flow.domain.Survey;
 import org.akvo.flow.domain.SurveyGroup;
@@ -218,7 +220,15 @@ public class SurveyDbDataSource {
      * @return
      */
     public QuestionResponse createOrUpdateSurveyResponse(@NonNull QuestionResponse newResponse) {
-        QuestionResponse responseToSave = getResponseToSave(newResponse);
+        return saveSurveyResponse(getResponseToSave(newResponse));
+    }
+
+    /**
+     * Inserts the response if it has no id, updates it otherwise
+     *
+     * @return the saved response, with the id it got
+     */
+    public QuestionResponse saveSurveyResponse(@NonNull QuestionResponse responseToSave) {
         ContentValues initialValues = new ContentValues();
         initialValues.put(ResponseColumns.ANSWER, responseToSave.getValue());
         initialValues.put(ResponseColumns.TYPE, responseToSave.getType());
@@ -350,6 +360,7 @@ public class SurveyDbDataSource {
                         .getColumnIndexOrThrow(TransmissionColumns.SURVEY_INSTANCE_ID);
                 final int fileCol = cursor.getColumnIndexOrThrow(TransmissionColumns.FILENAME);
                 final int statusCol = cursor.getColumnIndexOrThrow(TransmissionColumns.STATUS);
+                final int md5Col = cursor.getColumnIndexOrThrow(TransmissionColumns.MD5);
 
                 transmissions = new ArrayList<>();
                 do {
@@ -359,6 +370,7 @@ public class SurveyDbDataSource {
                     trans.setRespondentId(cursor.getLong(surveyInstanceCol));
                     trans.setFileName(cursor.getString(fileCol));
                     trans.setStatus(cursor.getInt(statusCol));
+                    trans.setMd5(cursor.getString(md5Col));
 
                     // Start and End date. Handle null cases
                     if (!cursor.isNull(startCol)) {
@@ -387,11 +399,7 @@ public class SurveyDbDataSource {
      */
     @NonNull
     public List<FileTransmission> getUnSyncedTransmissions() {
-        Cursor cursor = surveyDbAdapter.getUnSyncedTransmissions(new String[] {
-                String.valueOf(TransmissionStatus.FAILED),
-                String.valueOf(TransmissionStatus.IN_PROGRESS),// Stalled IN_PROGRESS files
-                String.valueOf(TransmissionStatus.QUEUED)
-        });
+        Cursor cursor = surveyDbAdapter.getUnSyncedTransmissions();
         return getFileTransmissions(cursor);
     }
 
@@ -487,8 +495,12 @@ public class SurveyDbDataSource {
                     if (parts.length < 2) {
                         return;// Wrong format
                     }
-                    surveyedLocaleValues.put(RecordColumns.LATITUDE, Double.parseDouble(parts[0]));
-                    surveyedLocaleValues.put(RecordColumns.LONGITUDE, Double.parseDouble(parts[1]));
+                    double latitude = Double.parseDouble(parts[0]);
+                    double longitude = Double.parseDouble(parts[1]);
+                    surveyedLocaleValues.put(RecordColumns.LATITUDE, latitude);
+                    surveyedLocaleValues.put(RecordColumns.LONGITUDE, longitude);
+                    surveyedLocaleValues.put(RecordColumns.GRID_CELL,
+                            GeoGrid.getCell(latitude, longitude));
                     type = "META_GEO";
                     questionId = ConstantUtil.QUESTION_LOCALE_GEO;
                     break;
@@ -558,6 +570,22 @@ public class SurveyDbDataSource {
         briteSurveyDbAdapter.updateRecordModifiedDate(recordId, timestamp);
     }
 
+    public void updateSearchIndex(String recordId) {
+        surveyDbAdapter.updateSearchIndex(recordId);
+    }
+
+    public void beginTransaction() {
+        surveyDbAdapter.beginTransaction();
+    }
+
+    public void setTransactionSuccessful() {
+        surveyDbAdapter.setTransactionSuccessful();
+    }
+
+    public void endTransaction() {
+        surveyDbAdapter.endTransaction();
+    }
+
     public void deleteResponses(String surveyId) {
         surveyDbAdapter.deleteResponses(surveyId);
     }
@@ -604,6 +632,36 @@ public class SurveyDbDataSource {
         return surveyDbAdapter.updateTransmission(filename, values);
     }
 
+    /**
+     * Get the multipart upload state stored for the given file, so an interrupted upload
+     * can be resumed
+     */
+    @NonNull
+    public MultipartUpload getMultipartUpload(String filename) {
+        Cursor cursor = surveyDbAdapter.getMultipartUpload(filename);
+        MultipartUpload upload = null;
+        if (cursor != null) {
+            if (cursor.moveToFirst()) {
+                upload = new MultipartUpload(
+                        cursor.getString(cursor.getColumnIndexOrThrow(TransmissionColumns.UPLOAD_ID)),
+                        cursor.getString(
+                                cursor.getColumnIndexOrThrow(TransmissionColumns.UPLOAD_PARTS)),
+                        cursor.getString(
+                                cursor.getColumnIndexOrThrow(TransmissionColumns.UPLOAD_FILE)));
+            }
+            cursor.close();
+        }
+        return upload != null ? upload : new MultipartUpload();
+    }
+
+    public void updateMultipartUpload(String filename, @NonNull MultipartUpload upload) {
+        ContentValues values = new ContentValues();
+        values.put(TransmissionColumns.UPLOAD_ID, upload.getUploadId());
+        values.put(TransmissionColumns.UPLOAD_PARTS, upload.getSerializedParts());
+        values.put(TransmissionColumns.UPLOAD_FILE, upload.getFileVersion());
+        surveyDbAdapter.updateTransmission(filename, values);
+    }
+
     public void deleteResponse(long mSurveyInstanceId, String questionId, String iteration) {
         surveyDbAdapter.deleteResponse(mSurveyInstanceId, questionId, iteration);
     }
@@ -612,6 +670,20 @@ public class SurveyDbDataSource {
         surveyDbAdapter.createTransmission(id, formId, filename);
     }
 
+    public void createTransmission(long id, String formId, String filename, String md5) {
+        surveyDbAdapter.createTransmission(id, formId, filename, md5);
+    }
+
+    /**
+     * Cache the checksum of a file, so it does not need to be computed again on each
+     * upload attempt. A null value clears the cached checksum.
+     */
+    public void updateTransmissionChecksum(String filename, String md5) {
+        ContentValues values = new ContentValues();
+        values.put(TransmissionColumns.MD5, md5);
+        surveyDbAdapter.updateTransmission(filename, values);
+    }
+
     public Cursor getResponsesData(long surveyInstanceId) {
         return surveyDbAdapter.getResponsesData(surveyInstanceId);
     }
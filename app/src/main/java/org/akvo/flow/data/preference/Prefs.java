@@ -43,6 +43,8 @@ public class Prefs {
     public static final String KEY_DEVICE_IDENTIFIER = "device.identifier";
     public static final String KEY_MAX_IMG_SIZE = "media.img.maxsize";
     public static final String KEY_SPACE_AVAILABLE = "cardMBAvaliable";
+    public static final String KEY_UPLOAD_CONCURRENCY_WIFI = "data.upload.concurrency.wifi";
+    public static final String KEY_UPLOAD_CONCURRENCY_CELL = "data.upload.concurrency.cell";
 
     private static final String PREFS_NAME = "flow_prefs";
     private static final int PREFS_MODE = Context.MODE_PRIVATE;
@@ -52,6 +54,8 @@ public class Prefs {
     public static final boolean DEFAULT_VALUE_CELL_UPLOAD = false;
     public static final boolean DEFAULT_VALUE_SCREEN_ON = true;
     public static final long DEF_VALUE_SPACE_AVAILABLE = 101L;
+    public static final int DEFAULT_VALUE_UPLOAD_CONCURRENCY_WIFI = 4;
+    public static final int DEFAULT_VALUE_UPLOAD_CONCURRENCY_CELL = 2;
 
     private final Context context;
 
@@ -21,7 +21,10 @@ package org.akvo.flow.domain;
 
 import org.akvo.flow.serialization.response.value.OptionValue;
 
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * data structure representing a dependency between questions. A dependency
@@ -35,6 +38,7 @@ import java.util.List;
 public class Dependency {
     private String question;
     private String answer;
+    private Set<String> answers;// Lazily split answer values
 
     public Dependency() {
     }
@@ -61,6 +65,25 @@ public class Dependency {
 
     public void setAnswer(String answer) {
         this.answer = answer;
+        this.answers = null;
+    }
+
+    /**
+     * @return the trimmed values of the answer, any of which satisfies this dependency
+     */
+    public Set<String> getAnswers() {
+        if (answers == null) {
+            if (answer == null) {
+                answers = Collections.emptySet();
+            } else {
+                Set<String> values = new HashSet<>();
+                for (String a : answer.split("\\|", -1)) {
+                    values.add(a.trim());
+                }
+                answers = Collections.unmodifiableSet(values);
+            }
+        }
+        return answers;
     }
 
     public boolean isMatch(String val) {
@@ -69,11 +92,10 @@ public class Dependency {
         }
 
         List<Option> values = OptionValue.deserialize(val);
+        Set<String> answers = getAnswers();
         for (Option o : values) {
-            for (String a : answer.split("\\|", -1)) {
-                if (o.getText().trim().equals(a.trim())) {
-                    return true;
-                }
+            if (answers.contains(o.getText().trim())) {
+                return true;
             }
         }
 
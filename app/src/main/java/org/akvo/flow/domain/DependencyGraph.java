@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.domain;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+import timber.log.Timber;
+
+/**
+ * Dependencies between the questions of a form, compiled once when the form is loaded.
+ * Each question gets a rank following a topological order of the graph, so evaluating
+ * the questions by rank always evaluates a parent before its dependents.
+ *
+ * Questions are identified by their form definition ID. Questions of repeatable groups
+ * show up in the form as questionId|iteration, see {@link #getParentId(String, String)}.
+ */
+public class DependencyGraph {
+
+    private final Map<String, List<Condition>> conditions = new HashMap<>();
+    private final Map<String, List<String>> dependents = new HashMap<>();
+    private final Map<String, Integer> ranks = new HashMap<>();
+    private final Map<String, QuestionGroup> groups = new HashMap<>();
+
+    public DependencyGraph(@NonNull List<QuestionGroup> questionGroups) {
+        List<String> questions = new ArrayList<>();
+        for (QuestionGroup group : questionGroups) {
+            for (Question question : group.getQuestions()) {
+                String questionId = question.getId();
+                questions.add(questionId);
+                groups.put(questionId, group);
+                List<Dependency> dependencies = question.getDependencies();
+                if (dependencies == null || dependencies.isEmpty()) {
+                    continue;
+                }
+                List<Condition> questionConditions = new ArrayList<>(dependencies.size());
+                for (Dependency dependency : dependencies) {
+                    if (dependency.getQuestion() == null) {
+                        continue;
+                    }
+                    questionConditions.add(new Condition(dependency.getQuestion(),
+                            dependency.getAnswers()));
+                    List<String> children = dependents.get(dependency.getQuestion());
+                    if (children == null) {
+                        children = new ArrayList<>();
+                        dependents.put(dependency.getQuestion(), children);
+                    }
+                    children.add(questionId);
+                }
+                conditions.put(questionId, questionConditions);
+            }
+        }
+        rank(questions);
+    }
+
+    /**
+     * Kahn's algorithm, starting from the form order. Questions in a cycle can never be
+     * shown, but they still get a rank after the rest.
+     */
+    private void rank(List<String> questions) {
+        Map<String, Integer> pending = new HashMap<>();
+        Queue<String> ready = new LinkedList<>();
+        for (String questionId : questions) {
+            int count = 0;
+            for (Condition condition : getConditions(questionId)) {
+                if (groups.containsKey(condition.question)) {
+                    count++;
+                }
+            }
+            pending.put(questionId, count);
+            if (count == 0) {
+                ready.add(questionId);
+            }
+        }
+
+        while (!ready.isEmpty()) {
+            String questionId = ready.poll();
+            ranks.put(questionId, ranks.size());
+            for (String child : getDependents(questionId)) {
+                int count = pending.get(child) - 1;
+                pending.put(child, count);
+                if (count == 0) {
+                    ready.add(child);
+                }
+            }
+        }
+
+        for (String questionId : questions) {
+            if (!ranks.containsKey(questionId)) {
+                Timber.w("Circular dependency on question %s", questionId);
+                ranks.put(questionId, ranks.size());
+            }
+        }
+    }
+
+    @NonNull
+    public List<Condition> getConditions(@NonNull String questionId) {
+        List<Condition> questionConditions = conditions.get(getBaseId(questionId));
+        return questionConditions != null ? questionConditions
+                : Collections.<Condition>emptyList();
+    }
+
+    @NonNull
+    public List<String> getDependents(@NonNull String questionId) {
+        List<String> children = dependents.get(getBaseId(questionId));
+        return children != null ? children : Collections.<String>emptyList();
+    }
+
+    /**
+     * @return the position of the question in the evaluation order
+     */
+    public int getRank(@NonNull String questionId) {
+        Integer rank = ranks.get(getBaseId(questionId));
+        return rank != null ? rank : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Resolve the ID of the question a condition refers to, as shown in the form. A question
+     * in a repeatable group depends on the same iteration of the questions in its own group.
+     */
+    @NonNull
+    public String getParentId(@NonNull String questionId, @NonNull String parentId) {
+        String iteration = getIteration(questionId);
+        QuestionGroup group = groups.get(getBaseId(questionId));
+        if (iteration != null && group != null && group.isRepeatable()
+                && group == groups.get(parentId)) {
+            return parentId + "|" + iteration;
+        }
+        return parentId;
+    }
+
+    private static String getBaseId(String questionId) {
+        int separator = questionId.indexOf('|');
+        return separator == -1 ? questionId : questionId.substring(0, separator);
+    }
+
+    private static String getIteration(String questionId) {
+        int separator = questionId.indexOf('|');
+        return separator == -1 ? null : questionId.substring(separator + 1);
+    }
+
+    /**
+     * A dependency with its answer values already split
+     */
+    public static class Condition {
+
+        private final String question;
+        private final Set<String> answers;
+
+        Condition(String question, Set<String> answers) {
+            this.question = question;
+            this.answers = answers;
+        }
+
+        public String getQuestion() {
+            return question;
+        }
+
+        /**
+         * @param values trimmed option texts of the parent response
+         */
+        public boolean isMatch(@NonNull Set<String> values) {
+            for (String value : values) {
+                if (answers.contains(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
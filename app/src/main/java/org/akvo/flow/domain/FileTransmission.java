@@ -34,6 +34,7 @@ public class FileTransmission {
     private Date startDate;
     private Date endDate;
     private int status;
+    private String md5;
 
     public int getStatus() {
         return status;
@@ -90,4 +91,15 @@ public class FileTransmission {
     public void setFormId(String formId) {
         this.formId = formId;
     }
+
+    /**
+     * @return the hex encoded MD5 checksum cached for this file, or null if not computed yet
+     */
+    public String getMd5() {
+        return md5;
+    }
+
+    public void setMd5(String md5) {
+        this.md5 = md5;
+    }
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.domain;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * State of an S3 multipart upload: the upload id and the ETags of the parts confirmed so far,
+ * in part number order. It is persisted with the transmission, so an interrupted upload
+ * can be resumed from the last confirmed part. The size and modification time of the file
+ * are stored too, as the confirmed parts are only valid as long as the file does not change.
+ */
+public class MultipartUpload {
+
+    private static final String PARTS_SEPARATOR = ",";
+    private static final String FILE_VERSION_SEPARATOR = ":";
+
+    @Nullable
+    private String uploadId;
+
+    @Nullable
+    private String fileVersion;
+
+    private final List<String> partEtags;
+
+    public MultipartUpload() {
+        this(null, null, null);
+    }
+
+    public MultipartUpload(@Nullable String uploadId, @Nullable String serializedParts,
+            @Nullable String fileVersion) {
+        this.uploadId = uploadId;
+        this.fileVersion = fileVersion;
+        this.partEtags = new ArrayList<>();
+        if (uploadId != null && !TextUtils.isEmpty(serializedParts)) {
+            partEtags.addAll(Arrays.asList(serializedParts.split(PARTS_SEPARATOR)));
+        }
+    }
+
+    @Nullable
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    public boolean isStarted() {
+        return uploadId != null;
+    }
+
+    public void start(@NonNull String uploadId, @NonNull File file) {
+        this.uploadId = uploadId;
+        this.fileVersion = getFileVersion(file);
+        this.partEtags.clear();
+    }
+
+    /**
+     * @return true if the file has not changed since the upload was started, so its confirmed
+     * parts can be reused
+     */
+    public boolean isStartedFor(@NonNull File file) {
+        return uploadId != null && getFileVersion(file).equals(fileVersion);
+    }
+
+    /**
+     * Discard the upload. The next attempt will start a new one from the first part
+     */
+    public void reset() {
+        this.uploadId = null;
+        this.fileVersion = null;
+        this.partEtags.clear();
+    }
+
+    public void addPart(@NonNull String etag) {
+        partEtags.add(etag);
+    }
+
+    /**
+     * @return number of confirmed parts. The next part to upload is getPartCount() + 1
+     */
+    public int getPartCount() {
+        return partEtags.size();
+    }
+
+    @NonNull
+    public List<String> getPartEtags() {
+        return Collections.unmodifiableList(partEtags);
+    }
+
+    @Nullable
+    public String getSerializedParts() {
+        return partEtags.isEmpty() ? null : TextUtils.join(PARTS_SEPARATOR, partEtags);
+    }
+
+    @Nullable
+    public String getFileVersion() {
+        return fileVersion;
+    }
+
+    private static String getFileVersion(File file) {
+        return file.length() + FILE_VERSION_SEPARATOR + file.lastModified();
+    }
+}
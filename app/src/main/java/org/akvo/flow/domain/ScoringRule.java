@@ -64,6 +64,10 @@ public class ScoringRule {
         this.value = value;
     }
 
+    public String getText() {
+        return text;
+    }
+
     public String getMin() {
         return min;
     }
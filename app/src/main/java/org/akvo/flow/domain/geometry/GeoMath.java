@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.domain.geometry;
+
+/**
+ * Distances and projections used to measure geoshapes
+ */
+public class GeoMath {
+
+    private static final int EARTH_RADIUS = 6371000; // meters
+    private static final double LATITUDE_SIZE = Math.PI * EARTH_RADIUS / 180;
+
+    // WGS84 ellipsoid
+    private static final double A = 6378137.0;
+    private static final double B = 6356752.3142;
+    private static final double F = (A - B) / A;
+    private static final double A_SQ_MINUS_B_SQ_OVER_B_SQ = (A * A - B * B) / (B * B);
+    private static final int MAX_ITERATIONS = 20;
+
+    /**
+     * Distance in meters between two points, computed on the WGS84 ellipsoid with Vincenty's
+     * inverse formula, as android.location.Location.distanceBetween() does.
+     */
+    public static double distance(double lat1, double lon1, double lat2, double lon2) {
+        lat1 = Math.toRadians(lat1);
+        lat2 = Math.toRadians(lat2);
+        double l = Math.toRadians(lon2) - Math.toRadians(lon1);
+
+        double u1 = Math.atan((1.0 - F) * Math.tan(lat1));
+        double u2 = Math.atan((1.0 - F) * Math.tan(lat2));
+        double cosU1 = Math.cos(u1);
+        double cosU2 = Math.cos(u2);
+        double sinU1 = Math.sin(u1);
+        double sinU2 = Math.sin(u2);
+        double cosU1cosU2 = cosU1 * cosU2;
+        double sinU1sinU2 = sinU1 * sinU2;
+
+        double a = 0.0;
+        double sigma = 0.0;
+        double deltaSigma = 0.0;
+        double lambda = l;
+        for (int i = 0; i < MAX_ITERATIONS; i++) {
+            double lambdaOrig = lambda;
+            double cosLambda = Math.cos(lambda);
+            double sinLambda = Math.sin(lambda);
+            double t1 = cosU2 * sinLambda;
+            double t2 = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+            double sinSigma = Math.sqrt(t1 * t1 + t2 * t2);
+            double cosSigma = sinU1sinU2 + cosU1cosU2 * cosLambda;
+            sigma = Math.atan2(sinSigma, cosSigma);
+            double sinAlpha = sinSigma == 0 ? 0.0 : cosU1cosU2 * sinLambda / sinSigma;
+            double cosSqAlpha = 1.0 - sinAlpha * sinAlpha;
+            double cos2SM = cosSqAlpha == 0 ? 0.0 : cosSigma - 2.0 * sinU1sinU2 / cosSqAlpha;
+
+            double uSquared = cosSqAlpha * A_SQ_MINUS_B_SQ_OVER_B_SQ;
+            a = 1 + (uSquared / 16384.0) * (4096.0 + uSquared * (-768 + uSquared
+                    * (320.0 - 175.0 * uSquared)));
+            double b = (uSquared / 1024.0) * (256.0 + uSquared * (-128.0 + uSquared
+                    * (74.0 - 47.0 * uSquared)));
+            double c = (F / 16.0) * cosSqAlpha * (4.0 + F * (4.0 - 3.0 * cosSqAlpha));
+            double cos2SMSq = cos2SM * cos2SM;
+            deltaSigma = b * sinSigma * (cos2SM + (b / 4.0) * (cosSigma * (-1.0 + 2.0 * cos2SMSq)
+                    - (b / 6.0) * cos2SM * (-3.0 + 4.0 * sinSigma * sinSigma)
+                    * (-3.0 + 4.0 * cos2SMSq)));
+
+            lambda = l + (1.0 - c) * F * sinAlpha * (sigma + c * sinSigma * (cos2SM + c
+                    * cosSigma * (-1.0 + 2.0 * cos2SM * cos2SM)));
+            if (Math.abs((lambda - lambdaOrig) / lambda) < 1.0e-12) {
+                break;
+            }
+        }
+        return (float) (B * a * (sigma - deltaSigma));
+    }
+
+    /**
+     * Sinusoidal projection (equal-area): http://en.wikipedia.org/wiki/Sinusoidal_projection
+     *
+     * @return the projected x, in meters
+     */
+    public static double projectX(double latitude, double longitude) {
+        return longitude * LATITUDE_SIZE * Math.cos(Math.toRadians(latitude));
+    }
+
+    /**
+     * @return the projected y of the sinusoidal projection, in meters
+     */
+    public static double projectY(double latitude) {
+        return latitude * LATITUDE_SIZE;
+    }
+}
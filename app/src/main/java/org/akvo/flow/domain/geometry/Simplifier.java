@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.domain.geometry;
+
+/**
+ * Douglas-Peucker simplification of geoshapes, used to draw large shapes with fewer vertices
+ * and to drop the redundant vertices of walked boundaries before storing them.
+ */
+public class Simplifier {
+
+    /**
+     * @param tolerance maximum distance, in meters, between the shape and its simplified version
+     * @return the positions of the vertices to keep, in ascending order. The first vertex is
+     * always kept, and so is the last one of open shapes. Closed shapes keep at least three
+     * vertices.
+     */
+    public static int[] simplify(Vertices vertices, double tolerance) {
+        int size = vertices.size();
+        int minSize = vertices.isClosed() ? 3 : 2;
+        if (size <= minSize) {
+            return range(size);
+        }
+
+        // Closed shapes are simplified as a path ending back at the first vertex
+        int last = vertices.isClosed() ? size : size - 1;
+        boolean[] keep = new boolean[size];
+        keep[0] = true;
+        keep[last % size] = true;
+        int kept = last == size ? 1 : 2;
+
+        double sqTolerance = tolerance * tolerance;
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = last;
+        while (top > 0) {
+            int end = stack[--top];
+            int start = stack[--top];
+            int farthest = -1;
+            double maxSqDistance = sqTolerance;
+            for (int i = start + 1; i < end; i++) {
+                double sqDistance = getSqSegmentDistance(vertices, i, start, end % size);
+                if (sqDistance > maxSqDistance) {
+                    farthest = i;
+                    maxSqDistance = sqDistance;
+                }
+            }
+            if (farthest != -1) {
+                keep[farthest] = true;
+                kept++;
+                if (top + 4 > stack.length) {
+                    int[] grown = new int[stack.length * 2];
+                    System.arraycopy(stack, 0, grown, 0, top);
+                    stack = grown;
+                }
+                stack[top++] = start;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = end;
+            }
+        }
+
+        while (kept < minSize) {
+            // A closed shape smaller than the tolerance: keep its vertices farthest apart
+            int other = 0;
+            for (int i = 1; i < size; i++) {
+                if (keep[i]) {
+                    other = i;
+                }
+            }
+            int farthest = -1;
+            double maxSqDistance = -1;
+            for (int i = 1; i < size; i++) {
+                double sqDistance = getSqSegmentDistance(vertices, i, 0, other);
+                if (!keep[i] && sqDistance > maxSqDistance) {
+                    farthest = i;
+                    maxSqDistance = sqDistance;
+                }
+            }
+            keep[farthest] = true;
+            kept++;
+        }
+
+        int[] indexes = new int[kept];
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            if (keep[i]) {
+                indexes[j++] = i;
+            }
+        }
+        return indexes;
+    }
+
+    private static int[] range(int size) {
+        int[] indexes = new int[size];
+        for (int i = 0; i < size; i++) {
+            indexes[i] = i;
+        }
+        return indexes;
+    }
+
+    /**
+     * @return the square of the distance from the vertex p to the segment between a and b
+     */
+    private static double getSqSegmentDistance(Vertices vertices, int p, int a, int b) {
+        double x = vertices.getX(a);
+        double y = vertices.getY(a);
+        double dx = vertices.getX(b) - x;
+        double dy = vertices.getY(b) - y;
+
+        if (dx != 0 || dy != 0) {
+            double t = ((vertices.getX(p) - x) * dx + (vertices.getY(p) - y) * dy)
+                    / (dx * dx + dy * dy);
+            if (t > 1) {
+                x = vertices.getX(b);
+                y = vertices.getY(b);
+            } else if (t > 0) {
+                x += dx * t;
+                y += dy * t;
+            }
+        }
+
+        dx = vertices.getX(p) - x;
+        dy = vertices.getY(p) - y;
+        return dx * dx + dy * dy;
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.domain.geometry;
+
+import java.util.Arrays;
+
+/**
+ * Vertices of a geoshape, stored as primitive coordinate arrays. The length, and the area of
+ * closed shapes, are kept up to date as vertices are added, moved or removed, updating only
+ * the edges next to the changed vertex.
+ * <p>
+ * Closed shapes include the edge from the last vertex back to the first one, once they have
+ * at least three vertices. Not thread safe.
+ */
+public class Vertices {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final boolean closed;
+
+    private double[] latitudes;
+    private double[] longitudes;
+
+    // Sinusoidal projection, relative to the origin to keep the area sums precise
+    private double[] xs;
+    private double[] ys;
+    private double originX;
+    private double originY;
+
+    private int size;
+
+    private double length;
+    private double doubleArea;
+
+    public Vertices(boolean closed) {
+        this(closed, DEFAULT_CAPACITY);
+    }
+
+    public Vertices(boolean closed, int capacity) {
+        this.closed = closed;
+        capacity = Math.max(1, capacity);
+        latitudes = new double[capacity];
+        longitudes = new double[capacity];
+        xs = new double[capacity];
+        ys = new double[capacity];
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public double getLatitude(int index) {
+        checkIndex(index);
+        return latitudes[index];
+    }
+
+    public double getLongitude(int index) {
+        checkIndex(index);
+        return longitudes[index];
+    }
+
+    double getX(int index) {
+        return xs[index];
+    }
+
+    double getY(int index) {
+        return ys[index];
+    }
+
+    /**
+     * @return the length in meters, including the closing edge of closed shapes
+     */
+    public double getLength() {
+        return length;
+    }
+
+    /**
+     * @return the area in square meters, or 0 if the shape is not closed
+     */
+    public double getArea() {
+        return size < 3 ? 0 : Math.abs(doubleArea) / 2;
+    }
+
+    public void add(double latitude, double longitude) {
+        add(size, latitude, longitude);
+    }
+
+    /**
+     * Insert a vertex at the given position, shifting the following ones
+     */
+    public void add(int index, double latitude, double longitude) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        if (size == latitudes.length) {
+            grow();
+        }
+        if (size == 0) {
+            originX = GeoMath.projectX(latitude, longitude);
+            originY = GeoMath.projectY(latitude);
+        }
+
+        boolean incremental = size >= 3;
+        if (incremental) {
+            // The new vertex splits the edge between its neighbours
+            removeEdge(previous(index, size), index == size ? next(size - 1, size) : index);
+        }
+        shift(index, index + 1, size - index);
+        size++;
+        put(index, latitude, longitude);
+        if (incremental) {
+            addEdge(previous(index, size), index);
+            addEdge(index, next(index, size));
+        } else {
+            recompute();
+        }
+    }
+
+    /**
+     * Move the vertex at the given position
+     */
+    public void set(int index, double latitude, double longitude) {
+        checkIndex(index);
+        boolean incremental = size > 3;
+        if (incremental) {
+            removeEdge(previous(index, size), index);
+            removeEdge(index, next(index, size));
+        }
+        put(index, latitude, longitude);
+        if (incremental) {
+            addEdge(previous(index, size), index);
+            addEdge(index, next(index, size));
+        } else {
+            recompute();
+        }
+    }
+
+    public void remove(int index) {
+        checkIndex(index);
+        boolean incremental = size > 3;
+        if (incremental) {
+            int previous = previous(index, size);
+            int next = next(index, size);
+            removeEdge(previous, index);
+            removeEdge(index, next);
+            addEdge(previous, next);
+        }
+        shift(index + 1, index, size - index - 1);
+        size--;
+        if (!incremental) {
+            recompute();
+        }
+    }
+
+    public void clear() {
+        size = 0;
+        length = 0;
+        doubleArea = 0;
+    }
+
+    /**
+     * @return a copy of the vertices at the given positions, in ascending order
+     */
+    public Vertices copy(int[] indexes) {
+        Vertices copy = new Vertices(closed, indexes.length);
+        for (int index : indexes) {
+            copy.add(latitudes[index], longitudes[index]);
+        }
+        return copy;
+    }
+
+    public Vertices copy() {
+        Vertices copy = new Vertices(closed, size);
+        copy.latitudes = Arrays.copyOf(latitudes, Math.max(1, size));
+        copy.longitudes = Arrays.copyOf(longitudes, Math.max(1, size));
+        copy.xs = Arrays.copyOf(xs, Math.max(1, size));
+        copy.ys = Arrays.copyOf(ys, Math.max(1, size));
+        copy.originX = originX;
+        copy.originY = originY;
+        copy.size = size;
+        copy.length = length;
+        copy.doubleArea = doubleArea;
+        return copy;
+    }
+
+    private void put(int index, double latitude, double longitude) {
+        latitudes[index] = latitude;
+        longitudes[index] = longitude;
+        xs[index] = GeoMath.projectX(latitude, longitude) - originX;
+        ys[index] = GeoMath.projectY(latitude) - originY;
+    }
+
+    private void shift(int from, int to, int count) {
+        System.arraycopy(latitudes, from, latitudes, to, count);
+        System.arraycopy(longitudes, from, longitudes, to, count);
+        System.arraycopy(xs, from, xs, to, count);
+        System.arraycopy(ys, from, ys, to, count);
+    }
+
+    private void grow() {
+        int capacity = latitudes.length * 2;
+        latitudes = Arrays.copyOf(latitudes, capacity);
+        longitudes = Arrays.copyOf(longitudes, capacity);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+    }
+
+    /**
+     * Used for small shapes, where the closing edge comes and goes
+     */
+    private void recompute() {
+        length = 0;
+        doubleArea = 0;
+        for (int i = 1; i < size; i++) {
+            addEdge(i - 1, i);
+        }
+        if (closed && size > 2) {
+            addEdge(size - 1, 0);
+        }
+    }
+
+    /**
+     * @return the vertex before the given one, -1 if none
+     */
+    private int previous(int index, int size) {
+        if (index > 0) {
+            return index - 1;
+        }
+        return closed ? size - 1 : -1;
+    }
+
+    /**
+     * @return the vertex after the given one, -1 if none
+     */
+    private int next(int index, int size) {
+        if (index < size - 1) {
+            return index + 1;
+        }
+        return closed ? 0 : -1;
+    }
+
+    private void addEdge(int from, int to) {
+        edge(from, to, 1);
+    }
+
+    private void removeEdge(int from, int to) {
+        edge(from, to, -1);
+    }
+
+    private void edge(int from, int to, int sign) {
+        if (from < 0 || to < 0 || from == to) {
+            return;
+        }
+        length += sign * GeoMath.distance(latitudes[from], longitudes[from], latitudes[to],
+                longitudes[to]);
+        if (closed) {
+            doubleArea += sign * (xs[from] * ys[to] - xs[to] * ys[from]);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+}
@@ -37,6 +37,7 @@ public interface SurveyListener {
     Map<String, QuestionResponse> getResponses();
     void deleteResponse(String questionId);
     void deleteResponse(String questionId, String iteration);
+    void setIncludeFlag(String questionId, boolean includeFlag);
     QuestionView getQuestionView(String questionId);
     String getDatapointId();
     String getFormId();
@@ -26,12 +26,17 @@ import android.location.LocationManager;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
+
+import org.akvo.flow.util.LocationFilter;
 
 import java.util.Timer;
 import java.util.TimerTask;
 
 /**
  * TimedLocationListener is a reusable helper class to get GPS locations.
+ * Fixes are averaged with a {@link LocationFilter}, and updates stop as soon as the averaged
+ * location is stable within the target accuracy.
  * If geolocation is unknown after the LOCATION_TIMEOUT_IN_MS milliseconds, the caller will receive a
  * time out event.
  */
@@ -40,16 +45,27 @@ public class TimedLocationListener implements LocationListener {
     public static final float ACCURACY_DEFAULT = 20f; // 20 meters
     private static final long LOCATION_TIMEOUT_IN_MS = 1000 * 60; // 1 minute
     private static final float ACCURACY_UNRELIABLE = 0f;
+    private static final long MIN_TIME_IN_MS = 1000; // 1 fix per second is enough to average
 
     private final Handler mHandler = new Handler();
     private final Listener mListener;
     private final LocationManager mLocationManager;
     private final boolean mAllowMockupLocations;
+    private final LocationFilter mFilter;
 
     private Timer mTimer;
     private boolean mListeningLocation;
 
     public TimedLocationListener(Context context, Listener listener, boolean allowMockupLocations) {
+        this(context, listener, allowMockupLocations, ACCURACY_DEFAULT);
+    }
+
+    /**
+     * @param targetAccuracy meters. Updates stop once the averaged location is within it.
+     */
+    public TimedLocationListener(Context context, Listener listener, boolean allowMockupLocations,
+            float targetAccuracy) {
+        mFilter = new LocationFilter(targetAccuracy);
         mLocationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
         mListener = listener;
         mListeningLocation = false;
@@ -62,7 +78,9 @@ public class TimedLocationListener implements LocationListener {
             return;
         }
 
-        mLocationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, 0, 0, this);
+        mFilter.reset();
+        mLocationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, MIN_TIME_IN_MS, 0,
+                this);
         mListeningLocation = true;
 
         // Ensure no pending tasks are running
@@ -101,9 +119,24 @@ public class TimedLocationListener implements LocationListener {
 
     @Override
     public void onLocationChanged(Location location) {
-        if (isValid(location) && mListeningLocation) {
-            mListener.onLocationReady(location.getLatitude(), location.getLongitude(),
-                    location.getAltitude(), location.getAccuracy());
+        if (!isValid(location) || !mListeningLocation) {
+            return;
+        }
+        // Location time comes from the GPS clock, which may jump. Use the time of arrival.
+        boolean updated = mFilter.add(SystemClock.elapsedRealtime(), location.getLatitude(),
+                location.getLongitude(), location.getAltitude(), location.getAccuracy(),
+                location.hasSpeed() ? location.getSpeed() : Float.NaN);
+        LocationFilter.Estimate estimate = mFilter.getEstimate();
+        if (!updated || estimate == null) {
+            return;
+        }
+        if (mFilter.isStable()) {
+            stop();
+            mListener.onLocationStable(estimate.getLatitude(), estimate.getLongitude(),
+                    estimate.getAltitude(), estimate.getAccuracy());
+        } else {
+            mListener.onLocationReady(estimate.getLatitude(), estimate.getLongitude(),
+                    estimate.getAltitude(), estimate.getAccuracy());
         }
     }
 
@@ -138,8 +171,16 @@ public class TimedLocationListener implements LocationListener {
 
     public interface Listener {
 
+        /**
+         * Averaged location so far, still being refined
+         */
         void onLocationReady(double latitude, double longitude, double altitude, float accuracy);
 
+        /**
+         * Final averaged location, within the target accuracy. Updates are already stopped.
+         */
+        void onLocationStable(double latitude, double longitude, double altitude, float accuracy);
+
         void onTimeout();
 
         void onGPSDisabled();
@@ -33,7 +33,10 @@ import org.akvo.flow.domain.repository.UserRepository;
 import org.akvo.flow.injector.module.ApplicationModule;
 import org.akvo.flow.injector.module.ViewModule;
 import org.akvo.flow.presentation.BaseActivity;
+import org.akvo.flow.service.DataSyncService;
 import org.akvo.flow.service.FileChangeTrackingService;
+import org.akvo.flow.util.image.MediaProcessor;
+import org.akvo.flow.util.image.ThumbnailCache;
 import org.akvo.flow.util.logging.LoggingHelper;
 
 import javax.inject.Singleton;
@@ -66,5 +69,11 @@ public interface ApplicationComponent {
 
     UserRepository userRepository();
 
+    MediaProcessor mediaProcessor();
+
+    ThumbnailCache thumbnailCache();
+
     void inject(FileChangeTrackingService fileChangeTrackingService);
+
+    void inject(DataSyncService dataSyncService);
 }
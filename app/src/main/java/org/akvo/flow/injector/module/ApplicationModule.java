@@ -33,6 +33,7 @@ import org.akvo.flow.data.executor.JobExecutor;
 import org.akvo.flow.data.migration.FlowMigrationListener;
 import org.akvo.flow.data.migration.languages.MigrationLanguageMapper;
 import org.akvo.flow.data.net.Encoder;
+import org.akvo.flow.data.net.RequestTimingInterceptor;
 import org.akvo.flow.data.net.RestServiceFactory;
 import org.akvo.flow.data.preference.Prefs;
 import org.akvo.flow.data.repository.FileDataRepository;
@@ -55,15 +56,19 @@ import org.akvo.flow.util.logging.RavenEventBuilderHelper;
 import org.akvo.flow.util.logging.ReleaseLoggingHelper;
 import org.akvo.flow.util.logging.TagsFactory;
 
+import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.Locale;
 import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Singleton;
 
 import dagger.Module;
 import dagger.Provides;
 import io.reactivex.schedulers.Schedulers;
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
 import okhttp3.logging.HttpLoggingInterceptor;
 
 @Module
@@ -73,6 +78,8 @@ public class ApplicationModule {
     public static final String TIMEZONE = "GMT";
     private static final String PREFS_NAME = "flow_prefs";
     private static final int PREFS_MODE = Context.MODE_PRIVATE;
+    private static final String HTTP_CACHE_DIR = "http";
+    private static final long HTTP_CACHE_SIZE = 10 * 1024 * 1024;
 
     private final FlowApp application;
 
@@ -143,17 +150,43 @@ public class ApplicationModule {
         return db;
     }
 
+    /**
+     * Single HTTP client for the whole app: the Retrofit services and the legacy
+     * HttpURLConnection based APIs all share its connection pool. HTTP/2 is negotiated
+     * with the servers which support it.
+     */
     @Provides
     @Singleton
-    RestServiceFactory provideServiceFactory() {
+    OkHttpClient provideHttpClient(RequestTimingInterceptor timingInterceptor) {
+        return new OkHttpClient.Builder()
+                .connectTimeout(RestServiceFactory.CONNECTION_TIMEOUT, TimeUnit.SECONDS)
+                .readTimeout(RestServiceFactory.NO_TIMEOUT, TimeUnit.SECONDS)
+                .writeTimeout(RestServiceFactory.NO_TIMEOUT, TimeUnit.SECONDS)
+                .addNetworkInterceptor(timingInterceptor)
+                .build();
+    }
+
+    /**
+     * The response cache is not safe to use from several Cache instances on the same directory,
+     * so it is opened once for the whole app.
+     */
+    @Provides
+    @Singleton
+    Cache provideHttpCache() {
+        return new Cache(new File(application.getCacheDir(), HTTP_CACHE_DIR), HTTP_CACHE_SIZE);
+    }
+
+    @Provides
+    @Singleton
+    RestServiceFactory provideServiceFactory(OkHttpClient httpClient, Cache cache) {
         HttpLoggingInterceptor loggingInterceptor = new HttpLoggingInterceptor();
         if (BuildConfig.DEBUG) {
             loggingInterceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
         }
         SimpleDateFormat simpleDateFormat = new SimpleDateFormat(DATA_PATTERN, Locale.US);
         simpleDateFormat.setTimeZone(TimeZone.getTimeZone(TIMEZONE));
-        return new RestServiceFactory(loggingInterceptor, simpleDateFormat, new Encoder(),
-                BuildConfig.API_KEY, BuildConfig.SERVER_BASE);
+        return new RestServiceFactory(httpClient, cache, loggingInterceptor, simpleDateFormat,
+                new Encoder(), BuildConfig.API_KEY, BuildConfig.SERVER_BASE);
     }
 
     @Provides
@@ -25,6 +25,8 @@ import org.akvo.flow.domain.interactor.GetUserSettings;
 import org.akvo.flow.domain.interactor.SaveAppLanguage;
 import org.akvo.flow.domain.interactor.SaveEnableMobileData;
 import org.akvo.flow.domain.interactor.GetSavedDataPoints;
+import org.akvo.flow.domain.interactor.GetSavedDataPointsCount;
+import org.akvo.flow.domain.interactor.GetSavedDataPointsPage;
 import org.akvo.flow.domain.interactor.SaveImage;
 import org.akvo.flow.domain.interactor.SaveImageSize;
 import org.akvo.flow.domain.interactor.SaveKeepScreenOn;
@@ -50,6 +52,19 @@ public class ViewModule {
         return getSavedDataPoints;
     }
 
+    @Provides
+    @Named("getSavedDataPointsPage")
+    UseCase provideGetSavedDataPointsPageUseCase(GetSavedDataPointsPage getSavedDataPointsPage) {
+        return getSavedDataPointsPage;
+    }
+
+    @Provides
+    @Named("getSavedDataPointsCount")
+    UseCase provideGetSavedDataPointsCountUseCase(
+            GetSavedDataPointsCount getSavedDataPointsCount) {
+        return getSavedDataPointsCount;
+    }
+
     @Provides
     @Named("allowedToConnect")
     UseCase provideAllowedToConnect(AllowedToConnect allowedToConnect) {
@@ -41,7 +41,6 @@ import org.akvo.flow.util.GeoUtil;
 import org.akvo.flow.util.PlatformUtil;
 import org.ocpsoft.prettytime.PrettyTime;
 
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -51,7 +50,7 @@ class DataPointListAdapter extends BaseAdapter {
     private Double longitude;
     private final LayoutInflater inflater;
     private final String dataLabel;
-    private final List<ListDataPoint> dataPoints;
+    private DataPointPages dataPoints;
 
     DataPointListAdapter(Context context, @Nullable Double latitude,
             @Nullable Double longitude, SurveyGroup surveyGroup) {
@@ -59,7 +58,7 @@ class DataPointListAdapter extends BaseAdapter {
         this.longitude = longitude;
         this.inflater = LayoutInflater.from(context);
         this.dataLabel = context.getString(getDateLabel(surveyGroup));
-        dataPoints = new ArrayList<>();
+        dataPoints = new DataPointPages();
     }
 
     @StringRes
@@ -73,13 +72,13 @@ class DataPointListAdapter extends BaseAdapter {
 
     @Override
     public int getCount() {
-        return dataPoints.size();
+        return dataPoints.getCount();
     }
 
     @Nullable
     @Override
     public ListDataPoint getItem(int position) {
-        return dataPoints.get(position);
+        return dataPoints.getItem(position);
     }
 
     @Override
@@ -103,8 +102,23 @@ class DataPointListAdapter extends BaseAdapter {
         TextView statusView = (TextView) view.findViewById(R.id.status);
         ImageView statusImage = (ImageView) view.findViewById(R.id.status_img);
 
-        final ListDataPoint dataPoint = getItem(position);
+        // Alternate background
         Context context = parent.getContext();
+        int attr = position % 2 == 0 ? R.attr.listitem_bg1 : R.attr.listitem_bg2;
+        final int res = PlatformUtil.getResource(context, attr);
+        view.setBackgroundResource(res);
+
+        final ListDataPoint dataPoint = getItem(position);
+        if (dataPoint == null) {
+            // Page not loaded yet, keep the row empty
+            nameView.setText(null);
+            idView.setText(null);
+            displayDistanceText(distanceView, null);
+            displayDateText(dateView, null);
+            statusImage.setImageDrawable(null);
+            statusView.setText(null);
+            return view;
+        }
         int status = dataPoint.getStatus();
         nameView.setText(dataPoint.getDisplayName());
         idView.setText(dataPoint.getId());
@@ -136,11 +150,6 @@ class DataPointListAdapter extends BaseAdapter {
 
         statusImage.setImageResource(statusRes);
         statusView.setText(statusText);
-
-        // Alternate background
-        int attr = position % 2 == 0 ? R.attr.listitem_bg1 : R.attr.listitem_bg2;
-        final int res = PlatformUtil.getResource(context, attr);
-        view.setBackgroundResource(res);
         return view;
     }
 
@@ -180,8 +189,11 @@ class DataPointListAdapter extends BaseAdapter {
     }
 
     void setDataPoints(List<ListDataPoint> dataPoints) {
-        this.dataPoints.clear();
-        this.dataPoints.addAll(dataPoints);
+        setDataPoints(DataPointPages.of(dataPoints));
+    }
+
+    void setDataPoints(DataPointPages dataPoints) {
+        this.dataPoints = dataPoints;
         notifyDataSetChanged();
     }
 
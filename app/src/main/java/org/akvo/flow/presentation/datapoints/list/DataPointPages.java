@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.presentation.datapoints.list;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.akvo.flow.domain.entity.DataPointPageKey;
+import org.akvo.flow.presentation.datapoints.list.entity.ListDataPoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Data point list split in consecutive pages. Each page is bounded by the position of the
+ * last item of the previous page and the position of its own last item, so it can be loaded
+ * again on its own. Only the pages around the visible items hold their data points, the
+ * others just remember their bounds and size, so the list keeps its length and scroll position.
+ */
+class DataPointPages {
+
+    static final int PAGE_SIZE = 50;
+
+    /**
+     * Pages grow when data points are added within their bounds. Reloads read up to this many
+     * items, and a page which does not fit is split.
+     */
+    static final int MAX_PAGE_SIZE = 2 * PAGE_SIZE;
+
+    /**
+     * Number of pages kept loaded before and after the visible ones
+     */
+    private static final int LOADED_PAGES_MARGIN = 1;
+
+    private final List<Page> pages = new ArrayList<>();
+    private boolean complete;
+
+    /**
+     * Wraps an already loaded list, such as search results, in a single page
+     */
+    static DataPointPages of(@NonNull List<ListDataPoint> dataPoints) {
+        DataPointPages dataPointPages = new DataPointPages();
+        if (!dataPoints.isEmpty()) {
+            dataPointPages.addPage(null, null, dataPoints);
+        }
+        dataPointPages.setComplete(true);
+        return dataPointPages;
+    }
+
+    int getCount() {
+        int count = 0;
+        for (Page page : pages) {
+            count += page.size;
+        }
+        return count;
+    }
+
+    /**
+     * @return the data point at the given position, or null if its page is not loaded
+     */
+    @Nullable
+    ListDataPoint getItem(int position) {
+        int offset = 0;
+        for (Page page : pages) {
+            if (position < offset + page.size) {
+                return page.items == null ? null : page.items.get(position - offset);
+            }
+            offset += page.size;
+        }
+        return null;
+    }
+
+    /**
+     * @return the index of the page containing the given position, or of the last page if
+     * the position is out of bounds
+     */
+    int indexOfPage(int position) {
+        int offset = 0;
+        for (int i = 0; i < pages.size(); i++) {
+            offset += pages.get(i).size;
+            if (position < offset) {
+                return i;
+            }
+        }
+        return pages.size() - 1;
+    }
+
+    @NonNull
+    List<Page> getPages() {
+        return Collections.unmodifiableList(pages);
+    }
+
+    @Nullable
+    Page getLastPage() {
+        return pages.isEmpty() ? null : pages.get(pages.size() - 1);
+    }
+
+    boolean contains(@NonNull Page page) {
+        return pages.contains(page);
+    }
+
+    @NonNull
+    Page addPage(@Nullable DataPointPageKey start, @Nullable DataPointPageKey end,
+            @NonNull List<ListDataPoint> items) {
+        Page page = new Page(start, end);
+        page.setItems(items);
+        pages.add(page);
+        return page;
+    }
+
+    /**
+     * Sets the reloaded data points of a page. If they were cut at MAX_PAGE_SIZE before the end
+     * of the page, the page is cut at the last loaded item, and followed by an empty page with
+     * the rest of its bounds.
+     *
+     * @param lastKey position of the last loaded item
+     * @return the page holding the rest of the items, which still has to be loaded, or null if
+     * the page was not split
+     */
+    @Nullable
+    Page setItems(@NonNull Page page, @Nullable DataPointPageKey lastKey,
+            @NonNull List<ListDataPoint> items) {
+        int index = pages.indexOf(page);
+        if (index < 0 || items.size() < MAX_PAGE_SIZE || lastKey == null
+                || lastKey.equals(page.getEnd())) {
+            page.setItems(items);
+            return null;
+        }
+        Page rest = new Page(lastKey, page.getEnd());
+        page.end = lastKey;
+        page.setItems(items);
+        pages.add(index + 1, rest);
+        return rest;
+    }
+
+    /**
+     * Release the data points of the pages away from the visible ones
+     */
+    void unloadOutside(int firstVisiblePage, int lastVisiblePage) {
+        for (int i = 0; i < pages.size(); i++) {
+            if (i < firstVisiblePage - LOADED_PAGES_MARGIN
+                    || i > lastVisiblePage + LOADED_PAGES_MARGIN) {
+                pages.get(i).items = null;
+            }
+        }
+    }
+
+    /**
+     * @return true if there are no more data points after the last page
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+    void setComplete(boolean complete) {
+        this.complete = complete;
+    }
+
+    static class Page {
+
+        /**
+         * Position of the last item of the previous page, null for the first page
+         */
+        @Nullable
+        private final DataPointPageKey start;
+
+        /**
+         * Position of the last item of this page, included
+         */
+        @Nullable
+        private DataPointPageKey end;
+
+        private int size;
+
+        @Nullable
+        private List<ListDataPoint> items;
+
+        private boolean loading;
+        private boolean stale;
+
+        Page(@Nullable DataPointPageKey start, @Nullable DataPointPageKey end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Nullable
+        DataPointPageKey getStart() {
+            return start;
+        }
+
+        @Nullable
+        DataPointPageKey getEnd() {
+            return end;
+        }
+
+        boolean isLoaded() {
+            return items != null;
+        }
+
+        void setItems(@NonNull List<ListDataPoint> items) {
+            this.items = items;
+            this.size = items.size();
+        }
+
+        boolean isLoading() {
+            return loading;
+        }
+
+        void setLoading(boolean loading) {
+            this.loading = loading;
+        }
+
+        /**
+         * A page which changed while it was being loaded has to be loaded again
+         */
+        boolean isStale() {
+            return stale;
+        }
+
+        void setStale(boolean stale) {
+            this.stale = stale;
+        }
+    }
+}
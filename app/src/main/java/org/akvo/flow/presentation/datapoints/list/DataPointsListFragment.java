@@ -47,6 +47,7 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemClickListener;
 import android.widget.ImageView;
@@ -160,6 +161,20 @@ public class DataPointsListFragment extends Fragment implements LocationListener
         mAdapter = new DataPointListAdapter(getActivity(), mLatitude, mLongitude, surveyGroup);
         listView.setAdapter(mAdapter);
         listView.setOnItemClickListener(this);
+        listView.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+                // EMPTY
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
+                    int totalItemCount) {
+                if (presenter != null) {
+                    presenter.onScrolled(firstVisibleItem, visibleItemCount);
+                }
+            }
+        });
         progressBar = (ProgressBar) view.findViewById(R.id.progress);
         updateProgressDrawable();
         initializeInjector();
@@ -402,6 +417,13 @@ public class DataPointsListFragment extends Fragment implements LocationListener
         }
     }
 
+    @Override
+    public void displayPages(DataPointPages pages) {
+        if (mAdapter != null) {
+            mAdapter.setDataPoints(pages);
+        }
+    }
+
     @Override
     public void showErrorMissingLocation() {
         //TODO: should we prompt the user to enable location?
@@ -24,11 +24,14 @@ import android.support.annotation.NonNull;
 
 import org.akvo.flow.domain.SurveyGroup;
 import org.akvo.flow.domain.entity.DataPoint;
+import org.akvo.flow.domain.entity.DataPointPage;
 import org.akvo.flow.domain.entity.SyncResult;
 import org.akvo.flow.domain.interactor.DefaultFlowableObserver;
 import org.akvo.flow.domain.interactor.DefaultObserver;
 import org.akvo.flow.domain.interactor.ErrorComposable;
 import org.akvo.flow.domain.interactor.GetSavedDataPoints;
+import org.akvo.flow.domain.interactor.GetSavedDataPointsCount;
+import org.akvo.flow.domain.interactor.GetSavedDataPointsPage;
 import org.akvo.flow.domain.interactor.SyncDataPoints;
 import org.akvo.flow.domain.interactor.UseCase;
 import org.akvo.flow.presentation.Presenter;
@@ -51,6 +54,8 @@ import static org.akvo.flow.domain.entity.SyncResult.ResultCode.SUCCESS;
 public class DataPointsListPresenter implements Presenter {
 
     private final UseCase getSavedDataPoints;
+    private final UseCase getSavedDataPointsPage;
+    private final UseCase getSavedDataPointsCount;
     private final SyncDataPoints syncDataPoints;
     private final UseCase allowedToConnect;
     private final ListDataPointMapper mapper;
@@ -61,11 +66,24 @@ public class DataPointsListPresenter implements Presenter {
     private Double latitude;
     private Double longitude;
 
+    /**
+     * Pages of the displayed data points, and the parameters they were loaded with. Results
+     * of the page loads started before the pages were replaced are discarded.
+     */
+    private DataPointPages pages;
+    private Map<String, Object> pageParams;
+    private int pagesGeneration;
+    private boolean loadingNextPage;
+
     @Inject
     DataPointsListPresenter(@Named("getSavedDataPoints") UseCase getSavedDataPoints,
+            @Named("getSavedDataPointsPage") UseCase getSavedDataPointsPage,
+            @Named("getSavedDataPointsCount") UseCase getSavedDataPointsCount,
             ListDataPointMapper mapper, SyncDataPoints syncDataPoints,
             @Named("allowedToConnect") UseCase allowedToConnect) {
         this.getSavedDataPoints = getSavedDataPoints;
+        this.getSavedDataPointsPage = getSavedDataPointsPage;
+        this.getSavedDataPointsCount = getSavedDataPointsCount;
         this.mapper = mapper;
         this.syncDataPoints = syncDataPoints;
         this.allowedToConnect = allowedToConnect;
@@ -81,39 +99,202 @@ public class DataPointsListPresenter implements Presenter {
         view.displayMenu(monitored);
     }
 
+    /**
+     * Loads the first page of data points, or reloads the pages already displayed if the survey
+     * and sort order did not change, so the list keeps its scroll position
+     */
     void loadDataPoints() {
         getSavedDataPoints.dispose();
         if (surveyGroup != null) {
-            Map<String, Object> params = new HashMap<>(8);
-            params.put(GetSavedDataPoints.KEY_SURVEY_GROUP_ID, surveyGroup.getId());
-            params.put(GetSavedDataPoints.KEY_ORDER_BY, orderBy);
-            params.put(GetSavedDataPoints.KEY_LATITUDE, latitude);
-            params.put(GetSavedDataPoints.KEY_LONGITUDE, longitude);
-            getSavedDataPoints.execute(new DefaultObserver<List<DataPoint>>() {
+            Map<String, Object> params = getPageParams();
+            if (params.equals(pageParams)) {
+                refreshPages();
+            } else {
+                resetPages(params);
+            }
+        } else {
+            noSurveySelected();
+        }
+    }
 
-                @Override
-                public void onError(Throwable e) {
+    @NonNull
+    private Map<String, Object> getPageParams() {
+        Map<String, Object> params = new HashMap<>(8);
+        params.put(GetSavedDataPointsPage.KEY_SURVEY_GROUP_ID, surveyGroup.getId());
+        params.put(GetSavedDataPointsPage.KEY_ORDER_BY, orderBy);
+        if (orderBy == ConstantUtil.ORDER_BY_DISTANCE) {
+            params.put(GetSavedDataPointsPage.KEY_LATITUDE, latitude);
+            params.put(GetSavedDataPointsPage.KEY_LONGITUDE, longitude);
+        }
+        return params;
+    }
+
+    /**
+     * Starts over with an empty list. Pages are then loaded, and reloaded, every time the
+     * saved data points change.
+     */
+    private void resetPages(@NonNull Map<String, Object> params) {
+        clearPages();
+        pageParams = params;
+        pages = new DataPointPages();
+        view.displayPages(pages);
+
+        Map<String, Object> countParams = new HashMap<>(2);
+        countParams.put(GetSavedDataPointsCount.KEY_SURVEY_GROUP_ID, surveyGroup.getId());
+        final int generation = pagesGeneration;
+        getSavedDataPointsCount.execute(new DefaultObserver<Integer>() {
+
+            @Override
+            public void onError(Throwable e) {
+                Timber.e(e, "Error watching saved datapoints");
+            }
+
+            @Override
+            public void onNext(Integer count) {
+                if (generation == pagesGeneration) {
+                    refreshPages();
+                }
+            }
+        }, countParams);
+    }
+
+    private void clearPages() {
+        getSavedDataPointsPage.dispose();
+        getSavedDataPointsCount.dispose();
+        pagesGeneration++;
+        pages = null;
+        pageParams = null;
+        loadingNextPage = false;
+    }
+
+    /**
+     * Reloads the pages holding data points, and checks for new ones after the last page
+     */
+    private void refreshPages() {
+        for (DataPointPages.Page page : pages.getPages()) {
+            if (page.isLoaded()) {
+                loadPage(page);
+            }
+        }
+        pages.setComplete(false);
+        loadNextPage();
+    }
+
+    /**
+     * Loads the pages around the visible items and releases the others. The next page is loaded
+     * before the end of the list is reached.
+     */
+    void onScrolled(int firstVisibleItem, int visibleItemCount) {
+        if (pages == null) {
+            return;
+        }
+        int count = pages.getCount();
+        if (count > 0) {
+            int firstPage = pages.indexOfPage(firstVisibleItem);
+            int lastPage = pages.indexOfPage(firstVisibleItem + visibleItemCount - 1);
+            pages.unloadOutside(firstPage, lastPage);
+            List<DataPointPages.Page> pageList = pages.getPages();
+            int last = Math.min(pageList.size() - 1, lastPage + 1);
+            for (int i = Math.max(0, firstPage - 1); i <= last; i++) {
+                DataPointPages.Page page = pageList.get(i);
+                if (!page.isLoaded()) {
+                    loadPage(page);
+                }
+            }
+        }
+        if (firstVisibleItem + visibleItemCount >= count - DataPointPages.PAGE_SIZE / 2) {
+            loadNextPage();
+        }
+    }
+
+    private void loadNextPage() {
+        if (loadingNextPage || pages.isComplete()) {
+            return;
+        }
+        loadingNextPage = true;
+        final DataPointPages.Page lastPage = pages.getLastPage();
+        Map<String, Object> params = new HashMap<>(pageParams);
+        params.put(GetSavedDataPointsPage.KEY_AFTER, lastPage == null ? null : lastPage.getEnd());
+        params.put(GetSavedDataPointsPage.KEY_LIMIT, DataPointPages.PAGE_SIZE);
+        final int generation = pagesGeneration;
+        getSavedDataPointsPage.execute(new DefaultObserver<DataPointPage>() {
+
+            @Override
+            public void onError(Throwable e) {
+                if (generation == pagesGeneration) {
                     Timber.e(e, "Error loading saved datapoints");
-                    view.displayData(Collections.EMPTY_LIST);
-                    view.showNoDataPoints(surveyGroup.isMonitored());
+                    loadingNextPage = false;
                 }
+            }
 
-                @Override
-                public void onNext(List<DataPoint> dataPoints) {
-                    List<ListDataPoint> mapDataPoints = mapper.transform(dataPoints);
-                    view.displayData(mapDataPoints);
-                    if (mapDataPoints.isEmpty()) {
-                        view.showNoDataPoints(surveyGroup.isMonitored());
-                    }
+            @Override
+            public void onNext(DataPointPage page) {
+                if (generation != pagesGeneration) {
+                    return;
                 }
-            }, params);
-        } else {
-            noSurveySelected();
+                loadingNextPage = false;
+                List<ListDataPoint> items = mapper.transform(page.getDataPoints());
+                if (!items.isEmpty()) {
+                    pages.addPage(lastPage == null ? null : lastPage.getEnd(), page.getLastKey(),
+                            items);
+                }
+                pages.setComplete(page.getDataPoints().size() < DataPointPages.PAGE_SIZE);
+                displayPages();
+            }
+        }, params);
+    }
+
+    private void loadPage(final DataPointPages.Page page) {
+        if (page.isLoading()) {
+            page.setStale(true);
+            return;
+        }
+        page.setLoading(true);
+        Map<String, Object> params = new HashMap<>(pageParams);
+        params.put(GetSavedDataPointsPage.KEY_AFTER, page.getStart());
+        params.put(GetSavedDataPointsPage.KEY_UNTIL, page.getEnd());
+        params.put(GetSavedDataPointsPage.KEY_LIMIT, DataPointPages.MAX_PAGE_SIZE);
+        final int generation = pagesGeneration;
+        getSavedDataPointsPage.execute(new DefaultObserver<DataPointPage>() {
+
+            @Override
+            public void onError(Throwable e) {
+                if (generation == pagesGeneration) {
+                    Timber.e(e, "Error loading saved datapoints");
+                    page.setLoading(false);
+                }
+            }
+
+            @Override
+            public void onNext(DataPointPage dataPointPage) {
+                if (generation != pagesGeneration || !pages.contains(page)) {
+                    return;
+                }
+                page.setLoading(false);
+                DataPointPages.Page rest = pages.setItems(page, dataPointPage.getLastKey(),
+                        mapper.transform(dataPointPage.getDataPoints()));
+                displayPages();
+                if (rest != null) {
+                    loadPage(rest);
+                }
+                if (page.isStale()) {
+                    page.setStale(false);
+                    loadPage(page);
+                }
+            }
+        }, params);
+    }
+
+    private void displayPages() {
+        view.displayPages(pages);
+        if (pages.isComplete() && pages.getCount() == 0) {
+            view.showNoDataPoints(surveyGroup.isMonitored());
         }
     }
 
     void getFilteredDataPoints(String filter) {
         getSavedDataPoints.dispose();
+        clearPages();
         if (surveyGroup != null) {
             Map<String, Object> params = new HashMap<>(8);
             params.put(GetSavedDataPoints.KEY_SURVEY_GROUP_ID, surveyGroup.getId());
@@ -147,6 +328,7 @@ public class DataPointsListPresenter implements Presenter {
     @Override
     public void destroy() {
         getSavedDataPoints.dispose();
+        clearPages();
         syncDataPoints.dispose();
         allowedToConnect.dispose();
     }
@@ -243,6 +425,7 @@ public class DataPointsListPresenter implements Presenter {
 
     void onNewSurveySelected(SurveyGroup surveyGroup) {
         getSavedDataPoints.dispose();
+        clearPages();
         syncDataPoints.dispose();
         view.hideLoading();
         onDataReady(surveyGroup);
@@ -250,6 +433,7 @@ public class DataPointsListPresenter implements Presenter {
     }
 
     private void noSurveySelected() {
+        clearPages();
         view.displayData(Collections.EMPTY_LIST);
         view.showNoSurveySelected();
     }
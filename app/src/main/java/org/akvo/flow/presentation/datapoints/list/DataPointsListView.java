@@ -42,6 +42,8 @@ interface DataPointsListView {
 
     void displayData(List<ListDataPoint> mapDataPoints);
 
+    void displayPages(DataPointPages pages);
+
     void displayMenu(boolean monitored);
 
     void showErrorMissingLocation();
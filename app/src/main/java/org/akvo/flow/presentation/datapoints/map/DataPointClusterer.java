@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.presentation.datapoints.map;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.maps.android.clustering.Cluster;
+
+import org.akvo.flow.presentation.datapoints.map.cluster.ClusterIndex;
+import org.akvo.flow.presentation.datapoints.map.cluster.PointCluster;
+import org.akvo.flow.presentation.datapoints.map.entity.MapDataPoint;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Clusters the data points off the main thread. New data points are applied to the
+ * {@link ClusterIndex} as changes, and only the clusters of the visible region are delivered,
+ * the latest request superseding any older one still pending.
+ */
+class DataPointClusterer {
+
+    private final ClusterIndex<MapDataPoint> index = new ClusterIndex<>(
+            new ClusterIndex.Adapter<MapDataPoint>() {
+                @NonNull
+                @Override
+                public String getId(@NonNull MapDataPoint item) {
+                    return item.getId();
+                }
+
+                @Override
+                public double getLatitude(@NonNull MapDataPoint item) {
+                    return item.getPosition().latitude;
+                }
+
+                @Override
+                public double getLongitude(@NonNull MapDataPoint item) {
+                    return item.getPosition().longitude;
+                }
+            });
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Listener listener;
+
+    // Guarded by this
+    @Nullable
+    private List<MapDataPoint> pendingItems;
+    @Nullable
+    private LatLngBounds bounds;
+    private float zoom;
+    private int requests;
+    private boolean scheduled;
+
+    private final Runnable clusterTask = new Runnable() {
+        @Override
+        public void run() {
+            List<MapDataPoint> items;
+            LatLngBounds bounds;
+            float zoom;
+            final int request;
+            synchronized (DataPointClusterer.this) {
+                items = pendingItems;
+                pendingItems = null;
+                bounds = DataPointClusterer.this.bounds;
+                zoom = DataPointClusterer.this.zoom;
+                request = requests;
+                scheduled = false;
+            }
+            if (items != null) {
+                index.setItems(items);
+            }
+            if (bounds == null) {
+                return;
+            }
+
+            List<PointCluster<MapDataPoint>> clusters = index.getClusters(
+                    bounds.southwest.latitude, bounds.southwest.longitude,
+                    bounds.northeast.latitude, bounds.northeast.longitude, zoom);
+            final Set<MapCluster> mapClusters = new HashSet<>(clusters.size() * 2);
+            for (PointCluster<MapDataPoint> cluster : clusters) {
+                mapClusters.add(new MapCluster(cluster));
+            }
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (DataPointClusterer.this) {
+                        if (request != requests) {
+                            return;// Superseded
+                        }
+                    }
+                    listener.onClustersChanged(mapClusters);
+                }
+            });
+        }
+    };
+
+    DataPointClusterer(@NonNull Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Replace the clustered data points. Takes effect on the next {@link #cluster}.
+     */
+    synchronized void setItems(@NonNull List<MapDataPoint> items) {
+        pendingItems = new ArrayList<>(items);
+    }
+
+    /**
+     * Compute the clusters of the given region, delivering them to the listener on the main
+     * thread
+     */
+    synchronized void cluster(@NonNull LatLngBounds bounds, float zoom) {
+        this.bounds = bounds;
+        this.zoom = zoom;
+        requests++;
+        if (!scheduled && !executor.isShutdown()) {
+            scheduled = true;
+            executor.execute(clusterTask);
+        }
+    }
+
+    synchronized void release() {
+        requests++;
+        executor.shutdownNow();
+        handler.removeCallbacksAndMessages(null);
+    }
+
+    interface Listener {
+
+        void onClustersChanged(@NonNull Set<? extends Cluster<MapDataPoint>> clusters);
+    }
+
+    private static class MapCluster implements Cluster<MapDataPoint> {
+
+        private final PointCluster<MapDataPoint> cluster;
+        private final LatLng position;
+
+        MapCluster(PointCluster<MapDataPoint> cluster) {
+            this.cluster = cluster;
+            this.position = new LatLng(cluster.getLatitude(), cluster.getLongitude());
+        }
+
+        @Override
+        public LatLng getPosition() {
+            return position;
+        }
+
+        @Override
+        public Collection<MapDataPoint> getItems() {
+            return cluster.getItems();
+        }
+
+        @Override
+        public int getSize() {
+            return cluster.getSize();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof MapCluster && cluster.equals(((MapCluster) o).cluster);
+        }
+
+        @Override
+        public int hashCode() {
+            return cluster.hashCode();
+        }
+    }
+}
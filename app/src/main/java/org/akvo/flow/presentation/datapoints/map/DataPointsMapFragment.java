@@ -26,6 +26,7 @@ import android.location.Criteria;
 import android.location.Location;
 import android.location.LocationManager;
 import android.os.Bundle;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.FragmentActivity;
 import android.view.LayoutInflater;
@@ -46,6 +47,7 @@ import com.google.android.gms.maps.model.CameraPosition;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.maps.model.Marker;
+import com.google.maps.android.clustering.Cluster;
 import com.google.maps.android.clustering.ClusterManager;
 
 import org.akvo.flow.R;
@@ -60,8 +62,8 @@ import org.akvo.flow.ui.Navigator;
 import org.akvo.flow.ui.fragment.RecordListListener;
 import org.akvo.flow.util.ConstantUtil;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import javax.inject.Inject;
 
@@ -74,8 +76,6 @@ public class DataPointsMapFragment extends SupportMapFragment implements OnInfoW
     @Nullable
     private RecordListListener mListener;
 
-    private List<MapDataPoint> mItems;
-
     private boolean displayMonitoredMenu;
 
     @Nullable
@@ -94,8 +94,20 @@ public class DataPointsMapFragment extends SupportMapFragment implements OnInfoW
     Navigator navigator;
 
     private ClusterManager<MapDataPoint> mClusterManager;
+    private DataPointClusterer clusterer;
+
+    @Nullable
+    private PointRenderer renderer;
+
     private boolean activityJustCreated;
 
+    /**
+     * Area whose data points are loaded, extending beyond the visible region so panning
+     * does not need a new query every time
+     */
+    @Nullable
+    private LatLngBounds loadedBounds;
+
     public static DataPointsMapFragment newInstance(SurveyGroup surveyGroup) {
         DataPointsMapFragment fragment = new DataPointsMapFragment();
         Bundle args = new Bundle();
@@ -110,7 +122,15 @@ public class DataPointsMapFragment extends SupportMapFragment implements OnInfoW
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        mItems = new ArrayList<>();
+        clusterer = new DataPointClusterer(new DataPointClusterer.Listener() {
+            @Override
+            public void onClustersChanged(
+                    @NonNull Set<? extends Cluster<MapDataPoint>> clusters) {
+                if (renderer != null) {
+                    renderer.onClustersChanged(clusters);
+                }
+            }
+        });
         setHasOptionsMenu(true);
     }
 
@@ -179,47 +199,69 @@ public class DataPointsMapFragment extends SupportMapFragment implements OnInfoW
             mMap.setMyLocationEnabled(true);
             mMap.setOnInfoWindowClickListener(this);
             mClusterManager = new ClusterManager<>(getActivity(), mMap);
-            mClusterManager.setRenderer(new PointRenderer(mMap, getActivity(), mClusterManager));
+            renderer = new PointRenderer(mMap, getActivity(), mClusterManager);
+            mClusterManager.setRenderer(renderer);
             mMap.setOnMarkerClickListener(mClusterManager);
             mMap.setOnCameraChangeListener(new GoogleMap.OnCameraChangeListener() {
                 @Override
                 public void onCameraChange(CameraPosition cameraPosition) {
-                    cluster();
+                    onVisibleRegionChanged();
+                }
+            });
+            mMap.setOnMapLoadedCallback(new GoogleMap.OnMapLoadedCallback() {
+                @Override
+                public void onMapLoaded() {
+                    onVisibleRegionChanged();
                 }
             });
             centerMap();
         }
     }
 
-    private void cluster() {
+    private void onVisibleRegionChanged() {
         if (mMap == null) {
             return;
         }
+        LatLngBounds bounds = mMap.getProjection().getVisibleRegion().latLngBounds;
+        if (loadedBounds == null || !loadedBounds.contains(bounds.northeast)
+                || !loadedBounds.contains(bounds.southwest)) {
+            loadedBounds = getExtendedBounds(bounds);
+            presenter.onAreaChanged(loadedBounds.southwest.latitude,
+                    loadedBounds.southwest.longitude, loadedBounds.northeast.latitude,
+                    loadedBounds.northeast.longitude);
+        }
+        cluster();
+    }
 
-        final LatLngBounds bounds = mMap.getProjection().getVisibleRegion().latLngBounds;
+    /**
+     * @return the given bounds, extended by their own size on every side
+     */
+    private LatLngBounds getExtendedBounds(LatLngBounds bounds) {
         LatLng ne = bounds.northeast;
         LatLng sw = bounds.southwest;
         double latDst = Math.abs(ne.latitude - sw.latitude);
         double lonDst = Math.abs(ne.longitude - sw.longitude);
 
         final double scale = 1d;
-        LatLngBounds newBounds =
-                bounds.including(
-                        new LatLng(ne.latitude + latDst / scale, ne.longitude + lonDst / scale))
-                        .including(new LatLng(sw.latitude - latDst / scale,
-                                ne.longitude + lonDst / scale))
-                        .including(new LatLng(sw.latitude - latDst / scale,
-                                sw.longitude - lonDst / scale))
-                        .including(new LatLng(ne.latitude + latDst / scale,
-                                sw.longitude - lonDst / scale));
-
-        mClusterManager.clearItems();
-        for (MapDataPoint item : mItems) {
-            if (item.getPosition() != null && newBounds.contains(item.getPosition())) {
-                mClusterManager.addItem(item);
-            }
+        return bounds.including(
+                new LatLng(ne.latitude + latDst / scale, ne.longitude + lonDst / scale))
+                .including(new LatLng(sw.latitude - latDst / scale,
+                        ne.longitude + lonDst / scale))
+                .including(new LatLng(sw.latitude - latDst / scale,
+                        sw.longitude - lonDst / scale))
+                .including(new LatLng(ne.latitude + latDst / scale,
+                        sw.longitude - lonDst / scale));
+    }
+
+    private void cluster() {
+        if (mMap == null) {
+            return;
         }
-        mClusterManager.cluster();
+
+        // The renderer is given the clusters directly, ClusterManager is only kept for its
+        // marker collections
+        LatLngBounds bounds = mMap.getProjection().getVisibleRegion().latLngBounds;
+        clusterer.cluster(bounds, mMap.getCameraPosition().zoom);
     }
 
     /**
@@ -268,6 +310,7 @@ public class DataPointsMapFragment extends SupportMapFragment implements OnInfoW
     @Override
     public void onDestroy() {
         presenter.destroy();
+        clusterer.release();
         super.onDestroy();
     }
 
@@ -321,8 +364,7 @@ public class DataPointsMapFragment extends SupportMapFragment implements OnInfoW
 
     @Override
     public void displayData(List<MapDataPoint> surveyedLocales) {
-        mItems.clear();
-        mItems.addAll(surveyedLocales);
+        clusterer.setItems(surveyedLocales);
         cluster();
     }
 
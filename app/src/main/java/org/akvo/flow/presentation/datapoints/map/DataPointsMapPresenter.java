@@ -56,6 +56,14 @@ public class DataPointsMapPresenter implements Presenter {
     private DataPointsMapView view;
     private SurveyGroup surveyGroup;
 
+    /**
+     * Bounds of the area to load, unknown until the map is laid out
+     */
+    private Double south;
+    private Double west;
+    private Double north;
+    private Double east;
+
     @Inject
     DataPointsMapPresenter(@Named("getSavedDataPoints") UseCase getSavedDataPoints,
             MapDataPointMapper mapper, SyncDataPoints syncDataPoints,
@@ -81,11 +89,27 @@ public class DataPointsMapPresenter implements Presenter {
         loadDataPoints();
     }
 
+    /**
+     * Only the data points inside the given bounds are loaded. West is greater than east if
+     * the bounds cross the antimeridian.
+     */
+    void onAreaChanged(double south, double west, double north, double east) {
+        this.south = south;
+        this.west = west;
+        this.north = north;
+        this.east = east;
+        loadDataPoints();
+    }
+
     void loadDataPoints() {
         getSavedDataPoints.dispose();
-        if (surveyGroup != null) {
-            Map<String, Object> params = new HashMap<>(2);
+        if (surveyGroup != null && south != null) {
+            Map<String, Object> params = new HashMap<>(8);
             params.put(GetSavedDataPoints.KEY_SURVEY_GROUP_ID, surveyGroup.getId());
+            params.put(GetSavedDataPoints.KEY_SOUTH, south);
+            params.put(GetSavedDataPoints.KEY_WEST, west);
+            params.put(GetSavedDataPoints.KEY_NORTH, north);
+            params.put(GetSavedDataPoints.KEY_EAST, east);
             getSavedDataPoints.execute(new DefaultObserver<List<DataPoint>>() {
                 @Override
                 public void onError(Throwable e) {
@@ -0,0 +1,394 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.presentation.datapoints.map.cluster;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Clusters of map points for every zoom level, kept up to date as points are added, moved or
+ * removed.
+ * <p>
+ * Points are stored in a quadtree over the web mercator plane. Each node is a grid cell whose
+ * side is CELL_SIZE dp at one zoom level, and holds the number of points below it and the sum
+ * of their coordinates. The clusters of a zoom level are the non empty cells of that depth,
+ * placed at the centre of their points, so changing a point only updates the nodes on its path
+ * instead of clustering the whole set again. Nodes with a single point are not split further.
+ * <p>
+ * Not thread safe, except for {@link PointCluster#getItems()}, which synchronizes on the index.
+ */
+public class ClusterIndex<T> {
+
+    /**
+     * Above this zoom level every point is a cluster of its own
+     */
+    public static final int MAX_CLUSTER_ZOOM = 17;
+
+    /**
+     * Side of the cells, in dp. Map tiles are 256 dp wide, so there are 4 cells per tile.
+     */
+    private static final int CELL_SIZE = 64;
+    private static final int ZOOM_DEPTH = 2;// log2(256 / CELL_SIZE)
+    private static final int MAX_DEPTH = MAX_CLUSTER_ZOOM + ZOOM_DEPTH;
+
+    private static final double MAX_LATITUDE = 85.05112878;
+
+    private final Adapter<T> adapter;
+    private final Map<String, Entry<T>> entries = new HashMap<>();
+    private final Node<T> root = new Node<>();
+
+    public ClusterIndex(@NonNull Adapter<T> adapter) {
+        this.adapter = adapter;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Replace the points of the index with the given ones. Only the points that were added,
+     * moved or removed are updated.
+     *
+     * @return the number of points added, moved or removed
+     */
+    public synchronized int setItems(@NonNull Collection<T> items) {
+        int changes = 0;
+        Set<String> ids = new HashSet<>(items.size() * 2);
+        for (T item : items) {
+            String id = adapter.getId(item);
+            ids.add(id);
+            Entry<T> entry = entries.get(id);
+            if (entry != null && entry.item.equals(item)) {
+                continue;
+            }
+            double x = getX(adapter.getLongitude(item));
+            double y = getY(adapter.getLatitude(item));
+            if (entry != null && entry.x == x && entry.y == y) {
+                entry.item = item;// Same position, nothing to cluster again
+                continue;
+            }
+            if (entry != null) {
+                remove(root, 0, entry);
+            }
+            entry = new Entry<>(id, item, x, y);
+            entries.put(id, entry);
+            insert(root, 0, entry);
+            changes++;
+        }
+
+        if (ids.size() < entries.size()) {
+            List<Entry<T>> removed = new ArrayList<>();
+            for (Entry<T> entry : entries.values()) {
+                if (!ids.contains(entry.id)) {
+                    removed.add(entry);
+                }
+            }
+            for (Entry<T> entry : removed) {
+                entries.remove(entry.id);
+                remove(root, 0, entry);
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Add the given point, replacing the one with the same id, if any
+     */
+    public synchronized void add(@NonNull T item) {
+        remove(adapter.getId(item));
+        Entry<T> entry = new Entry<>(adapter.getId(item), item,
+                getX(adapter.getLongitude(item)), getY(adapter.getLatitude(item)));
+        entries.put(entry.id, entry);
+        insert(root, 0, entry);
+    }
+
+    public synchronized boolean remove(@NonNull String id) {
+        Entry<T> entry = entries.remove(id);
+        if (entry == null) {
+            return false;
+        }
+        remove(root, 0, entry);
+        return true;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        root.clear();
+    }
+
+    /**
+     * Clusters of the cells overlapping the given bounds. West is greater than east if the
+     * bounds cross the antimeridian.
+     */
+    @NonNull
+    public synchronized List<PointCluster<T>> getClusters(double south, double west,
+            double north, double east, double zoom) {
+        int depth = zoom > MAX_CLUSTER_ZOOM ? MAX_DEPTH + 1 : Math.max(0, (int) zoom) + ZOOM_DEPTH;
+        double top = getY(north);
+        double bottom = getY(south);
+        double left = getX(west);
+        double right = getX(east);
+
+        List<PointCluster<T>> clusters = new ArrayList<>();
+        if (west > east) {
+            collect(root, 0, 0, 0, depth, left, top, 1, bottom, clusters);
+            collect(root, 0, 0, 0, depth, 0, top, right, bottom, clusters);
+        } else {
+            collect(root, 0, 0, 0, depth, left, top, right, bottom, clusters);
+        }
+        return clusters;
+    }
+
+    private void collect(Node<T> node, int depth, long column, long row, int maxDepth,
+            double left, double top, double right, double bottom,
+            List<PointCluster<T>> clusters) {
+        if (node.count == 0) {
+            return;
+        }
+        double cellSize = 1d / (1L << depth);
+        double cellLeft = column * cellSize;
+        double cellTop = row * cellSize;
+        if (cellLeft > right || cellLeft + cellSize < left || cellTop > bottom
+                || cellTop + cellSize < top) {
+            return;
+        }
+
+        if (node.children == null) {
+            // A single point, or points sharing the deepest cell
+            if (maxDepth > MAX_DEPTH) {
+                for (Entry<T> entry : node.entries) {
+                    clusters.add(new PointCluster<>(entry.item, getLatitude(entry.y),
+                            getLongitude(entry.x)));
+                }
+            } else {
+                clusters.add(newCluster(node));
+            }
+            return;
+        }
+        if (depth >= maxDepth) {
+            clusters.add(newCluster(node));
+            return;
+        }
+        for (int i = 0; i < 4; i++) {
+            Node<T> child = node.children[i];
+            if (child != null) {
+                collect(child, depth + 1, column * 2 + (i & 1), row * 2 + (i >> 1), maxDepth,
+                        left, top, right, bottom, clusters);
+            }
+        }
+    }
+
+    private PointCluster<T> newCluster(Node<T> node) {
+        if (node.count == 1) {
+            Entry<T> entry = node.entries.get(0);
+            return new PointCluster<>(entry.item, getLatitude(entry.y), getLongitude(entry.x));
+        }
+        return new PointCluster<>(this, node, getLatitude(node.sumY / node.count),
+                getLongitude(node.sumX / node.count));
+    }
+
+    private void insert(Node<T> node, int depth, Entry<T> entry) {
+        node.add(entry.x, entry.y);
+        if (node.children == null) {
+            if (node.entries == null) {
+                node.entries = new ArrayList<>(1);
+            }
+            node.entries.add(entry);
+            if (node.count == 1 || depth == MAX_DEPTH) {
+                return;
+            }
+            // Split the node, moving its point one level down
+            List<Entry<T>> moved = node.entries;
+            node.entries = null;
+            node.children = newChildren();
+            for (Entry<T> child : moved) {
+                insertChild(node, depth, child);
+            }
+            return;
+        }
+        insertChild(node, depth, entry);
+    }
+
+    private void insertChild(Node<T> node, int depth, Entry<T> entry) {
+        int quadrant = getQuadrant(entry, depth);
+        Node<T> child = node.children[quadrant];
+        if (child == null) {
+            child = new Node<>();
+            node.children[quadrant] = child;
+        }
+        insert(child, depth + 1, entry);
+    }
+
+    private void remove(Node<T> node, int depth, Entry<T> entry) {
+        node.remove(entry.x, entry.y);
+        if (node.children == null) {
+            node.entries.remove(entry);
+            return;
+        }
+        int quadrant = getQuadrant(entry, depth);
+        Node<T> child = node.children[quadrant];
+        remove(child, depth + 1, entry);
+        if (child.count == 0) {
+            node.children[quadrant] = null;
+        }
+        if (node.count == 1) {
+            // Collapse the remaining point back into this node
+            Entry<T> last = findEntry(node);
+            node.clear();
+            node.add(last.x, last.y);
+            node.entries = new ArrayList<>(1);
+            node.entries.add(last);
+        }
+    }
+
+    private Entry<T> findEntry(Node<T> node) {
+        while (node.children != null) {
+            for (Node<T> child : node.children) {
+                if (child != null) {
+                    node = child;
+                    break;
+                }
+            }
+        }
+        return node.entries.get(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node<T>[] newChildren() {
+        return new Node[4];
+    }
+
+    /**
+     * @return the index of the child of the node at the given depth containing the entry,
+     * row major
+     */
+    private static int getQuadrant(Entry<?> entry, int depth) {
+        long cells = 1L << (depth + 1);
+        int column = (int) (Math.min(cells - 1, (long) (entry.x * cells)) & 1);
+        int row = (int) (Math.min(cells - 1, (long) (entry.y * cells)) & 1);
+        return row * 2 + column;
+    }
+
+    synchronized void addItems(Node<T> node, List<T> items) {
+        if (node.children == null) {
+            if (node.entries == null) {
+                return;// Removed since
+            }
+            for (Entry<T> entry : node.entries) {
+                items.add(entry.item);
+            }
+            return;
+        }
+        for (Node<T> child : node.children) {
+            if (child != null) {
+                addItems(child, items);
+            }
+        }
+    }
+
+    static double getX(double longitude) {
+        return (longitude + 180) / 360;
+    }
+
+    static double getY(double latitude) {
+        double lat = Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude)));
+        double y = 0.5 - Math.log((1 + Math.sin(lat)) / (1 - Math.sin(lat))) / (4 * Math.PI);
+        return Math.max(0, Math.min(1, y));
+    }
+
+    static double getLongitude(double x) {
+        return x * 360 - 180;
+    }
+
+    static double getLatitude(double y) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y))));
+    }
+
+    /**
+     * Gives the index access to the id and position of the points. Points with the same id
+     * that are equal are left untouched on updates.
+     */
+    public interface Adapter<T> {
+
+        @NonNull
+        String getId(@NonNull T item);
+
+        double getLatitude(@NonNull T item);
+
+        double getLongitude(@NonNull T item);
+    }
+
+    static class Entry<T> {
+
+        final String id;
+        final double x;
+        final double y;
+        T item;
+
+        Entry(String id, T item, double x, double y) {
+            this.id = id;
+            this.item = item;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    static class Node<T> {
+
+        int count;
+        double sumX;
+        double sumY;
+
+        /**
+         * Points of the node, if not split
+         */
+        List<Entry<T>> entries;
+        Node<T>[] children;
+
+        void add(double x, double y) {
+            count++;
+            sumX += x;
+            sumY += y;
+        }
+
+        void remove(double x, double y) {
+            count--;
+            sumX -= x;
+            sumY -= y;
+        }
+
+        void clear() {
+            count = 0;
+            sumX = 0;
+            sumY = 0;
+            entries = null;
+            children = null;
+        }
+    }
+}
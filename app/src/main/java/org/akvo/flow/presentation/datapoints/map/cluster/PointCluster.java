@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.presentation.datapoints.map.cluster;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A cell of a {@link ClusterIndex} at one zoom level: either a single point, or the points
+ * below the cell placed at their centre.
+ */
+public class PointCluster<T> {
+
+    private final double latitude;
+    private final double longitude;
+    private final int size;
+
+    @Nullable
+    private final T item;
+
+    @Nullable
+    private final ClusterIndex<T> index;
+
+    @Nullable
+    private final ClusterIndex.Node<T> node;
+
+    PointCluster(@NonNull T item, double latitude, double longitude) {
+        this.item = item;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.size = 1;
+        this.index = null;
+        this.node = null;
+    }
+
+    PointCluster(@NonNull ClusterIndex<T> index, @NonNull ClusterIndex.Node<T> node,
+            double latitude, double longitude) {
+        this.index = index;
+        this.node = node;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.size = node.count;
+        this.item = null;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Points of the cluster, collected from the index when requested. If the index was updated
+     * since the cluster was created, the points are those currently in the cell.
+     */
+    @NonNull
+    public List<T> getItems() {
+        if (item != null) {
+            return Collections.singletonList(item);
+        }
+        List<T> items = new ArrayList<>(size);
+        index.addItems(node, items);
+        return items;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        PointCluster<?> that = (PointCluster<?>) o;
+        return size == that.size && Double.compare(that.latitude, latitude) == 0
+                && Double.compare(that.longitude, longitude) == 0
+                && (item != null ? item.equals(that.item) : that.item == null);
+    }
+
+    @Override
+    public int hashCode() {
+        int result;
+        long temp;
+        temp = Double.doubleToLongBits(latitude);
+        result = (int) (temp ^ (temp >>> 32));
+        temp = Double.doubleToLongBits(longitude);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        result = 31 * result + size;
+        result = 31 * result + (item != null ? item.hashCode() : 0);
+        return result;
+    }
+}
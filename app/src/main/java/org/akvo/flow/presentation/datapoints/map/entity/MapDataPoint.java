@@ -47,4 +47,26 @@ public class MapDataPoint implements ClusterItem {
     public LatLng getPosition() {
         return position;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        MapDataPoint that = (MapDataPoint) o;
+        return (id != null ? id.equals(that.id) : that.id == null)
+                && (name != null ? name.equals(that.name) : that.name == null)
+                && (position != null ? position.equals(that.position) : that.position == null);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = id != null ? id.hashCode() : 0;
+        result = 31 * result + (name != null ? name.hashCode() : 0);
+        result = 31 * result + (position != null ? position.hashCode() : 0);
+        return result;
+    }
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.serialization.form;
+
+import java.nio.charset.Charset;
+
+/**
+ * Layout constants shared by the compiled form writer and reader. Bump VERSION whenever the
+ * layout or the domain fields it covers change, so existing files are discarded and rebuilt
+ * from the xml.
+ */
+final class CompiledSurveyFormat {
+
+    static final int MAGIC = 0x464c4f57; // "FLOW"
+    static final int VERSION = 1;
+
+    static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * String references. Any other value points to a previously written string
+     */
+    static final int STRING_NULL = 0;
+    static final int STRING_NEW = 1;
+    static final int STRING_REF_OFFSET = 2;
+
+    // Question flags
+    static final int MANDATORY = 1;
+    static final int ALLOW_OTHER = 1 << 1;
+    static final int ALLOW_MULTIPLE = 1 << 2;
+    static final int LOCKED = 1 << 3;
+    static final int USE_STRENGTH = 1 << 4;
+    static final int LOCALE_NAME = 1 << 5;
+    static final int LOCALE_LOCATION = 1 << 6;
+    static final int DOUBLE_ENTRY = 1 << 7;
+    static final int EXTERNAL_SOURCE = 1 << 8;
+    static final int ALLOW_POINTS = 1 << 9;
+    static final int ALLOW_LINE = 1 << 10;
+    static final int ALLOW_POLYGON = 1 << 11;
+
+    private CompiledSurveyFormat() {
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.serialization.form;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.akvo.flow.domain.AltText;
+import org.akvo.flow.domain.Dependency;
+import org.akvo.flow.domain.Level;
+import org.akvo.flow.domain.Option;
+import org.akvo.flow.domain.Question;
+import org.akvo.flow.domain.QuestionGroup;
+import org.akvo.flow.domain.QuestionHelp;
+import org.akvo.flow.domain.ScoringRule;
+import org.akvo.flow.domain.Survey;
+import org.akvo.flow.domain.SurveyGroup;
+import org.akvo.flow.domain.ValidationRule;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.akvo.flow.serialization.form.CompiledSurveyFormat.ALLOW_LINE;
+import static org.akvo.flow.serialization.form.CompiledSurveyFormat.ALLOW_MULTIPLE;
+import static org.akvo.flow.serialization.form.CompiledSurveyFormat.ALLOW_OTHER;
+import static org.akvo.flow.serialization.form.CompiledSurveyFormat.ALLOW_POINTS;
+import static org.akvo.flow.serialization.form.CompiledSurveyFormat.ALLOW_POLYGON;
+import static org.akvo.flow.serialization.form.CompiledSurveyFormat.DOUBLE_ENTRY;
+import static org.akvo.flow.serialization.form.CompiledSurveyFormat.EXTERNAL_SOURCE;
+import static org.akvo.flow.serialization.form.CompiledSurveyFormat.LOCALE_LOCATION;
+import static org.akvo.flow.serialization.form.CompiledSurveyFormat.LOCALE_NAME;
+import static org.akvo.flow.serialization.form.CompiledSurveyFormat.LOCKED;
+import static org.akvo.flow.serialization.form.CompiledSurveyFormat.MANDATORY;
+import static org.akvo.flow.serialization.form.CompiledSurveyFormat.USE_STRENGTH;
+
+/**
+ * Reads a Survey written by CompiledSurveyWriter, skipping the xml parsing altogether.
+ */
+public class CompiledSurveyReader {
+
+    private final DataInputStream in;
+    private final List<String> strings = new ArrayList<>();
+
+    public CompiledSurveyReader(@NonNull InputStream in) {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+    }
+
+    /**
+     * Reads the survey, provided it was compiled from the same form version and xml file.
+     * The caller is responsible for closing the stream.
+     *
+     * @return the survey, or null if the file is stale and the xml needs to be parsed again
+     * @throws IOException if the file cannot be read or is corrupted
+     */
+    @Nullable
+    public Survey read(double formVersion, long sourceLength, long sourceModified)
+            throws IOException {
+        if (in.readInt() != CompiledSurveyFormat.MAGIC
+                || in.readInt() != CompiledSurveyFormat.VERSION
+                || Double.compare(in.readDouble(), formVersion) != 0
+                || in.readLong() != sourceLength
+                || in.readLong() != sourceModified) {
+            return null;
+        }
+
+        Survey survey = readSurvey();
+
+        if (in.readInt() != CompiledSurveyFormat.MAGIC) {
+            throw new IOException("Compiled form is corrupted");
+        }
+        return survey;
+    }
+
+    private Survey readSurvey() throws IOException {
+        Survey survey = new Survey();
+        survey.setName(readString());
+        survey.setLanguage(readString());
+        survey.setSourceSurveyId(readString());
+        survey.setApp(readString());
+        survey.setVersion(in.readDouble());
+
+        if (in.readBoolean()) {
+            long id = in.readLong();
+            String name = readString();
+            String registerSurveyId = readString();
+            boolean monitored = in.readBoolean();
+            survey.setSurveyGroup(new SurveyGroup(id, name, registerSurveyId, monitored));
+        }
+
+        int groups = readSize();
+        if (groups < 0) {
+            survey.setQuestionGroups(null);
+        }
+        for (int i = 0; i < groups; i++) {
+            survey.addQuestionGroup(readQuestionGroup());
+        }
+        return survey;
+    }
+
+    private QuestionGroup readQuestionGroup() throws IOException {
+        QuestionGroup group = new QuestionGroup();
+        group.setOrder(in.readInt());
+        group.setHeading(readString());
+        group.setRepeatable(in.readBoolean());
+        int questions = readSize();
+        for (int i = 0; i < questions; i++) {
+            group.addQuestion(readQuestion());
+        }
+        return group;
+    }
+
+    private Question readQuestion() throws IOException {
+        Question question = new Question();
+        question.setId(readString());
+        question.setText(readString());
+        question.setType(readString());
+        question.setRenderType(readString());
+        question.setSourceQuestionId(readString());
+        question.setSrc(readString());
+        question.setCaddisflyRes(readString());
+        question.setOrder(in.readInt());
+        question.setStrengthMin(in.readInt());
+        question.setStrengthMax(in.readInt());
+        setFlags(question, readVarInt());
+
+        question.setValidationRule(readValidationRule());
+        int altTexts = readVarInt();
+        for (int i = 0; i < altTexts; i++) {
+            question.addAltText(readAltText());
+        }
+
+        int help = readSize();
+        for (int i = 0; i < help; i++) {
+            QuestionHelp questionHelp = new QuestionHelp();
+            questionHelp.setType(readString());
+            questionHelp.setText(readString());
+            questionHelp.setValue(readString());
+            int helpAltTexts = readVarInt();
+            for (int j = 0; j < helpAltTexts; j++) {
+                questionHelp.addAltText(readAltText());
+            }
+            question.addQuestionHelp(questionHelp);
+        }
+
+        int options = readSize();
+        if (options >= 0) {
+            ArrayList<Option> optionList = new ArrayList<>(options);
+            for (int i = 0; i < options; i++) {
+                Option option = new Option();
+                option.setText(readString());
+                option.setCode(readString());
+                option.setIsOther(in.readBoolean());
+                int optionAltTexts = readVarInt();
+                for (int j = 0; j < optionAltTexts; j++) {
+                    option.addAltText(readAltText());
+                }
+                optionList.add(option);
+            }
+            question.setOptions(optionList);
+        }
+
+        int dependencies = readSize();
+        for (int i = 0; i < dependencies; i++) {
+            Dependency dependency = new Dependency();
+            dependency.setQuestion(readString());
+            dependency.setAnswer(readString());
+            question.addDependency(dependency);
+        }
+
+        int scoringRules = readSize();
+        for (int i = 0; i < scoringRules; i++) {
+            String type = readString();
+            String min = readString();
+            String max = readString();
+            String text = readString();
+            String value = readString();
+            question.addScoringRule(new ScoringRule(type, min, max, text, value));
+        }
+
+        int levels = readSize();
+        if (levels >= 0) {
+            List<Level> levelList = new ArrayList<>(levels);
+            for (int i = 0; i < levels; i++) {
+                Level level = new Level();
+                level.setText(readString());
+                int levelAltTexts = readVarInt();
+                for (int j = 0; j < levelAltTexts; j++) {
+                    level.addAltText(readAltText());
+                }
+                levelList.add(level);
+            }
+            question.setLevels(levelList);
+        }
+        return question;
+    }
+
+    private void setFlags(Question question, int flags) {
+        question.setMandatory((flags & MANDATORY) != 0);
+        question.setAllowOther((flags & ALLOW_OTHER) != 0);
+        question.setAllowMultiple((flags & ALLOW_MULTIPLE) != 0);
+        question.setLocked((flags & LOCKED) != 0);
+        question.setUseStrength((flags & USE_STRENGTH) != 0);
+        question.setIsLocaleName((flags & LOCALE_NAME) != 0);
+        question.setIsLocaleLocation((flags & LOCALE_LOCATION) != 0);
+        question.setIsDoubleEntry((flags & DOUBLE_ENTRY) != 0);
+        question.useExternalSource((flags & EXTERNAL_SOURCE) != 0);
+        question.setAllowPoints((flags & ALLOW_POINTS) != 0);
+        question.setAllowLine((flags & ALLOW_LINE) != 0);
+        question.setAllowPolygon((flags & ALLOW_POLYGON) != 0);
+    }
+
+    @Nullable
+    private ValidationRule readValidationRule() throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        ValidationRule rule = new ValidationRule(readString());
+        Integer maxLength = in.readBoolean() ? in.readInt() : null;
+        rule.setMaxLength(maxLength);
+        rule.setAllowSigned(readBoolean());
+        rule.setAllowDecimal(readBoolean());
+        rule.setMinVal(readDouble());
+        rule.setMaxVal(readDouble());
+        return rule;
+    }
+
+    private AltText readAltText() throws IOException {
+        AltText altText = new AltText();
+        altText.setLanguage(readString());
+        altText.setType(readString());
+        altText.setText(readString());
+        return altText;
+    }
+
+    /**
+     * @return the number of items in the list, or -1 for null lists
+     */
+    private int readSize() throws IOException {
+        return readVarInt() - 1;
+    }
+
+    @Nullable
+    private Boolean readBoolean() throws IOException {
+        byte value = in.readByte();
+        return value < 0 ? null : value != 0;
+    }
+
+    @Nullable
+    private Double readDouble() throws IOException {
+        return in.readBoolean() ? in.readDouble() : null;
+    }
+
+    @Nullable
+    private String readString() throws IOException {
+        int ref = readVarInt();
+        if (ref == CompiledSurveyFormat.STRING_NULL) {
+            return null;
+        }
+        if (ref == CompiledSurveyFormat.STRING_NEW) {
+            byte[] bytes = new byte[readVarInt()];
+            in.readFully(bytes);
+            String value = new String(bytes, CompiledSurveyFormat.CHARSET);
+            strings.add(value);
+            return value;
+        }
+        int index = ref - CompiledSurveyFormat.STRING_REF_OFFSET;
+        if (index >= strings.size()) {
+            throw new IOException("Invalid string reference: " + ref);
+        }
+        return strings.get(index);
+    }
+
+    private int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.serialization.form;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.akvo.flow.domain.AltText;
+import org.akvo.flow.domain.Dependency;
+import org.akvo.flow.domain.Level;
+import org.akvo.flow.domain.Option;
+import org.akvo.flow.domain.Question;
+import org.akvo.flow.domain.QuestionGroup;
+import org.akvo.flow.domain.QuestionHelp;
+import org.akvo.flow.domain.ScoringRule;
+import org.akvo.flow.domain.Survey;
+import org.akvo.flow.domain.SurveyGroup;
+import org.akvo.flow.domain.ValidationRule;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.akvo.flow.serialization.form.CompiledSurveyFormat.ALLOW_LINE;
+import static org.akvo.flow.serialization.form.CompiledSurveyFormat.ALLOW_MULTIPLE;
+import static org.akvo.flow.serialization.form.CompiledSurveyFormat.ALLOW_OTHER;
+import static org.akvo.flow.serialization.form.CompiledSurveyFormat.ALLOW_POINTS;
+import static org.akvo.flow.serialization.form.CompiledSurveyFormat.ALLOW_POLYGON;
+import static org.akvo.flow.serialization.form.CompiledSurveyFormat.DOUBLE_ENTRY;
+import static org.akvo.flow.serialization.form.CompiledSurveyFormat.EXTERNAL_SOURCE;
+import static org.akvo.flow.serialization.form.CompiledSurveyFormat.LOCALE_LOCATION;
+import static org.akvo.flow.serialization.form.CompiledSurveyFormat.LOCALE_NAME;
+import static org.akvo.flow.serialization.form.CompiledSurveyFormat.LOCKED;
+import static org.akvo.flow.serialization.form.CompiledSurveyFormat.MANDATORY;
+import static org.akvo.flow.serialization.form.CompiledSurveyFormat.USE_STRENGTH;
+
+/**
+ * Serializes a parsed Survey into the compact binary representation read by
+ * CompiledSurveyReader. Repeated strings (language codes, types, option texts, etc) are
+ * written once and referenced by index afterwards.
+ */
+public class CompiledSurveyWriter {
+
+    private final DataOutputStream out;
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    public CompiledSurveyWriter(@NonNull OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+    }
+
+    /**
+     * Writes the survey, flushing the underlying stream. The caller is responsible for closing it.
+     *
+     * @param formVersion    version of the form the survey was parsed from
+     * @param sourceLength   length of the xml file, used to detect stale files
+     * @param sourceModified modification time of the xml file, used to detect stale files
+     */
+    public void write(@NonNull Survey survey, double formVersion, long sourceLength,
+            long sourceModified) throws IOException {
+        out.writeInt(CompiledSurveyFormat.MAGIC);
+        out.writeInt(CompiledSurveyFormat.VERSION);
+        out.writeDouble(formVersion);
+        out.writeLong(sourceLength);
+        out.writeLong(sourceModified);
+
+        writeSurvey(survey);
+
+        // Trailing marker, so truncated files are detected
+        out.writeInt(CompiledSurveyFormat.MAGIC);
+        out.flush();
+    }
+
+    private void writeSurvey(Survey survey) throws IOException {
+        writeString(survey.getName());
+        writeString(survey.getLanguage());
+        writeString(survey.getSourceSurveyId());
+        writeString(survey.getApp());
+        out.writeDouble(survey.getVersion());
+
+        SurveyGroup surveyGroup = survey.getSurveyGroup();
+        out.writeBoolean(surveyGroup != null);
+        if (surveyGroup != null) {
+            out.writeLong(surveyGroup.getId());
+            writeString(surveyGroup.getName());
+            writeString(surveyGroup.getRegisterSurveyId());
+            out.writeBoolean(surveyGroup.isMonitored());
+        }
+
+        List<QuestionGroup> groups = survey.getQuestionGroups();
+        writeSize(groups);
+        if (groups != null) {
+            for (QuestionGroup group : groups) {
+                writeQuestionGroup(group);
+            }
+        }
+    }
+
+    private void writeQuestionGroup(QuestionGroup group) throws IOException {
+        out.writeInt(group.getOrder());
+        writeString(group.getHeading());
+        out.writeBoolean(group.isRepeatable());
+        List<Question> questions = group.getQuestions();
+        writeSize(questions);
+        if (questions != null) {
+            for (Question question : questions) {
+                writeQuestion(question);
+            }
+        }
+    }
+
+    private void writeQuestion(Question question) throws IOException {
+        writeString(question.getId());
+        writeString(question.getText());
+        writeString(question.getType());
+        writeString(question.getRenderType());
+        writeString(question.getSourceQuestionId());
+        writeString(question.getSrc());
+        writeString(question.getCaddisflyRes());
+        out.writeInt(question.getOrder());
+        out.writeInt(question.getStrengthMin());
+        out.writeInt(question.getStrengthMax());
+        writeVarInt(getFlags(question));
+
+        writeValidationRule(question.getValidationRule());
+        writeAltTexts(question.getLanguageTranslationMap().values());
+
+        List<QuestionHelp> help = question.getQuestionHelp();
+        writeSize(help);
+        if (help != null) {
+            for (QuestionHelp questionHelp : help) {
+                writeString(questionHelp.getType());
+                writeString(questionHelp.getText());
+                writeString(questionHelp.getValue());
+                writeAltTexts(questionHelp.getAltTextMap().values());
+            }
+        }
+
+        List<Option> options = question.getOptions();
+        writeSize(options);
+        if (options != null) {
+            for (Option option : options) {
+                writeString(option.getText());
+                writeString(option.getCode());
+                out.writeBoolean(option.isOther());
+                writeAltTexts(option.getAltTextMap().values());
+            }
+        }
+
+        List<Dependency> dependencies = question.getDependencies();
+        writeSize(dependencies);
+        if (dependencies != null) {
+            for (Dependency dependency : dependencies) {
+                writeString(dependency.getQuestion());
+                writeString(dependency.getAnswer());
+            }
+        }
+
+        List<ScoringRule> scoringRules = question.getScoringRules();
+        writeSize(scoringRules);
+        if (scoringRules != null) {
+            for (ScoringRule rule : scoringRules) {
+                writeString(rule.getType());
+                writeString(rule.getMin());
+                writeString(rule.getMax());
+                writeString(rule.getText());
+                writeString(rule.getValue());
+            }
+        }
+
+        List<Level> levels = question.getLevels();
+        writeSize(levels);
+        if (levels != null) {
+            for (Level level : levels) {
+                writeString(level.getText());
+                writeAltTexts(level.getAltTextMap().values());
+            }
+        }
+    }
+
+    private int getFlags(Question question) {
+        int flags = 0;
+        flags |= question.isMandatory() ? MANDATORY : 0;
+        flags |= question.isAllowOther() ? ALLOW_OTHER : 0;
+        flags |= question.isAllowMultiple() ? ALLOW_MULTIPLE : 0;
+        flags |= question.isLocked() ? LOCKED : 0;
+        flags |= question.useStrength() ? USE_STRENGTH : 0;
+        flags |= question.isLocaleName() ? LOCALE_NAME : 0;
+        flags |= question.isLocaleLocation() ? LOCALE_LOCATION : 0;
+        flags |= question.isDoubleEntry() ? DOUBLE_ENTRY : 0;
+        flags |= question.useExternalSource() ? EXTERNAL_SOURCE : 0;
+        flags |= question.isAllowPoints() ? ALLOW_POINTS : 0;
+        flags |= question.isAllowLine() ? ALLOW_LINE : 0;
+        flags |= question.isAllowPolygon() ? ALLOW_POLYGON : 0;
+        return flags;
+    }
+
+    private void writeValidationRule(@Nullable ValidationRule rule) throws IOException {
+        out.writeBoolean(rule != null);
+        if (rule == null) {
+            return;
+        }
+        writeString(rule.getValidationType());
+
+        Integer maxLength = rule.getMaxLength();
+        out.writeBoolean(maxLength != null);
+        if (maxLength != null) {
+            out.writeInt(maxLength);
+        }
+        writeBoolean(rule.getAllowSigned());
+        writeBoolean(rule.getAllowDecimal());
+        writeDouble(rule.getMinVal());
+        writeDouble(rule.getMaxVal());
+    }
+
+    private void writeAltTexts(Collection<AltText> altTexts) throws IOException {
+        writeVarInt(altTexts.size());
+        for (AltText altText : altTexts) {
+            writeString(altText.getLanguage());
+            writeString(altText.getType());
+            writeString(altText.getText());
+        }
+    }
+
+    /**
+     * Lists are written as size + 1, reserving 0 for null lists
+     */
+    private void writeSize(@Nullable List<?> list) throws IOException {
+        writeVarInt(list == null ? 0 : list.size() + 1);
+    }
+
+    private void writeBoolean(@Nullable Boolean value) throws IOException {
+        out.writeByte(value == null ? -1 : (value ? 1 : 0));
+    }
+
+    private void writeDouble(@Nullable Double value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeDouble(value);
+        }
+    }
+
+    private void writeString(@Nullable String value) throws IOException {
+        if (value == null) {
+            writeVarInt(CompiledSurveyFormat.STRING_NULL);
+            return;
+        }
+        Integer index = strings.get(value);
+        if (index != null) {
+            writeVarInt(index + CompiledSurveyFormat.STRING_REF_OFFSET);
+            return;
+        }
+        strings.put(value, strings.size());
+        byte[] bytes = value.getBytes(CompiledSurveyFormat.CHARSET);
+        writeVarInt(CompiledSurveyFormat.STRING_NEW);
+        writeVarInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.serialization.geo;
+
+interface GeoJson {
+
+    String TYPE = "type";
+    String GEOMETRY = "geometry";
+    String COORDINATES = "coordinates";
+    String FEATURES = "features";
+    String PROPERTIES = "properties";
+
+    String TYPE_FEATURE = "Feature";
+    String TYPE_FEATURE_COLLECTION = "FeatureCollection";
+    String TYPE_POLYGON = "Polygon";
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.serialization.geo;
+
+import android.support.annotation.NonNull;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import org.akvo.flow.domain.geometry.Geometry;
+import org.akvo.flow.domain.geometry.Vertices;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streams the geometries out of a GeoJSON feature collection, reading the coordinates straight
+ * into {@link Vertices}. Only the first (outer) ring of polygons is read, and properties are
+ * ignored, for they are recomputed from the geometries.
+ * GeoJSON reference: http://geojson.org/geojson-spec.html
+ */
+public class GeoJsonReader {
+
+    private final JsonReader json;
+
+    public GeoJsonReader(@NonNull Reader reader) {
+        this.json = new JsonReader(reader);
+    }
+
+    /**
+     * @return the geometries of the collection, with their GeoJSON type
+     * @throws IOException if the collection is not valid JSON, or is not structured as expected
+     */
+    @NonNull
+    public List<Geometry> readFeatureCollection() throws IOException {
+        List<Geometry> geometries = new ArrayList<>();
+        try {
+            json.beginObject();
+            while (json.hasNext()) {
+                if (GeoJson.FEATURES.equals(json.nextName()) && json.peek() != JsonToken.NULL) {
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        Geometry geometry = readFeature();
+                        if (geometry != null) {
+                            geometries.add(geometry);
+                        }
+                    }
+                    json.endArray();
+                } else {
+                    json.skipValue();
+                }
+            }
+            json.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Unexpected GeoJSON structure", e);
+        }
+        return geometries;
+    }
+
+    private Geometry readFeature() throws IOException {
+        Geometry geometry = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            if (GeoJson.GEOMETRY.equals(json.nextName()) && json.peek() != JsonToken.NULL) {
+                geometry = readGeometry();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+        return geometry;
+    }
+
+    private Geometry readGeometry() throws IOException {
+        String type = null;
+        Coordinates coordinates = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (GeoJson.TYPE.equals(name)) {
+                type = json.nextString();
+            } else if (GeoJson.COORDINATES.equals(name)) {
+                coordinates = readCoordinates();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+
+        if (coordinates == null) {
+            return null;
+        }
+        boolean polygon = GeoJson.TYPE_POLYGON.equals(type);
+        if (polygon) {
+            // Drop the closing point, duplicate of the first one
+            coordinates.size = Math.max(0, coordinates.size - 1);
+        }
+        Vertices vertices = new Vertices(polygon, coordinates.size);
+        for (int i = 0; i < coordinates.size; i++) {
+            vertices.add(coordinates.values[2 * i + 1], coordinates.values[2 * i]);
+        }
+        return new Geometry(type, vertices);
+    }
+
+    /**
+     * Read a list of positions, or the first one of a list of rings
+     */
+    private Coordinates readCoordinates() throws IOException {
+        Coordinates coordinates = new Coordinates();
+        json.beginArray();
+        if (json.hasNext() && json.peek() != JsonToken.BEGIN_ARRAY) {
+            // A single position
+            readPosition(coordinates);
+            return coordinates;
+        }
+        if (json.hasNext()) {
+            json.beginArray();
+            if (json.hasNext() && json.peek() == JsonToken.BEGIN_ARRAY) {
+                // Rings. Only the outer one is read.
+                readPositions(coordinates);
+                json.endArray();
+                while (json.hasNext()) {
+                    json.skipValue();
+                }
+            } else if (json.hasNext()) {
+                // Positions, the first one is already open
+                readPosition(coordinates);
+                readPositions(coordinates);
+            } else {
+                json.endArray();// Empty ring
+            }
+        }
+        json.endArray();
+        return coordinates;
+    }
+
+    private void readPositions(Coordinates coordinates) throws IOException {
+        while (json.hasNext()) {
+            json.beginArray();
+            readPosition(coordinates);
+        }
+    }
+
+    /**
+     * Read the remainder of an open [lon, lat(, alt)] array
+     */
+    private void readPosition(Coordinates coordinates) throws IOException {
+        double longitude = json.nextDouble();
+        double latitude = json.nextDouble();
+        while (json.hasNext()) {
+            json.skipValue();// Altitude
+        }
+        json.endArray();
+        coordinates.add(longitude, latitude);
+    }
+
+    private static class Coordinates {
+
+        double[] values = new double[32];
+        int size;
+
+        void add(double longitude, double latitude) {
+            if (2 * size + 2 > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[2 * size] = longitude;
+            values[2 * size + 1] = latitude;
+            size++;
+        }
+    }
+}
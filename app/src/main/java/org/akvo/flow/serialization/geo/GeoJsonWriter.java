@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.serialization.geo;
+
+import android.support.annotation.NonNull;
+
+import com.google.gson.stream.JsonWriter;
+
+import org.akvo.flow.domain.geometry.Vertices;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Streams a GeoJSON feature collection, writing the coordinates straight from {@link Vertices}.
+ * The output matches the one previously built with org.json: integral coordinates are written
+ * without decimals, and polygons are a single 'LinearRing', closed by repeating the first
+ * point at the end.
+ * GeoJSON reference: http://geojson.org/geojson-spec.html
+ * <p/>
+ * The underlying writer is flushed, but never closed.
+ */
+public class GeoJsonWriter {
+
+    private final JsonWriter json;
+
+    public GeoJsonWriter(@NonNull Writer writer) {
+        this.json = new JsonWriter(writer);
+    }
+
+    public void beginFeatureCollection() throws IOException {
+        json.beginObject();
+        json.name(GeoJson.TYPE).value(GeoJson.TYPE_FEATURE_COLLECTION);
+        json.name(GeoJson.FEATURES).beginArray();
+    }
+
+    /**
+     * @param type       GeoJSON geometry type
+     * @param properties property values, by key, in the order they are written
+     */
+    public void writeFeature(@NonNull String type, @NonNull Vertices vertices,
+            @NonNull Map<String, String> properties) throws IOException {
+        json.beginObject();
+        json.name(GeoJson.TYPE).value(GeoJson.TYPE_FEATURE);
+
+        json.name(GeoJson.GEOMETRY).beginObject();
+        json.name(GeoJson.TYPE).value(type);
+        json.name(GeoJson.COORDINATES).beginArray();
+        boolean polygon = GeoJson.TYPE_POLYGON.equals(type);
+        if (polygon) {
+            json.beginArray();
+        }
+        for (int i = 0; i < vertices.size(); i++) {
+            writePosition(vertices, i);
+        }
+        if (polygon) {
+            if (!vertices.isEmpty()) {
+                writePosition(vertices, 0);
+            }
+            json.endArray();
+        }
+        json.endArray();
+        json.endObject();
+
+        json.name(GeoJson.PROPERTIES).beginObject();
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            json.name(property.getKey()).value(property.getValue());
+        }
+        json.endObject();
+
+        json.endObject();
+    }
+
+    public void endFeatureCollection() throws IOException {
+        json.endArray();
+        json.endObject();
+        json.flush();
+    }
+
+    private void writePosition(Vertices vertices, int index) throws IOException {
+        json.beginArray();
+        writeNumber(vertices.getLongitude(index));
+        writeNumber(vertices.getLatitude(index));
+        json.endArray();
+    }
+
+    private void writeNumber(double value) throws IOException {
+        long longValue = (long) value;
+        if (value == longValue) {
+            json.value(longValue);
+        } else {
+            json.value(value);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.serialization.response;
+
+import android.support.annotation.NonNull;
+
+import com.google.gson.stream.JsonWriter;
+
+import org.akvo.flow.domain.response.FormInstance;
+import org.akvo.flow.domain.response.Response;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+
+/**
+ * Streams a form instance as UTF-8 JSON, so responses can be written one by one as they are
+ * read from the database. The output is the same Gson produces for a FormInstance with the
+ * default configuration: fields in declaration order, null fields skipped and html characters
+ * escaped.
+ * <p/>
+ * The underlying stream is flushed, but never closed.
+ */
+public class FormInstanceJsonWriter {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final JsonWriter json;
+
+    public FormInstanceJsonWriter(@NonNull OutputStream out) {
+        this.json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, UTF_8)));
+        this.json.setHtmlSafe(true);
+        this.json.setSerializeNulls(false);
+    }
+
+    /**
+     * Writes every field of the form instance, except the responses
+     */
+    public void beginFormInstance(@NonNull FormInstance formInstance) throws IOException {
+        json.beginObject();
+        json.name("uuid").value(formInstance.getUUID());
+        json.name("dataPointId").value(formInstance.getDataPointId());
+        json.name("deviceId").value(formInstance.getDeviceId());
+        json.name("username").value(formInstance.getUsername());
+        json.name("email").value(formInstance.getEmail());
+        json.name("formId").value(formInstance.getFormId());
+        json.name("submissionDate").value(formInstance.getSubmissionDate());
+        json.name("duration").value(formInstance.getDuration());
+    }
+
+    public void beginResponses() throws IOException {
+        json.name("responses").beginArray();
+    }
+
+    public void writeResponse(@NonNull Response response) throws IOException {
+        json.beginObject();
+        json.name("questionId").value(response.getQuestionId());
+        json.name("answerType").value(response.getAnswerType());
+        json.name("value").value(response.getValue());
+        json.name("iteration").value(response.getIteration());
+        json.endObject();
+    }
+
+    public void endResponses() throws IOException {
+        json.endArray();
+    }
+
+    public void endFormInstance() throws IOException {
+        json.endObject();
+        json.flush();
+    }
+}
@@ -28,6 +28,7 @@ import android.support.v4.content.LocalBroadcastManager;
 import android.text.TextUtils;
 
 import org.akvo.flow.R;
+import org.akvo.flow.data.dao.SurveyDao;
 import org.akvo.flow.data.database.SurveyDbDataSource;
 import org.akvo.flow.domain.Survey;
 import org.akvo.flow.domain.SurveyMetadata;
@@ -221,6 +222,9 @@ public class BootstrapService extends IntentService {
 
         // Save the Survey, SurveyGroup, and languages.
         updateSurveyStorage(survey);
+
+        // Compile the form now, so it does not need to be parsed when it is first opened
+        SurveyDao.compileSurvey(survey, surveyFile);
     }
 
     @Nullable
@@ -31,7 +31,9 @@ import android.util.Base64;
 import org.akvo.flow.BuildConfig;
 import org.akvo.flow.R;
 import org.akvo.flow.api.FlowApi;
+import org.akvo.flow.api.ProcessingNotifier;
 import org.akvo.flow.api.S3Api;
+import org.akvo.flow.app.FlowApp;
 import org.akvo.flow.data.database.SurveyDbDataSource;
 import org.akvo.flow.data.preference.Prefs;
 import org.akvo.flow.database.ResponseColumns;
@@ -40,17 +42,20 @@ import org.akvo.flow.database.SurveyInstanceStatus;
 import org.akvo.flow.database.TransmissionStatus;
 import org.akvo.flow.database.UserColumns;
 import org.akvo.flow.domain.FileTransmission;
+import org.akvo.flow.domain.MultipartUpload;
 import org.akvo.flow.domain.Survey;
 import org.akvo.flow.domain.response.FormInstance;
 import org.akvo.flow.domain.response.Response;
 import org.akvo.flow.exception.HttpException;
+import org.akvo.flow.serialization.response.FormInstanceJsonWriter;
+import org.akvo.flow.util.ChecksummedFile;
 import org.akvo.flow.util.ConnectivityStateManager;
 import org.akvo.flow.util.ConstantUtil;
 import org.akvo.flow.util.FileUtil;
 import org.akvo.flow.util.FileUtil.FileType;
-import org.akvo.flow.util.GsonMapper;
 import org.akvo.flow.util.NotificationHelper;
 import org.akvo.flow.util.StringUtil;
+import org.akvo.flow.util.image.MediaProcessor;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -58,14 +63,20 @@ import org.json.JSONObject;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.security.DigestOutputStream;
 import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.Adler32;
 import java.util.zip.CheckedOutputStream;
 import java.util.zip.ZipEntry;
@@ -73,6 +84,7 @@ import java.util.zip.ZipOutputStream;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
+import javax.inject.Inject;
 
 import timber.log.Timber;
 
@@ -116,14 +128,31 @@ public class DataSyncService extends IntentService {
      */
     private static final int FILE_UPLOAD_RETRIES = 2;
 
+    /**
+     * Time to wait for the captured media still being processed, before exporting the forms
+     */
+    private static final long MEDIA_PROCESSING_TIMEOUT_MINUTES = 2;
+
+    @Inject
+    MediaProcessor mediaProcessor;
+
     private SurveyDbDataSource mDatabase;
     private Prefs preferences;
     private ConnectivityStateManager connectivityStateManager;
+    private S3Api s3Api;
+    private FlowApi flowApi;
 
     public DataSyncService() {
         super(TAG);
     }
 
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        FlowApp application = (FlowApp) getApplicationContext();
+        application.getApplicationComponent().inject(this);
+    }
+
     @Override
     protected void onHandleIntent(Intent intent) {
         try {
@@ -131,7 +160,14 @@ public class DataSyncService extends IntentService {
             mDatabase.open();
             preferences = new Prefs(getApplicationContext());
             connectivityStateManager = new ConnectivityStateManager(getApplicationContext());
-            exportSurveys();// Create zip files, if necessary
+            // A submitted form may still have its media, or media recovered from a previous
+            // run, being processed. Its export is postponed until they are ready
+            if (mediaProcessor.awaitProcessing(MEDIA_PROCESSING_TIMEOUT_MINUTES,
+                    TimeUnit.MINUTES)) {
+                exportSurveys();// Create zip files, if necessary
+            } else {
+                Timber.w("Media files still being processed. Export postponed");
+            }
 
             if (connectivityStateManager.isConnectionAvailable(preferences
                     .getBoolean(Prefs.KEY_CELL_UPLOAD, Prefs.DEFAULT_VALUE_CELL_UPLOAD))) {
@@ -151,9 +187,9 @@ public class DataSyncService extends IntentService {
     // ================================================================= //
 
     private void exportSurveys() {
-        // First off, ensure surveys marked as 'exported' are indeed found in the external storage.
-        // Missing surveys will be set to 'submitted', so the next step re-creates these files too.
-        checkExportedFiles();
+        // First off, ensure the zip files waiting to be uploaded are still found in the external
+        // storage. Missing ones will be set to 'submitted', so the next step re-creates them too.
+        checkPendingExports();
 
         for (long id : getUnexportedSurveys()) {
             try {
@@ -170,7 +206,8 @@ public class DataSyncService extends IntentService {
 
         if (zipFileData != null) {
             // Create new entries in the transmission queue
-            mDatabase.createTransmission(id, zipFileData.formId, zipFileData.filename);
+            mDatabase.createTransmission(id, zipFileData.formId, zipFileData.filename,
+                    zipFileData.md5);
             updateSurveyStatus(id, SurveyInstanceStatus.EXPORTED);
 
             for (String image : zipFileData.imagePaths) {
@@ -184,23 +221,26 @@ public class DataSyncService extends IntentService {
         return new File(FileUtil.getFilesDir(FileType.DATA), uuid + ConstantUtil.ARCHIVE_SUFFIX);
     }
 
-    private void checkExportedFiles() {
-        Cursor cursor = mDatabase.getSurveyInstancesByStatus(SurveyInstanceStatus.EXPORTED);
-        if (cursor != null) {
-            if (cursor.moveToFirst()) {
-                do {
-                    long id = cursor
-                            .getLong(cursor.getColumnIndexOrThrow(SurveyInstanceColumns._ID));
-                    String uuid = cursor
-                            .getString(cursor.getColumnIndexOrThrow(SurveyInstanceColumns.UUID));
-                    if (!getSurveyInstanceFile(uuid).exists()) {
-                        Timber.d("Exported file for survey %s not found. It's status " +
-                                "will be set to 'submitted', and will be reprocessed", uuid);
-                        updateSurveyStatus(id, SurveyInstanceStatus.SUBMITTED);
-                    }
-                } while (cursor.moveToNext());
+    /**
+     * Only the zip files of the pending transmissions are checked, as these are the ones about
+     * to be uploaded. Already synced instances don't need their files anymore, so the cost of
+     * this check depends on the upload backlog, not on the size of the history.
+     */
+    private void checkPendingExports() {
+        Set<Long> missing = new HashSet<>();
+        for (FileTransmission transmission : mDatabase.getUnSyncedTransmissions()) {
+            String filename = transmission.getFileName();
+            Long surveyInstanceId = transmission.getRespondentId();
+            if (surveyInstanceId != null && surveyInstanceId > 0 && filename != null
+                    && filename.endsWith(ConstantUtil.ARCHIVE_SUFFIX)
+                    && !new File(filename).exists()) {
+                Timber.d("Exported file %s not found. Its survey status will be set to "
+                        + "'submitted', and will be reprocessed", filename);
+                missing.add(surveyInstanceId);
             }
-            cursor.close();
+        }
+        for (long id : missing) {
+            updateSurveyStatus(id, SurveyInstanceStatus.SUBMITTED);
         }
     }
 
@@ -222,14 +262,11 @@ public class DataSyncService extends IntentService {
     }
 
     private ZipFileData formZip(long surveyInstanceId) {
+        Cursor data = mDatabase.getResponsesData(surveyInstanceId);
         try {
             ZipFileData zipFileData = new ZipFileData();
-            // Process form instance data and collect image filenames
-            FormInstance formInstance = processFormInstance(surveyInstanceId,
-                    zipFileData.imagePaths);
-
-            // Serialize form instance as JSON
-            zipFileData.data = new GsonMapper().write(formInstance, FormInstance.class);
+            // Read the form instance details. Responses are streamed into the zip file later on
+            FormInstance formInstance = readFormInstance(data);
             zipFileData.uuid = formInstance.getUUID();
             zipFileData.formId = formInstance.getFormId();
             if (TextUtils.isEmpty(zipFileData.formId)) {
@@ -254,14 +291,28 @@ public class DataSyncService extends IntentService {
             zipFileData.filename = fileName;
             Timber.i("Creating zip file: " + fileName);
             FileOutputStream fout = new FileOutputStream(zipFile);
-            CheckedOutputStream checkedOutStream = new CheckedOutputStream(fout, new Adler32());
+            // Compute the upload checksum while writing, so the file is not read again
+            MessageDigest md5Digest = MessageDigest.getInstance("MD5");
+            DigestOutputStream digestOutStream = new DigestOutputStream(fout, md5Digest);
+            CheckedOutputStream checkedOutStream = new CheckedOutputStream(digestOutStream,
+                    new Adler32());
             ZipOutputStream zos = new ZipOutputStream(checkedOutStream);
 
-            writeTextToZip(zos, zipFileData.data, SURVEY_DATA_FILE_JSON);
+            // Serialize the form instance as JSON, straight into the zip entry. The signature
+            // digest is fed from the same bytes
             String signingKeyString = BuildConfig.SIGNING_KEY;
-            if (!StringUtil.isNullOrEmpty(signingKeyString)) {
-                MessageDigest sha1Digest = MessageDigest.getInstance("SHA1");
-                byte[] digest = sha1Digest.digest(zipFileData.data.getBytes(UTF_8_CHARSET));
+            boolean sign = !StringUtil.isNullOrEmpty(signingKeyString);
+            MessageDigest sha1Digest = sign ? MessageDigest.getInstance("SHA1") : null;
+            Timber.i("Writing zip entry");
+            zos.putNextEntry(new ZipEntry(SURVEY_DATA_FILE_JSON));
+            OutputStream dataOutStream = sign ? new DigestOutputStream(zos, sha1Digest) : zos;
+            writeFormInstance(formInstance, data, new FormInstanceJsonWriter(dataOutStream),
+                    zipFileData.imagePaths);
+            zos.closeEntry();
+            Timber.i("Entry Complete");
+
+            if (sign) {
+                byte[] digest = sha1Digest.digest();
                 SecretKeySpec signingKey = new SecretKeySpec(
                         signingKeyString.getBytes(UTF_8_CHARSET),
                         SIGNING_ALGORITHM);
@@ -274,11 +325,16 @@ public class DataSyncService extends IntentService {
 
             final String checksum = "" + checkedOutStream.getChecksum().getValue();
             zos.close();
+            zipFileData.md5 = FileUtil.hexMd5(md5Digest.digest());
             Timber.i("Closed zip output stream for file: " + fileName + ". Checksum: " + checksum);
             return zipFileData;
         } catch (@NonNull IOException | NoSuchAlgorithmException | InvalidKeyException e) {
             Timber.e(e, e.getMessage());
             return null;
+        } finally {
+            if (data != null) {
+                data.close();
+            }
         }
     }
 
@@ -297,61 +353,68 @@ public class DataSyncService extends IntentService {
     }
 
     /**
-     * Iterate over the survey data returned from the database and populate the
-     * ZipFileData information, setting the UUID, Survey ID, image paths, and String data.
+     * Read the form instance details (UUID, Survey ID, submitter, etc) from the first non empty
+     * response. The responses themselves are not loaded.
      */
     @NonNull
-    private FormInstance processFormInstance(long surveyInstanceId,
-            @NonNull List<String> imagePaths) {
+    private FormInstance readFormInstance(@Nullable Cursor data) {
         FormInstance formInstance = new FormInstance();
-        List<Response> responses = new ArrayList<>();
-        Cursor data = mDatabase.getResponsesData(surveyInstanceId);
-
-        if (data != null && data.moveToFirst()) {
+        if (data == null || !data.moveToFirst()) {
+            return formInstance;
+        }
+        int answer_col = data.getColumnIndexOrThrow(ResponseColumns.ANSWER);
+        do {
+            // never send empty answers
+            if (getAnswerValue(data, answer_col) == null) {
+                continue;
+            }
             String deviceIdentifier = preferences
                     .getString(Prefs.KEY_DEVICE_IDENTIFIER, Prefs.DEFAULT_VALUE_DEVICE_IDENTIFIER);
-            deviceIdentifier = cleanVal(deviceIdentifier);
+            formInstance.setUUID(data.getString(
+                    data.getColumnIndexOrThrow(SurveyInstanceColumns.UUID)));
+            formInstance.setFormId(data.getString(
+                    data.getColumnIndexOrThrow(SurveyInstanceColumns.SURVEY_ID)));
+            formInstance.setDataPointId(data.getString(
+                    data.getColumnIndexOrThrow(SurveyInstanceColumns.RECORD_ID)));
+            formInstance.setDeviceId(cleanVal(deviceIdentifier));
+            formInstance.setSubmissionDate(data.getLong(
+                    data.getColumnIndexOrThrow(SurveyInstanceColumns.SUBMITTED_DATE)));
+            formInstance.setDuration(data.getLong(
+                    data.getColumnIndexOrThrow(SurveyInstanceColumns.DURATION)) / 1000);
+            formInstance.setUsername(cleanVal(data.getString(
+                    data.getColumnIndexOrThrow(UserColumns.NAME))));
+            formInstance.setEmail(cleanVal(data.getString(
+                    data.getColumnIndexOrThrow(UserColumns.EMAIL))));
+            break;
+        } while (data.moveToNext());
+        return formInstance;
+    }
+
+    /**
+     * Iterate over the survey data returned from the database, writing each response as it is
+     * read and collecting the image paths.
+     */
+    private void writeFormInstance(@NonNull FormInstance formInstance, @Nullable Cursor data,
+            @NonNull FormInstanceJsonWriter writer, @NonNull List<String> imagePaths)
+            throws IOException {
+        writer.beginFormInstance(formInstance);
+        if (data != null && data.moveToFirst()) {
             // evaluate indices once, outside the loop
-            int survey_fk_col = data.getColumnIndexOrThrow(SurveyInstanceColumns.SURVEY_ID);
             int question_fk_col = data.getColumnIndexOrThrow(ResponseColumns.QUESTION_ID);
             int answer_type_col = data.getColumnIndexOrThrow(ResponseColumns.TYPE);
             int answer_col = data.getColumnIndexOrThrow(ResponseColumns.ANSWER);
             int filename_col = data.getColumnIndexOrThrow(ResponseColumns.FILENAME);
             int iterationColumn = data.getColumnIndexOrThrow(ResponseColumns.ITERATION);
-            int disp_name_col = data.getColumnIndexOrThrow(UserColumns.NAME);
-            int email_col = data.getColumnIndexOrThrow(UserColumns.EMAIL);
-            int submitted_date_col = data
-                    .getColumnIndexOrThrow(SurveyInstanceColumns.SUBMITTED_DATE);
-            int uuid_col = data.getColumnIndexOrThrow(SurveyInstanceColumns.UUID);
-            int duration_col = data.getColumnIndexOrThrow(SurveyInstanceColumns.DURATION);
-            int localeId_col = data.getColumnIndexOrThrow(SurveyInstanceColumns.RECORD_ID);
-            // Note: No need to query the surveyInstanceId, we already have that value
 
+            // A single response instance is reused for every row
+            Response response = new Response();
+            writer.beginResponses();
             do {
-                // Sanitize answer value. No newlines or tabs!
-                String value = data.getString(answer_col);
-                if (value != null) {
-                    value = value.replace("\n", SPACE);
-                    value = value.replace(DELIMITER, SPACE);
-                    value = value.trim();
-                }
+                String value = getAnswerValue(data, answer_col);
                 // never send empty answers
-                if (value == null || value.length() == 0) {
+                if (value == null) {
                     continue;
                 }
-                final long submitted_date = data.getLong(submitted_date_col);
-                final long surveyal_time = (data.getLong(duration_col)) / 1000;
-
-                if (formInstance.getUUID() == null) {
-                    formInstance.setUUID(data.getString(uuid_col));
-                    formInstance.setFormId(data.getString(survey_fk_col));
-                    formInstance.setDataPointId(data.getString(localeId_col));
-                    formInstance.setDeviceId(deviceIdentifier);
-                    formInstance.setSubmissionDate(submitted_date);
-                    formInstance.setDuration(surveyal_time);
-                    formInstance.setUsername(cleanVal(data.getString(disp_name_col)));
-                    formInstance.setEmail(cleanVal(data.getString(email_col)));
-                }
 
                 // If the response has any file attached, enqueue it to the image list
                 String filename = data.getString(filename_col);
@@ -363,7 +426,7 @@ public class DataSyncService extends IntentService {
                 String type = data.getString(answer_type_col);
                 if (ConstantUtil.IMAGE_RESPONSE_TYPE.equals(type)
                         || ConstantUtil.VIDEO_RESPONSE_TYPE.equals(type)) {
-                    if (!TextUtils.isEmpty(value) && new File(value).exists()) {
+                    if (new File(value).exists()) {
                         imagePaths.add(value);
                     }
                 }
@@ -377,19 +440,31 @@ public class DataSyncService extends IntentService {
                     iteration = Integer.parseInt(tokens[1]);
                 }
                 iteration = Math.max(iteration, 0);
-                Response response = new Response();
                 response.setQuestionId(rawQuestionId);
                 response.setAnswerType(type);
                 response.setValue(value);
                 response.setIteration(iteration);
-                responses.add(response);
+                writer.writeResponse(response);
             } while (data.moveToNext());
-
-            formInstance.setResponses(responses);
-            data.close();
+            writer.endResponses();
         }
+        writer.endFormInstance();
+    }
 
-        return formInstance;
+    /**
+     * Sanitize answer value. No newlines or tabs!
+     *
+     * @return the sanitized value, or null if it is empty
+     */
+    @Nullable
+    private String getAnswerValue(@NonNull Cursor data, int column) {
+        String value = data.getString(column);
+        if (value != null) {
+            value = value.replace("\n", SPACE);
+            value = value.replace(DELIMITER, SPACE);
+            value = value.trim();
+        }
+        return TextUtils.isEmpty(value) ? null : value;
     }
 
     // replace troublesome chars in user-provided values
@@ -422,8 +497,14 @@ public class DataSyncService extends IntentService {
      * not succeed in those attempts, it will be marked as failed, and retried in the next sync.
      * Files are uploaded to S3 and the response's ETag is compared against a locally computed
      * MD5 checksum. Only if these fields match the transmission will be considered successful.
+     * Uploads run concurrently, bounded by the limit configured for the current connection type,
+     * and zip files are always sent ahead of media files. Processing notifications for the
+     * uploaded files are sent in batches, grouped by form.
      */
     private void syncFiles() {
+        s3Api = new S3Api(this);
+        flowApi = new FlowApi(getApplicationContext());
+
         // Check notifications for this device. This will update the status of the transmissions
         // if necessary, or mark form as deleted.
         checkDeviceNotifications();
@@ -434,20 +515,60 @@ public class DataSyncService extends IntentService {
             return;
         }
 
-        Set<Long> syncedSurveys = new HashSet<>();// Successful transmissions
-        Set<Long> unsyncedSurveys = new HashSet<>();// Unsuccessful transmissions
+        // Successful transmissions
+        final Set<Long> syncedSurveys = Collections.synchronizedSet(new HashSet<Long>());
+        // Unsuccessful transmissions
+        final Set<Long> unsyncedSurveys = Collections.synchronizedSet(new HashSet<Long>());
+        // Uploaded transmissions, waiting for the processing notification. Keyed by id, as
+        // files from different folders may share the same name
+        final Map<Long, FileTransmission> uploadedFiles = new ConcurrentHashMap<>();
+
+        final ProcessingNotifier notifier = flowApi
+                .createProcessingNotifier(new ProcessingNotifier.Listener() {
+                    @Override
+                    public void onNotified(@NonNull String formId, @NonNull String fileName,
+                            long id, int status) {
+                        FileTransmission transmission = uploadedFiles.remove(id);
+                        if (transmission == null) {
+                            return;
+                        }
+                        if (onProcessingNotified(transmission, status)) {
+                            syncedSurveys.add(transmission.getRespondentId());
+                        } else {
+                            unsyncedSurveys.add(transmission.getRespondentId());
+                        }
+                    }
+                });
+
+        FileUploadPool uploadPool = new FileUploadPool(getMaxConcurrentUploads());
+        FileUploadPool.Result result = uploadPool.upload(transmissions,
+                new FileUploadPool.Uploader() {
+            @Override
+            public void upload(@NonNull FileTransmission transmission) {
+                String action = syncFile(transmission.getFileName(), transmission.getMd5());
+                if (action != null) {
+                    String destName = getDestName(transmission.getFileName());
+                    uploadedFiles.put(transmission.getId(), transmission);
+                    notifier.add(transmission.getFormId(), action, destName,
+                            transmission.getId());
+                } else {
+                    unsyncedSurveys.add(transmission.getRespondentId());
+                }
+            }
+        });
+
+        // Send the remaining processing notifications, even if the upload was interrupted
+        notifier.flush();
+        Timber.d("%d transmissions processed, %d processing notification requests sent",
+                transmissions.size(), notifier.getRequestCount());
 
-        final int totalFiles = transmissions.size();
+        if (!result.isCompleted()) {
+            // Pending transmissions are left untouched, they will be retried in the next sync
+            return;
+        }
 
-        for (int i = 0; i < totalFiles; i++) {
-            FileTransmission transmission = transmissions.get(i);
-            final long surveyInstanceId = transmission.getRespondentId();
-            if (syncFile(transmission.getFileName(), transmission.getFormId()
-            )) {
-                syncedSurveys.add(surveyInstanceId);
-            } else {
-                unsyncedSurveys.add(surveyInstanceId);
-            }
+        for (FileTransmission transmission : result.getFailed()) {
+            unsyncedSurveys.add(transmission.getRespondentId());
         }
 
         // Retain successful survey instances, to mark them as SYNCED
@@ -463,9 +584,25 @@ public class DataSyncService extends IntentService {
         }
     }
 
-    private boolean syncFile(@NonNull String filename, @NonNull String formId) {
+    private int getMaxConcurrentUploads() {
+        if (connectivityStateManager.isWifiConnected()) {
+            return preferences.getInt(Prefs.KEY_UPLOAD_CONCURRENCY_WIFI,
+                    Prefs.DEFAULT_VALUE_UPLOAD_CONCURRENCY_WIFI);
+        }
+        return preferences.getInt(Prefs.KEY_UPLOAD_CONCURRENCY_CELL,
+                Prefs.DEFAULT_VALUE_UPLOAD_CONCURRENCY_CELL);
+    }
+
+    /**
+     * Upload a file. Called from the upload worker threads
+     *
+     * @return the processing notification action for the uploaded file, or null if the upload
+     * failed
+     */
+    @Nullable
+    private String syncFile(@NonNull String filename, @Nullable String md5) {
         if (TextUtils.isEmpty(filename) || filename.lastIndexOf(".") < 0) {
-            return false;
+            return null;
         }
 
         String contentType, dir, action;
@@ -486,40 +623,52 @@ public class DataSyncService extends IntentService {
                 isPublic = false;
                 break;
             default:
-                return false;
+                return null;
         }
 
         // Temporarily set the status to 'IN PROGRESS'. Transmission status should
-        // *always* be updated with the outcome of the upload operation.
+        // *always* be updated with the outcome of the upload operation, or the outcome of
+        // the processing notification if the upload succeeds.
         mDatabase.updateTransmissionHistory(filename, TransmissionStatus.IN_PROGRESS);
 
-        int status = TransmissionStatus.FAILED;
-        boolean synced = false;
-
-        if (sendFile(filename, dir, contentType, isPublic, FILE_UPLOAD_RETRIES)) {
-            FlowApi api = new FlowApi(getApplicationContext());
-            switch (api.sendProcessingNotification(formId, action,
-                    getDestName(filename))) {
-                case HttpURLConnection.HTTP_OK:
-                    status = TransmissionStatus.SYNCED;// Mark everything completed
-                    synced = true;
-                    break;
-                case HttpURLConnection.HTTP_NOT_FOUND:
-                    // This form has been deleted in the dashboard, thus we cannot sync it
-                    displayErrorNotification(formId);
-                    status = TransmissionStatus.FORM_DELETED;
-                    break;
-                default:// Any error code
-                    break;
-            }
+        if (sendFile(filename, dir, contentType, isPublic, md5, FILE_UPLOAD_RETRIES)) {
+            return action;
         }
+        mDatabase.updateTransmissionHistory(filename, TransmissionStatus.FAILED);
+        return null;
+    }
 
-        mDatabase.updateTransmissionHistory(filename, status);
+    /**
+     * Update the transmission status with the outcome of its processing notification
+     *
+     * @return true if the file has been successfully synced
+     */
+    private boolean onProcessingNotified(@NonNull FileTransmission transmission, int status) {
+        int transmissionStatus = TransmissionStatus.FAILED;
+        boolean synced = false;
+        switch (status) {
+            case HttpURLConnection.HTTP_OK:
+                transmissionStatus = TransmissionStatus.SYNCED;// Mark everything completed
+                synced = true;
+                break;
+            case HttpURLConnection.HTTP_NOT_FOUND:
+                // This form has been deleted in the dashboard, thus we cannot sync it
+                displayErrorNotification(transmission.getFormId());
+                transmissionStatus = TransmissionStatus.FORM_DELETED;
+                break;
+            default:// Any error code
+                break;
+        }
+        mDatabase.updateTransmissionHistory(transmission.getFileName(), transmissionStatus);
         return synced;
     }
 
+    /**
+     * @param md5 hex encoded checksum cached with the transmission, if any. If not present, it
+     *            will be computed and cached, so further attempts do not need to compute it again
+     */
     private boolean sendFile(@NonNull String fileAbsolutePath, String dir, String contentType,
-            boolean isPublic, int retries) {
+            boolean isPublic, @Nullable String md5, int retries) {
         final File file = new File(fileAbsolutePath);
         if (!file.exists()) {
             return false;
@@ -533,11 +682,25 @@ public class DataSyncService extends IntentService {
             }
 
             final String objectKey = dir + fileName;
-            S3Api s3Api = new S3Api(this);
-            ok = s3Api.put(objectKey, file, contentType, isPublic);
+            if (file.length() > S3Api.MULTIPART_THRESHOLD) {
+                ok = sendFileInParts(fileAbsolutePath, objectKey, file, contentType, isPublic);
+            } else {
+                ChecksummedFile checksummedFile = new ChecksummedFile(file,
+                        FileUtil.hexToBytes(md5));
+                if (checksummedFile.isChecksumPending()) {
+                    md5 = FileUtil.hexMd5(checksummedFile.getMd5());
+                    mDatabase.updateTransmissionChecksum(fileAbsolutePath, md5);
+                }
+                ok = s3Api.put(objectKey, checksummedFile, contentType, isPublic);
+                if (checksummedFile.isChecksumPending()) {
+                    // The checksum was rejected. Compute it again from the file contents
+                    md5 = null;
+                    mDatabase.updateTransmissionChecksum(fileAbsolutePath, null);
+                }
+            }
             if (!ok && retries > 0) {
                 // If we have not expired all the retry attempts, try again.
-                ok = sendFile(fileAbsolutePath, dir, contentType, isPublic, --retries);
+                ok = sendFile(fileAbsolutePath, dir, contentType, isPublic, md5, --retries);
             }
         } catch (IOException e) {
             Timber.e(e, "Could not send file: " + fileAbsolutePath + ". " + e.getMessage());
@@ -546,6 +709,32 @@ public class DataSyncService extends IntentService {
         return ok;
     }
 
+    /**
+     * Upload big files (videos) in parts. The upload id and the confirmed parts are stored in
+     * the transmission, so a failed upload resumes from the last confirmed part instead of
+     * re-sending the whole file.
+     */
+    private boolean sendFileInParts(@NonNull final String fileAbsolutePath, String objectKey,
+            File file, String contentType, boolean isPublic) throws IOException {
+        MultipartUpload upload = mDatabase.getMultipartUpload(fileAbsolutePath);
+        if (upload.isStarted()) {
+            Timber.d("Resuming upload of %s from part %d", fileAbsolutePath,
+                    upload.getPartCount() + 1);
+        }
+        boolean ok = s3Api.putMultipart(objectKey, file, contentType, isPublic, upload,
+                new S3Api.MultipartUploadListener() {
+                    @Override
+                    public void onUploadUpdated(@NonNull MultipartUpload upload) {
+                        mDatabase.updateMultipartUpload(fileAbsolutePath, upload);
+                    }
+                });
+        if (ok) {
+            upload.reset();
+            mDatabase.updateMultipartUpload(fileAbsolutePath, upload);
+        }
+        return ok;
+    }
+
     /**
      * Request missing files (images) in the datastore.
      * The server will provide us with a list of missing images,
@@ -556,7 +745,6 @@ public class DataSyncService extends IntentService {
      * 2- Update the status of those files in the local database
      */
     private void checkDeviceNotifications() {
-        FlowApi flowApi = new FlowApi(getApplicationContext());
         try {
             String[] surveyIds = mDatabase.getSurveyIds();
             JSONObject jResponse = flowApi.getDeviceNotification(surveyIds);
@@ -696,7 +884,7 @@ public class DataSyncService extends IntentService {
         String filename = null;
 
         @Nullable
-        String data = null;
+        String md5 = null;
 
         final List<String> imagePaths = new ArrayList<>();
     }
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.service;
+
+import android.support.annotation.NonNull;
+
+import org.akvo.flow.domain.FileTransmission;
+import org.akvo.flow.util.ConstantUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import timber.log.Timber;
+
+/**
+ * Bounded worker pool used to upload the pending file transmissions. Zip data files are always
+ * handed to the workers ahead of media files, so form submissions reach the server as soon
+ * as possible even when hundreds of images are queued behind them.
+ */
+class FileUploadPool {
+
+    private static final int PRIORITY_DATA = 0;
+    private static final int PRIORITY_MEDIA = 1;
+
+    private final int maxConcurrentUploads;
+
+    FileUploadPool(int maxConcurrentUploads) {
+        this.maxConcurrentUploads = Math.max(1, maxConcurrentUploads);
+    }
+
+    /**
+     * Uploads the given transmissions, blocking the calling thread until all of them have been
+     * processed.
+     */
+    @NonNull
+    Result upload(@NonNull List<FileTransmission> transmissions, @NonNull Uploader uploader) {
+        List<FileTransmission> failed = Collections.synchronizedList(
+                new ArrayList<FileTransmission>());
+        if (transmissions.isEmpty()) {
+            return new Result(true, failed);
+        }
+
+        // The executor queue is FIFO, so submitting in priority order is enough
+        List<FileTransmission> queue = new ArrayList<>(transmissions);
+        Collections.sort(queue, new PriorityComparator());
+
+        final CountDownLatch pending = new CountDownLatch(queue.size());
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(maxConcurrentUploads, queue.size()));
+        for (FileTransmission transmission : queue) {
+            executor.execute(new UploadTask(transmission, uploader, pending, failed));
+        }
+        executor.shutdown();
+
+        try {
+            pending.await();
+            return new Result(true, failed);
+        } catch (InterruptedException e) {
+            Timber.w("File upload interrupted, %d files left", pending.getCount());
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            return new Result(false, failed);
+        }
+    }
+
+    private static int priority(@NonNull FileTransmission transmission) {
+        String filename = transmission.getFileName();
+        if (filename != null && filename.endsWith(ConstantUtil.ARCHIVE_SUFFIX)) {
+            return PRIORITY_DATA;
+        }
+        return PRIORITY_MEDIA;
+    }
+
+    interface Uploader {
+
+        /**
+         * Called from a worker thread. Implementations are responsible for updating the
+         * transmission status. An exception marks the transmission as failed.
+         */
+        void upload(@NonNull FileTransmission transmission);
+    }
+
+    static class Result {
+
+        private final boolean completed;
+        private final List<FileTransmission> failed;
+
+        Result(boolean completed, List<FileTransmission> failed) {
+            this.completed = completed;
+            this.failed = failed;
+        }
+
+        /**
+         * @return false if the calling thread was interrupted before all the uploads finished
+         */
+        boolean isCompleted() {
+            return completed;
+        }
+
+        /**
+         * @return the transmissions whose upload threw an exception
+         */
+        @NonNull
+        List<FileTransmission> getFailed() {
+            synchronized (failed) {
+                return new ArrayList<>(failed);
+            }
+        }
+    }
+
+    /**
+     * Stable ordering: Collections.sort keeps the original order within the same priority
+     */
+    private static class PriorityComparator implements Comparator<FileTransmission> {
+
+        @Override
+        public int compare(FileTransmission lhs, FileTransmission rhs) {
+            int lhsPriority = priority(lhs);
+            int rhsPriority = priority(rhs);
+            return lhsPriority < rhsPriority ? -1 : (lhsPriority == rhsPriority ? 0 : 1);
+        }
+    }
+
+    private static class UploadTask implements Runnable {
+
+        private final FileTransmission transmission;
+        private final Uploader uploader;
+        private final CountDownLatch pending;
+        private final List<FileTransmission> failed;
+
+        UploadTask(FileTransmission transmission, Uploader uploader, CountDownLatch pending,
+                List<FileTransmission> failed) {
+            this.transmission = transmission;
+            this.uploader = uploader;
+            this.pending = pending;
+            this.failed = failed;
+        }
+
+        @Override
+        public void run() {
+            try {
+                uploader.upload(transmission);
+            } catch (Exception e) {
+                Timber.e(e, "Error uploading %s", transmission.getFileName());
+                failed.add(transmission);
+            } finally {
+                pending.countDown();
+            }
+        }
+    }
+}
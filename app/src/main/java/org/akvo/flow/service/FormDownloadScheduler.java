@@ -0,0 +1,340 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.service;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.akvo.flow.domain.Survey;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import timber.log.Timber;
+
+/**
+ * Downloads forms and their resources on a bounded worker pool. Each form is parsed once, right
+ * after it is downloaded, to collect the help media and cascade resources it references.
+ * Resources shared by several forms are only downloaded once.
+ * Workers only touch the network and the file system: every {@link Listener} callback, and
+ * thus every database write, happens on the thread calling {@link #download(List, List)}.
+ */
+class FormDownloadScheduler {
+
+    private final int maxConcurrentDownloads;
+    private final Downloader downloader;
+    private final Listener listener;
+
+    FormDownloadScheduler(int maxConcurrentDownloads, @NonNull Downloader downloader,
+            @NonNull Listener listener) {
+        this.maxConcurrentDownloads = Math.max(1, maxConcurrentDownloads);
+        this.downloader = downloader;
+        this.listener = listener;
+    }
+
+    /**
+     * Blocks the calling thread until all the downloads are finished
+     *
+     * @param outdatedForms forms to be downloaded and installed, along with their resources
+     * @param installedForms already installed forms whose resources are missing
+     * @return false if the calling thread was interrupted
+     */
+    boolean download(@NonNull List<Survey> outdatedForms, @NonNull List<Survey> installedForms) {
+        ExecutorService executor = Executors.newFixedThreadPool(maxConcurrentDownloads);
+        try {
+            Map<String, Set<String>> formResources = downloadForms(executor, outdatedForms,
+                    installedForms);
+            downloadResources(executor, formResources);
+            return true;
+        } catch (InterruptedException e) {
+            Timber.w("Form download interrupted");
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the resources referenced by each form, keyed by form id
+     */
+    private Map<String, Set<String>> downloadForms(ExecutorService executor,
+            List<Survey> outdatedForms, List<Survey> installedForms) throws InterruptedException {
+        CompletionService<FormResult> completionService = new ExecutorCompletionService<>(
+                executor);
+        for (Survey form : outdatedForms) {
+            completionService.submit(new FormTask(form, true));
+        }
+        for (Survey form : installedForms) {
+            completionService.submit(new FormTask(form, false));
+        }
+
+        Map<String, Set<String>> formResources = new LinkedHashMap<>();
+        int pending = outdatedForms.size() + installedForms.size();
+        for (int i = 0; i < pending; i++) {
+            FormResult result = getResult(completionService);
+            if (result.error != null) {
+                if (result.update) {
+                    listener.onFormFailed(result.form, result.error);
+                } else {
+                    Timber.e(result.error, "Could not parse form %s", result.form.getId());
+                }
+                continue;
+            }
+            if (result.update) {
+                listener.onFormDownloaded(result.form);
+            }
+            if (result.resources != null) {
+                formResources.put(result.form.getId(), result.resources);
+            }
+        }
+        return formResources;
+    }
+
+    private void downloadResources(ExecutorService executor,
+            Map<String, Set<String>> formResources) throws InterruptedException {
+        // Forms waiting for each distinct resource
+        Map<ResourceKey, List<String>> resources = new LinkedHashMap<>();
+        Map<String, Integer> pendingResources = new HashMap<>();
+        Map<String, Boolean> formSuccess = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : formResources.entrySet()) {
+            String formId = entry.getKey();
+            listener.onResourcesPending(formId);
+            if (entry.getValue().isEmpty()) {
+                listener.onResourcesDownloaded(formId, true);
+                continue;
+            }
+            pendingResources.put(formId, entry.getValue().size());
+            formSuccess.put(formId, true);
+            for (String resource : entry.getValue()) {
+                ResourceKey key = new ResourceKey(formId, resource);
+                List<String> forms = resources.get(key);
+                if (forms == null) {
+                    forms = new ArrayList<>();
+                    resources.put(key, forms);
+                }
+                forms.add(formId);
+            }
+        }
+
+        CompletionService<ResourceResult> completionService = new ExecutorCompletionService<>(
+                executor);
+        for (ResourceKey key : resources.keySet()) {
+            completionService.submit(new ResourceTask(key));
+        }
+        for (int i = 0; i < resources.size(); i++) {
+            ResourceResult result = getResult(completionService);
+            if (result.error != null) {
+                listener.onResourceFailed(result.key.resource, result.error);
+            }
+            for (String formId : resources.get(result.key)) {
+                if (result.error != null) {
+                    formSuccess.put(formId, false);
+                }
+                int pending = pendingResources.get(formId) - 1;
+                pendingResources.put(formId, pending);
+                if (pending == 0) {
+                    listener.onResourcesDownloaded(formId, formSuccess.get(formId));
+                }
+            }
+        }
+    }
+
+    private static <T> T getResult(CompletionService<T> completionService)
+            throws InterruptedException {
+        try {
+            return completionService.take().get();
+        } catch (ExecutionException e) {
+            // Tasks catch their own errors
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Download operations, called from the worker threads
+     */
+    interface Downloader {
+
+        /**
+         * Download and extract the form
+         *
+         * @return the resources referenced by the form, or null if it could not be parsed
+         */
+        @Nullable
+        Set<String> downloadForm(@NonNull Survey form) throws Exception;
+
+        /**
+         * @return the resources referenced by an installed form, or null if it could not be
+         * parsed
+         */
+        @Nullable
+        Set<String> loadResources(@NonNull Survey form) throws Exception;
+
+        /**
+         * Download a media help file into the form folder
+         */
+        void downloadFormResource(@NonNull String formId, @NonNull String url) throws Exception;
+
+        /**
+         * Download and extract a resource which may be shared by several forms, like cascade
+         * question databases
+         */
+        void downloadSharedResource(@NonNull String resource) throws Exception;
+    }
+
+    /**
+     * Download events, called from the thread running the scheduler
+     */
+    interface Listener {
+
+        void onFormDownloaded(@NonNull Survey form);
+
+        void onFormFailed(@NonNull Survey form, @NonNull Exception error);
+
+        void onResourcesPending(@NonNull String formId);
+
+        void onResourceFailed(@NonNull String resource, @NonNull Exception error);
+
+        /**
+         * @param success true if all the resources of the form were downloaded
+         */
+        void onResourcesDownloaded(@NonNull String formId, boolean success);
+    }
+
+    /**
+     * Absolute URLs (media help files) are stored in the form's own folder, so they are only
+     * shared within a form. S3 object IDs (cascade resources) are shared across forms.
+     */
+    private static class ResourceKey {
+
+        private final String formId;
+        private final String resource;
+
+        ResourceKey(String formId, String resource) {
+            this.resource = resource;
+            this.formId = isFormResource(resource) ? formId : null;
+        }
+
+        static boolean isFormResource(String resource) {
+            // Naive check to determine whether or not this is an absolute URL
+            return resource.startsWith("http");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ResourceKey that = (ResourceKey) o;
+            return resource.equals(that.resource)
+                    && (formId != null ? formId.equals(that.formId) : that.formId == null);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * resource.hashCode() + (formId != null ? formId.hashCode() : 0);
+        }
+    }
+
+    private static class FormResult {
+
+        final Survey form;
+        final boolean update;
+        final Set<String> resources;
+        final Exception error;
+
+        FormResult(Survey form, boolean update, Set<String> resources, Exception error) {
+            this.form = form;
+            this.update = update;
+            this.resources = resources;
+            this.error = error;
+        }
+    }
+
+    private static class ResourceResult {
+
+        final ResourceKey key;
+        final Exception error;
+
+        ResourceResult(ResourceKey key, Exception error) {
+            this.key = key;
+            this.error = error;
+        }
+    }
+
+    private class FormTask implements Callable<FormResult> {
+
+        private final Survey form;
+        private final boolean update;
+
+        FormTask(Survey form, boolean update) {
+            this.form = form;
+            this.update = update;
+        }
+
+        @Override
+        public FormResult call() {
+            try {
+                Set<String> resources = update ? downloader.downloadForm(form)
+                        : downloader.loadResources(form);
+                return new FormResult(form, update, resources, null);
+            } catch (Exception e) {
+                return new FormResult(form, update, null, e);
+            }
+        }
+    }
+
+    private class ResourceTask implements Callable<ResourceResult> {
+
+        private final ResourceKey key;
+
+        ResourceTask(ResourceKey key) {
+            this.key = key;
+        }
+
+        @Override
+        public ResourceResult call() {
+            try {
+                if (key.formId != null) {
+                    downloader.downloadFormResource(key.formId, key.resource);
+                } else {
+                    downloader.downloadSharedResource(key.resource);
+                }
+                return new ResourceResult(key, null);
+            } catch (Exception e) {
+                return new ResourceResult(key, e);
+            }
+        }
+    }
+}
@@ -74,6 +74,7 @@ public class SurveyDownloadService extends IntentService {
     public static final String EXTRA_SURVEY_ID = "survey";
 
     private static final String DEFAULT_TYPE = "Survey";
+    private static final int MAX_CONCURRENT_DOWNLOADS = 4;
     public static final String TEST_SURVEY_ID = "0";
 
     private SurveyDbDataSource databaseAdaptor;
@@ -145,40 +146,31 @@ public class SurveyDownloadService extends IntentService {
         // Check synced versions, and omit up-to-date surveys
         List<Survey> outDatedSurveys = databaseAdaptor.checkSurveyVersions(surveys);
 
-        if (!outDatedSurveys.isEmpty()) {
-            int synced = 0, failed = 0;
-            int numberOfSurveysToBeSynced = outDatedSurveys.size();
-            displayNotification(synced, failed, numberOfSurveysToBeSynced);
-            for (Survey survey : outDatedSurveys) {
-                try {
-                    downloadSurvey(survey);
-                    databaseAdaptor.saveSurvey(survey);
-                    downloadResources(survey);
-                    synced++;
-                } catch (IOException e) {
-                    failed++;
-                    Timber.e(e, "Error downloading survey: " + survey.getId());
-                    displayErrorNotification(ConstantUtil.NOTIFICATION_FORM_ERROR,
-                            getString(R.string.error_form_download));
-                }
-                displayNotification(synced, failed, numberOfSurveysToBeSynced);
-            }
-        }
+        // Check if any previously downloaded surveys still miss help media or cascade resources
+        List<Survey> missingHelpSurveys = getSurveysMissingHelp(outDatedSurveys);
 
-        downloadAllSurveysHelp();
+        final int numberOfSurveysToBeSynced = outDatedSurveys.size();
+        if (numberOfSurveysToBeSynced > 0) {
+            displayNotification(0, 0, numberOfSurveysToBeSynced);
+        }
+        FormDownloadScheduler scheduler = new FormDownloadScheduler(MAX_CONCURRENT_DOWNLOADS,
+                new FormDownloader(), new FormDownloadListener(numberOfSurveysToBeSynced));
+        scheduler.download(outDatedSurveys, missingHelpSurveys);
     }
 
-    /**
-     * Check if any previously downloaded surveys still miss help media or cascade resources
-     */
-    private void downloadAllSurveysHelp() {
-        List<Survey> surveys;
-        surveys = databaseAdaptor.getSurveyList(SurveyGroup.ID_NONE);
-        for (Survey survey : surveys) {
-            if (!survey.isHelpDownloaded()) {
-                downloadResources(survey);
+    @NonNull
+    private List<Survey> getSurveysMissingHelp(@NonNull List<Survey> outDatedSurveys) {
+        Set<String> outDatedIds = new HashSet<>();
+        for (Survey survey : outDatedSurveys) {
+            outDatedIds.add(survey.getId());
+        }
+        List<Survey> surveys = new ArrayList<>();
+        for (Survey survey : databaseAdaptor.getSurveyList(SurveyGroup.ID_NONE)) {
+            if (!survey.isHelpDownloaded() && !outDatedIds.contains(survey.getId())) {
+                surveys.add(survey);
             }
         }
+        return surveys;
     }
 
     private void syncSurveyGroups(@NonNull List<Survey> surveys) {
@@ -227,12 +219,12 @@ public class SurveyDownloadService extends IntentService {
                 Resources res = getResources();
                 in = res.openRawResource(res.getIdentifier(survey.getFileName(),
                         ConstantUtil.RAW_RESOURCE, ConstantUtil.RESOURCE_PACKAGE));
+                hydratedDurvey = SurveyDao.loadSurvey(survey, in);
             } else {
-                // load from file
+                // load from file, compiling it if needed
                 File f = new File(FileUtil.getFilesDir(FileType.FORMS), survey.getFileName());
-                in = new FileInputStream(f);
+                hydratedDurvey = SurveyDao.loadSurvey(survey, f);
             }
-            hydratedDurvey = SurveyDao.loadSurvey(survey, in);
         } catch (FileNotFoundException e) {
             Timber.e(e, "Could not parse survey survey file");
         } finally {
@@ -242,64 +234,34 @@ public class SurveyDownloadService extends IntentService {
     }
 
     /**
-     * checks to see if we should pre-cache help media files (based on the
-     * property in the settings db) and, if we should, downloads the files
+     * Collect the help media files and common resources referenced by the survey. Files are
+     * collected in a set, as the same binary can be used in multiple questions.
      *
-     * @param survey
+     * @return the resources, or null if the survey could not be loaded
      */
-    private void downloadResources(@NonNull Survey survey) {
+    @Nullable
+    private Set<String> getResources(@NonNull Survey survey) {
         Survey hydratedSurvey = loadSurvey(survey);
-        if (hydratedSurvey != null) {
-            // collect files in a set just in case the same binary is
-            // used in multiple questions we only need to download once
-            Set<String> resources = new HashSet<>();
-            for (QuestionGroup group : hydratedSurvey.getQuestionGroups()) {
-                for (Question question : group.getQuestions()) {
-                    if (!question.getHelpByType(ConstantUtil.VIDEO_HELP_TYPE).isEmpty()) {
-                        resources.add(question.getHelpByType(ConstantUtil.VIDEO_HELP_TYPE)
-                                .get(0).getValue());
-                    }
-                    for (QuestionHelp help : question.getHelpByType(ConstantUtil.IMAGE_HELP_TYPE)) {
-                        resources.add(help.getValue());
-                    }
-                    // Question src data (i.e. cascading question resources)
-                    if (question.getSrc() != null) {
-                        resources.add(question.getSrc());
-                    }
-                }
-            }
-            // Download help media files (images & videos) and common resources
-            downloadResources(survey.getId(), resources);
+        if (hydratedSurvey == null) {
+            return null;
         }
-    }
-
-    private void downloadResources(@NonNull final String sid,
-            @NonNull final Set<String> resources) {
-        databaseAdaptor.markSurveyHelpDownloaded(sid, false);
-        boolean ok = true;
-        for (String resource : resources) {
-            Timber.i("Downloading resource: " + resource);
-            try {
-                // Handle both absolute URL (media help files) and S3 object IDs (survey resources)
-                // Naive check to determine whether or not this is an absolute filename
-                if (resource.startsWith("http")) {
-                    downloadGaeResource(sid, resource);
-                } else {
-                    downloadS3Resource(resource);
+        Set<String> resources = new HashSet<>();
+        for (QuestionGroup group : hydratedSurvey.getQuestionGroups()) {
+            for (Question question : group.getQuestions()) {
+                if (!question.getHelpByType(ConstantUtil.VIDEO_HELP_TYPE).isEmpty()) {
+                    resources.add(question.getHelpByType(ConstantUtil.VIDEO_HELP_TYPE)
+                            .get(0).getValue());
+                }
+                for (QuestionHelp help : question.getHelpByType(ConstantUtil.IMAGE_HELP_TYPE)) {
+                    resources.add(help.getValue());
+                }
+                // Question src data (i.e. cascading question resources)
+                if (question.getSrc() != null) {
+                    resources.add(question.getSrc());
                 }
-            } catch (Exception e) {
-                ok = false;
-                // Display cascade-specific error message. If at any point we include support for
-                // more resource types, this message should be accordingly customized.
-                displayErrorNotification(ConstantUtil.NOTIFICATION_RESOURCE_ERROR,
-                        getString(R.string.error_missing_cascade));
-                Timber.e(e, "Could not download resource " + resource + " for survey " + sid);
             }
         }
-        // Mark help (survey resources) as downloaded if ALL files succeeded.
-        if (ok) {
-            databaseAdaptor.markSurveyHelpDownloaded(sid, true);
-        }
+        return resources;
     }
 
     private void downloadS3Resource(String resource) throws IOException {
@@ -319,8 +281,9 @@ public class SurveyDownloadService extends IntentService {
     private void downloadGaeResource(@NonNull String sid, @NonNull String url) throws IOException {
         final String filename = new File(url).getName();
         final File surveyDir = new File(FileUtil.getFilesDir(FileType.FORMS), sid);
-        if (!surveyDir.exists()) {
-            surveyDir.mkdir();
+        // Several files of the same survey may be downloaded concurrently
+        if (!surveyDir.exists() && !surveyDir.mkdir() && !surveyDir.isDirectory()) {
+            throw new IOException("Could not create directory " + surveyDir);
         }
         HttpUtil.httpGet(url, new File(surveyDir, filename));
     }
@@ -394,4 +357,89 @@ public class SurveyDownloadService extends IntentService {
         LocalBroadcastManager.getInstance(this).sendBroadcast(intentBroadcast);
     }
 
+    /**
+     * Performs the network and file operations, on the scheduler worker threads
+     */
+    private class FormDownloader implements FormDownloadScheduler.Downloader {
+
+        @Nullable
+        @Override
+        public Set<String> downloadForm(@NonNull Survey form) throws IOException {
+            downloadSurvey(form);
+            // Parse the form right away, while it is hot in the file system cache
+            return getResources(form);
+        }
+
+        @Nullable
+        @Override
+        public Set<String> loadResources(@NonNull Survey form) {
+            return getResources(form);
+        }
+
+        @Override
+        public void downloadFormResource(@NonNull String formId, @NonNull String url)
+                throws IOException {
+            Timber.i("Downloading resource: " + url);
+            downloadGaeResource(formId, url);
+        }
+
+        @Override
+        public void downloadSharedResource(@NonNull String resource) throws IOException {
+            Timber.i("Downloading resource: " + resource);
+            downloadS3Resource(resource);
+        }
+    }
+
+    /**
+     * Stores the download results. Called from the service thread, which is the only one
+     * writing to the database
+     */
+    private class FormDownloadListener implements FormDownloadScheduler.Listener {
+
+        private final int total;
+        private int synced = 0;
+        private int failed = 0;
+
+        FormDownloadListener(int total) {
+            this.total = total;
+        }
+
+        @Override
+        public void onFormDownloaded(@NonNull Survey form) {
+            databaseAdaptor.saveSurvey(form);
+            synced++;
+            displayNotification(synced, failed, total);
+        }
+
+        @Override
+        public void onFormFailed(@NonNull Survey form, @NonNull Exception error) {
+            failed++;
+            Timber.e(error, "Error downloading survey: " + form.getId());
+            displayErrorNotification(ConstantUtil.NOTIFICATION_FORM_ERROR,
+                    getString(R.string.error_form_download));
+            displayNotification(synced, failed, total);
+        }
+
+        @Override
+        public void onResourcesPending(@NonNull String formId) {
+            databaseAdaptor.markSurveyHelpDownloaded(formId, false);
+        }
+
+        @Override
+        public void onResourceFailed(@NonNull String resource, @NonNull Exception error) {
+            // Display cascade-specific error message. If at any point we include support for
+            // more resource types, this message should be accordingly customized.
+            displayErrorNotification(ConstantUtil.NOTIFICATION_RESOURCE_ERROR,
+                    getString(R.string.error_missing_cascade));
+            Timber.e(error, "Could not download resource " + resource);
+        }
+
+        @Override
+        public void onResourcesDownloaded(@NonNull String formId, boolean success) {
+            // Mark help (survey resources) as downloaded if ALL files succeeded.
+            if (success) {
+                databaseAdaptor.markSurveyHelpDownloaded(formId, true);
+            }
+        }
+    }
 }
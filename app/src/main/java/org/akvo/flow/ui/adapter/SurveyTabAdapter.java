@@ -27,10 +27,12 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import org.akvo.flow.R;
+import org.akvo.flow.domain.DependencyGraph;
 import org.akvo.flow.domain.Question;
 import org.akvo.flow.domain.QuestionGroup;
 import org.akvo.flow.event.QuestionInteractionListener;
 import org.akvo.flow.event.SurveyListener;
+import org.akvo.flow.ui.view.DependencyEngine;
 import org.akvo.flow.ui.view.QuestionGroupTab;
 import org.akvo.flow.ui.view.QuestionView;
 import org.akvo.flow.ui.view.SubmitTab;
@@ -46,6 +48,7 @@ public class SurveyTabAdapter extends PagerAdapter implements ViewPager.OnPageCh
     private List<QuestionGroup> mQuestionGroups;
     private List<QuestionGroupTab> mQuestionGroupTabs;
     private SubmitTab mSubmitTab;
+    private DependencyEngine mDependencyEngine;
 
     public SurveyTabAdapter(Context context, ViewPager pager, SurveyListener surveyListener,
             QuestionInteractionListener questionListener) {
@@ -57,10 +60,12 @@ public class SurveyTabAdapter extends PagerAdapter implements ViewPager.OnPageCh
             QuestionInteractionListener questionListener) {
         mQuestionGroups = surveyListener.getQuestionGroups();
         mQuestionGroupTabs = new ArrayList<>();
+        mDependencyEngine = new DependencyEngine(new DependencyGraph(mQuestionGroups),
+                surveyListener);
 
         for (QuestionGroup group : mQuestionGroups) {
-            QuestionGroupTab questionGroupTab =
-                    new QuestionGroupTab(context, group, surveyListener, questionListener);
+            QuestionGroupTab questionGroupTab = new QuestionGroupTab(context, group,
+                    surveyListener, questionListener, mDependencyEngine);
             mQuestionGroupTabs.add(questionGroupTab);
         }
 
@@ -141,6 +146,13 @@ public class SurveyTabAdapter extends PagerAdapter implements ViewPager.OnPageCh
         }
     }
 
+    /**
+     * Show or hide the questions depending on the given one, once its response is stored
+     */
+    public void onResponseChanged(String questionId) {
+        mDependencyEngine.onResponseChanged(questionId);
+    }
+
     public QuestionView getQuestionView(String questionId) {
         QuestionView questionView = null;
         for (QuestionGroupTab questionGroupTab : mQuestionGroupTabs) {
@@ -153,14 +165,9 @@ public class SurveyTabAdapter extends PagerAdapter implements ViewPager.OnPageCh
     }
 
     /**
-     * Sets up question dependencies across question groups and registers
-     * questionInteractionListeners on the dependent views. This should be
-     * called each time a new tab is hydrated. It will iterate over all
-     * questions in the survey and install dependencies and the
-     * questionInteractionListeners. After installation, it will check to see if
-     * the parent question contains a response. If so, it will fire a
-     * questionInteractionEvent to ensure dependent questions are put into the
-     * correct state
+     * Sets up question dependencies across question groups, registering the dependent
+     * views in the dependency engine. This should be called each time a new tab is
+     * hydrated. Registered views are shown or hidden according to the current responses.
      */
     private void setupDependencies() {
         for (QuestionGroupTab tab : mQuestionGroupTabs) {
@@ -30,8 +30,15 @@ import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
 
+import org.akvo.flow.domain.geometry.Simplifier;
+import org.akvo.flow.domain.geometry.Vertices;
+
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public abstract class Feature {
     protected static final int POINT_SIZE_DEFAULT = 40;// Default marker size (px).
@@ -45,14 +52,29 @@ public abstract class Feature {
     protected static final int STROKE_COLOR_DEFAULT = 0xEE736357;
     protected static final int STROKE_COLOR_SELECTED = 0xFF736357;
 
+    /**
+     * Shapes with more vertices than this (usually walked boundaries) are drawn simplified,
+     * with markers only on the remaining vertices, and stored simplified.
+     */
+    public static final int SIMPLIFY_THRESHOLD = 100;
+
+    /**
+     * Well below the GPS accuracy, so only redundant vertices are dropped
+     */
+    private static final double STORAGE_TOLERANCE = 0.5;// meters
+
     protected boolean mSelected;
     protected Marker mSelectedMarker;
 
     protected GoogleMap mMap;
-    protected List<LatLng> mPoints;
-    protected List<Marker> mMarkers;
+    protected final Vertices mVertices;
+    protected List<Marker> mMarkers;// Markers of the displayed vertices
     protected List<Property> mProperties;
 
+    private int[] mMarkerVertices = new int[16];// Vertex of each marker, ascending
+    private final Map<Marker, BitmapDescriptor> mIcons = new HashMap<>();
+    private int mVersion;// Incremented on every change of the vertices
+
     private static final BitmapDescriptor MARKER_DISABLED;
     private static final BitmapDescriptor MARKER_ENABLED;
     private static final BitmapDescriptor MARKER_SELECTED;
@@ -73,8 +95,15 @@ public abstract class Feature {
     }
 
     public Feature(GoogleMap map) {
+        this(map, false);
+    }
+
+    /**
+     * @param closed whether the last vertex connects back to the first one
+     */
+    protected Feature(GoogleMap map, boolean closed) {
         mMap = map;
-        mPoints = new ArrayList<>();
+        mVertices = new Vertices(closed);
         mMarkers = new ArrayList<>();
         mProperties = new ArrayList<>();
     }
@@ -83,12 +112,35 @@ public abstract class Feature {
     public abstract String geoGeometryType();
     public abstract boolean highlightNext(int position);
 
+    /**
+     * Whether vertices can be dropped without losing information. Shapes can, points cannot.
+     */
+    protected boolean canSimplify() {
+        return false;
+    }
+
     public boolean contains(Marker marker) {
-        return mMarkers.contains(marker);
+        return mIcons.containsKey(marker);
+    }
+
+    public Vertices getVertices() {
+        return mVertices;
+    }
+
+    public boolean isEmpty() {
+        return mVertices.isEmpty();
     }
 
-    public List<LatLng> getPoints() {
-        return mPoints;
+    /**
+     * @return the displayed vertices, the ones with a marker
+     */
+    protected List<LatLng> getDisplayedPoints() {
+        List<LatLng> points = new ArrayList<>(mMarkers.size());
+        for (int i = 0; i < mMarkers.size(); i++) {
+            int vertex = mMarkerVertices[i];
+            points.add(new LatLng(mVertices.getLatitude(vertex), mVertices.getLongitude(vertex)));
+        }
+        return points;
     }
 
     /**
@@ -97,22 +149,17 @@ public abstract class Feature {
      * @param point LatLng value of the new point.
      */
     public void addPoint(LatLng point) {
-        Marker marker = mMap.addMarker(new MarkerOptions()
-                .position(point)
-                .title(String.format("lat/lng: %.5f, %.5f", point.latitude, point.longitude))
-                .anchor(0.5f, 0.5f)
-                .draggable(false)
-                .icon(MARKER_DISABLED));
-
         // Insert new point just after the currently selected marker (if any)
+        int position = mMarkers.size();
+        int vertex = mVertices.size();
         if (mSelectedMarker != null) {
-            int index =  mMarkers.indexOf(mSelectedMarker) + 1;
-            mMarkers.add(index, marker);
-            mPoints.add(index, point);
-        } else {
-            mMarkers.add(marker);
-            mPoints.add(point);
+            position = mMarkers.indexOf(mSelectedMarker) + 1;
+            vertex = mMarkerVertices[position - 1] + 1;
         }
+        mVertices.add(vertex, point.latitude, point.longitude);
+        mVersion++;
+        shiftMarkerVertices(vertex, 1);
+        Marker marker = insertMarker(position, vertex);
 
         setSelected(mSelected, marker);
     }
@@ -125,10 +172,18 @@ public abstract class Feature {
             return;
         }
 
-        int index =  mMarkers.indexOf(mSelectedMarker);
-        mSelectedMarker.remove();
-        mPoints.remove(index);
-        mMarkers.remove(index);
+        int position = mMarkers.indexOf(mSelectedMarker);
+        int vertex = mMarkerVertices[position];
+        removeMarker(position);
+        mVertices.remove(vertex);
+        mVersion++;
+        shiftMarkerVertices(vertex + 1, -1);
+        if (mMarkers.isEmpty()) {
+            // Only hidden vertices are left, display them so they can be removed as well
+            for (int i = 0; i < mVertices.size(); i++) {
+                insertMarker(i, i);
+            }
+        }
     }
 
     /**
@@ -139,17 +194,20 @@ public abstract class Feature {
             marker.remove();
         }
         mMarkers.clear();
-        mPoints.clear();
+        mIcons.clear();
+        mVertices.clear();
+        mVersion++;
     }
 
     public void onDrag(Marker marker) {
-        int index =  mMarkers.indexOf(marker);
+        int index = mMarkers.indexOf(marker);
         if (index == -1) {
             return;
         }
 
-        mPoints.remove(index);
-        mPoints.add(index, marker.getPosition());
+        LatLng position = marker.getPosition();
+        mVertices.set(mMarkerVertices[index], position.latitude, position.longitude);
+        mVersion++;
         invalidate();
     }
 
@@ -172,9 +230,9 @@ public abstract class Feature {
      * step to this process by overriding this method.
      */
     protected void invalidate() {
-        // Recompute icons, depending on point status
+        // Recompute icons, depending on point status. Only the changed ones are set.
         long selected = -1, next = -1;
-        if (mSelected && mSelectedMarker != null && mMarkers.contains(mSelectedMarker)) {
+        if (mSelected && mSelectedMarker != null && contains(mSelectedMarker)) {
             selected = mMarkers.indexOf(mSelectedMarker);
             next = selected > -1 ? (selected + 1) % mMarkers.size() : mMarkers.size() - 1;
         }
@@ -182,30 +240,211 @@ public abstract class Feature {
         for (int i=0; i<mMarkers.size(); i++) {
             Marker marker = mMarkers.get(i);
             if (!mSelected) {
-                marker.setIcon(MARKER_DISABLED);
+                setIcon(marker, MARKER_DISABLED);
             } else if (i == selected) {
-                marker.setIcon(MARKER_SELECTED);
+                setIcon(marker, MARKER_SELECTED);
                 marker.showInfoWindow();
-            } else if (i == next && highlightNext(i)) {
-                marker.setIcon(MARKER_HIGHLIGHTED);
+            } else if (i == next && highlightNext(mMarkerVertices[i])) {
+                setIcon(marker, MARKER_HIGHLIGHTED);
             } else {
-                marker.setIcon(MARKER_ENABLED);
+                setIcon(marker, MARKER_ENABLED);
             }
         }
 
         // Compute properties
         mProperties.clear();
-        String count = String.valueOf(mMarkers.size());
-        mProperties.add(new Property("pointCount", count, "Point Count", count));
+        addProperties(mVertices, mProperties);
+    }
+
+    /**
+     * Compute the properties of the given vertices. Subclasses should add their own properties
+     * by overriding this method. Called from background threads as well.
+     */
+    protected void addProperties(Vertices vertices, List<Property> properties) {
+        String count = String.valueOf(vertices.size());
+        properties.add(new Property("pointCount", count, "Point Count", count));
     }
 
     public List<Property> getProperties() {
         return mProperties;
     }
 
-    public void load(List<LatLng> points) {
-        for (LatLng point : points) {
-            addPoint(point);
+    /**
+     * @return the vertices to store: shapes above SIMPLIFY_THRESHOLD are simplified, dropping
+     * the vertices within STORAGE_TOLERANCE of the rest. Safe to call from any thread with a
+     * copy of the vertices.
+     */
+    public Vertices getStoredVertices(Vertices vertices) {
+        if (!canSimplify() || vertices.size() <= SIMPLIFY_THRESHOLD) {
+            return vertices;
+        }
+        return vertices.copy(Simplifier.simplify(vertices, STORAGE_TOLERANCE));
+    }
+
+    /**
+     * @return the properties of the given vertices, by key. Safe to call from any thread with
+     * a copy of the vertices.
+     */
+    public Map<String, String> getPropertyValues(Vertices vertices) {
+        List<Property> properties = new ArrayList<>();
+        addProperties(vertices, properties);
+        Map<String, String> values = new LinkedHashMap<>();
+        for (Property property : properties) {
+            values.put(property.mKey, property.mValue);
+        }
+        return values;
+    }
+
+    /**
+     * Load the given vertices, displaying only the given ones
+     *
+     * @param displayed positions of the vertices to display, in ascending order, as returned
+     *                  by {@link #getDisplayedVertices(Vertices, double)}
+     */
+    public void load(Vertices vertices, int[] displayed) {
+        for (int i = 0; i < vertices.size(); i++) {
+            mVertices.add(vertices.getLatitude(i), vertices.getLongitude(i));
+        }
+        mVersion++;
+        for (int vertex : displayed) {
+            insertMarker(mMarkers.size(), vertex);
+        }
+        setSelected(mSelected, null);
+    }
+
+    /**
+     * Vertices to display at the given resolution. Safe to call from any thread with a copy of
+     * the vertices.
+     *
+     * @param tolerance meters per pixel, roughly
+     * @return the positions of the vertices to display, in ascending order
+     */
+    public int[] getDisplayedVertices(Vertices vertices, double tolerance) {
+        return getDisplayedVertices(vertices, canSimplify(), tolerance);
+    }
+
+    /**
+     * Same as {@link #getDisplayedVertices(Vertices, double)}, for features not created yet
+     *
+     * @param simplify false for point features, whose vertices cannot be dropped
+     */
+    public static int[] getDisplayedVertices(Vertices vertices, boolean simplify,
+            double tolerance) {
+        if (!simplify || vertices.size() <= SIMPLIFY_THRESHOLD) {
+            int[] all = new int[vertices.size()];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        return Simplifier.simplify(vertices, tolerance);
+    }
+
+    /**
+     * @return the version of the vertices, to be given back to {@link #setDisplayedVertices}
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Replace the displayed vertices, unless they changed since the given version. The
+     * selected vertex is always kept.
+     */
+    public void setDisplayedVertices(int[] displayed, int version) {
+        if (version != mVersion || Arrays.equals(displayed, getMarkerVertices())) {
+            return;
+        }
+
+        int selected = mSelectedMarker != null ? mMarkerVertices[mMarkers.indexOf(mSelectedMarker)]
+                : -1;
+        List<Marker> markers = mMarkers;
+        int[] markerVertices = getMarkerVertices();
+        mMarkers = new ArrayList<>(displayed.length + 1);
+        mMarkerVertices = new int[displayed.length + 1];
+
+        // Merge both ascending lists, reusing the markers of the vertices still displayed
+        int i = 0, j = 0;
+        while (i < markerVertices.length || j < displayed.length) {
+            int current = i < markerVertices.length ? markerVertices[i] : Integer.MAX_VALUE;
+            int wanted = j < displayed.length ? displayed[j] : Integer.MAX_VALUE;
+            if (current == wanted) {
+                addMarker(markers.get(i), current);
+                i++;
+                j++;
+            } else if (current < wanted) {
+                if (current == selected) {
+                    addMarker(markers.get(i), current);
+                } else {
+                    mIcons.remove(markers.get(i));
+                    markers.get(i).remove();
+                }
+                i++;
+            } else {
+                insertMarker(mMarkers.size(), wanted);
+                j++;
+            }
+        }
+        invalidate();
+    }
+
+    private int[] getMarkerVertices() {
+        return Arrays.copyOf(mMarkerVertices, mMarkers.size());
+    }
+
+    private Marker insertMarker(int position, int vertex) {
+        double latitude = mVertices.getLatitude(vertex);
+        double longitude = mVertices.getLongitude(vertex);
+        Marker marker = mMap.addMarker(new MarkerOptions()
+                .position(new LatLng(latitude, longitude))
+                .title(String.format("lat/lng: %.5f, %.5f", latitude, longitude))
+                .anchor(0.5f, 0.5f)
+                .draggable(false)
+                .icon(MARKER_DISABLED));
+        mIcons.put(marker, MARKER_DISABLED);
+
+        int size = mMarkers.size();
+        if (size == mMarkerVertices.length) {
+            mMarkerVertices = Arrays.copyOf(mMarkerVertices, size * 2 + 1);
+        }
+        System.arraycopy(mMarkerVertices, position, mMarkerVertices, position + 1,
+                size - position);
+        mMarkerVertices[position] = vertex;
+        mMarkers.add(position, marker);
+        return marker;
+    }
+
+    /**
+     * Append an existing marker
+     */
+    private void addMarker(Marker marker, int vertex) {
+        mMarkerVertices[mMarkers.size()] = vertex;
+        mMarkers.add(marker);
+    }
+
+    private void removeMarker(int position) {
+        Marker marker = mMarkers.remove(position);
+        mIcons.remove(marker);
+        marker.remove();
+        System.arraycopy(mMarkerVertices, position + 1, mMarkerVertices, position,
+                mMarkers.size() - position);
+    }
+
+    /**
+     * Shift the vertex of the markers at or after the given vertex
+     */
+    private void shiftMarkerVertices(int from, int offset) {
+        for (int i = 0; i < mMarkers.size(); i++) {
+            if (mMarkerVertices[i] >= from) {
+                mMarkerVertices[i] += offset;
+            }
+        }
+    }
+
+    private void setIcon(Marker marker, BitmapDescriptor icon) {
+        if (mIcons.get(marker) != icon) {
+            marker.setIcon(icon);
+            mIcons.put(marker, icon);
         }
     }
 
@@ -19,55 +19,35 @@
 
 package org.akvo.flow.ui.map;
 
-import android.location.Location;
-
 import com.google.android.gms.maps.GoogleMap;
-import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.Polygon;
 import com.google.android.gms.maps.model.PolygonOptions;
-import com.google.maps.android.geometry.Point;
 
 import org.akvo.flow.R;
+import org.akvo.flow.domain.geometry.Vertices;
 import org.akvo.flow.util.GeoUtil;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class PolygonFeature extends Feature {
     public static final String GEOMETRY_TYPE = "Polygon";
 
     private static final int FILL_COLOR = 0x88736357;
-    private static final int EARTH_RADIUS = 6371000; // meters
-    private static final double LATITUDE_SIZE = Math.PI * EARTH_RADIUS / 180;
 
     private Polygon mPolygon;
 
     public PolygonFeature(GoogleMap map) {
-        super(map);
-    }
-
-    @Override
-    public void addPoint(LatLng point) {
-        super.addPoint(point);
-        if (mPolygon == null) {
-            PolygonOptions polygonOptions = new PolygonOptions();
-            polygonOptions.strokeColor(mSelected ? STROKE_COLOR_SELECTED : STROKE_COLOR_DEFAULT);
-            polygonOptions.fillColor(FILL_COLOR);
-            polygonOptions.add(point);// Polygon cannot be created without points
-            mPolygon = mMap.addPolygon(polygonOptions);
-        } else {
-            mPolygon.setPoints(mPoints);
-        }
+        super(map, true);
     }
 
     @Override
     public void removePoint() {
         super.removePoint();
-        if (mPoints.isEmpty()) {
+        if (mMarkers.isEmpty()) {
             mPolygon.remove();
             mPolygon = null;
         } else {
-            mPolygon.setPoints(mPoints);
+            mPolygon.setPoints(getDisplayedPoints());
         }
     }
 
@@ -82,33 +62,40 @@ public class PolygonFeature extends Feature {
     @Override
     public void invalidate() {
         super.invalidate();
+        if (mPolygon == null && !mMarkers.isEmpty()) {
+            PolygonOptions polygonOptions = new PolygonOptions();
+            polygonOptions.fillColor(FILL_COLOR);
+            polygonOptions.addAll(getDisplayedPoints());// Polygon cannot be created without points
+            mPolygon = mMap.addPolygon(polygonOptions);
+        } else if (mPolygon != null && !mMarkers.isEmpty()) {
+            mPolygon.setPoints(getDisplayedPoints());
+        }
         if (mPolygon != null) {
             mPolygon.setStrokeColor(mSelected ? STROKE_COLOR_SELECTED : STROKE_COLOR_DEFAULT);
-            if (!mPoints.isEmpty()) {
-                mPolygon.setPoints(mPoints);
-            }
         }
+    }
 
-        // ---- Properties ----
-        // Length
-        float length = 0f;
-        // Init previous with last point, so we compute the last-first distance as well
-        LatLng previous = mPoints.size() > 2 ? mPoints.get(mPoints.size()-1) : null;
-        for (LatLng point : mPoints) {
-            if (previous != null) {
-                float[] distance = new float[1];
-                Location.distanceBetween(previous.latitude, previous.longitude, point.latitude, point.longitude, distance);
-                length += distance[0];
-            }
-            previous = point;
-        }
+    /**
+     * Length and area are kept up to date by {@link Vertices} as points change. The area is
+     * computed on an equal-area (sinusoidal) projection of the polygon.
+     */
+    @Override
+    protected void addProperties(Vertices vertices, List<Property> properties) {
+        super.addProperties(vertices, properties);
+        // Length, including the last-first distance
+        float length = (float) vertices.getLength();
         String lengthVal = String.format("%.2f", length);
-        mProperties.add(new Property("length", lengthVal, "Length", GeoUtil.getDisplayLength(length)));
+        properties.add(new Property("length", lengthVal, "Length", GeoUtil.getDisplayLength(length)));
 
         // Area
-        final double area = area();
+        final double area = vertices.getArea();
         String areaVal = String.format("%.2f", area);
-        mProperties.add(new Property("area", areaVal, "Area", GeoUtil.getDisplayArea(area)));
+        properties.add(new Property("area", areaVal, "Area", GeoUtil.getDisplayArea(area)));
+    }
+
+    @Override
+    protected boolean canSimplify() {
+        return true;
     }
 
     @Override
@@ -126,37 +113,4 @@ public class PolygonFeature extends Feature {
         return true;
     }
 
-    private double area() {
-        if (mPoints.size() < 3) {
-            return 0f;
-        }
-
-        // First we compute an equal-are projection of the polygon. We use a sinusoidal
-        // projection for now: http://en.wikipedia.org/wiki/Sinusoidal_projection
-        List<Point> points = new ArrayList<>();
-        for (LatLng location : mPoints) {
-            points.add(project(location));
-        }
-
-        // Now we calculate the area, using regular planar techniques.
-        // http://mathworld.wolfram.com/PolygonArea.html
-        double area = 0.0;
-        Point prev = points.get(points.size()-1);// start form the last point
-        int i = 0;
-        while (i < points.size()) {
-            Point point = points.get(i);
-            area += prev.x * point.y - point.x * prev.y;
-            prev = point;
-            i++;
-        }
-        return Math.abs(area) / 2;
-    }
-
-    private Point project(LatLng location) {
-        // Sinusoidal projection (equal-area)
-        double y = location.latitude * LATITUDE_SIZE;
-        double x = location.longitude * LATITUDE_SIZE * Math.cos(Math.toRadians(location.latitude));
-        return new Point(x, y);
-    }
-
 }
@@ -19,16 +19,16 @@
 
 package org.akvo.flow.ui.map;
 
-import android.location.Location;
-
 import com.google.android.gms.maps.GoogleMap;
-import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.Polyline;
 import com.google.android.gms.maps.model.PolylineOptions;
 
 import org.akvo.flow.R;
+import org.akvo.flow.domain.geometry.Vertices;
 import org.akvo.flow.util.GeoUtil;
 
+import java.util.List;
+
 public class PolylineFeature extends Feature {
     public static final String GEOMETRY_TYPE = "LineString";
 
@@ -38,21 +38,10 @@ public class PolylineFeature extends Feature {
         super(map);
     }
 
-    @Override
-    public void addPoint(LatLng point) {
-        super.addPoint(point);
-        if (mPolyline == null) {
-            PolylineOptions polylineOptions = new PolylineOptions();
-            polylineOptions.color(mSelected ? STROKE_COLOR_SELECTED : STROKE_COLOR_DEFAULT);
-            mPolyline = mMap.addPolyline(polylineOptions);
-        }
-        mPolyline.setPoints(mPoints);
-    }
-
     @Override
     public void removePoint() {
         super.removePoint();
-        mPolyline.setPoints(mPoints);
+        mPolyline.setPoints(getDisplayedPoints());
     }
 
     @Override
@@ -66,24 +55,29 @@ public class PolylineFeature extends Feature {
     @Override
     public void invalidate() {
         super.invalidate();
+        if (mPolyline == null && !mMarkers.isEmpty()) {
+            PolylineOptions polylineOptions = new PolylineOptions();
+            polylineOptions.color(mSelected ? STROKE_COLOR_SELECTED : STROKE_COLOR_DEFAULT);
+            mPolyline = mMap.addPolyline(polylineOptions);
+        }
         if (mPolyline != null) {
             mPolyline.setColor(mSelected ? STROKE_COLOR_SELECTED : STROKE_COLOR_DEFAULT);
-            mPolyline.setPoints(mPoints);
+            mPolyline.setPoints(getDisplayedPoints());
         }
+    }
 
-        // Compute line length
-        float length = 0f;
-        LatLng previous = null;
-        for (LatLng point : mPoints) {
-            if (previous != null) {
-                float[] distance = new float[1];
-                Location.distanceBetween(previous.latitude, previous.longitude, point.latitude, point.longitude, distance);
-                length += distance[0];
-            }
-            previous = point;
-        }
+    @Override
+    protected void addProperties(Vertices vertices, List<Property> properties) {
+        super.addProperties(vertices, properties);
+        // Line length
+        float length = (float) vertices.getLength();
         String lengthVal = String.format("%.2f", length);
-        mProperties.add(new Property("length", lengthVal, "Length", GeoUtil.getDisplayLength(length)));
+        properties.add(new Property("length", lengthVal, "Length", GeoUtil.getDisplayLength(length)));
+    }
+
+    @Override
+    protected boolean canSimplify() {
+        return true;
     }
 
     @Override
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.ui.view;
+
+import android.support.annotation.NonNull;
+
+import org.akvo.flow.domain.DependencyGraph;
+import org.akvo.flow.domain.DependencyGraph.Condition;
+import org.akvo.flow.domain.Option;
+import org.akvo.flow.domain.QuestionResponse;
+import org.akvo.flow.event.SurveyListener;
+import org.akvo.flow.serialization.response.value.OptionValue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the visibility of the dependent questions in sync with the responses. When a
+ * response changes, only the questions depending on it, directly or through other
+ * questions, are evaluated again, parents first. Each response value is parsed once per
+ * change, no matter how many questions depend on it.
+ *
+ * Questions whose view is not built yet are tracked as well: their stored responses are
+ * included or excluded right away, so they are exported according to their dependencies.
+ */
+public class DependencyEngine {
+
+    private final DependencyGraph graph;
+    private final SurveyListener surveyListener;
+
+    /**
+     * Dependent question views, by the question ID shown in the form
+     */
+    private final Map<String, QuestionView> views = new HashMap<>();
+
+    /**
+     * Dependent question IDs, by the ID of the question they depend on, with or without a view
+     */
+    private final Map<String, Set<String>> dependents = new HashMap<>();
+
+    private final Map<String, ParsedValue> values = new HashMap<>();
+
+    private boolean evaluating;
+
+    public DependencyEngine(@NonNull DependencyGraph graph,
+            @NonNull SurveyListener surveyListener) {
+        this.graph = graph;
+        this.surveyListener = surveyListener;
+    }
+
+    /**
+     * Start tracking the given view, if it depends on any question, and show or hide it
+     * according to the current responses.
+     */
+    public void register(@NonNull QuestionView view) {
+        String questionId = view.getQuestion().getId();
+        if (!addDependent(questionId)) {
+            return;
+        }
+        views.put(questionId, view);
+        view.setDependenciesSatisfied(isSatisfied(questionId));
+    }
+
+    public void unregister(@NonNull QuestionView view) {
+        String questionId = view.getQuestion().getId();
+        if (views.get(questionId) == view) {
+            untrack(questionId);
+        }
+    }
+
+    /**
+     * Start tracking a question with no view yet, if it depends on any question. Its
+     * response is included or excluded according to the current responses.
+     */
+    public void track(@NonNull String questionId) {
+        if (addDependent(questionId) && !views.containsKey(questionId)
+                && updateIncludeFlag(questionId, isSatisfied(questionId))) {
+            onResponseChanged(questionId);
+        }
+    }
+
+    /**
+     * Stop tracking the given question, along with its view, if any
+     */
+    public void untrack(@NonNull String questionId) {
+        views.remove(questionId);
+        for (Condition condition : graph.getConditions(questionId)) {
+            Set<String> dependentIds = dependents
+                    .get(graph.getParentId(questionId, condition.getQuestion()));
+            if (dependentIds != null) {
+                dependentIds.remove(questionId);
+            }
+        }
+    }
+
+    /**
+     * @return false if the given question does not depend on any question
+     */
+    private boolean addDependent(String questionId) {
+        List<Condition> conditions = graph.getConditions(questionId);
+        for (Condition condition : conditions) {
+            String parentId = graph.getParentId(questionId, condition.getQuestion());
+            Set<String> dependentIds = dependents.get(parentId);
+            if (dependentIds == null) {
+                dependentIds = new HashSet<>();
+                dependents.put(parentId, dependentIds);
+            }
+            dependentIds.add(questionId);
+        }
+        return !conditions.isEmpty();
+    }
+
+    /**
+     * Store the include flag of a response with no view to update it
+     *
+     * @return true if the flag changed
+     */
+    private boolean updateIncludeFlag(String questionId, boolean includeFlag) {
+        QuestionResponse response = surveyListener.getResponses().get(questionId);
+        if (response == null || response.getIncludeFlag() == includeFlag) {
+            return false;
+        }
+        surveyListener.setIncludeFlag(questionId, includeFlag);
+        return true;
+    }
+
+    /**
+     * Evaluate the questions depending on the given one. Must be called once the new
+     * response is available from {@link SurveyListener#getResponses()}.
+     */
+    public void onResponseChanged(@NonNull String questionId) {
+        if (evaluating) {
+            // Dependents hiding their own responses. Their subgraph is already being evaluated
+            return;
+        }
+        List<String> affected = getAffected(questionId);
+        if (affected.isEmpty()) {
+            return;
+        }
+        evaluating = true;
+        try {
+            for (String dependentId : affected) {
+                boolean satisfied = isSatisfied(dependentId);
+                QuestionView view = views.get(dependentId);
+                if (view != null) {
+                    view.setDependenciesSatisfied(satisfied);
+                } else {
+                    updateIncludeFlag(dependentId, satisfied);
+                }
+            }
+        } finally {
+            evaluating = false;
+        }
+    }
+
+    /**
+     * @return the questions reachable from the given one, in evaluation order
+     */
+    private List<String> getAffected(String questionId) {
+        Set<String> affected = new HashSet<>();
+        List<String> queue = new ArrayList<>();
+        queue.add(questionId);
+        for (int i = 0; i < queue.size(); i++) {
+            String parentId = queue.get(i);
+            Set<String> dependentIds = dependents.get(parentId);
+            if (dependentIds == null) {
+                continue;
+            }
+            for (String dependentId : dependentIds) {
+                if (affected.add(dependentId)) {
+                    queue.add(dependentId);
+                }
+            }
+        }
+
+        List<String> sorted = new ArrayList<>(affected);
+        Collections.sort(sorted, new Comparator<String>() {
+            @Override
+            public int compare(String lhs, String rhs) {
+                int lhsRank = graph.getRank(lhs);
+                int rhsRank = graph.getRank(rhs);
+                return lhsRank < rhsRank ? -1 : (lhsRank == rhsRank ? 0 : 1);
+            }
+        });
+        return sorted;
+    }
+
+    /**
+     * @return true if the responses the given question depends on, if any, satisfy its
+     * dependencies, whether or not the question has a view
+     */
+    public boolean isSatisfied(@NonNull String questionId) {
+        Map<String, QuestionResponse> responses = surveyListener.getResponses();
+        for (Condition condition : graph.getConditions(questionId)) {
+            String parentId = graph.getParentId(questionId, condition.getQuestion());
+            QuestionResponse response = responses.get(parentId);
+            if (response == null || !response.hasValue() || !response.getIncludeFlag()
+                    || !condition.isMatch(getValues(parentId, response.getValue()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the trimmed option texts of the given response, parsed only if it changed
+     */
+    private Set<String> getValues(String questionId, String value) {
+        ParsedValue parsed = values.get(questionId);
+        if (parsed == null || !parsed.value.equals(value)) {
+            parsed = new ParsedValue(value);
+            values.put(questionId, parsed);
+        }
+        return parsed.options;
+    }
+
+    private static class ParsedValue {
+
+        final String value;
+        final Set<String> options;
+
+        ParsedValue(String value) {
+            this.value = value;
+            this.options = new HashSet<>();
+            for (Option option : OptionValue.deserialize(value)) {
+                options.add(option.getText().trim());
+            }
+        }
+    }
+}
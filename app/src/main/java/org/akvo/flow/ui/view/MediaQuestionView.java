@@ -20,9 +20,7 @@
 package org.akvo.flow.ui.view;
 
 import android.content.Context;
-import android.media.ThumbnailUtils;
 import android.os.Bundle;
-import android.provider.MediaStore;
 import android.support.annotation.NonNull;
 import android.support.v7.app.AppCompatActivity;
 import android.text.TextUtils;
@@ -35,6 +33,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import org.akvo.flow.R;
+import org.akvo.flow.app.FlowApp;
 import org.akvo.flow.async.MediaSyncTask;
 import org.akvo.flow.domain.Question;
 import org.akvo.flow.domain.QuestionResponse;
@@ -43,13 +42,14 @@ import org.akvo.flow.domain.response.value.Media;
 import org.akvo.flow.event.QuestionInteractionEvent;
 import org.akvo.flow.event.SurveyListener;
 import org.akvo.flow.event.TimedLocationListener;
+import org.akvo.flow.injector.component.ApplicationComponent;
 import org.akvo.flow.serialization.response.value.MediaValue;
 import org.akvo.flow.ui.Navigator;
 import org.akvo.flow.util.ConstantUtil;
 import org.akvo.flow.util.FileUtil;
 import org.akvo.flow.util.ImageUtil;
-import org.akvo.flow.util.image.ImageLoader;
-import org.akvo.flow.util.image.PicassoImageLoader;
+import org.akvo.flow.util.image.MediaProcessor;
+import org.akvo.flow.util.image.ThumbnailCache;
 
 import java.io.File;
 
@@ -61,7 +61,8 @@ import java.io.File;
  */
 //TODO: separate video and image into different classes
 public class MediaQuestionView extends QuestionView implements OnClickListener,
-        TimedLocationListener.Listener, MediaSyncTask.DownloadListener {
+        TimedLocationListener.Listener, MediaSyncTask.DownloadListener,
+        MediaProcessor.Listener {
     private Button mMediaButton;
     private ImageView mImageView;
     private ProgressBar mProgressBar;
@@ -69,8 +70,9 @@ public class MediaQuestionView extends QuestionView implements OnClickListener,
     private TextView mLocationInfo;
     private String mMediaType;
     private TimedLocationListener mLocationListener;
+    private MediaProcessor mMediaProcessor;
+    private ThumbnailCache mThumbnailCache;
     private Media mMedia;
-    private ImageLoader imageLoader;
     private Navigator navigator = new Navigator();
 
     public MediaQuestionView(Context context, Question q, SurveyListener surveyListener,
@@ -78,6 +80,10 @@ public class MediaQuestionView extends QuestionView implements OnClickListener,
         super(context, q, surveyListener);
         mMediaType = type;
         mLocationListener = new TimedLocationListener(context, this, !q.isLocked());
+        ApplicationComponent component = ((FlowApp) context.getApplicationContext())
+                .getApplicationComponent();
+        mMediaProcessor = component.mediaProcessor();
+        mThumbnailCache = component.thumbnailCache();
         init();
     }
 
@@ -89,7 +95,6 @@ public class MediaQuestionView extends QuestionView implements OnClickListener,
         mProgressBar = (ProgressBar)findViewById(R.id.media_progress);
         mDownloadBtn = findViewById(R.id.media_download);
         mLocationInfo = (TextView)findViewById(R.id.location_info);
-        imageLoader = new PicassoImageLoader(getContext());
         if (isImage()) {
             mMediaButton.setText(R.string.takephoto);
         } else {
@@ -145,10 +150,6 @@ public class MediaQuestionView extends QuestionView implements OnClickListener,
         }
     }
 
-    private void displayImage(String filename, ImageView imageView) {
-        imageLoader.loadFromFile(new File(filename), imageView);
-    }
-
     /**
      * display the completion icon and install the response in the question
      * object
@@ -161,12 +162,18 @@ public class MediaQuestionView extends QuestionView implements OnClickListener,
             mMedia.setFilename(result);
 
             captureResponse();
-            displayThumbnail();
 
-            if (isImage()) {
-                if (ImageUtil.getLocation(result) == null) {
+            if (mMediaProcessor.isProcessing(result)) {
+                // Whether the image has a location is known once processed. Warm up the GPS.
+                mMediaProcessor.setListener(result, this);
+                if (isImage()) {
                     mLocationListener.start();
                 }
+            } else if (isImage() && ImageUtil.getLocation(result) == null) {
+                mLocationListener.start();
+            }
+            displayThumbnail();
+            if (isImage()) {
                 displayLocationInfo();
             }
         }
@@ -191,6 +198,10 @@ public class MediaQuestionView extends QuestionView implements OnClickListener,
         if (TextUtils.isEmpty(filename)) {
             return;
         }
+        if (mMediaProcessor.isProcessing(filename)) {
+            mMediaProcessor.setListener(filename, this);
+            return;
+        }
         // We now check whether the file is found in the local filesystem, and update the path if it's not
         File file = new File(filename);
         if (!file.exists() && isReadOnly()) {
@@ -210,7 +221,9 @@ public class MediaQuestionView extends QuestionView implements OnClickListener,
     @Override
     public void resetQuestion(boolean fireEvent) {
         super.resetQuestion(fireEvent);
+        removeProcessingListener();
         mMedia = null;
+        mThumbnailCache.cancel(mImageView);
         mImageView.setImageDrawable(null);
         hideDownloadOptions();
         mLocationInfo.setVisibility(GONE);
@@ -245,6 +258,29 @@ public class MediaQuestionView extends QuestionView implements OnClickListener,
         if (mLocationListener.isListening()) {
             mLocationListener.stop();
         }
+        removeProcessingListener();
+    }
+
+    private void removeProcessingListener() {
+        String filename = mMedia != null ? mMedia.getFilename() : null;
+        if (!TextUtils.isEmpty(filename)) {
+            mMediaProcessor.removeListener(filename, this);
+        }
+    }
+
+    @Override
+    public void onMediaProcessed(@NonNull String filename, boolean geotagged) {
+        if (mMedia == null || !filename.equals(mMedia.getFilename())) {
+            return;
+        }
+        if (geotagged && mLocationListener.isListening()) {
+            // The camera already tagged it
+            mLocationListener.stop();
+        }
+        displayThumbnail();
+        if (isImage()) {
+            displayLocationInfo();
+        }
     }
 
     private void displayThumbnail() {
@@ -254,16 +290,17 @@ public class MediaQuestionView extends QuestionView implements OnClickListener,
         if (TextUtils.isEmpty(filename)) {
             return;
         }
-        if (!new File(filename).exists()) {
+        if (mMediaProcessor.isProcessing(filename)) {
+            mThumbnailCache.cancel(mImageView);
+            mImageView.setImageDrawable(null);
+            mProgressBar.setVisibility(VISIBLE);
+        } else if (!new File(filename).exists()) {
+            mThumbnailCache.cancel(mImageView);
             mImageView.setImageResource(R.drawable.blurry_image);
             mDownloadBtn.setVisibility(VISIBLE);
-        } else if (isImage()) {
-            // Image thumbnail
-            displayImage(filename, mImageView);
         } else {
-            // Video thumbnail
-            mImageView.setImageBitmap(ThumbnailUtils.createVideoThumbnail(
-                    filename, MediaStore.Video.Thumbnails.MINI_KIND));
+            // Image or video thumbnail
+            mThumbnailCache.display(filename, mImageView);
         }
     }
 
@@ -283,11 +320,12 @@ public class MediaQuestionView extends QuestionView implements OnClickListener,
     @Override
     public void onLocationReady(double latitude, double longitude, double altitude,
             float accuracy) {
-        if (accuracy > TimedLocationListener.ACCURACY_DEFAULT) {
-            // This location is not accurate enough. Keep listening for updates
-            return;
-        }
-        mLocationListener.stop();
+        // Not accurate enough yet. Keep listening for updates
+    }
+
+    @Override
+    public void onLocationStable(double latitude, double longitude, double altitude,
+            float accuracy) {
         if (mMedia != null) {
             Location location = new Location();
             location.setLatitude(latitude);
@@ -296,8 +334,8 @@ public class MediaQuestionView extends QuestionView implements OnClickListener,
             location.setAccuracy(accuracy);
 
             mMedia.setLocation(location);
-            // Add location to EXIF too
-            ImageUtil.setLocation(mMedia.getFilename(), latitude, longitude);
+            // Add location to EXIF too, once the image is processed
+            mMediaProcessor.setLocation(mMedia.getFilename(), latitude, longitude);
 
             captureResponse();
             displayLocationInfo();
@@ -322,8 +360,8 @@ public class MediaQuestionView extends QuestionView implements OnClickListener,
         }
 
         mLocationInfo.setVisibility(VISIBLE);
-        float[] location = ImageUtil.getLocation(filename);
-        if (location != null) {
+        // The EXIF data of the file may not be written yet
+        if (mMedia.getLocation() != null || ImageUtil.getLocation(filename) != null) {
             mLocationInfo.setText(R.string.image_location_saved);
         } else if (mLocationListener.isListening()) {
             mLocationInfo.setText(R.string.image_location_reading);
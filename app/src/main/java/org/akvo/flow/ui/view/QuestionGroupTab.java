@@ -25,6 +25,7 @@ import android.os.Build;
 import android.os.Bundle;
 import android.text.TextUtils;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.LinearLayout;
 import android.widget.ScrollView;
 import android.widget.TextView;
@@ -41,6 +42,7 @@ import org.akvo.flow.ui.view.geolocation.GeoQuestionView;
 import org.akvo.flow.ui.view.option.OptionQuestionFactory;
 import org.akvo.flow.ui.view.signature.SignatureQuestionView;
 import org.akvo.flow.util.ConstantUtil;
+import org.akvo.flow.util.ViewUtil;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -54,11 +56,18 @@ import java.util.Set;
 
 public class QuestionGroupTab extends LinearLayout implements QuestionGroupIterationHeader.OnDeleteListener {
 
+    /**
+     * Views built per layout pass, until the questions reach one screen past the visible ones
+     */
+    private static final int BATCH_SIZE = 10;
+
     private final QuestionGroup mQuestionGroup;
     private final QuestionInteractionListener mQuestionListener;
     private final SurveyListener mSurveyListener;
+    private final DependencyEngine mDependencyEngine;
 
     private final Map<String, QuestionView> mQuestionViews;
+    private final List<PendingItem> mPendingItems;// Not built yet, in display order
     private final Set<String> mQuestions;// Map group's questions for a quick look-up
     private LinearLayout mContainer;
     private ScrollView mScroller;
@@ -69,13 +78,31 @@ public class QuestionGroupTab extends LinearLayout implements QuestionGroupItera
     private final Map<Integer, QuestionGroupIterationHeader> groupIterationHeaders;
     private final RepeatableGroupIterations groupIterations;
 
+    private final ViewTreeObserver.OnGlobalLayoutListener mLayoutListener =
+            new ViewTreeObserver.OnGlobalLayoutListener() {
+                @Override
+                public void onGlobalLayout() {
+                    buildVisibleQuestions();
+                }
+            };
+
+    private final ViewTreeObserver.OnScrollChangedListener mScrollListener =
+            new ViewTreeObserver.OnScrollChangedListener() {
+                @Override
+                public void onScrollChanged() {
+                    buildVisibleQuestions();
+                }
+            };
+
     public QuestionGroupTab(Context context, QuestionGroup group, SurveyListener surveyListener,
-            QuestionInteractionListener questionListener) {
+            QuestionInteractionListener questionListener, DependencyEngine dependencyEngine) {
         super(context);
         mQuestionGroup = group;
         mSurveyListener = surveyListener;
         mQuestionListener = questionListener;
+        mDependencyEngine = dependencyEngine;
         mQuestionViews = new HashMap<>();
+        mPendingItems = new ArrayList<>();
         groupIterationHeaders = new HashMap<>();
         groupIterations = new RepeatableGroupIterations();
         mLoaded = false;
@@ -119,7 +146,7 @@ public class QuestionGroupTab extends LinearLayout implements QuestionGroupItera
                 @Override
                 public void onClick(View v) {
                     loadGroup();
-                    setupDependencies();
+                    buildVisibleQuestions();
                 }
             });
         }
@@ -127,14 +154,57 @@ public class QuestionGroupTab extends LinearLayout implements QuestionGroupItera
     }
 
     /**
-     * Pre-load all the QuestionViews in memory. getView() will simply
-     * retrieve them from the corresponding position in mQuestionViews.
+     * Queue the questions of the group. Their views are only built once they are about to
+     * be scrolled into view, see {@link #buildVisibleQuestions()}.
      */
     public void load() {
         mLoaded = true;
         loadGroup();
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        getViewTreeObserver().addOnGlobalLayoutListener(mLayoutListener);
+        getViewTreeObserver().addOnScrollChangedListener(mScrollListener);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        ViewUtil.removeLayoutListener(getViewTreeObserver(), mLayoutListener);
+        getViewTreeObserver().removeOnScrollChangedListener(mScrollListener);
+        super.onDetachedFromWindow();
+    }
+
+    /**
+     * Build the next batch of pending views if the built ones do not reach one screen past
+     * the scroll position. Laying out the new views triggers the next batch, if needed.
+     */
+    private void buildVisibleQuestions() {
+        if (mPendingItems.isEmpty()) {
+            return;
+        }
+        int height = mScroller.getHeight();
+        if (height > 0 && mContainer.getBottom() > mScroller.getScrollY() + 2 * height) {
+            return;
+        }
+        buildPendingItems(BATCH_SIZE);
+    }
+
+    private void buildPendingItems(int count) {
+        Map<String, QuestionResponse> responses = mSurveyListener.getResponses();
+        for (int i = 0; i < count && !mPendingItems.isEmpty(); i++) {
+            PendingItem item = mPendingItems.remove(0);
+            if (item.header != null) {
+                mContainer.addView(item.header);
+            } else {
+                QuestionView questionView = createQuestionView(item.question);
+                rehydrate(questionView, responses);
+                setupDependencies(questionView);
+            }
+        }
+    }
+
     public void notifyOptionsChanged() {
         for (QuestionView qv : mQuestionViews.values()) {
             qv.notifyOptionsChanged();
@@ -160,6 +230,20 @@ public class QuestionGroupTab extends LinearLayout implements QuestionGroupItera
                 missingQuestions.add(qv.getQuestion());
             }
         }
+
+        // Questions without a view yet can only be missing a mandatory response
+        Map<String, QuestionResponse> responses = mSurveyListener.getResponses();
+        for (PendingItem item : mPendingItems) {
+            Question question = item.question;
+            if (question == null || !question.isMandatory()) {
+                continue;
+            }
+            QuestionResponse response = responses.get(question.getId());
+            if ((response == null || !response.isValid())
+                    && mDependencyEngine.isSatisfied(question.getId())) {
+                missingQuestions.add(question);
+            }
+        }
         return missingQuestions;
     }
 
@@ -173,7 +257,17 @@ public class QuestionGroupTab extends LinearLayout implements QuestionGroupItera
         // If the group is repeatable, delete multiple iterations
         if (mQuestionGroup.isRepeatable()) {
             mContainer.removeAllViews();
+            for (QuestionView qv : mQuestionViews.values()) {
+                mDependencyEngine.unregister(qv);
+            }
             mQuestionViews.clear();
+            for (PendingItem item : mPendingItems) {
+                if (item.question != null) {
+                    mDependencyEngine.untrack(item.question.getId());
+                }
+            }
+            mPendingItems.clear();
+            groupIterationHeaders.clear();
 
             // Load existing iterations. If no iteration is available, show one by default.
             groupIterations.loadIDs(mQuestions, mSurveyListener.getResponses().values());
@@ -185,6 +279,7 @@ public class QuestionGroupTab extends LinearLayout implements QuestionGroupItera
         }
 
         displayResponses();
+        buildVisibleQuestions();
     }
 
     private void updateGroupIterationHeaders() {
@@ -204,14 +299,18 @@ public class QuestionGroupTab extends LinearLayout implements QuestionGroupItera
     private void displayResponses() {
         Map<String, QuestionResponse> responses = mSurveyListener.getResponses();
         for (QuestionView qv : mQuestionViews.values()) {
-            String questionId = qv.getQuestion().getId();
+            rehydrate(qv, responses);
+        }
+    }
+
+    private void rehydrate(QuestionView qv, Map<String, QuestionResponse> responses) {
+        String questionId = qv.getQuestion().getId();
+        if (responses.containsKey(questionId)) {
+            qv.rehydrate(responses.get(questionId));
+        } else if (qv.getQuestion().isRepeatable() && !TextUtils.isEmpty(questionId)) {
+            questionId = questionId.split("\\|")[0];
             if (responses.containsKey(questionId)) {
                 qv.rehydrate(responses.get(questionId));
-            } else if (qv.getQuestion().isRepeatable() && !TextUtils.isEmpty(questionId)) {
-                questionId = questionId.split("\\|")[0];
-                if (responses.containsKey(questionId)) {
-                    qv.rehydrate(responses.get(questionId));
-                }
             }
         }
     }
@@ -225,11 +324,34 @@ public class QuestionGroupTab extends LinearLayout implements QuestionGroupItera
      */
     public boolean displayQuestion(String questionId) {
         QuestionView qv = getQuestionView(questionId);
-        if (qv != null) {
-            mScroller.scrollTo(qv.getLeft(), qv.getTop());
-            return true;
+        if (qv == null) {
+            int position = getPendingPosition(questionId);
+            if (position == -1) {
+                return false;
+            }
+            buildPendingItems(position + 1);
+            qv = getQuestionView(questionId);
+        }
+
+        // New views are not laid out yet
+        final QuestionView questionView = qv;
+        mScroller.post(new Runnable() {
+            @Override
+            public void run() {
+                mScroller.scrollTo(questionView.getLeft(), questionView.getTop());
+            }
+        });
+        return true;
+    }
+
+    private int getPendingPosition(String questionId) {
+        for (int i = 0; i < mPendingItems.size(); i++) {
+            Question question = mPendingItems.get(i).question;
+            if (question != null && questionId.equals(question.getId())) {
+                return i;
+            }
         }
-        return false;
+        return -1;
     }
 
     public void onPause() {
@@ -281,54 +403,59 @@ public class QuestionGroupTab extends LinearLayout implements QuestionGroupItera
                             repetitionId, visualIndicator,
                             mSurveyListener.isReadOnly() ? null : this);
             groupIterationHeaders.put(repetitionId, header);
-            mContainer.addView(header);
+            mPendingItems.add(new PendingItem(header, null));
         }
 
-        final Context context = getContext();
         for (Question q : mQuestionGroup.getQuestions()) {
             if (mQuestionGroup.isRepeatable()) {
                 q = Question.copy(q, q.getId() + "|" + repetitionId);
             }
+            mPendingItems.add(new PendingItem(null, q));
+            mDependencyEngine.track(q.getId());// Keep the response in sync until it is built
+        }
+    }
 
-            QuestionView questionView;
-            if (ConstantUtil.OPTION_QUESTION_TYPE.equalsIgnoreCase(q.getType())) {
-                questionView = OptionQuestionFactory.createOptionQuestion(context, q, mSurveyListener);
-            } else if (ConstantUtil.FREE_QUESTION_TYPE.equalsIgnoreCase(q.getType())) {
-                questionView = new FreetextQuestionView(context, q, mSurveyListener);
-            } else if (ConstantUtil.PHOTO_QUESTION_TYPE.equalsIgnoreCase(q.getType())) {
-                questionView = new MediaQuestionView(context, q, mSurveyListener,
-                        ConstantUtil.PHOTO_QUESTION_TYPE);
-            } else if (ConstantUtil.VIDEO_QUESTION_TYPE.equalsIgnoreCase(q.getType())) {
-                questionView = new MediaQuestionView(context, q, mSurveyListener,
-                        ConstantUtil.VIDEO_QUESTION_TYPE);
-            } else if (ConstantUtil.GEO_QUESTION_TYPE.equalsIgnoreCase(q.getType())) {
-                questionView = new GeoQuestionView(context, q, mSurveyListener);
-            } else if (ConstantUtil.SCAN_QUESTION_TYPE.equalsIgnoreCase(q.getType())) {
-                questionView = BarcodeQuestionViewFactory
-                        .createBarcodeQuestion(context, q, mSurveyListener);
-            } else if (ConstantUtil.DATE_QUESTION_TYPE.equalsIgnoreCase(q.getType())) {
-                questionView = new DateQuestionView(context, q, mSurveyListener);
-            } else if (ConstantUtil.CASCADE_QUESTION_TYPE.equalsIgnoreCase(q.getType())) {
-                questionView = new CascadeQuestionView(context, q, mSurveyListener);
-            } else if (ConstantUtil.GEOSHAPE_QUESTION_TYPE.equalsIgnoreCase(q.getType())) {
-                questionView = new GeoshapeQuestionView(context, q, mSurveyListener);
-            } else if (ConstantUtil.SIGNATURE_QUESTION_TYPE.equalsIgnoreCase(q.getType())) {
-                questionView = new SignatureQuestionView(context, q, mSurveyListener);
-            } else if (ConstantUtil.CADDISFLY_QUESTION_TYPE.equalsIgnoreCase(q.getType())) {
-                questionView = new CaddisflyQuestionView(context, q, mSurveyListener);
-            } else {
-                questionView = new QuestionHeaderView(context, q, mSurveyListener);
-            }
+    private QuestionView createQuestionView(Question q) {
+        final Context context = getContext();
+        QuestionView questionView;
+        if (ConstantUtil.OPTION_QUESTION_TYPE.equalsIgnoreCase(q.getType())) {
+            questionView = OptionQuestionFactory.createOptionQuestion(context, q, mSurveyListener);
+        } else if (ConstantUtil.FREE_QUESTION_TYPE.equalsIgnoreCase(q.getType())) {
+            questionView = new FreetextQuestionView(context, q, mSurveyListener);
+        } else if (ConstantUtil.PHOTO_QUESTION_TYPE.equalsIgnoreCase(q.getType())) {
+            questionView = new MediaQuestionView(context, q, mSurveyListener,
+                    ConstantUtil.PHOTO_QUESTION_TYPE);
+        } else if (ConstantUtil.VIDEO_QUESTION_TYPE.equalsIgnoreCase(q.getType())) {
+            questionView = new MediaQuestionView(context, q, mSurveyListener,
+                    ConstantUtil.VIDEO_QUESTION_TYPE);
+        } else if (ConstantUtil.GEO_QUESTION_TYPE.equalsIgnoreCase(q.getType())) {
+            questionView = new GeoQuestionView(context, q, mSurveyListener);
+        } else if (ConstantUtil.SCAN_QUESTION_TYPE.equalsIgnoreCase(q.getType())) {
+            questionView = BarcodeQuestionViewFactory
+                    .createBarcodeQuestion(context, q, mSurveyListener);
+        } else if (ConstantUtil.DATE_QUESTION_TYPE.equalsIgnoreCase(q.getType())) {
+            questionView = new DateQuestionView(context, q, mSurveyListener);
+        } else if (ConstantUtil.CASCADE_QUESTION_TYPE.equalsIgnoreCase(q.getType())) {
+            questionView = new CascadeQuestionView(context, q, mSurveyListener);
+        } else if (ConstantUtil.GEOSHAPE_QUESTION_TYPE.equalsIgnoreCase(q.getType())) {
+            questionView = new GeoshapeQuestionView(context, q, mSurveyListener);
+        } else if (ConstantUtil.SIGNATURE_QUESTION_TYPE.equalsIgnoreCase(q.getType())) {
+            questionView = new SignatureQuestionView(context, q, mSurveyListener);
+        } else if (ConstantUtil.CADDISFLY_QUESTION_TYPE.equalsIgnoreCase(q.getType())) {
+            questionView = new CaddisflyQuestionView(context, q, mSurveyListener);
+        } else {
+            questionView = new QuestionHeaderView(context, q, mSurveyListener);
+        }
 
-            // Add question interaction listener
-            questionView.addQuestionInteractionListener(mQuestionListener);
+        // Add question interaction listener
+        questionView.addQuestionInteractionListener(mQuestionListener);
 
-            mQuestionViews.put(q.getId(), questionView);// Store the reference to the View
+        mQuestionViews.put(q.getId(), questionView);// Store the reference to the View
 
-            // Add divider (within the View)
-            inflate(getContext(), R.layout.divider, questionView);
-            mContainer.addView(questionView);
-        }
+        // Add divider (within the View)
+        inflate(getContext(), R.layout.divider, questionView);
+        mContainer.addView(questionView);
+        return questionView;
     }
 
     private int getRepetitionId(int index) {
@@ -345,8 +472,15 @@ public class QuestionGroupTab extends LinearLayout implements QuestionGroupItera
             QuestionView qv = mQuestionViews.get(qid);
             if (qv != null) {
                 qv.onDestroy();
+                mDependencyEngine.unregister(qv);
                 mQuestionViews.remove(qid);
                 mContainer.removeView(qv);
+            } else {
+                int position = getPendingPosition(qid);
+                if (position != -1) {
+                    mPendingItems.remove(position);
+                    mDependencyEngine.untrack(qid);
+                }
             }
             mSurveyListener.deleteResponse(questionId, String.valueOf(repetitionID));
         }
@@ -357,6 +491,7 @@ public class QuestionGroupTab extends LinearLayout implements QuestionGroupItera
                 View header = groupIterationHeaders.remove(repetitionID);
                 if (header != null) {
                     mContainer.removeView(header);
+                    removePendingHeader(header);
                 }
             } else if (id > repetitionID && groupIterationHeaders.containsKey(id)) {
                 groupIterationHeaders.get(id).decreasePosition();
@@ -381,21 +516,23 @@ public class QuestionGroupTab extends LinearLayout implements QuestionGroupItera
             return;// No dependencies for this question
         }
 
-        for (Dependency dependency : dependencies) {
-            QuestionView parentQ;
-            String parentQId = dependency.getQuestion();
-            if (mQuestionGroup.isRepeatable() && mQuestions.contains(parentQId)) {
-                // Internal dependencies need to compound the inner question ID (questionId|iteration)
-                parentQId += "|" + parseRepetitionId(qv.getQuestion().getId());
-                dependency.setQuestion(parentQId);
-                parentQ = getQuestionView(parentQId);// Local search
-            } else {
-                parentQ = mSurveyListener.getQuestionView(parentQId);// Global search
+        if (mQuestionGroup.isRepeatable()) {
+            for (Dependency dependency : dependencies) {
+                if (mQuestions.contains(dependency.getQuestion())) {
+                    // Internal dependencies need to compound the inner question ID (questionId|iteration)
+                    dependency.setQuestion(dependency.getQuestion() + "|"
+                            + parseRepetitionId(qv.getQuestion().getId()));
+                }
             }
+        }
+        mDependencyEngine.register(qv);
+    }
 
-            if (parentQ != null && qv != parentQ) {
-                parentQ.addQuestionInteractionListener(qv);
-                qv.checkDependencies();
+    private void removePendingHeader(View header) {
+        for (int i = 0; i < mPendingItems.size(); i++) {
+            if (mPendingItems.get(i).header == header) {
+                mPendingItems.remove(i);
+                return;
             }
         }
     }
@@ -408,6 +545,20 @@ public class QuestionGroupTab extends LinearLayout implements QuestionGroupItera
         return -1;
     }
 
+    /**
+     * Either an iteration header or a question, waiting to be added to the container
+     */
+    private static class PendingItem {
+
+        final View header;
+        final Question question;
+
+        PendingItem(View header, Question question) {
+            this.header = header;
+            this.question = question;
+        }
+    }
+
     static class RepeatableGroupIterations implements Iterable<Integer> {
 
         List<Integer> mIDs = new ArrayList<>();
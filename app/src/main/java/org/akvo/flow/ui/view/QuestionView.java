@@ -51,9 +51,8 @@ import org.akvo.flow.util.ViewUtil;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
 
-public abstract class QuestionView extends LinearLayout implements QuestionInteractionListener {
+public abstract class QuestionView extends LinearLayout {
     private static final int PADDING_DIP = 8;
     protected static String[] sColors = null;
     final ErrorMessageFormatter errorMessageFormatter = new ErrorMessageFormatter();
@@ -325,7 +324,7 @@ public abstract class QuestionView extends LinearLayout implements QuestionInter
         if (mListeners == null) {
             mListeners = new ArrayList<>();
         }
-        if (listener != null && !mListeners.contains(listener) && listener != this) {
+        if (listener != null && !mListeners.contains(listener)) {
             mListeners.add(listener);
         }
     }
@@ -380,73 +379,17 @@ public abstract class QuestionView extends LinearLayout implements QuestionInter
         }
     }
 
-    @Override
-    public void onQuestionInteraction(QuestionInteractionEvent event) {
-        if (QuestionInteractionEvent.QUESTION_ANSWER_EVENT.equals(event.getEventType())) {
-            // if this question is dependent, see if it has been satisfied
-            List<Dependency> dependencies = mQuestion.getDependencies();
-            if (dependencies != null) {
-                for (int i = 0; i < dependencies.size(); i++) {
-                    Dependency d = dependencies.get(i);
-                    if (d.getQuestion().equalsIgnoreCase(
-                            event.getSource().getQuestion().getId())) {
-                        if (handleDependencyParentResponse(d, event.getSource().getResponse())) {
-                            break;
-                        }
-                    }
-                }
-            }
-        }
-    }
-
     /**
-     * updates the state of this question view based on the value in the
-     * dependency parent response. This method returns true if there is a value
-     * match and false otherwise.
-     *
-     * @param dep
-     * @param resp
-     * @return
+     * Show or hide the question when the responses it depends on change. The response of
+     * a hidden question is kept, but excluded from the form instance.
      */
-    public boolean handleDependencyParentResponse(Dependency dep, QuestionResponse resp) {
-        boolean isMatch = false;
-        if (dep.getAnswer() != null && resp != null && dep.isMatch(resp.getValue()) && resp
-                .getIncludeFlag()) {
-            isMatch = true;
-        } else if (dep.getAnswer() != null && resp != null && resp.getIncludeFlag()) {
-            if (resp.getValue() != null) {
-                StringTokenizer strTok = new StringTokenizer(resp.getValue(), "|");
-                while (strTok.hasMoreTokens()) {
-                    if (dep.isMatch(strTok.nextToken().trim())) {
-                        isMatch = true;
-                    }
-                }
-            }
-        }
-
-        boolean setVisible = false;
-        // if we're here, then the question on which we depend
-        // has been answered. Check the value to see if it's the
-        // one we are looking for
-        boolean includeFlag = true;
-        if (isMatch) {
-            setVisibility(View.VISIBLE);
-            setVisible = true;
-        } else {
-            includeFlag = false;
-            setVisibility(View.GONE);
-        }
-        mResponse = new QuestionResponse.QuestionResponseBuilder()
-                .createFromQuestionResponse(mResponse, includeFlag);
-
-        // now notify our own listeners to make sure we correctly toggle
-        // nested dependencies (i.e. if A -> B -> C and C changes, A needs to
-        // know too).
-        if (mResponse != null) {
+    public void setDependenciesSatisfied(boolean satisfied) {
+        setVisibility(satisfied ? View.VISIBLE : View.GONE);
+        if (mResponse != null && mResponse.getIncludeFlag() != satisfied) {
+            mResponse = new QuestionResponse.QuestionResponseBuilder()
+                    .createFromQuestionResponse(mResponse, satisfied);
             notifyQuestionListeners(QuestionInteractionEvent.QUESTION_ANSWER_EVENT);
         }
-
-        return setVisible;
     }
 
     public final void captureResponse() {
@@ -241,11 +241,13 @@ public class GeoQuestionView extends QuestionView
         if (areNewCoordinatesMoreAccurate) {
             updateWithNewCoordinates(latitude, longitude, altitude, accuracy);
         }
-        boolean areNewCoordinatesAccurateEnough =
-                accuracy <= TimedLocationListener.ACCURACY_DEFAULT;
-        if (areNewCoordinatesAccurateEnough) {
-            useAccurateCoordinates();
-        }
+    }
+
+    @Override
+    public void onLocationStable(double latitude, double longitude, double altitude,
+            float accuracy) {
+        updateWithNewCoordinates(latitude, longitude, altitude, accuracy);
+        useAccurateCoordinates();
     }
 
     private void useAccurateCoordinates() {
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.util;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A file to be uploaded along with its MD5 checksum. If the checksum was computed when the file
+ * was written (and cached with the transmission) the file is read only once, while streaming
+ * the upload body. Otherwise it is computed with a single extra pass.
+ * Bytes read from the file are counted, to keep track of the I/O cost of each upload.
+ */
+public class ChecksummedFile {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+
+    @Nullable
+    private byte[] md5;
+
+    private long bytesRead;
+
+    public ChecksummedFile(@NonNull File file, @Nullable byte[] cachedMd5) {
+        this.file = file;
+        this.md5 = cachedMd5;
+    }
+
+    @NonNull
+    public File getFile() {
+        return file;
+    }
+
+    public long length() {
+        return file.length();
+    }
+
+    /**
+     * @return true if the checksum has not been computed yet, and reading it will require
+     * a full pass over the file
+     */
+    public boolean isChecksumPending() {
+        return md5 == null;
+    }
+
+    /**
+     * Discard the checksum, i.e. when the server has rejected it. It will be computed again
+     * from the file contents on the next access.
+     */
+    public void invalidateChecksum() {
+        md5 = null;
+    }
+
+    @NonNull
+    public byte[] getMd5() throws IOException {
+        if (md5 == null) {
+            md5 = computeMd5();
+        }
+        return md5;
+    }
+
+    /**
+     * Stream the file contents into the given output, using FileChannel transfers
+     */
+    public void writeTo(@NonNull OutputStream out) throws IOException {
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            FileChannel channel = in.getChannel();
+            WritableByteChannel target = Channels.newChannel(out);
+            final long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long transferred = channel.transferTo(position, size - position, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+            bytesRead += position;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * @return total number of bytes read from the file so far
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    private byte[] computeMd5() throws IOException {
+        FileInputStream in = null;
+        try {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            in = new FileInputStream(file);
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            int read;
+            while ((read = channel.read(buffer)) != -1) {
+                buffer.flip();
+                md.update(buffer);
+                buffer.clear();
+                bytesRead += read;
+            }
+            return md.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage());
+        } finally {
+            close(in);
+        }
+    }
+
+    private static void close(@Nullable Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Ignored, the file was only read
+            }
+        }
+    }
+}
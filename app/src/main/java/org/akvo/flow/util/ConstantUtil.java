@@ -36,6 +36,7 @@ public class ConstantUtil {
     public static final String PNG_SUFFIX = ".png";
     public static final String VIDEO_SUFFIX = ".mp4";
     public static final String XML_SUFFIX = ".xml";
+    public static final String COMPILED_FORM_SUFFIX = ".bin";
     public static final String BOOTSTRAP_DB_FILE = "dbinstructions.sql";
     public static final String PROCESSED_OK_SUFFIX = ".processed";
     public static final String PROCESSED_ERROR_SUFFIX = ".error";
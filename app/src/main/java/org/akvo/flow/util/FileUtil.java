@@ -25,6 +25,7 @@ import android.media.ExifInterface;
 import android.os.Environment;
 import android.provider.MediaStore;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.text.TextUtils;
 
 import org.akvo.flow.BuildConfig;
@@ -64,10 +65,11 @@ public class FileUtil {
     private static final String DIR_TMP = "tmp"; // Temporary files
     private static final String DIR_APK = "apk"; // App upgrades
     private static final String DIR_RES = "res"; // Survey resources (i.e. cascading DB)
+    private static final String DIR_THUMBNAILS = "thumbnails"; // Media previews
 
     private static final int BUFFER_SIZE = 2048;
 
-    public enum FileType {DATA, MEDIA, INBOX, FORMS, TMP, APK, RES}
+    public enum FileType {DATA, MEDIA, INBOX, FORMS, TMP, APK, RES, THUMBNAILS}
 
     /**
      * Get the appropriate files directory for the given FileType. The directory may or may
@@ -101,6 +103,9 @@ public class FileUtil {
             case RES:
                 path = getFilesStorageDir(true) + File.separator + DIR_RES;
                 break;
+            case THUMBNAILS:
+                path = getFilesStorageDir(true) + File.separator + DIR_THUMBNAILS;
+                break;
         }
         File dir = new File(path);
         if (!dir.exists()) {
@@ -249,6 +254,18 @@ public class FileUtil {
         return null;
     }
 
+    @Nullable
+    public static byte[] hexToBytes(@Nullable String hex) {
+        if (hex == null || hex.length() % 2 != 0) {
+            return null;
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
     public static String hexMd5(File file) {
         return hexMd5(getMD5Checksum(file));
     }
@@ -42,6 +42,9 @@ import java.net.URL;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import okhttp3.OkHttpClient;
+import okhttp3.OkUrlFactory;
+
 /**
  * Simple utility to make http calls and read the responses
  *
@@ -52,22 +55,45 @@ public class HttpUtil {
     private static final String TAG = HttpUtil.class.getSimpleName();
     private static final int BUFFER_SIZE = 8192;
 
+    @Nullable
+    private static volatile OkUrlFactory urlFactory;
+
+    /**
+     * Route every connection opened through this class onto the given client, so the legacy
+     * APIs share its connection pool with the Retrofit services.
+     */
+    public static void setHttpClient(@NonNull OkHttpClient httpClient) {
+        urlFactory = new OkUrlFactory(httpClient);
+    }
+
+    @NonNull
+    public static HttpURLConnection openConnection(@NonNull URL url) throws IOException {
+        OkUrlFactory factory = urlFactory;
+        if (factory != null) {
+            return factory.open(url);
+        }
+        return (HttpURLConnection) url.openConnection();
+    }
+
     @NonNull
     public static String httpGet(String url) throws IOException {
-        HttpURLConnection conn = (HttpURLConnection) (new URL(url).openConnection());
+        HttpURLConnection conn = openConnection(new URL(url));
         final long t0 = System.currentTimeMillis();
 
+        boolean success = false;
         try {
             int status = getStatusCode(conn);
             if (status != HttpURLConnection.HTTP_OK) {
                 throw new HttpException(conn.getResponseMessage(), status);
             }
             InputStream in = new BufferedInputStream(conn.getInputStream());
+            // Reading the whole response and closing the stream lets the connection be reused
             String response = readStream(in);
             Log.d(TAG, url + ": " + (System.currentTimeMillis() - t0) + " ms");
+            success = true;
             return response;
         } finally {
-            if (conn != null) {
+            if (!success) {
                 conn.disconnect();
             }
         }
@@ -78,7 +104,7 @@ public class HttpUtil {
         OutputStream out = null;
         HttpURLConnection conn = null;
         try {
-            conn = (HttpURLConnection) new URL(url).openConnection();
+            conn = openConnection(new URL(url));
 
             in = new BufferedInputStream(conn.getInputStream());
             out = new BufferedOutputStream(new FileOutputStream(dst));
@@ -108,7 +134,7 @@ public class HttpUtil {
         Writer writer;
         HttpURLConnection conn = null;
         try {
-            conn = (HttpURLConnection) new URL(url).openConnection();
+            conn = openConnection(new URL(url));
             conn.setDoInput(true);
             conn.setDoOutput(true);
 
@@ -21,6 +21,7 @@ package org.akvo.flow.util;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.media.ExifInterface;
+import android.support.annotation.Nullable;
 import android.text.TextUtils;
 import android.util.Base64;
 import android.util.DisplayMetrics;
@@ -39,6 +40,20 @@ import timber.log.Timber;
 
 public class ImageUtil {
 
+    /**
+     * Tags kept when an image is re-encoded. Bitmap.compress() does not write any EXIF data.
+     */
+    private static final String[] EXIF_TAGS = {
+            ExifInterface.TAG_ORIENTATION,
+            ExifInterface.TAG_DATETIME,
+            ExifInterface.TAG_MAKE,
+            ExifInterface.TAG_MODEL,
+            ExifInterface.TAG_GPS_LATITUDE,
+            ExifInterface.TAG_GPS_LATITUDE_REF,
+            ExifInterface.TAG_GPS_LONGITUDE,
+            ExifInterface.TAG_GPS_LONGITUDE_REF
+    };
+
     public static String encodeBase64(Bitmap bitmap) {
         ByteArrayOutputStream stream = new ByteArrayOutputStream();
         bitmap.compress(Bitmap.CompressFormat.PNG, 100, stream);
@@ -47,10 +62,47 @@ public class ImageUtil {
     }
 
     /**
-     * resizeImage handles resizing a too-large image file from the camera,
-     * @return true if the image was successfully resized to the new file, false otherwise
+     * Decode a Base64 encoded image, sampled down to about the requested size
      */
-    public static boolean resizeImage(String origFilename, String outFilename, int size) {
+    @Nullable
+    public static Bitmap decodeBase64(String image, int reqWidth, int reqHeight) {
+        byte[] data = Base64.decode(image, Base64.DEFAULT);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+
+        options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+
+    /**
+     * Decode an image file, sampled down to about the requested size
+     *
+     * @return the bitmap, or null if the file is not an image
+     */
+    @Nullable
+    public static Bitmap decodeSampled(String filename, int reqWidth, int reqHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(filename, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+        return BitmapFactory.decodeFile(filename, options);
+    }
+
+    /**
+     * resizeImage handles resizing a too-large image file from the camera, in a single
+     * decode and encode pass. The resized image gets the original EXIF data.
+     * @return the resized bitmap, so a thumbnail can be made from it, or null if the image
+     * could not be resized. The caller must recycle it.
+     */
+    @Nullable
+    public static Bitmap resizeImage(String origFilename, String outFilename, int size) {
         int reqWidth, reqHeight;
         switch (size) {
             case ConstantUtil.IMAGE_SIZE_1280_960:
@@ -88,31 +140,40 @@ public class ImageUtil {
         options.inJustDecodeBounds = false;
         Bitmap bitmap = BitmapFactory.decodeFile(origFilename, options);
 
-        if (bitmap != null && saveImage(bitmap, outFilename)) {
-            checkOrientation(origFilename, outFilename);// Ensure the EXIF data is not lost
-            Timber.d("Resized Image size: %d x %d", bitmap.getWidth(), bitmap.getHeight());
-            return true;
+        if (bitmap == null) {
+            return null;
         }
-        return false;
+        if (!saveImage(bitmap, outFilename)) {
+            bitmap.recycle();
+            return null;
+        }
+        copyExif(origFilename, outFilename);// Ensure the EXIF data is not lost
+        Timber.d("Resized Image size: %d x %d", bitmap.getWidth(), bitmap.getHeight());
+        return bitmap;
     }
 
-    private static void checkOrientation(String originalImage, String resizedImage) {
+    /**
+     * Copy the relevant EXIF tags of the original image, writing the resized one only once
+     */
+    private static void copyExif(String originalImage, String resizedImage) {
         try {
-            ExifInterface exif1 = new ExifInterface(originalImage);
-            ExifInterface exif2 = new ExifInterface(resizedImage);
-
-            final String orientation1 = exif1.getAttribute(ExifInterface.TAG_ORIENTATION);
-            final String orientation2 = exif2.getAttribute(ExifInterface.TAG_ORIENTATION);
-
-            if (!TextUtils.isEmpty(orientation1) && !orientation1.equals(orientation2)) {
-                Timber.d("Orientation property in EXIF does not match. Overriding it with original value...");
-                exif2.setAttribute(ExifInterface.TAG_ORIENTATION, orientation1);
-                exif2.saveAttributes();
+            ExifInterface original = new ExifInterface(originalImage);
+            ExifInterface resized = new ExifInterface(resizedImage);
+
+            boolean changed = false;
+            for (String tag : EXIF_TAGS) {
+                String value = original.getAttribute(tag);
+                if (!TextUtils.isEmpty(value) && !value.equals(resized.getAttribute(tag))) {
+                    resized.setAttribute(tag, value);
+                    changed = true;
+                }
+            }
+            if (changed) {
+                resized.saveAttributes();
             }
         } catch (IOException e) {
             Timber.e(e.getMessage());
         }
-
     }
 
     public static float[] getLocation(String image) {
@@ -151,7 +212,7 @@ public class ImageUtil {
         return false;
     }
 
-    private static boolean saveImage(Bitmap bitmap, String filename) {
+    public static boolean saveImage(Bitmap bitmap, String filename) {
         OutputStream out = null;
         try {
             out = new BufferedOutputStream(new FileOutputStream(filename));
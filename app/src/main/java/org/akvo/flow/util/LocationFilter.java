@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.util;
+
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Averages the GPS fixes of a stationary device over a sliding window, so the resulting
+ * location is better than any single fix.
+ * <p>
+ * Fixes are weighted by the inverse of their variance (1 / accuracy^2). A fix too far from the
+ * current estimate, given both accuracies, is rejected as an outlier, unless several
+ * consecutive outliers agree with each other, which means the device moved: the window then
+ * starts again from them. Fixes reporting a walking speed restart the window as well.
+ * <p>
+ * The estimate is stable once its accuracy has been within the target for a few consecutive
+ * fixes, without moving more than half the target. Plain Java, so it can be tested with
+ * recorded traces. Not thread safe.
+ */
+public class LocationFilter {
+
+    public static final long DEFAULT_WINDOW_MS = 15000;
+
+    private static final int MAX_SAMPLES = 30;
+    private static final int MIN_SAMPLES = 3;
+    private static final int STABLE_SAMPLES = 3;
+
+    /**
+     * Consecutive outliers agreeing with each other, taken as a move of the device
+     */
+    private static final int MOVE_SAMPLES = 3;
+    private static final double OUTLIER_SIGMAS = 3;
+
+    /**
+     * m/s. GPS speed of a stationary device is usually well below this.
+     */
+    private static final float MOVING_SPEED = 1f;
+
+    private static final double METERS_PER_DEGREE = 111320;
+
+    private final float targetAccuracy;
+    private final long windowMs;
+
+    private final LinkedList<Fix> samples = new LinkedList<>();
+    private final List<Fix> outliers = new ArrayList<>();
+
+    @Nullable
+    private Estimate estimate;
+    private int stableCount;
+
+    /**
+     * @param targetAccuracy accuracy, in meters, the estimate must keep to be stable
+     */
+    public LocationFilter(float targetAccuracy) {
+        this(targetAccuracy, DEFAULT_WINDOW_MS);
+    }
+
+    public LocationFilter(float targetAccuracy, long windowMs) {
+        this.targetAccuracy = targetAccuracy;
+        this.windowMs = windowMs;
+    }
+
+    public void reset() {
+        samples.clear();
+        outliers.clear();
+        estimate = null;
+        stableCount = 0;
+    }
+
+    /**
+     * @param time     milliseconds, from a monotonic clock
+     * @param accuracy meters, as reported by the fix. Fixes without accuracy must be dropped.
+     * @param speed    m/s, or NaN if unknown
+     * @return true if the estimate was updated with this fix, false if it was rejected
+     */
+    public boolean add(long time, double latitude, double longitude, double altitude,
+            float accuracy, float speed) {
+        Fix fix = new Fix(time, latitude, longitude, altitude, accuracy);
+        expire(time);
+
+        if (speed > MOVING_SPEED) {
+            // Moving, nothing to average
+            samples.clear();
+            outliers.clear();
+            samples.add(fix);
+            update(false);
+            return true;
+        }
+
+        if (estimate != null && samples.size() >= MIN_SAMPLES && isOutlier(fix, estimate)) {
+            outliers.add(fix);
+            if (outliers.size() < MOVE_SAMPLES) {
+                return false;
+            }
+            Estimate moved = average(outliers);
+            for (Fix outlier : outliers) {
+                if (isOutlier(outlier, moved)) {
+                    // Not consistent with each other, just noise
+                    outliers.remove(0);
+                    return false;
+                }
+            }
+            samples.clear();
+            samples.addAll(outliers);
+            outliers.clear();
+            update(false);
+            return true;
+        }
+
+        outliers.clear();
+        samples.add(fix);
+        if (samples.size() > MAX_SAMPLES) {
+            samples.removeFirst();
+        }
+        update(true);
+        return true;
+    }
+
+    /**
+     * @return the averaged location, or null if there were no fixes yet
+     */
+    @Nullable
+    public Estimate getEstimate() {
+        return estimate;
+    }
+
+    public boolean isStable() {
+        return stableCount >= STABLE_SAMPLES;
+    }
+
+    private void expire(long time) {
+        Iterator<Fix> iterator = samples.iterator();
+        while (iterator.hasNext()) {
+            if (time - iterator.next().time > windowMs) {
+                iterator.remove();
+            }
+        }
+        iterator = outliers.iterator();
+        while (iterator.hasNext()) {
+            if (time - iterator.next().time > windowMs) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void update(boolean sameWindow) {
+        Estimate previous = estimate;
+        estimate = average(samples);
+        if (sameWindow && previous != null && samples.size() >= MIN_SAMPLES
+                && estimate.accuracy <= targetAccuracy
+                && getDistance(previous, estimate.latitude, estimate.longitude)
+                <= targetAccuracy / 2) {
+            stableCount++;
+        } else {
+            stableCount = 0;
+        }
+    }
+
+    private boolean isOutlier(Fix fix, Estimate estimate) {
+        double distance = getDistance(estimate, fix.latitude, fix.longitude);
+        double sigma = Math.sqrt(fix.accuracy * fix.accuracy
+                + estimate.accuracy * estimate.accuracy);
+        return distance > OUTLIER_SIGMAS * sigma;
+    }
+
+    /**
+     * Weighted mean of the fixes. Its accuracy is the largest of the accuracy of the mean,
+     * and the spread of the fixes around it: GPS errors are correlated in time, so averaging
+     * does not improve the accuracy beyond the actual scatter of the fixes.
+     */
+    private static Estimate average(List<Fix> fixes) {
+        Fix origin = fixes.get(0);
+        double scale = Math.cos(Math.toRadians(origin.latitude));
+        double weights = 0, x = 0, y = 0, altitude = 0;
+        for (Fix fix : fixes) {
+            double weight = 1d / (fix.accuracy * fix.accuracy);
+            weights += weight;
+            x += weight * (fix.longitude - origin.longitude) * scale;
+            y += weight * (fix.latitude - origin.latitude);
+            altitude += weight * fix.altitude;
+        }
+        x /= weights;
+        y /= weights;
+
+        double spread = 0;
+        for (Fix fix : fixes) {
+            double dx = ((fix.longitude - origin.longitude) * scale - x) * METERS_PER_DEGREE;
+            double dy = (fix.latitude - origin.latitude - y) * METERS_PER_DEGREE;
+            spread += (dx * dx + dy * dy) / (fix.accuracy * fix.accuracy);
+        }
+        spread = Math.sqrt(spread / weights);
+
+        double accuracy = Math.max(Math.sqrt(1 / weights), spread);
+        return new Estimate(origin.latitude + y,
+                origin.longitude + (scale > 0 ? x / scale : 0), altitude / weights,
+                (float) accuracy, fixes.size());
+    }
+
+    private static double getDistance(Estimate estimate, double latitude, double longitude) {
+        double dx = (longitude - estimate.longitude) * METERS_PER_DEGREE
+                * Math.cos(Math.toRadians(estimate.latitude));
+        double dy = (latitude - estimate.latitude) * METERS_PER_DEGREE;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    public static class Estimate {
+
+        private final double latitude;
+        private final double longitude;
+        private final double altitude;
+        private final float accuracy;
+        private final int samples;
+
+        Estimate(double latitude, double longitude, double altitude, float accuracy,
+                int samples) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.altitude = altitude;
+            this.accuracy = accuracy;
+            this.samples = samples;
+        }
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        public double getLongitude() {
+            return longitude;
+        }
+
+        public double getAltitude() {
+            return altitude;
+        }
+
+        /**
+         * @return meters
+         */
+        public float getAccuracy() {
+            return accuracy;
+        }
+
+        /**
+         * @return the number of fixes averaged
+         */
+        public int getSamples() {
+            return samples;
+        }
+    }
+
+    private static class Fix {
+
+        final long time;
+        final double latitude;
+        final double longitude;
+        final double altitude;
+        final float accuracy;
+
+        Fix(long time, double latitude, double longitude, double altitude, float accuracy) {
+            this.time = time;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.altitude = altitude;
+            this.accuracy = accuracy;
+        }
+    }
+}
@@ -23,14 +23,10 @@ package org.akvo.flow.util;
 import android.content.Context;
 import android.support.annotation.NonNull;
 
-import org.akvo.flow.R;
-
 import java.io.File;
 
 import javax.inject.Inject;
 
-import timber.log.Timber;
-
 public class MediaFileHelper {
 
     public static final String RESIZED_SUFFIX = "resized";
@@ -48,45 +44,20 @@ public class MediaFileHelper {
         this.context = context;
     }
 
+    /**
+     * @return a new file for a captured image, in the media folder
+     */
     @NonNull
-    public String getImageFilePath(int maxImgSize) {
-        File tmp = getImageTmpFile();
-        String tempAbsolutePath = tmp.getAbsolutePath();
-
-        // Ensure no image is saved in the DCIM folder
-        FileUtil.cleanDCIM(context, tempAbsolutePath);
-
-        File imgFile = getNamedMediaFile(IMAGE_SUFFIX);
-        String absolutePath = imgFile.getAbsolutePath();
-
-        if (ImageUtil.resizeImage(tempAbsolutePath, absolutePath, maxImgSize)) {
-            Timber.i("Image resized to: %s", getReadableImageSize(maxImgSize));
-            if (!tmp.delete()) { // must check return value to know if it failed
-                Timber.e("Media file delete failed");
-            }
-        } else if (!tmp.renameTo(imgFile)) {
-            // must check  return  value to  know if it  failed!
-            Timber.e("Media file rename failed");
-        }
-        return absolutePath;
+    public File getNamedImageFile() {
+        return getNamedMediaFile(IMAGE_SUFFIX);
     }
 
+    /**
+     * @return a new file for a captured video, in the media folder
+     */
     @NonNull
-    public String getVideoFilePath() {
-        File tmp = getVideoTmpFile();
-        String tempAbsolutePath = tmp.getAbsolutePath();
-
-        // Ensure no image is saved in the DCIM folder
-        FileUtil.cleanDCIM(context, tempAbsolutePath);
-
-        File imgFile = getNamedMediaFile(VIDEO_SUFFIX);
-        String absolutePath = imgFile.getAbsolutePath();
-
-       if (!tmp.renameTo(imgFile)) {
-            // must check  return  value to  know if it  failed!
-            Timber.e("Media file rename failed");
-        }
-        return absolutePath;
+    public File getNamedVideoFile() {
+        return getNamedMediaFile(VIDEO_SUFFIX);
     }
 
     @NonNull
@@ -95,11 +66,6 @@ public class MediaFileHelper {
         return new File(FileUtil.getFilesDir(FileUtil.FileType.MEDIA), filename);
     }
 
-    private String getReadableImageSize(int maxImgSize) {
-        return context.getResources()
-                .getStringArray(R.array.max_image_size_pref)[maxImgSize];
-    }
-
     @NonNull
     public File getVideoTmpFile() {
         String filename = TEMP_VIDEO_NAME_PREFIX + VIDEO_SUFFIX;
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.util.image;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.media.ThumbnailUtils;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.MediaStore;
+import android.support.annotation.NonNull;
+
+import org.akvo.flow.util.FileUtil;
+import org.akvo.flow.util.ImageUtil;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import timber.log.Timber;
+
+/**
+ * Processes the captured media off the main thread: resizing, EXIF data and thumbnail
+ * creation for images, and GPS tags added later on. A single worker thread keeps one full size
+ * bitmap in memory at most, and runs the tasks of a file in the order they were queued, so a
+ * GPS tag is always written after the image it belongs to. Only the claim of the captured
+ * file runs on the calling thread, before the next capture can happen.
+ * <p>
+ * The final media file is named by the caller, so the question can store it right away. The
+ * listener of a file is notified on the main thread once it is ready. Files claimed before
+ * the app was stopped are processed again as soon as the processor is created.
+ */
+@Singleton
+public class MediaProcessor {
+
+    private final Context context;
+    private final ThumbnailCache thumbnailCache;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // Accessed on the main thread only
+    private final Set<String> pending = new HashSet<>();
+    private final Map<String, Listener> listeners = new HashMap<>();
+
+    // Claimed since the app started, not to be recovered
+    private final Set<String> claimed = Collections.synchronizedSet(new HashSet<String>());
+
+    @Inject
+    public MediaProcessor(Context context, ThumbnailCache thumbnailCache) {
+        this.context = context;
+        this.thumbnailCache = thumbnailCache;
+        recoverPendingFiles();
+    }
+
+    /**
+     * Queue a captured image to be resized into the given destination, along with its
+     * thumbnail. Must be called on the main thread.
+     */
+    public void processImage(@NonNull File source, @NonNull File destination, int maxImgSize) {
+        queue(source, PendingMedia.image(source.getParentFile(), destination, maxImgSize));
+    }
+
+    /**
+     * Queue a captured video to be moved into the given destination, and its thumbnail
+     * created. Must be called on the main thread.
+     */
+    public void processVideo(@NonNull File source, @NonNull File destination) {
+        queue(source, PendingMedia.video(source.getParentFile(), destination));
+    }
+
+    /**
+     * Queue the GPS tag of an image, written once any pending processing of the file is done
+     */
+    public void setLocation(@NonNull final String filename, final double latitude,
+            final double longitude) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long lastModified = new File(filename).lastModified();
+                if (ImageUtil.setLocation(filename, latitude, longitude)) {
+                    thumbnailCache.onModified(filename, lastModified);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return true if the file is not ready yet. Must be called on the main thread.
+     */
+    public boolean isProcessing(@NonNull String filename) {
+        return pending.contains(filename);
+    }
+
+    /**
+     * Block until the files queued so far, recovered ones included, are ready. Must not be
+     * called on the main thread.
+     *
+     * @return false if they are still being processed after the given time
+     */
+    public boolean awaitProcessing(long timeout, @NonNull TimeUnit unit) {
+        Future<?> queued = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                // Runs once every task queued before is done
+            }
+        });
+        try {
+            queued.get(timeout, unit);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get notified once the given file is ready, replacing any previous listener of that file.
+     * Must be called on the main thread.
+     */
+    public void setListener(@NonNull String filename, @NonNull Listener listener) {
+        listeners.put(filename, listener);
+    }
+
+    public void removeListener(@NonNull String filename, @NonNull Listener listener) {
+        if (listeners.get(filename) == listener) {
+            listeners.remove(filename);
+        }
+    }
+
+    /**
+     * Claim the captured file and queue it. The copy the camera may have left in the DCIM
+     * folder is removed on the worker thread, before the file is processed.
+     */
+    private void queue(@NonNull File source, @NonNull PendingMedia media) {
+        claimed.add(media.file.getName());
+        final PendingMedia claimedMedia = media.claim(source);
+        pending.add(media.destination.getAbsolutePath());
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Ensure no image is saved in the DCIM folder
+                FileUtil.cleanDCIM(context, claimedMedia.file.getAbsolutePath());
+            }
+        });
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                process(claimedMedia);
+            }
+        });
+    }
+
+    /**
+     * Queue the files claimed, but not processed, before the app was stopped
+     */
+    private void recoverPendingFiles() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                List<PendingMedia> media = PendingMedia.list(
+                        FileUtil.getFilesDir(FileUtil.FileType.TMP),
+                        FileUtil.getFilesDir(FileUtil.FileType.MEDIA), claimed);
+                for (PendingMedia pendingMedia : media) {
+                    Timber.i("Recovering pending media: %s", pendingMedia.destination.getName());
+                    setPending(pendingMedia.destination.getAbsolutePath());
+                    process(pendingMedia);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs on the worker thread
+     */
+    private void process(PendingMedia media) {
+        if (media.video) {
+            moveVideo(media);
+        } else {
+            resizeImage(media);
+        }
+    }
+
+    /**
+     * Runs on the worker thread
+     */
+    private void resizeImage(PendingMedia image) {
+        String filename = image.destination.getAbsolutePath();
+        boolean geotagged = false;
+        try {
+            Bitmap bitmap = ImageUtil.resizeImage(image.file.getAbsolutePath(), filename,
+                    image.maxImgSize);
+            if (bitmap != null) {
+                // Made from the decoded image, before it is released
+                thumbnailCache.put(filename, bitmap);
+                bitmap.recycle();
+                if (!image.file.delete()) { // must check return value to know if it failed
+                    Timber.e("Media file delete failed");
+                }
+            } else {
+                image.moveToDestination();
+            }
+            geotagged = ImageUtil.getLocation(filename) != null;
+        } finally {
+            notifyProcessed(filename, geotagged);
+        }
+    }
+
+    /**
+     * Runs on the worker thread
+     */
+    private void moveVideo(PendingMedia video) {
+        String filename = video.destination.getAbsolutePath();
+        try {
+            video.moveToDestination();
+            Bitmap bitmap = ThumbnailUtils.createVideoThumbnail(filename,
+                    MediaStore.Video.Thumbnails.MINI_KIND);
+            if (bitmap != null) {
+                thumbnailCache.put(filename, bitmap);
+                bitmap.recycle();
+            }
+        } finally {
+            notifyProcessed(filename, false);
+        }
+    }
+
+    private void setPending(@NonNull final String filename) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                pending.add(filename);
+            }
+        });
+    }
+
+    private void notifyProcessed(@NonNull final String filename, final boolean geotagged) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                pending.remove(filename);
+                Listener listener = listeners.remove(filename);
+                if (listener != null) {
+                    listener.onMediaProcessed(filename, geotagged);
+                }
+            }
+        });
+    }
+
+    public interface Listener {
+
+        /**
+         * @param geotagged true if the image already has a location in its EXIF data
+         */
+        void onMediaProcessed(@NonNull String filename, boolean geotagged);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.util.image;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads in flight, so a key requested again while loading shares the ongoing load instead
+ * of starting another one. Not thread safe.
+ */
+class PendingLoads<K> {
+
+    private final Map<K, List<Runnable>> callbacks = new HashMap<>();
+
+    /**
+     * @return true if the key was not being loaded, i.e. the caller must start the load
+     */
+    boolean add(@NonNull K key, @NonNull Runnable callback) {
+        List<Runnable> pending = callbacks.get(key);
+        if (pending != null) {
+            pending.add(callback);
+            return false;
+        }
+        pending = new ArrayList<>();
+        pending.add(callback);
+        callbacks.put(key, pending);
+        return true;
+    }
+
+    boolean isLoading(@NonNull K key) {
+        return callbacks.containsKey(key);
+    }
+
+    /**
+     * @return the callbacks waiting for the key, in the order they were added
+     */
+    @NonNull
+    List<Runnable> complete(@NonNull K key) {
+        List<Runnable> pending = callbacks.remove(key);
+        return pending != null ? pending : Collections.<Runnable>emptyList();
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.util.image;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import timber.log.Timber;
+
+/**
+ * A captured media file claimed by the {@link MediaProcessor}, waiting to be processed into
+ * its destination. Claimed files are named pending_image[max size]_[destination] for images,
+ * and pending_video_[destination] for videos, so they can be processed again if the app is
+ * stopped before they are ready.
+ */
+class PendingMedia {
+
+    private static final String PREFIX = "pending_";
+    private static final String IMAGE_PREFIX = "image";
+    private static final String VIDEO_PREFIX = "video_";
+
+    final File file;
+    final File destination;
+    final boolean video;
+    final int maxImgSize;
+
+    private PendingMedia(File file, File destination, boolean video, int maxImgSize) {
+        this.file = file;
+        this.destination = destination;
+        this.video = video;
+        this.maxImgSize = maxImgSize;
+    }
+
+    /**
+     * @param dir folder of the captured image
+     */
+    @NonNull
+    static PendingMedia image(@NonNull File dir, @NonNull File destination, int maxImgSize) {
+        String name = PREFIX + IMAGE_PREFIX + maxImgSize + "_" + destination.getName();
+        return new PendingMedia(new File(dir, name), destination, false, maxImgSize);
+    }
+
+    /**
+     * @param dir folder of the captured video
+     */
+    @NonNull
+    static PendingMedia video(@NonNull File dir, @NonNull File destination) {
+        String name = PREFIX + VIDEO_PREFIX + destination.getName();
+        return new PendingMedia(new File(dir, name), destination, true, 0);
+    }
+
+    /**
+     * The camera always writes to the same temporary file. Move it out of the way so the
+     * next capture cannot overwrite it before it is processed.
+     *
+     * @return the pending media, or the captured file itself if it could not be moved
+     */
+    @NonNull
+    PendingMedia claim(@NonNull File source) {
+        if (source.renameTo(file)) {
+            return this;
+        }
+        Timber.e("Media file rename failed: %s", source.getName());
+        return new PendingMedia(source, destination, video, maxImgSize);
+    }
+
+    /**
+     * Fallback for the images which cannot be resized: the captured file is kept as is
+     *
+     * @return false if the file could not be moved
+     */
+    boolean moveToDestination() {
+        if (file.renameTo(destination)) {
+            return true;
+        }
+        Timber.e("Media file rename failed: %s", file.getName());
+        return false;
+    }
+
+    /**
+     * @return the pending media of the given file, or null if it is not a claimed file
+     */
+    @Nullable
+    static PendingMedia parse(@NonNull File file, @NonNull File mediaDir) {
+        String name = file.getName();
+        if (!name.startsWith(PREFIX)) {
+            return null;
+        }
+        name = name.substring(PREFIX.length());
+        if (name.startsWith(VIDEO_PREFIX)) {
+            File destination = new File(mediaDir, name.substring(VIDEO_PREFIX.length()));
+            return new PendingMedia(file, destination, true, 0);
+        }
+
+        int separator = name.indexOf('_');
+        if (name.startsWith(IMAGE_PREFIX) && separator > IMAGE_PREFIX.length()) {
+            try {
+                int maxImgSize = Integer.parseInt(name.substring(IMAGE_PREFIX.length(),
+                        separator));
+                File destination = new File(mediaDir, name.substring(separator + 1));
+                return new PendingMedia(file, destination, false, maxImgSize);
+            } catch (NumberFormatException e) {
+                // Handled below
+            }
+        }
+        Timber.e("Unknown pending media file: %s", file.getName());
+        return null;
+    }
+
+    /**
+     * @param ignored names of the files claimed since the app started, already queued
+     * @return the media claimed, but not processed, before the app was stopped
+     */
+    @NonNull
+    static List<PendingMedia> list(@NonNull File dir, @NonNull File mediaDir,
+            @NonNull Set<String> ignored) {
+        List<PendingMedia> media = new ArrayList<>();
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return media;
+        }
+        for (File file : files) {
+            if (!ignored.contains(file.getName())) {
+                PendingMedia pendingMedia = parse(file, mediaDir);
+                if (pendingMedia != null) {
+                    media.add(pendingMedia);
+                }
+            }
+        }
+        return media;
+    }
+}
@@ -23,14 +23,14 @@ package org.akvo.flow.util.image;
 import android.app.Activity;
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.drawable.Drawable;
-import android.util.Base64;
 import android.widget.ImageView;
 
 import com.squareup.picasso.Picasso;
 import com.squareup.picasso.Target;
 
+import org.akvo.flow.util.ImageUtil;
+
 import java.io.File;
 
 public class PicassoImageLoader implements ImageLoader {
@@ -72,8 +72,9 @@ public class PicassoImageLoader implements ImageLoader {
 
     @Override
     public void loadFromBase64String(String image, ImageLoaderListener listener) {
-        byte[] decode = Base64.decode(image, Base64.DEFAULT);
-        Bitmap bitmap = BitmapFactory.decodeByteArray(decode, 0, decode.length);
+        // Only displayed as a preview
+        Bitmap bitmap = ImageUtil.decodeBase64(image, Thumbnails.THUMBNAIL_SIZE,
+                Thumbnails.THUMBNAIL_SIZE);
         listener.onImageReady(bitmap);
     }
 }
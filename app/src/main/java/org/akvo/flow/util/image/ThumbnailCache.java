@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.util.image;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.ThumbnailUtils;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.MediaStore;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+import android.widget.ImageView;
+
+import org.akvo.flow.R;
+import org.akvo.flow.util.ImageUtil;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import timber.log.Timber;
+
+/**
+ * Two level cache of media previews: decoded thumbnails are kept in memory, bounded by their
+ * size in bytes, in front of the {@link Thumbnails} saved to disk. Both levels are keyed by
+ * the path and the last modified time of the media file.
+ * <p>
+ * Thumbnails are normally created at capture time by the {@link MediaProcessor}, from the
+ * bitmap it already decoded. Older files get theirs on first display, with a single sampled
+ * decode. Full size media files are never decoded for a preview otherwise.
+ */
+@Singleton
+public class ThumbnailCache {
+
+    /**
+     * Share of the heap used by the memory cache. A 480 x 360 thumbnail takes about 700 KB,
+     * so a 128 MB heap keeps over 20 of them.
+     */
+    private static final int MEMORY_FRACTION = 8;
+
+    private final LruCache<String, Bitmap> memoryCache;
+
+    // Two threads keep a decode storm from queuing previews behind each other for too long
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // Accessed on the main thread only
+    private final PendingLoads<String> loading = new PendingLoads<>();
+
+    @Inject
+    public ThumbnailCache() {
+        int maxSize = (int) Math.min(Integer.MAX_VALUE,
+                Runtime.getRuntime().maxMemory() / MEMORY_FRACTION);
+        memoryCache = new LruCache<String, Bitmap>(maxSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                // Bitmap.getByteCount() requires API 12
+                return bitmap.getRowBytes() * bitmap.getHeight();
+            }
+        };
+    }
+
+    /**
+     * Display the thumbnail of the given image or video. Loading happens off the main thread
+     * unless the thumbnail is already in memory. If the view is rebound to another file in the
+     * meantime, the outdated thumbnail is dropped.
+     */
+    public void display(@NonNull String filename, @NonNull final ImageView imageView) {
+        final File file = new File(filename);
+        final String key = getKey(filename, file.lastModified());
+        imageView.setTag(R.id.thumbnail_key, key);
+
+        Bitmap cached = memoryCache.get(key);
+        if (cached != null) {
+            imageView.setImageBitmap(cached);
+            return;
+        }
+
+        imageView.setImageDrawable(null);
+        Runnable callback = new Runnable() {
+            @Override
+            public void run() {
+                Bitmap bitmap = memoryCache.get(key);
+                if (bitmap != null && key.equals(imageView.getTag(R.id.thumbnail_key))) {
+                    imageView.setImageBitmap(bitmap);
+                }
+            }
+        };
+        if (loading.add(key, callback)) {
+            load(file, key);
+        }
+    }
+
+    /**
+     * Drop any pending thumbnail of the view, before it displays something else
+     */
+    public void cancel(@NonNull ImageView imageView) {
+        imageView.setTag(R.id.thumbnail_key, null);
+    }
+
+    /**
+     * Create the thumbnail of a media file from an already decoded bitmap, i.e. at capture
+     * time. The caller keeps ownership of the bitmap. May be called from any thread.
+     */
+    public void put(@NonNull String filename, @NonNull Bitmap bitmap) {
+        Bitmap thumbnail = Thumbnails.save(filename, bitmap);
+        memoryCache.put(getKey(filename, new File(filename).lastModified()), thumbnail);
+    }
+
+    /**
+     * Keep the thumbnail of a file whose pixels are unchanged, but which was modified, e.g.
+     * when writing its EXIF data. May be called from any thread.
+     *
+     * @param lastModified the last modified time of the file before the modification
+     */
+    public void onModified(@NonNull String filename, long lastModified) {
+        Thumbnails.onModified(filename, lastModified);
+        Bitmap bitmap = memoryCache.remove(getKey(filename, lastModified));
+        if (bitmap != null) {
+            memoryCache.put(getKey(filename, new File(filename).lastModified()), bitmap);
+        }
+    }
+
+    private void load(@NonNull final File file, @NonNull final String key) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Bitmap bitmap = read(file);
+                    if (bitmap != null) {
+                        memoryCache.put(key, bitmap);
+                    }
+                } catch (OutOfMemoryError e) {
+                    Timber.e(e, "Could not load thumbnail of %s", file.getName());
+                } finally {
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            for (Runnable callback : loading.complete(key)) {
+                                callback.run();
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    @Nullable
+    private static Bitmap read(@NonNull File file) {
+        String filename = file.getAbsolutePath();
+        File thumbnailFile = Thumbnails.getFile(filename);
+        if (thumbnailFile.exists()) {
+            Bitmap bitmap = BitmapFactory.decodeFile(thumbnailFile.getAbsolutePath());
+            if (bitmap != null) {
+                return bitmap;
+            }
+        }
+
+        Bitmap source = ImageUtil.decodeSampled(filename, Thumbnails.THUMBNAIL_SIZE,
+                Thumbnails.THUMBNAIL_SIZE);
+        if (source == null) {
+            // Not an image
+            source = ThumbnailUtils.createVideoThumbnail(filename,
+                    MediaStore.Video.Thumbnails.MINI_KIND);
+        }
+        if (source == null) {
+            return null;
+        }
+        Bitmap thumbnail = Thumbnails.save(filename, source);
+        source.recycle();
+        return thumbnail;
+    }
+
+    @NonNull
+    static String getKey(@NonNull String path, long lastModified) {
+        return path + ":" + lastModified;
+    }
+}
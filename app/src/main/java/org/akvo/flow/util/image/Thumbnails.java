@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.util.image;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+
+import org.akvo.flow.util.FileUtil;
+import org.akvo.flow.util.ImageUtil;
+
+import java.io.File;
+import java.io.FilenameFilter;
+
+import timber.log.Timber;
+
+/**
+ * Thumbnails of the media files, stored in the thumbnails folder. They are named after the
+ * path and the last modified time of the media file, so an edited file never shows a stale
+ * thumbnail, and the thumbnails of older versions are deleted when a new one is saved.
+ */
+public class Thumbnails {
+
+    /**
+     * px. Fits the media question preview, 150dp high.
+     */
+    public static final int THUMBNAIL_SIZE = 480;
+
+    private static final String THUMBNAIL_SUFFIX = ".jpg";
+
+    /**
+     * @return the thumbnail of the current version of the file. It may not exist.
+     */
+    @NonNull
+    public static File getFile(@NonNull String filename) {
+        return new File(getDir(), getFileName(filename, new File(filename).lastModified()));
+    }
+
+    /**
+     * Scale the bitmap down to the thumbnail size, and save it as the thumbnail of the current
+     * version of the file. May be called from any thread.
+     *
+     * @return the thumbnail, never the given bitmap. The caller must recycle both.
+     */
+    @NonNull
+    public static Bitmap save(@NonNull String filename, @NonNull Bitmap bitmap) {
+        Bitmap thumbnail = scale(bitmap);
+        if (thumbnail == bitmap) {
+            thumbnail = bitmap.copy(bitmap.getConfig(), false);
+        }
+        File dir = getDir();
+        deleteOutdated(dir, filename);
+        ImageUtil.saveImage(thumbnail, new File(dir,
+                getFileName(filename, new File(filename).lastModified())).getAbsolutePath());
+        return thumbnail;
+    }
+
+    /**
+     * Keep the thumbnail of a file whose pixels are unchanged, but which was modified, e.g.
+     * when writing its EXIF data.
+     *
+     * @param lastModified the last modified time of the file before the modification
+     */
+    public static void onModified(@NonNull String filename, long lastModified) {
+        if (!rename(getDir(), filename, lastModified, new File(filename).lastModified())) {
+            Timber.w("No thumbnail to keep for %s", filename);
+        }
+    }
+
+    /**
+     * @return false if there was no thumbnail for the previous version, or it could not be
+     * renamed
+     */
+    static boolean rename(@NonNull File dir, @NonNull String path, long previous,
+            long current) {
+        File from = new File(dir, getFileName(path, previous));
+        if (!from.exists()) {
+            return false;
+        }
+        // Modified within the timestamp resolution of the filesystem, same name
+        return previous == current || from.renameTo(new File(dir, getFileName(path, current)));
+    }
+
+    static void deleteOutdated(@NonNull File dir, @NonNull String path) {
+        final String prefix = getPrefix(path);
+        File[] outdated = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(prefix);
+            }
+        });
+        if (outdated == null) {
+            return;
+        }
+        for (File file : outdated) {
+            if (!file.delete()) {
+                Timber.e("Thumbnail delete failed: %s", file.getName());
+            }
+        }
+    }
+
+    @NonNull
+    static String getFileName(@NonNull String path, long lastModified) {
+        return getPrefix(path) + lastModified + THUMBNAIL_SUFFIX;
+    }
+
+    /**
+     * Media files have unique names, the path hash tells apart the same name elsewhere
+     */
+    @NonNull
+    static String getPrefix(@NonNull String path) {
+        String name = new File(path).getName();
+        int extension = name.lastIndexOf('.');
+        if (extension > 0) {
+            name = name.substring(0, extension);
+        }
+        return name + "_" + Integer.toHexString(path.hashCode()) + "_";
+    }
+
+    /**
+     * @return the bitmap scaled down to fit the thumbnail size, or the bitmap itself if it fits
+     */
+    @NonNull
+    static Bitmap scale(@NonNull Bitmap bitmap) {
+        float scale = Math.min(1f,
+                (float) THUMBNAIL_SIZE / Math.max(bitmap.getWidth(), bitmap.getHeight()));
+        if (scale == 1f) {
+            return bitmap;
+        }
+        return Bitmap.createScaledBitmap(bitmap,
+                Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+    }
+
+    @NonNull
+    private static File getDir() {
+        return FileUtil.getFilesDir(FileUtil.FileType.THUMBNAILS);
+    }
+}
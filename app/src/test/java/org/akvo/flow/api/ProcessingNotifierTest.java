@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.api;
+
+import android.support.annotation.NonNull;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Runs the notifier against a local stand-in for the processing endpoint, counting the
+ * requests it receives.
+ */
+public class ProcessingNotifierTest {
+
+    private static final int FILES = 100;
+    private static final int BATCH_SIZE = 25;
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile boolean supportsBatches;
+    private volatile int legacyBatchStatus = HttpURLConnection.HTTP_OK;
+    private volatile boolean formDeleted;
+    private final AtomicInteger failingBatches = new AtomicInteger();
+
+    private final Map<Long, Integer> results = Collections
+            .synchronizedMap(new HashMap<Long, Integer>());
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/processor", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                List<String> fileNames = getParams(exchange.getRequestURI().getRawQuery(),
+                        ProcessingNotifier.PARAM_FILENAMES);
+                if (formDeleted) {
+                    respond(exchange, HttpURLConnection.HTTP_NOT_FOUND, "");
+                } else if (fileNames.isEmpty()) {
+                    respond(exchange, HttpURLConnection.HTTP_OK, "");
+                } else if (failingBatches.getAndDecrement() > 0) {
+                    respond(exchange, HttpURLConnection.HTTP_UNAVAILABLE, "");
+                } else if (!supportsBatches) {
+                    // Legacy server: the 'fileNames' parameter is ignored
+                    respond(exchange, legacyBatchStatus, "");
+                } else {
+                    StringBuilder body = new StringBuilder("{\"processed\":[");
+                    for (int i = 0; i < fileNames.size(); i++) {
+                        body.append(i > 0 ? "," : "").append('"').append(fileNames.get(i))
+                                .append('"');
+                    }
+                    respond(exchange, HttpURLConnection.HTTP_OK, body.append("]}").toString());
+                }
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void batchedNotificationsShouldReduceRequestCount() {
+        supportsBatches = true;
+        ProcessingNotifier notifier = createNotifier();
+
+        notifyFiles(notifier);
+
+        assertEquals(FILES / BATCH_SIZE, requests.get());
+        assertEquals(FILES / BATCH_SIZE, notifier.getRequestCount());
+        assertAllFilesHaveStatus(HttpURLConnection.HTTP_OK);
+    }
+
+    @Test
+    public void notificationsShouldFallBackToSingleFileWhenBatchesNotSupported() {
+        supportsBatches = false;
+        ProcessingNotifier notifier = createNotifier();
+
+        notifyFiles(notifier);
+
+        // One rejected batch, then one request per file
+        assertEquals(FILES + 1, requests.get());
+        assertAllFilesHaveStatus(HttpURLConnection.HTTP_OK);
+    }
+
+    @Test
+    public void notificationsShouldFallBackToSingleFileWhenBatchesNotFound() {
+        supportsBatches = false;
+        legacyBatchStatus = HttpURLConnection.HTTP_NOT_FOUND;
+        ProcessingNotifier notifier = createNotifier();
+
+        notifyFiles(notifier);
+
+        // The form exists, so the first 404 disables batching
+        assertEquals(FILES + 1, requests.get());
+        assertAllFilesHaveStatus(HttpURLConnection.HTTP_OK);
+    }
+
+    @Test
+    public void deletedFormShouldBeReportedForEveryFileInBatch() {
+        supportsBatches = true;
+        formDeleted = true;
+        ProcessingNotifier notifier = createNotifier();
+
+        notifyFiles(notifier);
+
+        // Every batch is confirmed by a single file notification
+        assertEquals(2 * FILES / BATCH_SIZE, requests.get());
+        assertAllFilesHaveStatus(HttpURLConnection.HTTP_NOT_FOUND);
+    }
+
+    @Test
+    public void transientBatchFailureShouldKeepBatching() {
+        supportsBatches = true;
+        failingBatches.set(1);
+        ProcessingNotifier notifier = createNotifier();
+
+        notifyFiles(notifier);
+
+        // The failed batch is notified file by file, the next ones are still batched
+        assertEquals(1 + BATCH_SIZE + FILES / BATCH_SIZE - 1, requests.get());
+        assertAllFilesHaveStatus(HttpURLConnection.HTTP_OK);
+    }
+
+    @Test
+    public void filesWithTheSameNameShouldBeReportedById() {
+        supportsBatches = true;
+        ProcessingNotifier notifier = createNotifier();
+
+        notifier.add("123", "image", "same.jpg", 1);
+        notifier.add("123", "image", "same.jpg", 2);
+        notifier.add("456", "image", "same.jpg", 3);
+        notifier.flush();
+
+        assertEquals(3, results.size());
+        for (long id = 1; id <= 3; id++) {
+            assertEquals(HttpURLConnection.HTTP_OK, results.get(id).intValue());
+        }
+    }
+
+    private ProcessingNotifier createNotifier() {
+        Map<String, String> deviceParams = new HashMap<>();
+        deviceParams.put("devId", "test");
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/processor";
+        return new ProcessingNotifier(url, deviceParams, BATCH_SIZE,
+                new ProcessingNotifier.Listener() {
+                    @Override
+                    public void onNotified(@NonNull String formId, @NonNull String fileName,
+                            long id, int status) {
+                        results.put(id, status);
+                    }
+                });
+    }
+
+    private void notifyFiles(ProcessingNotifier notifier) {
+        for (int i = 0; i < FILES; i++) {
+            notifier.add("123", "image", "file" + i + ".jpg", i);
+        }
+        notifier.flush();
+    }
+
+    private void assertAllFilesHaveStatus(int status) {
+        assertEquals(FILES, results.size());
+        for (Integer result : results.values()) {
+            assertEquals(status, result.intValue());
+        }
+    }
+
+    private static List<String> getParams(String query, String name) throws IOException {
+        List<String> values = new ArrayList<>();
+        if (query != null) {
+            for (String param : query.split("&")) {
+                String[] pair = param.split("=", 2);
+                if (pair.length == 2 && name.equals(pair[0])) {
+                    values.add(URLDecoder.decode(pair[1], "UTF-8"));
+                }
+            }
+        }
+        return values;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length > 0 ? bytes.length : -1);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.api;
+
+import android.support.annotation.NonNull;
+
+import org.akvo.flow.domain.MultipartUpload;
+import org.akvo.flow.util.FileUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Runs multipart uploads against fake connections that behave like the S3 endpoints,
+ * recording the requests they receive.
+ */
+public class S3ApiTest {
+
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+    private static final String OBJECT_KEY = "images/image.jpg";
+    private static final String CONTENT_TYPE = "image/jpeg";
+
+    private static final Pattern PART_QUERY = Pattern.compile("partNumber=(\\d+)&uploadId=(.+)$");
+
+    private File file;
+    private byte[] content;
+    private FakeS3 s3;
+    private S3Api api;
+    private final List<MultipartUpload> updates = new ArrayList<>();
+    private final S3Api.MultipartUploadListener listener = new S3Api.MultipartUploadListener() {
+        @Override
+        public void onUploadUpdated(@NonNull MultipartUpload upload) {
+            updates.add(upload);
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        content = new byte[PART_SIZE + 1024];
+        new Random(42).nextBytes(content);
+        file = File.createTempFile("multipart", ".jpg");
+        writeContent();
+        s3 = new FakeS3();
+        api = new S3Api(null) {
+            @Override
+            HttpURLConnection openConnection(URL url) throws IOException {
+                return new FakeConnection(url, s3);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void putMultipart_ShouldUploadAllParts() throws Exception {
+        MultipartUpload upload = new MultipartUpload();
+
+        assertTrue(api.putMultipart(OBJECT_KEY, file, CONTENT_TYPE, false, upload, listener));
+
+        assertEquals(1, s3.initiated);
+        assertEquals(2, s3.parts.size());
+        assertEquals(1, s3.completed);
+        assertEquals(2, upload.getPartCount());
+        assertEquals(md5(0, PART_SIZE), upload.getPartEtags().get(0));
+        assertEquals(md5(PART_SIZE, content.length - PART_SIZE), upload.getPartEtags().get(1));
+        // Upload started and one update per part
+        assertEquals(3, updates.size());
+    }
+
+    @Test
+    public void putMultipart_ShouldResumeAfterLastConfirmedPart() throws Exception {
+        MultipartUpload upload = new MultipartUpload();
+        upload.start(FakeS3.UPLOAD_ID, file);
+        upload.addPart(md5(0, PART_SIZE));
+        s3.parts.add(md5(0, PART_SIZE));
+
+        assertTrue(api.putMultipart(OBJECT_KEY, file, CONTENT_TYPE, false, upload, listener));
+
+        assertEquals(0, s3.initiated);
+        assertEquals(0, s3.aborted);
+        assertEquals(1, s3.partRequests.size());
+        assertEquals(Integer.valueOf(2), s3.partRequests.get(0));
+        assertEquals(1, s3.completed);
+        assertEquals(2, upload.getPartCount());
+    }
+
+    @Test
+    public void putMultipart_ShouldRestartWhenUploadNotFound() throws Exception {
+        MultipartUpload upload = new MultipartUpload();
+        upload.start("expired-upload", file);
+        upload.addPart(md5(0, PART_SIZE));
+
+        assertFalse(api.putMultipart(OBJECT_KEY, file, CONTENT_TYPE, false, upload, listener));
+        assertFalse(upload.isStarted());
+        assertEquals(0, upload.getPartCount());
+        assertEquals(1, updates.size());
+        assertEquals(0, s3.completed);
+        // Nothing to abort, the upload does not exist anymore
+        assertEquals(0, s3.aborted);
+
+        // The next attempt starts a new upload from the first part
+        assertTrue(api.putMultipart(OBJECT_KEY, file, CONTENT_TYPE, false, upload, listener));
+        assertEquals(1, s3.initiated);
+        assertEquals(FakeS3.UPLOAD_ID, upload.getUploadId());
+        assertEquals(2, upload.getPartCount());
+        assertEquals(1, s3.completed);
+    }
+
+    @Test
+    public void putMultipart_ShouldResetOnEtagMismatch() throws Exception {
+        s3.completeEtag = "d41d8cd98f00b204e9800998ecf8427e-2";
+        MultipartUpload upload = new MultipartUpload();
+
+        assertFalse(api.putMultipart(OBJECT_KEY, file, CONTENT_TYPE, false, upload, listener));
+
+        assertEquals(1, s3.completed);
+        assertEquals(1, s3.aborted);
+        assertFalse(upload.isStarted());
+        assertNull(upload.getUploadId());
+        assertEquals(0, upload.getPartCount());
+    }
+
+    @Test
+    public void putMultipart_ShouldAbortAndRestartWhenFileChanged() throws Exception {
+        MultipartUpload upload = new MultipartUpload();
+        upload.start(FakeS3.UPLOAD_ID, file);
+        upload.addPart(md5(0, PART_SIZE));
+        s3.parts.add(md5(0, PART_SIZE));
+        s3.uploadId = FakeS3.UPLOAD_ID;
+        // Same size, different contents
+        content[0]++;
+        writeContent();
+        file.setLastModified(file.lastModified() - 10000);
+
+        assertTrue(api.putMultipart(OBJECT_KEY, file, CONTENT_TYPE, false, upload, listener));
+
+        assertEquals(1, s3.aborted);
+        assertEquals(1, s3.initiated);
+        assertEquals(2, s3.partRequests.size());
+        assertEquals(md5(0, PART_SIZE), upload.getPartEtags().get(0));
+        assertTrue(upload.isStartedFor(file));
+    }
+
+    @Test
+    public void putMultipart_ShouldRestartUploadsStartedForUnknownFile() throws Exception {
+        MultipartUpload upload = new MultipartUpload(FakeS3.UPLOAD_ID, md5(0, PART_SIZE), null);
+        s3.uploadId = FakeS3.UPLOAD_ID;
+
+        assertTrue(api.putMultipart(OBJECT_KEY, file, CONTENT_TYPE, false, upload, listener));
+
+        assertEquals(1, s3.aborted);
+        assertEquals(1, s3.initiated);
+        assertEquals(2, s3.partRequests.size());
+    }
+
+    @Test
+    public void putMultipart_ShouldKeepUploadWhenAbortFails() throws Exception {
+        MultipartUpload upload = new MultipartUpload();
+        upload.start(FakeS3.UPLOAD_ID, file);
+        upload.addPart(md5(0, PART_SIZE));
+        s3.uploadId = FakeS3.UPLOAD_ID;
+        s3.abortStatus = HttpURLConnection.HTTP_INTERNAL_ERROR;
+        file.setLastModified(file.lastModified() - 10000);
+
+        assertFalse(api.putMultipart(OBJECT_KEY, file, CONTENT_TYPE, false, upload, listener));
+
+        // The abort will be retried on the next attempt
+        assertEquals(0, s3.initiated);
+        assertEquals(0, s3.partRequests.size());
+        assertEquals(FakeS3.UPLOAD_ID, upload.getUploadId());
+        assertEquals(1, upload.getPartCount());
+        assertEquals(0, updates.size());
+    }
+
+    @Test
+    public void putMultipart_ShouldFailOnPartEtagMismatch() throws Exception {
+        s3.corruptParts = true;
+        MultipartUpload upload = new MultipartUpload();
+
+        assertFalse(api.putMultipart(OBJECT_KEY, file, CONTENT_TYPE, false, upload, listener));
+
+        // The upload is kept, so the part can be retried
+        assertTrue(upload.isStarted());
+        assertEquals(0, upload.getPartCount());
+        assertEquals(0, s3.completed);
+    }
+
+    private void writeContent() throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+
+    private String md5(int offset, int length) throws NoSuchAlgorithmException {
+        MessageDigest md = MessageDigest.getInstance("MD5");
+        md.update(content, offset, length);
+        return FileUtil.hexMd5(md.digest());
+    }
+
+    /**
+     * Keeps the state of a single multipart upload, and answers the requests the way S3 does
+     */
+    private static class FakeS3 {
+
+        static final String UPLOAD_ID = "upload-1";
+
+        final List<String> parts = new ArrayList<>();
+        final List<Integer> partRequests = new ArrayList<>();
+        String uploadId;
+        int initiated;
+        int completed;
+        int aborted;
+        int abortStatus = HttpURLConnection.HTTP_NO_CONTENT;
+        boolean corruptParts;
+        String completeEtag;
+
+        void handle(FakeConnection conn) throws NoSuchAlgorithmException {
+            String query = conn.getURL().getQuery();
+            Matcher part = PART_QUERY.matcher(query);
+            if ("DELETE".equals(conn.getRequestMethod())) {
+                if (abortStatus != HttpURLConnection.HTTP_NO_CONTENT) {
+                    conn.respond(abortStatus, null, null);
+                } else if (query.equals("uploadId=" + uploadId)) {
+                    aborted++;
+                    uploadId = null;
+                    parts.clear();
+                    conn.respond(HttpURLConnection.HTTP_NO_CONTENT, null, null);
+                } else {
+                    conn.respond(HttpURLConnection.HTTP_NOT_FOUND, null,
+                            "<Error><Code>NoSuchUpload</Code></Error>");
+                }
+            } else if ("uploads".equals(query)) {
+                initiated++;
+                uploadId = UPLOAD_ID;
+                parts.clear();
+                conn.respond(HttpURLConnection.HTTP_OK, null,
+                        "<InitiateMultipartUploadResult><UploadId>" + UPLOAD_ID
+                                + "</UploadId></InitiateMultipartUploadResult>");
+            } else if (part.find()) {
+                if (!UPLOAD_ID.equals(part.group(2))) {
+                    conn.respond(HttpURLConnection.HTTP_NOT_FOUND, null,
+                            "<Error><Code>NoSuchUpload</Code></Error>");
+                    return;
+                }
+                int partNumber = Integer.parseInt(part.group(1));
+                partRequests.add(partNumber);
+                MessageDigest md = MessageDigest.getInstance("MD5");
+                String etag = FileUtil.hexMd5(md.digest(conn.getRequestBody()));
+                if (corruptParts) {
+                    etag = new StringBuilder(etag).reverse().toString();
+                }
+                while (parts.size() < partNumber) {
+                    parts.add(null);
+                }
+                parts.set(partNumber - 1, etag);
+                conn.respond(HttpURLConnection.HTTP_OK, "\"" + etag + "\"", null);
+            } else {
+                completed++;
+                String etag = completeEtag != null ? completeEtag : getMultipartEtag();
+                conn.respond(HttpURLConnection.HTTP_OK, null,
+                        "<CompleteMultipartUploadResult><ETag>&quot;" + etag
+                                + "&quot;</ETag></CompleteMultipartUploadResult>");
+            }
+        }
+
+        private String getMultipartEtag() throws NoSuchAlgorithmException {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            for (String etag : parts) {
+                md.update(FileUtil.hexToBytes(etag));
+            }
+            return FileUtil.hexMd5(md.digest()) + "-" + parts.size();
+        }
+    }
+
+    private static class FakeConnection extends HttpURLConnection {
+
+        private final FakeS3 s3;
+        private final ByteArrayOutputStream requestBody = new ByteArrayOutputStream();
+        private boolean handled;
+        private int status;
+        private String etag;
+        private String responseBody;
+
+        FakeConnection(URL url, FakeS3 s3) {
+            super(url);
+            this.s3 = s3;
+        }
+
+        byte[] getRequestBody() {
+            return requestBody.toByteArray();
+        }
+
+        void respond(int status, String etag, String responseBody) {
+            this.status = status;
+            this.etag = etag;
+            this.responseBody = responseBody;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return requestBody;
+        }
+
+        @Override
+        public int getResponseCode() throws IOException {
+            if (!handled) {
+                handled = true;
+                try {
+                    s3.handle(this);
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IOException(e.getMessage());
+                }
+            }
+            return status;
+        }
+
+        @Override
+        public String getHeaderField(String name) {
+            return "ETag".equals(name) ? etag : null;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(responseBody != null ? responseBody.getBytes()
+                    : new byte[0]);
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+
+        @Override
+        public void connect() {
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.data.cascade;
+
+import org.akvo.flow.domain.Node;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Lookup and search timings on a generated 100k node tree (100 regions with 1000 districts
+ * each). Results are printed to the standard output.
+ * Excluded from the default test run, use ./gradlew :app:testDebugUnitTest -Pbenchmark
+ */
+public class CascadeNodeCacheBenchmark {
+
+    private static final int REGIONS = 100;
+    private static final int DISTRICTS = 1000;
+    private static final int LOOKUPS = 10000;
+    private static final int SEARCHES = 1000;
+    private static final int WORKING_SET = 10;
+
+    private static GeneratedCascadeTree tree;
+
+    @BeforeClass
+    public static void setUpClass() {
+        tree = new GeneratedCascadeTree(42, REGIONS, DISTRICTS);
+    }
+
+    @Test
+    public void lookups() {
+        long[] parents = tree.getParents(1);
+        Random random = new Random(1);
+
+        long t0 = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            tree.loadChildren(parents[random.nextInt(WORKING_SET)]);
+        }
+        long uncached = System.nanoTime() - t0;
+
+        CascadeNodeCache cache = new CascadeNodeCache(tree,
+                CascadeNodeCache.DEFAULT_MAX_NODES);
+        t0 = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            cache.getChildren(parents[random.nextInt(WORKING_SET)]);
+        }
+        long cached = System.nanoTime() - t0;
+
+        assertEquals(LOOKUPS - WORKING_SET, cache.getHitCount());
+        print("%d nodes, %d lookups over %d lists. Uncached: %d ms. Cached: %d ms",
+                tree.size(), LOOKUPS, WORKING_SET, uncached / 1000000, cached / 1000000);
+    }
+
+    @Test
+    public void prefixSearch() {
+        CascadeNodes districts = tree.loadChildren(tree.getParents(1)[0]);
+        List<String> prefixes = new ArrayList<>();
+        Random random = new Random(1);
+        for (int i = 0; i < SEARCHES; i++) {
+            String name = districts.getName(random.nextInt(districts.size()));
+            prefixes.add(name.substring(0, 1 + random.nextInt(3)));
+        }
+
+        districts.search("");// Build the search index
+        long t0 = System.nanoTime();
+        int indexedMatches = 0;
+        for (String prefix : prefixes) {
+            indexedMatches += districts.search(prefix).size();
+        }
+        long indexed = System.nanoTime() - t0;
+
+        t0 = System.nanoTime();
+        int scanMatches = 0;
+        for (String prefix : prefixes) {
+            scanMatches += scan(districts, prefix).size();
+        }
+        long scanned = System.nanoTime() - t0;
+
+        assertEquals(scanMatches, indexedMatches);
+        print("%d searches over %d nodes. Indexed: %d ms. Scan: %d ms", SEARCHES,
+                districts.size(), indexed / 1000000, scanned / 1000000);
+    }
+
+    private static List<Node> scan(CascadeNodes nodes, String prefix) {
+        String key = CascadeNodes.normalize(prefix);
+        List<Node> result = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            if (CascadeNodes.normalize(nodes.getName(i)).startsWith(key)) {
+                result.add(new Node(nodes.getId(i), nodes.getName(i), nodes.getCode(i)));
+            }
+        }
+        return result;
+    }
+
+    private static void print(String format, Object... args) {
+        System.out.println(CascadeNodeCacheBenchmark.class.getSimpleName() + ": "
+                + String.format(format, args));
+    }
+}
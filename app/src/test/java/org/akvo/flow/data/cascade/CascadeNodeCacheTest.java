@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.data.cascade;
+
+import org.akvo.flow.domain.Node;
+import org.junit.Test;
+
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+public class CascadeNodeCacheTest {
+
+    @Test
+    public void getChildren_ShouldLoadEachListOnce() {
+        GeneratedCascadeTree tree = new GeneratedCascadeTree(1, 5, 5);
+        CascadeNodeCache cache = new CascadeNodeCache(tree, 100);
+
+        CascadeNodes first = cache.getChildren(0);
+        CascadeNodes second = cache.getChildren(0);
+
+        assertNotNull(first);
+        assertSame(first, second);
+        assertEquals(5, first.size());
+        assertEquals(1, tree.getLoadCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void getChildren_ShouldEvictLeastRecentlyUsedLists() {
+        GeneratedCascadeTree tree = new GeneratedCascadeTree(1, 10, 10);
+        CascadeNodeCache cache = new CascadeNodeCache(tree, 25);
+        long[] parents = tree.getParents(1);
+
+        cache.getChildren(parents[0]);
+        cache.getChildren(parents[1]);
+        cache.getChildren(parents[0]);// parents[1] is now the eldest
+        cache.getChildren(parents[2]);
+
+        assertEquals(20, cache.getNodeCount());
+        cache.getChildren(parents[0]);
+        assertEquals(3, tree.getLoadCount());
+        cache.getChildren(parents[1]);
+        assertEquals(4, tree.getLoadCount());
+    }
+
+    @Test
+    public void getChildren_ShouldKeepListsBiggerThanTheBudget() {
+        GeneratedCascadeTree tree = new GeneratedCascadeTree(1, 50);
+        CascadeNodeCache cache = new CascadeNodeCache(tree, 10);
+
+        cache.getChildren(0);
+        cache.getChildren(0);
+
+        assertEquals(50, cache.getNodeCount());
+        assertEquals(1, tree.getLoadCount());
+    }
+
+    @Test
+    public void search_ShouldIgnoreCaseAndAccents() {
+        CascadeNodes nodes = new CascadeNodes(new long[] { 1, 2, 3, 4 },
+                new String[] { "Kayes", "Koulikoro", "S\u00e9gou", "Sikasso" },
+                new String[] { "K", "KK", "SG", "SK" });
+
+        List<Node> result = nodes.search("se");
+        assertEquals(1, result.size());
+        assertEquals("S\u00e9gou", result.get(0).getName());
+
+        result = nodes.search("K");
+        assertEquals(2, result.size());
+        assertEquals("Kayes", result.get(0).getName());
+        assertEquals("Koulikoro", result.get(1).getName());
+
+        assertEquals(4, nodes.search("").size());
+        assertTrue(nodes.search("x").isEmpty());
+    }
+
+    @Test
+    public void search_ShouldReturnNodesInDisplayOrder() {
+        CascadeNodes nodes = new CascadeNodes(new long[] { 1, 2, 3 },
+                new String[] { "Bb", "ba", "Bc" }, new String[] { null, null, null });
+
+        List<Node> result = nodes.search("b");
+        assertEquals(3, result.size());
+        assertEquals(1, result.get(0).getId());
+        assertEquals(2, result.get(1).getId());
+        assertEquals(3, result.get(2).getId());
+    }
+}
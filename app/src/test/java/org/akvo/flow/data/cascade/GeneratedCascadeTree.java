@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.data.cascade;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * In-memory cascade tree, standing in for a cascade resource in the JVM tests. Nodes are kept
+ * in a single table sorted by (parent, name), like the indexed SQLite resource, and every
+ * load copies the rows out of it as a cursor would.
+ */
+class GeneratedCascadeTree implements CascadeNodeCache.Source {
+
+    private static final String[] SYLLABLES = {
+            "ba", "ka", "ma", "na", "ta", "se", "l\u00e9", "ko", "mu", "ri", "go", "d\u00e9", "wa", "zi"
+    };
+
+    private final long[] parents;
+    private final long[] ids;
+    private final String[] names;
+    private final String[] codes;
+
+    /**
+     * Parent ids of each level, the first level being the children of the root (id 0)
+     */
+    private final long[][] levelParents;
+
+    private int loads;
+
+    /**
+     * @param branching number of children of each node, per level
+     */
+    GeneratedCascadeTree(long seed, int... branching) {
+        int size = 0;
+        int levelSize = 1;
+        for (int children : branching) {
+            levelSize *= children;
+            size += levelSize;
+        }
+        parents = new long[size];
+        ids = new long[size];
+        names = new String[size];
+        codes = new String[size];
+        levelParents = new long[branching.length][];
+
+        // Nodes are generated level by level, so the table is sorted by parent id
+        Random random = new Random(seed);
+        int count = 0;
+        long[] currentParents = { 0 };
+        for (int level = 0; level < branching.length; level++) {
+            levelParents[level] = currentParents;
+            long[] nextParents = new long[currentParents.length * branching[level]];
+            int next = 0;
+            for (long parent : currentParents) {
+                String[] children = new String[branching[level]];
+                for (int c = 0; c < children.length; c++) {
+                    children[c] = randomName(random) + " " + c;
+                }
+                Arrays.sort(children);
+                for (String name : children) {
+                    parents[count] = parent;
+                    ids[count] = count + 1;
+                    names[count] = name;
+                    codes[count] = "C" + (count + 1);
+                    nextParents[next++] = ids[count];
+                    count++;
+                }
+            }
+            currentParents = nextParents;
+        }
+    }
+
+    int size() {
+        return ids.length;
+    }
+
+    int getLoadCount() {
+        return loads;
+    }
+
+    /**
+     * @return the ids of the nodes whose children make up the given level
+     */
+    long[] getParents(int level) {
+        return levelParents[level];
+    }
+
+    @Override
+    public CascadeNodes loadChildren(long parent) {
+        loads++;
+        int start = lowerBound(parent);
+        int end = lowerBound(parent + 1);
+        int count = end - start;
+        long[] childIds = new long[count];
+        String[] childNames = new String[count];
+        String[] childCodes = new String[count];
+        for (int i = 0; i < count; i++) {
+            childIds[i] = ids[start + i];
+            childNames[i] = new String(names[start + i]);
+            childCodes[i] = new String(codes[start + i]);
+        }
+        return new CascadeNodes(childIds, childNames, childCodes);
+    }
+
+    private int lowerBound(long parent) {
+        int low = 0;
+        int high = parents.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (parents[mid] < parent) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static String randomName(Random random) {
+        StringBuilder builder = new StringBuilder();
+        int syllables = 2 + random.nextInt(3);
+        for (int i = 0; i < syllables; i++) {
+            builder.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        builder.setCharAt(0, Character.toUpperCase(builder.charAt(0)));
+        return builder.toString();
+    }
+}
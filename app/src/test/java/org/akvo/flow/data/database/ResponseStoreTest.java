@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.data.database;
+
+import org.akvo.flow.domain.QuestionResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Collections;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ResponseStoreTest {
+
+    private static final long SURVEY_INSTANCE_ID = 7L;
+
+    private SurveyDbDataSource database;
+    private ResponseStore store;
+    private long nextId = 100;
+
+    @Before
+    public void setUp() {
+        database = mock(SurveyDbDataSource.class);
+        when(database.getResponses(anyLong()))
+                .thenReturn(Collections.<String, QuestionResponse>emptyMap());
+        when(database.saveSurveyResponse(any(QuestionResponse.class)))
+                .thenAnswer(new Answer<QuestionResponse>() {
+                    @Override
+                    public QuestionResponse answer(InvocationOnMock invocation) {
+                        QuestionResponse response =
+                                (QuestionResponse) invocation.getArguments()[0];
+                        long id = response.getId() != null ? response.getId() : nextId++;
+                        return new QuestionResponse.QuestionResponseBuilder()
+                                .createFromQuestionResponse(response, id);
+                    }
+                });
+        store = new ResponseStore(database, SURVEY_INSTANCE_ID);
+        store.load();
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    @Test
+    public void editsOfTheSameQuestionShouldBeWrittenOnce() {
+        store.save(response("q1", "a"));
+        store.save(response("q1", "ab"));
+        store.save(response("q1", "abc"));
+        store.flush();
+
+        ArgumentCaptor<QuestionResponse> saved = ArgumentCaptor.forClass(QuestionResponse.class);
+        verify(database, times(1)).saveSurveyResponse(saved.capture());
+        assertEquals("abc", saved.getValue().getValue());
+        assertNull(saved.getValue().getId());
+        verify(database, times(1)).beginTransaction();
+        verify(database, times(1)).endTransaction();
+    }
+
+    @Test
+    public void laterWritesShouldUpdateTheInsertedRow() {
+        store.save(response("q1", "a"));
+        store.flush();
+        store.save(response("q1", "b"));
+        store.flush();
+
+        ArgumentCaptor<QuestionResponse> saved = ArgumentCaptor.forClass(QuestionResponse.class);
+        verify(database, times(2)).saveSurveyResponse(saved.capture());
+        List<QuestionResponse> values = saved.getAllValues();
+        assertNull(values.get(0).getId());
+        assertEquals(Long.valueOf(100), values.get(1).getId());
+    }
+
+    @Test
+    public void deletionShouldReplacePendingEdits() {
+        store.save(response("q1", "a"));
+        store.delete("q1");
+        store.flush();
+
+        verify(database, never()).saveSurveyResponse(any(QuestionResponse.class));
+        verify(database).deleteResponse(SURVEY_INSTANCE_ID, "q1");
+    }
+
+    private QuestionResponse response(String questionId, String value) {
+        return new QuestionResponse.QuestionResponseBuilder()
+                .setQuestionId(questionId)
+                .setValue(value)
+                .setType("VALUE")
+                .setSurveyInstanceId(SURVEY_INSTANCE_ID)
+                .setIteration(QuestionResponse.NO_ITERATION)
+                .createQuestionResponse();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.domain;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class DependencyGraphTest {
+
+    @Test
+    public void rankShouldFollowDependenciesRatherThanFormOrder() {
+        QuestionGroup group = new QuestionGroup();
+        group.addQuestion(question("c", "b", "yes"));
+        group.addQuestion(question("b", "a", "yes"));
+        group.addQuestion(question("a", null, null));
+        group.addQuestion(question("d", null, null));
+
+        DependencyGraph graph = new DependencyGraph(Collections.singletonList(group));
+
+        assertTrue(graph.getRank("a") < graph.getRank("b"));
+        assertTrue(graph.getRank("b") < graph.getRank("c"));
+        assertEquals(Collections.singletonList("b"), graph.getDependents("a"));
+        assertEquals(graph.getRank("c"), graph.getRank("c|2"));
+    }
+
+    @Test
+    public void circularDependenciesShouldStillBeRanked() {
+        QuestionGroup group = new QuestionGroup();
+        group.addQuestion(question("a", "b", "yes"));
+        group.addQuestion(question("b", "a", "yes"));
+
+        DependencyGraph graph = new DependencyGraph(Collections.singletonList(group));
+
+        assertTrue(graph.getRank("a") < Integer.MAX_VALUE);
+        assertTrue(graph.getRank("b") < Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void repeatableQuestionsShouldDependOnTheirOwnIteration() {
+        QuestionGroup group = new QuestionGroup();
+        group.addQuestion(question("a", null, null));
+        QuestionGroup repeatable = new QuestionGroup();
+        repeatable.setRepeatable(true);
+        repeatable.addQuestion(question("b", null, null));
+        repeatable.addQuestion(question("c", "b", "yes"));
+        repeatable.addQuestion(question("d", "a", "yes"));
+
+        DependencyGraph graph = new DependencyGraph(Arrays.asList(group, repeatable));
+
+        assertEquals("b|3", graph.getParentId("c|3", "b"));
+        assertEquals("a", graph.getParentId("d|3", "a"));
+        assertEquals("a", graph.getParentId("d", "a"));
+    }
+
+    @Test
+    public void conditionShouldMatchAnyOfTheAnswers() {
+        QuestionGroup group = new QuestionGroup();
+        group.addQuestion(question("a", null, null));
+        group.addQuestion(question("b", "a", "yes| maybe"));
+
+        DependencyGraph.Condition condition = new DependencyGraph(
+                Collections.singletonList(group)).getConditions("b").get(0);
+
+        assertEquals("a", condition.getQuestion());
+        assertTrue(condition.isMatch(new HashSet<>(Arrays.asList("no", "maybe"))));
+        assertFalse(condition.isMatch(new HashSet<>(Collections.singletonList("no"))));
+        assertFalse(condition.isMatch(Collections.<String>emptySet()));
+    }
+
+    private Question question(String id, String parent, String answer) {
+        Question question = new Question();
+        question.setId(id);
+        if (parent != null) {
+            Dependency dependency = new Dependency();
+            dependency.setQuestion(parent);
+            dependency.setAnswer(answer);
+            question.addDependency(dependency);
+        }
+        return question;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.domain.geometry;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class VerticesTest {
+
+    @Test
+    public void incrementalMeasuresShouldMatchRecomputedOnes() {
+        Random random = new Random(1);
+        Vertices vertices = new Vertices(true);
+        List<double[]> points = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            double[] point = { -1.3 + random.nextDouble() * 0.01,
+                    36.8 + random.nextDouble() * 0.01 };
+            int size = vertices.size();
+            int operation = random.nextInt(10);
+            if (operation < 6 || size < 2) {
+                int index = random.nextInt(size + 1);
+                vertices.add(index, point[0], point[1]);
+                points.add(index, point);
+            } else if (operation < 8) {
+                int index = random.nextInt(size);
+                vertices.set(index, point[0], point[1]);
+                points.set(index, point);
+            } else {
+                int index = random.nextInt(size);
+                vertices.remove(index);
+                points.remove(index);
+            }
+        }
+
+        Vertices expected = new Vertices(true);
+        for (double[] point : points) {
+            expected.add(point[0], point[1]);
+        }
+        assertEquals(expected.size(), vertices.size());
+        assertEquals(expected.getLength(), vertices.getLength(), 1e-6);
+        assertEquals(expected.getArea(), vertices.getArea(), 1e-3);
+    }
+
+    @Test
+    public void smallPolygonShouldCloseOnceItHasThreeVertices() {
+        Vertices vertices = new Vertices(true);
+        vertices.add(0, 0);
+        vertices.add(0, 0.001);
+        double side = vertices.getLength();
+        assertEquals(0.0, vertices.getArea());
+
+        vertices.add(0.001, 0.001);
+        assertTrue(vertices.getLength() > 3 * side);
+        assertEquals(0.5 * side * side, vertices.getArea(), 0.01 * side * side);
+
+        vertices.remove(2);
+        assertEquals(side, vertices.getLength(), 1e-9);
+        assertEquals(0.0, vertices.getArea());
+    }
+
+    @Test
+    public void simplificationShouldKeepTheShape() {
+        // A walked circle, 200 m wide, with a vertex every 30 cm
+        Vertices circle = new Vertices(true);
+        for (int i = 0; i < 2000; i++) {
+            double angle = 2 * Math.PI * i / 2000;
+            circle.add(-1.3 + 0.0009 * Math.sin(angle), 36.8 + 0.0009 * Math.cos(angle));
+        }
+
+        int[] kept = Simplifier.simplify(circle, 0.5);
+        Vertices simplified = circle.copy(kept);
+        assertTrue(kept.length < 100);
+        assertEquals(0, kept[0]);
+        assertEquals(circle.getArea(), simplified.getArea(), circle.getArea() * 0.01);
+    }
+}
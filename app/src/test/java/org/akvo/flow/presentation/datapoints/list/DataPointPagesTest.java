@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.presentation.datapoints.list;
+
+import org.akvo.flow.domain.entity.DataPointPageKey;
+import org.akvo.flow.presentation.datapoints.list.entity.ListDataPoint;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+public class DataPointPagesTest {
+
+    @Test
+    public void getItem_ShouldFindItemsAcrossPages() {
+        DataPointPages pages = new DataPointPages();
+        pages.addPage(null, key(10), items(0, 10));
+        pages.addPage(key(10), key(15), items(10, 5));
+
+        assertEquals(15, pages.getCount());
+        assertEquals("0", pages.getItem(0).getId());
+        assertEquals("9", pages.getItem(9).getId());
+        assertEquals("10", pages.getItem(10).getId());
+        assertEquals("14", pages.getItem(14).getId());
+        assertNull(pages.getItem(15));
+    }
+
+    @Test
+    public void indexOfPage_ShouldReturnLastPageWhenOutOfBounds() {
+        DataPointPages pages = new DataPointPages();
+        pages.addPage(null, key(10), items(0, 10));
+        pages.addPage(key(10), key(15), items(10, 5));
+
+        assertEquals(0, pages.indexOfPage(0));
+        assertEquals(0, pages.indexOfPage(9));
+        assertEquals(1, pages.indexOfPage(10));
+        assertEquals(1, pages.indexOfPage(100));
+    }
+
+    @Test
+    public void unloadOutside_ShouldKeepSizeOfReleasedPages() {
+        DataPointPages pages = new DataPointPages();
+        for (int i = 0; i < 5; i++) {
+            pages.addPage(i == 0 ? null : key(i * 10), key((i + 1) * 10), items(i * 10, 10));
+        }
+
+        pages.unloadOutside(2, 2);
+
+        assertEquals(50, pages.getCount());
+        assertFalse(pages.getPages().get(0).isLoaded());
+        assertTrue(pages.getPages().get(1).isLoaded());
+        assertTrue(pages.getPages().get(3).isLoaded());
+        assertFalse(pages.getPages().get(4).isLoaded());
+        assertNull(pages.getItem(0));
+        assertEquals("20", pages.getItem(20).getId());
+    }
+
+    @Test
+    public void setItems_ShouldKeepPageWhenReloadFits() {
+        DataPointPages pages = new DataPointPages();
+        DataPointPages.Page page = pages.addPage(null, key(50), items(0, 50));
+
+        DataPointPages.Page rest = pages.setItems(page, key(60), items(0, 60));
+
+        assertNull(rest);
+        assertEquals(1, pages.getPages().size());
+        assertEquals(60, pages.getCount());
+        assertEquals(key(50), page.getEnd());
+    }
+
+    @Test
+    public void setItems_ShouldKeepPageWhenReloadEndsAtItsLastItem() {
+        DataPointPages pages = new DataPointPages();
+        DataPointPages.Page page = pages.addPage(null, key(50), items(0, 50));
+
+        DataPointPages.Page rest = pages.setItems(page, key(50),
+                items(0, DataPointPages.MAX_PAGE_SIZE));
+
+        assertNull(rest);
+        assertEquals(1, pages.getPages().size());
+    }
+
+    @Test
+    public void setItems_ShouldSplitOversizedPage() {
+        DataPointPages pages = new DataPointPages();
+        DataPointPages.Page first = pages.addPage(null, key(500), items(0, 50));
+        DataPointPages.Page last = pages.addPage(key(500), key(550), items(500, 50));
+
+        DataPointPages.Page rest = pages.setItems(first, key(100),
+                items(0, DataPointPages.MAX_PAGE_SIZE));
+
+        assertEquals(3, pages.getPages().size());
+        assertSame(first, pages.getPages().get(0));
+        assertSame(rest, pages.getPages().get(1));
+        assertSame(last, pages.getPages().get(2));
+        assertEquals(key(100), first.getEnd());
+        assertEquals(key(100), rest.getStart());
+        assertEquals(key(500), rest.getEnd());
+        assertFalse(rest.isLoaded());
+        assertEquals(DataPointPages.MAX_PAGE_SIZE + 50, pages.getCount());
+    }
+
+    @Test
+    public void setItems_ShouldIgnoreRemovedPage() {
+        DataPointPages pages = new DataPointPages();
+        DataPointPages.Page removed = new DataPointPages.Page(null, key(50));
+
+        assertNull(pages.setItems(removed, key(100), items(0, DataPointPages.MAX_PAGE_SIZE)));
+        assertTrue(pages.getPages().isEmpty());
+    }
+
+    @Test
+    public void of_ShouldWrapCompleteList() {
+        DataPointPages pages = DataPointPages.of(items(0, 3));
+
+        assertTrue(pages.isComplete());
+        assertEquals(3, pages.getCount());
+        assertEquals(1, pages.getPages().size());
+    }
+
+    private static DataPointPageKey key(long rowId) {
+        return new DataPointPageKey(String.valueOf(rowId), rowId);
+    }
+
+    private static List<ListDataPoint> items(int first, int count) {
+        List<ListDataPoint> items = new ArrayList<>(count);
+        for (int i = first; i < first + count; i++) {
+            items.add(new ListDataPoint("Point " + i, 0, String.valueOf(i), 0, 0, 0));
+        }
+        return items;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.presentation.datapoints.list;
+
+import org.akvo.flow.domain.SurveyGroup;
+import org.akvo.flow.domain.entity.DataPoint;
+import org.akvo.flow.domain.entity.DataPointPage;
+import org.akvo.flow.domain.entity.DataPointPageKey;
+import org.akvo.flow.domain.interactor.GetSavedDataPointsPage;
+import org.akvo.flow.domain.interactor.SyncDataPoints;
+import org.akvo.flow.domain.interactor.UseCase;
+import org.akvo.flow.presentation.datapoints.DisplayNameMapper;
+import org.akvo.flow.presentation.datapoints.list.entity.ListDataPointMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import io.reactivex.Observable;
+import io.reactivex.observers.DisposableObserver;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class DataPointsListPresenterTest {
+
+    private FakeUseCase getSavedDataPointsPage;
+    private FakeUseCase getSavedDataPointsCount;
+    private DataPointsListView view;
+    private DataPointsListPresenter presenter;
+
+    @Before
+    public void setUp() {
+        getSavedDataPointsPage = new FakeUseCase();
+        getSavedDataPointsCount = new FakeUseCase();
+        view = mock(DataPointsListView.class);
+        presenter = new DataPointsListPresenter(new FakeUseCase(), getSavedDataPointsPage,
+                getSavedDataPointsCount, new ListDataPointMapper(mock(DisplayNameMapper.class)),
+                mock(SyncDataPoints.class), new FakeUseCase());
+        presenter.setView(view);
+        presenter.onDataReady(new SurveyGroup(1L, "Survey", null, true));
+        presenter.loadDataPoints();
+        // The count is emitted as soon as the saved data points are watched
+        getSavedDataPointsCount.respond(0, 0);
+    }
+
+    @Test
+    public void loadDataPoints_ShouldLoadFirstPage() {
+        Map<String, Object> params = getSavedDataPointsPage.getParams(0);
+
+        assertNull(params.get(GetSavedDataPointsPage.KEY_AFTER));
+        assertNull(params.get(GetSavedDataPointsPage.KEY_UNTIL));
+        assertEquals(DataPointPages.PAGE_SIZE, params.get(GetSavedDataPointsPage.KEY_LIMIT));
+    }
+
+    @Test
+    public void onScrolled_ShouldLoadNextPageAfterLastPage() {
+        getSavedDataPointsPage.respond(0, page(0, DataPointPages.PAGE_SIZE, key(49)));
+
+        presenter.onScrolled(30, 10);
+
+        assertEquals(2, getSavedDataPointsPage.getCallCount());
+        Map<String, Object> params = getSavedDataPointsPage.getParams(1);
+        assertEquals(key(49), params.get(GetSavedDataPointsPage.KEY_AFTER));
+        assertEquals(DataPointPages.PAGE_SIZE, params.get(GetSavedDataPointsPage.KEY_LIMIT));
+    }
+
+    @Test
+    public void onScrolled_ShouldStopAfterShortPage() {
+        getSavedDataPointsPage.respond(0, page(0, DataPointPages.PAGE_SIZE, key(49)));
+        presenter.onScrolled(30, 10);
+        getSavedDataPointsPage.respond(1, page(50, 10, key(59)));
+
+        presenter.onScrolled(50, 10);
+
+        assertEquals(2, getSavedDataPointsPage.getCallCount());
+        assertTrue(getPages().isComplete());
+        assertEquals(60, getPages().getCount());
+    }
+
+    @Test
+    public void refresh_ShouldReloadLoadedPagesWithinBounds() {
+        getSavedDataPointsPage.respond(0, page(0, DataPointPages.PAGE_SIZE, key(49)));
+
+        getSavedDataPointsCount.respond(0, 60);
+
+        // Loaded page, then the next one
+        assertEquals(3, getSavedDataPointsPage.getCallCount());
+        Map<String, Object> reload = getSavedDataPointsPage.getParams(1);
+        assertNull(reload.get(GetSavedDataPointsPage.KEY_AFTER));
+        assertEquals(key(49), reload.get(GetSavedDataPointsPage.KEY_UNTIL));
+        assertEquals(DataPointPages.MAX_PAGE_SIZE, reload.get(GetSavedDataPointsPage.KEY_LIMIT));
+        assertEquals(key(49), getSavedDataPointsPage.getParams(2)
+                .get(GetSavedDataPointsPage.KEY_AFTER));
+    }
+
+    @Test
+    public void refresh_ShouldSplitOversizedPage() {
+        getSavedDataPointsPage.respond(0, page(0, DataPointPages.PAGE_SIZE, key(490)));
+        getSavedDataPointsCount.respond(0, 200);
+
+        // Data points were added within the bounds of the page
+        getSavedDataPointsPage.respond(1, page(0, DataPointPages.MAX_PAGE_SIZE, key(200)));
+
+        List<DataPointPages.Page> pages = getPages().getPages();
+        assertEquals(2, pages.size());
+        assertEquals(key(200), pages.get(0).getEnd());
+        assertEquals(DataPointPages.MAX_PAGE_SIZE, getPages().getCount());
+        assertFalse(pages.get(1).isLoaded());
+
+        Map<String, Object> rest = getSavedDataPointsPage.getParams(3);
+        assertEquals(key(200), rest.get(GetSavedDataPointsPage.KEY_AFTER));
+        assertEquals(key(490), rest.get(GetSavedDataPointsPage.KEY_UNTIL));
+        assertEquals(DataPointPages.MAX_PAGE_SIZE, rest.get(GetSavedDataPointsPage.KEY_LIMIT));
+
+        getSavedDataPointsPage.respond(3, page(100, 50, key(490)));
+        assertEquals(150, getPages().getCount());
+    }
+
+    private DataPointPages getPages() {
+        ArgumentCaptor<DataPointPages> captor = ArgumentCaptor.forClass(DataPointPages.class);
+        verify(view, atLeastOnce()).displayPages(captor.capture());
+        return captor.getValue();
+    }
+
+    private static DataPointPageKey key(long rowId) {
+        return new DataPointPageKey(String.valueOf(rowId), rowId);
+    }
+
+    private static DataPointPage page(int first, int count, DataPointPageKey lastKey) {
+        List<DataPoint> dataPoints = new ArrayList<>(count);
+        for (int i = first; i < first + count; i++) {
+            dataPoints.add(new DataPoint(String.valueOf(i), "Point " + i, 0L, 1L, null, null, 0));
+        }
+        return new DataPointPage(dataPoints, lastKey);
+    }
+
+    /**
+     * Keeps the observers instead of subscribing them, so the test decides when and what
+     * each request returns
+     */
+    private static class FakeUseCase extends UseCase {
+
+        private final List<DisposableObserver> observers = new ArrayList<>();
+        private final List<Map<String, Object>> params = new ArrayList<>();
+
+        FakeUseCase() {
+            super(null, null);
+        }
+
+        @Override
+        protected <T> Observable buildUseCaseObservable(Map<String, T> parameters) {
+            return Observable.empty();
+        }
+
+        @Override
+        public <T> void execute(DisposableObserver<T> observer, Map<String, Object> parameters) {
+            observers.add(observer);
+            params.add(parameters);
+        }
+
+        @Override
+        public void dispose() {
+        }
+
+        int getCallCount() {
+            return observers.size();
+        }
+
+        Map<String, Object> getParams(int call) {
+            return params.get(call);
+        }
+
+        @SuppressWarnings("unchecked")
+        void respond(int call, Object value) {
+            observers.get(call).onNext(value);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.presentation.datapoints.map.cluster;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Build, update and query timings on 30k generated points, spread around 50 towns. Results are
+ * printed to the standard output.
+ * Excluded from the default test run, use ./gradlew :app:testDebugUnitTest -Pbenchmark
+ */
+public class ClusterIndexBenchmark {
+
+    private static final int POINTS = 30000;
+    private static final int TOWNS = 50;
+    private static final int SYNCED = 500;
+    private static final int QUERIES = 1000;
+
+    private static final ClusterIndex.Adapter<Point> ADAPTER = new ClusterIndex.Adapter<Point>() {
+        @Override
+        public String getId(Point item) {
+            return item.id;
+        }
+
+        @Override
+        public double getLatitude(Point item) {
+            return item.latitude;
+        }
+
+        @Override
+        public double getLongitude(Point item) {
+            return item.longitude;
+        }
+    };
+
+    private static List<Point> points;
+
+    @BeforeClass
+    public static void setUpClass() {
+        points = generate(new Random(42), 0, POINTS);
+    }
+
+    @Test
+    public void build() {
+        long t0 = System.nanoTime();
+        ClusterIndex<Point> index = new ClusterIndex<>(ADAPTER);
+        index.setItems(points);
+        long built = System.nanoTime() - t0;
+
+        for (int zoom = 0; zoom <= ClusterIndex.MAX_CLUSTER_ZOOM + 1; zoom++) {
+            assertEquals(POINTS, total(index.getClusters(-90, -180, 90, 180, zoom)));
+        }
+        print("%d points indexed in %d ms", POINTS, built / 1000000);
+    }
+
+    @Test
+    public void syncUpdates() {
+        ClusterIndex<Point> index = new ClusterIndex<>(ADAPTER);
+        index.setItems(points);
+
+        // A sync page: new points, some moved and some removed
+        Random random = new Random(1);
+        List<Point> updated = new ArrayList<>(points);
+        updated.addAll(generate(random, POINTS, SYNCED));
+        for (int i = 0; i < SYNCED / 10; i++) {
+            int position = random.nextInt(POINTS);
+            Point point = updated.get(position);
+            updated.set(position, new Point(point.id, point.latitude + 0.01,
+                    point.longitude - 0.01));
+        }
+        updated.subList(POINTS - SYNCED / 10, POINTS).clear();
+
+        long t0 = System.nanoTime();
+        int changes = index.setItems(updated);
+        long incremental = System.nanoTime() - t0;
+
+        t0 = System.nanoTime();
+        ClusterIndex<Point> rebuilt = new ClusterIndex<>(ADAPTER);
+        rebuilt.setItems(updated);
+        long full = System.nanoTime() - t0;
+
+        for (int zoom = 0; zoom <= ClusterIndex.MAX_CLUSTER_ZOOM; zoom++) {
+            assertEquals(sizes(rebuilt.getClusters(-90, -180, 90, 180, zoom)),
+                    sizes(index.getClusters(-90, -180, 90, 180, zoom)));
+        }
+        print("%d changes out of %d points. Incremental: %d ms. Rebuild: %d ms", changes,
+                updated.size(), incremental / 1000000, full / 1000000);
+    }
+
+    @Test
+    public void viewportQueries() {
+        ClusterIndex<Point> index = new ClusterIndex<>(ADAPTER);
+        index.setItems(points);
+        Random random = new Random(2);
+
+        for (int zoom = 4; zoom <= 16; zoom += 4) {
+            // A 360x640 dp screen
+            double width = 360d * 360 / (256 << zoom);
+            double height = 640d * 180 / (256 << zoom);
+            int clusters = 0;
+            long t0 = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                Point center = points.get(random.nextInt(POINTS));
+                clusters += index.getClusters(center.latitude - height / 2,
+                        center.longitude - width / 2, center.latitude + height / 2,
+                        center.longitude + width / 2, zoom).size();
+            }
+            long elapsed = System.nanoTime() - t0;
+            print("Zoom %d: %d clusters per viewport, %d us per query", zoom,
+                    clusters / QUERIES, elapsed / 1000 / QUERIES);
+        }
+    }
+
+    private static List<Point> generate(Random random, int firstId, int count) {
+        Random towns = new Random(7);
+        double[][] centers = new double[TOWNS][2];
+        for (double[] center : centers) {
+            center[0] = -30 + towns.nextDouble() * 45;
+            center[1] = -15 + towns.nextDouble() * 50;
+        }
+        List<Point> generated = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double[] center = centers[random.nextInt(TOWNS)];
+            generated.add(new Point(String.valueOf(firstId + i),
+                    center[0] + random.nextGaussian() * 0.2,
+                    center[1] + random.nextGaussian() * 0.2));
+        }
+        return generated;
+    }
+
+    private static int total(List<PointCluster<Point>> clusters) {
+        int total = 0;
+        for (PointCluster<Point> cluster : clusters) {
+            total += cluster.getSize();
+        }
+        return total;
+    }
+
+    private static List<Integer> sizes(List<PointCluster<Point>> clusters) {
+        List<Integer> sizes = new ArrayList<>(clusters.size());
+        for (PointCluster<Point> cluster : clusters) {
+            sizes.add(cluster.getSize());
+        }
+        Collections.sort(sizes);
+        return sizes;
+    }
+
+    private static void print(String format, Object... args) {
+        System.out.println(ClusterIndexBenchmark.class.getSimpleName() + ": "
+                + String.format(format, args));
+    }
+
+    private static class Point {
+
+        final String id;
+        final double latitude;
+        final double longitude;
+
+        Point(String id, double latitude, double longitude) {
+            this.id = id;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+}
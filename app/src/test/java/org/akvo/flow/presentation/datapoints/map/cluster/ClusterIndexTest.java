@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.presentation.datapoints.map.cluster;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class ClusterIndexTest {
+
+    private static final ClusterIndex.Adapter<Point> ADAPTER = new ClusterIndex.Adapter<Point>() {
+        @Override
+        public String getId(Point item) {
+            return item.id;
+        }
+
+        @Override
+        public double getLatitude(Point item) {
+            return item.latitude;
+        }
+
+        @Override
+        public double getLongitude(Point item) {
+            return item.longitude;
+        }
+    };
+
+    private static final int MAX_ZOOM = ClusterIndex.MAX_CLUSTER_ZOOM + 1;
+
+    private ClusterIndex<Point> index;
+    private List<Point> points;
+
+    @Before
+    public void setUp() {
+        index = new ClusterIndex<>(ADAPTER);
+        points = new ArrayList<>();
+        // Two towns, far apart, with points a few metres from each other
+        points.add(new Point("a1", 10, 10));
+        points.add(new Point("a2", 10.0001, 10.0001));
+        points.add(new Point("a3", 10.0002, 9.9999));
+        points.add(new Point("b1", -30, -60));
+        points.add(new Point("b2", -30.0001, -60.0001));
+    }
+
+    @Test
+    public void getClusters_ShouldGroupPointsByTown() {
+        assertEquals(points.size(), index.setItems(points));
+
+        List<PointCluster<Point>> clusters = index.getClusters(-90, -180, 90, 180, 0);
+        assertEquals(2, clusters.size());
+        assertEquals(set(set("a1", "a2", "a3"), set("b1", "b2")), members(clusters));
+        for (PointCluster<Point> cluster : clusters) {
+            assertEquals(cluster.getItems().size(), cluster.getSize());
+        }
+    }
+
+    @Test
+    public void getClusters_ShouldSplitClustersAsZoomIncreases() {
+        index.setItems(points);
+
+        int previous = 0;
+        for (int zoom = 0; zoom <= MAX_ZOOM; zoom++) {
+            List<PointCluster<Point>> clusters = index.getClusters(-90, -180, 90, 180, zoom);
+            assertEquals(points.size(), total(clusters));
+            assertTrue(clusters.size() >= previous);
+            for (PointCluster<Point> cluster : clusters) {
+                // Never mixing towns
+                Set<String> towns = new HashSet<>();
+                for (Point point : cluster.getItems()) {
+                    towns.add(point.id.substring(0, 1));
+                }
+                assertEquals(1, towns.size());
+            }
+            previous = clusters.size();
+        }
+        assertEquals(points.size(), previous);
+    }
+
+    @Test
+    public void getClusters_ShouldPlaceClustersAtTheCentreOfTheirPoints() {
+        index.setItems(points);
+
+        for (PointCluster<Point> cluster : index.getClusters(-90, -180, 90, 180, 0)) {
+            double latitude = 0;
+            double longitude = 0;
+            for (Point point : cluster.getItems()) {
+                latitude += point.latitude;
+                longitude += point.longitude;
+            }
+            assertEquals(latitude / cluster.getSize(), cluster.getLatitude(), 1e-6);
+            assertEquals(longitude / cluster.getSize(), cluster.getLongitude(), 1e-6);
+        }
+
+        PointCluster<Point> single = index.getClusters(-90, -180, 90, 180, MAX_ZOOM).get(0);
+        Point point = single.getItems().get(0);
+        assertEquals(point.latitude, single.getLatitude(), 1e-9);
+        assertEquals(point.longitude, single.getLongitude(), 1e-9);
+    }
+
+    @Test
+    public void getClusters_ShouldOnlyReturnCellsInTheBounds() {
+        index.setItems(points);
+
+        for (int zoom = 0; zoom <= MAX_ZOOM; zoom++) {
+            List<PointCluster<Point>> clusters = index.getClusters(9, 9, 11, 11, zoom);
+            assertEquals(3, total(clusters));
+            assertFalse(members(clusters).toString().contains("b"));
+        }
+    }
+
+    @Test
+    public void getClusters_ShouldHandleBoundsCrossingTheAntimeridian() {
+        points.add(new Point("east", 0, 179.9));
+        points.add(new Point("west", 0, -179.9));
+        index.setItems(points);
+
+        List<PointCluster<Point>> clusters = index.getClusters(-1, 179, 1, -179, MAX_ZOOM);
+        assertEquals(set(set("east"), set("west")), members(clusters));
+    }
+
+    @Test
+    public void setItems_ShouldOnlyApplyChanges() {
+        index.setItems(points);
+        assertEquals(0, index.setItems(points));
+
+        List<Point> updated = new ArrayList<>(points);
+        updated.set(0, new Point("a1", -30.0002, -60.0002));// Moved to the other town
+        updated.remove(4);// b2
+        updated.add(new Point("c1", 50, 100));
+        assertEquals(3, index.setItems(updated));
+        assertEquals(updated.size(), index.size());
+
+        assertSameClusters(updated);
+        assertEquals(set(set("a2", "a3"), set("a1", "b1"), set("c1")),
+                members(index.getClusters(-90, -180, 90, 180, 0)));
+    }
+
+    @Test
+    public void addAndRemove_ShouldMatchAFullRebuild() {
+        index.setItems(points);
+
+        Point added = new Point("a4", 10.0003, 10.0003);
+        index.add(added);
+        List<Point> expected = new ArrayList<>(points);
+        expected.add(added);
+        assertSameClusters(expected);
+
+        assertTrue(index.remove("a2"));
+        assertTrue(index.remove("b1"));
+        assertFalse(index.remove("b1"));
+        expected.remove(3);// b1
+        expected.remove(1);// a2
+        assertSameClusters(expected);
+
+        // A single point left in each town
+        assertTrue(index.remove("a1"));
+        assertTrue(index.remove("a3"));
+        expected.removeAll(Arrays.asList(points.get(0), points.get(2)));
+        assertSameClusters(expected);
+        assertEquals(set(set("a4"), set("b2")),
+                members(index.getClusters(-90, -180, 90, 180, 0)));
+
+        index.clear();
+        assertEquals(0, index.size());
+        assertTrue(index.getClusters(-90, -180, 90, 180, 0).isEmpty());
+    }
+
+    @Test
+    public void getItems_ShouldReflectLaterUpdates() {
+        index.setItems(points);
+        PointCluster<Point> town = null;
+        for (PointCluster<Point> cluster : index.getClusters(9, 9, 11, 11, 0)) {
+            town = cluster;
+        }
+
+        index.remove("a3");
+        assertEquals(3, town.getSize());
+        assertEquals(2, town.getItems().size());
+    }
+
+    private void assertSameClusters(List<Point> expected) {
+        ClusterIndex<Point> rebuilt = new ClusterIndex<>(ADAPTER);
+        rebuilt.setItems(expected);
+        for (int zoom = 0; zoom <= MAX_ZOOM; zoom++) {
+            Map<Set<String>, PointCluster<Point>> clusters = byMembers(
+                    index.getClusters(-90, -180, 90, 180, zoom));
+            Map<Set<String>, PointCluster<Point>> expectedClusters = byMembers(
+                    rebuilt.getClusters(-90, -180, 90, 180, zoom));
+            assertEquals(expectedClusters.keySet(), clusters.keySet());
+            for (Set<String> members : clusters.keySet()) {
+                PointCluster<Point> cluster = clusters.get(members);
+                assertEquals(members.size(), cluster.getSize());
+                // Sums of coordinates updated in place may differ in the last digits
+                assertEquals(expectedClusters.get(members).getLatitude(),
+                        cluster.getLatitude(), 1e-9);
+                assertEquals(expectedClusters.get(members).getLongitude(),
+                        cluster.getLongitude(), 1e-9);
+            }
+        }
+    }
+
+    private static Map<Set<String>, PointCluster<Point>> byMembers(
+            List<PointCluster<Point>> clusters) {
+        Map<Set<String>, PointCluster<Point>> byMembers = new HashMap<>();
+        for (PointCluster<Point> cluster : clusters) {
+            Set<String> ids = new HashSet<>();
+            for (Point point : cluster.getItems()) {
+                ids.add(point.id);
+            }
+            byMembers.put(ids, cluster);
+        }
+        return byMembers;
+    }
+
+    private static int total(List<PointCluster<Point>> clusters) {
+        int total = 0;
+        for (PointCluster<Point> cluster : clusters) {
+            total += cluster.getSize();
+        }
+        return total;
+    }
+
+    private static Set<Set<String>> members(List<PointCluster<Point>> clusters) {
+        return byMembers(clusters).keySet();
+    }
+
+    @SafeVarargs
+    private static <T> Set<T> set(T... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+    private static class Point {
+
+        final String id;
+        final double latitude;
+        final double longitude;
+
+        Point(String id, double latitude, double longitude) {
+            this.id = id;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.serialization.geo;
+
+import org.akvo.flow.domain.geometry.Geometry;
+import org.akvo.flow.domain.geometry.Vertices;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class GeoJsonTest {
+
+    /**
+     * Points, line and polygon, as built with org.json by the previous GeoshapeActivity
+     */
+    private static final String OLD_FORMAT = "{\"type\":\"FeatureCollection\",\"features\":["
+            + "{\"type\":\"Feature\",\"geometry\":{\"type\":\"MultiPoint\",\"coordinates\":"
+            + "[[36.8,-1.3],[36.8123456789,-1.31]]},\"properties\":{\"pointCount\":\"2\"}},"
+            + "{\"type\":\"Feature\",\"geometry\":{\"type\":\"LineString\",\"coordinates\":"
+            + "[[36.8,-1.3],[37,-1],[37.5,-1.25]]},"
+            + "\"properties\":{\"pointCount\":\"3\",\"length\":\"88594.22\"}},"
+            + "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Polygon\",\"coordinates\":"
+            + "[[[36.8,-1.3],[36.81,-1.3],[36.81,-1.29],[36.8,-1.3]]]},"
+            + "\"properties\":{\"pointCount\":\"3\",\"length\":\"3792.92\","
+            + "\"area\":\"615694.52\"}}]}";
+
+    @Test
+    public void read_ShouldLoadTheOldFormat() throws IOException {
+        List<Geometry> geometries = read(OLD_FORMAT);
+
+        assertEquals(3, geometries.size());
+        assertGeometry(geometries.get(0), "MultiPoint", false, -1.3, 36.8, -1.31, 36.8123456789);
+        assertGeometry(geometries.get(1), "LineString", false, -1.3, 36.8, -1, 37, -1.25, 37.5);
+        // The closing point is not loaded
+        assertGeometry(geometries.get(2), "Polygon", true, -1.3, 36.8, -1.3, 36.81, -1.29,
+                36.81);
+    }
+
+    @Test
+    public void write_ShouldMatchTheOldFormat() throws IOException {
+        List<Geometry> geometries = read(OLD_FORMAT);
+        List<Map<String, String>> properties = Arrays.asList(
+                properties("pointCount", "2"),
+                properties("pointCount", "3", "length", "88594.22"),
+                properties("pointCount", "3", "length", "3792.92", "area", "615694.52"));
+
+        StringWriter out = new StringWriter();
+        GeoJsonWriter writer = new GeoJsonWriter(out);
+        writer.beginFeatureCollection();
+        for (int i = 0; i < geometries.size(); i++) {
+            Geometry geometry = geometries.get(i);
+            writer.writeFeature(geometry.getType(), geometry.getVertices(), properties.get(i));
+        }
+        writer.endFeatureCollection();
+
+        assertEquals(OLD_FORMAT, out.toString());
+    }
+
+    @Test
+    public void read_ShouldSkipUnknownMembersAndAltitudes() throws IOException {
+        List<Geometry> geometries = read("{\"features\":[{\"id\":1,\"properties\":{\"a\":[1]},"
+                + "\"geometry\":{\"bbox\":[0,0,1,1],\"coordinates\":[[[1,2,3],[4,5,6],[1,2,3]],"
+                + "[[7,8],[9,10],[7,8]]],\"type\":\"Polygon\"}},"
+                + "{\"type\":\"Feature\",\"geometry\":null},"
+                + "{\"geometry\":{\"type\":\"Point\",\"coordinates\":[1.5,2.5]}},"
+                + "{\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[[]]}}],"
+                + "\"type\":\"FeatureCollection\"}");
+
+        assertEquals(3, geometries.size());
+        // Holes are ignored
+        assertGeometry(geometries.get(0), "Polygon", true, 2, 1, 5, 4);
+        assertGeometry(geometries.get(1), "Point", false, 2.5, 1.5);
+        assertGeometry(geometries.get(2), "Polygon", true);
+
+        assertTrue(read("{\"type\":\"FeatureCollection\",\"features\":[]}").isEmpty());
+        assertTrue(read("{\"features\":null}").isEmpty());
+    }
+
+    @Test
+    public void read_ShouldFailOnMalformedInput() {
+        assertMalformed("");
+        assertMalformed("Error");
+        assertMalformed("[]");
+        assertMalformed("{\"features\":{}}");
+        assertMalformed("{\"features\":[{\"geometry\":{\"coordinates\":[[1,2],[3");
+        assertMalformed("{\"features\":[{\"geometry\":{\"coordinates\":[[\"a\",\"b\"]]}}]}");
+        assertMalformed("{\"features\":[{\"geometry\":{\"coordinates\":[[1]]}}]}");
+        assertMalformed("{\"features\":[{\"geometry\":{\"type\":{},\"coordinates\":[]}}]}");
+    }
+
+    private static List<Geometry> read(String geoJson) throws IOException {
+        return new GeoJsonReader(new StringReader(geoJson)).readFeatureCollection();
+    }
+
+    private static void assertMalformed(String geoJson) {
+        try {
+            read(geoJson);
+            fail("Read malformed GeoJSON: " + geoJson);
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * @param coordinates latitude and longitude pairs
+     */
+    private static void assertGeometry(Geometry geometry, String type, boolean closed,
+            double... coordinates) {
+        assertEquals(type, geometry.getType());
+        Vertices vertices = geometry.getVertices();
+        assertEquals(closed, vertices.isClosed());
+        assertEquals(coordinates.length / 2, vertices.size());
+        for (int i = 0; i < vertices.size(); i++) {
+            assertEquals(coordinates[2 * i], vertices.getLatitude(i), 0);
+            assertEquals(coordinates[2 * i + 1], vertices.getLongitude(i), 0);
+        }
+    }
+
+    private static Map<String, String> properties(String... keysAndValues) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            properties.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return properties;
+    }
+}
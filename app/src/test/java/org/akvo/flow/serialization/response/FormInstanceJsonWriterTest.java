@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.serialization.response;
+
+import org.akvo.flow.domain.response.FormInstance;
+import org.akvo.flow.domain.response.Response;
+import org.akvo.flow.util.GsonMapper;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertTrue;
+
+public class FormInstanceJsonWriterTest {
+
+    private static final String GEOSHAPE = "{\"features\":[{\"type\":\"Feature\",\"geometry\":"
+            + "{\"type\":\"Polygon\",\"coordinates\":[[[-1.5,12.3],[-1.4,12.3],[-1.5,12.3]]]}}]}";
+
+    @Test
+    public void write_ShouldMatchGsonOutput() throws IOException {
+        FormInstance formInstance = createFormInstance();
+        List<Response> responses = new ArrayList<>();
+        responses.add(createResponse("1", "VALUE", "Plain text", 0));
+        responses.add(createResponse("2", "GEOSHAPE", GEOSHAPE, 3));
+        responses.add(createResponse("3", "VALUE", "<b>Tom & Jerry's</b> = \u00e9\u4e2d\u2028", 0));
+        responses.add(createResponse("4", "OPTION", "\\ \" \u0001", null));
+        formInstance.setResponses(responses);
+
+        assertSameOutput(formInstance);
+    }
+
+    @Test
+    public void write_ShouldSkipNullFields() throws IOException {
+        FormInstance formInstance = new FormInstance();
+        formInstance.setResponses(new ArrayList<Response>());
+        assertSameOutput(formInstance);
+
+        formInstance.setResponses(null);
+        assertSameOutput(formInstance);
+    }
+
+    @Test
+    public void write_ShouldMatchGsonOutputForLargeInstances() throws IOException {
+        FormInstance formInstance = createFormInstance();
+        List<Response> responses = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            responses.add(createResponse(String.valueOf(i), "GEOSHAPE", GEOSHAPE, i % 50));
+        }
+        formInstance.setResponses(responses);
+
+        assertSameOutput(formInstance);
+    }
+
+    private void assertSameOutput(FormInstance formInstance) throws IOException {
+        byte[] expected = new GsonMapper().write(formInstance, FormInstance.class)
+                .getBytes("UTF-8");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FormInstanceJsonWriter writer = new FormInstanceJsonWriter(out);
+        writer.beginFormInstance(formInstance);
+        if (formInstance.getResponses() != null) {
+            writer.beginResponses();
+            for (Response response : formInstance.getResponses()) {
+                writer.writeResponse(response);
+            }
+            writer.endResponses();
+        }
+        writer.endFormInstance();
+
+        assertTrue(new String(expected, "UTF-8"), Arrays.equals(expected, out.toByteArray()));
+    }
+
+    private FormInstance createFormInstance() {
+        FormInstance formInstance = new FormInstance();
+        formInstance.setUUID("8d2c1f0a-9b1e-4c7a-a1c4-3f0e5a7b6c9d");
+        formInstance.setFormId("156792013");
+        formInstance.setDataPointId("abcd-efgh-ijkl");
+        formInstance.setDeviceId("device 1");
+        formInstance.setUsername("J\u00f6rg <admin>");
+        formInstance.setEmail(null);
+        formInstance.setSubmissionDate(1500000000000L);
+        formInstance.setDuration(360L);
+        return formInstance;
+    }
+
+    private Response createResponse(String questionId, String type, String value,
+            Integer iteration) {
+        Response response = new Response();
+        response.setQuestionId(questionId);
+        response.setAnswerType(type);
+        response.setValue(value);
+        response.setIteration(iteration);
+        return response;
+    }
+}
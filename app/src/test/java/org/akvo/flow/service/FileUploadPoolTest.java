@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.service;
+
+import android.support.annotation.NonNull;
+
+import org.akvo.flow.domain.FileTransmission;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class FileUploadPoolTest {
+
+    @Test
+    public void upload_ShouldReportFailedTransmissions() {
+        List<FileTransmission> transmissions = new ArrayList<>();
+        for (long i = 0; i < 10; i++) {
+            transmissions.add(transmission(i));
+        }
+        final AtomicInteger uploads = new AtomicInteger();
+
+        FileUploadPool.Result result = new FileUploadPool(3).upload(transmissions,
+                new FileUploadPool.Uploader() {
+                    @Override
+                    public void upload(@NonNull FileTransmission transmission) {
+                        uploads.incrementAndGet();
+                        if (transmission.getRespondentId() % 2 == 0) {
+                            throw new IllegalStateException("Upload failed");
+                        }
+                    }
+                });
+
+        assertTrue(result.isCompleted());
+        assertEquals(10, uploads.get());
+        assertEquals(5, result.getFailed().size());
+        for (FileTransmission transmission : result.getFailed()) {
+            assertEquals(0, transmission.getRespondentId() % 2);
+        }
+    }
+
+    @Test
+    public void upload_ShouldCompleteWhenEmpty() {
+        FileUploadPool.Result result = new FileUploadPool(3).upload(
+                new ArrayList<FileTransmission>(), new FileUploadPool.Uploader() {
+                    @Override
+                    public void upload(@NonNull FileTransmission transmission) {
+                    }
+                });
+
+        assertTrue(result.isCompleted());
+        assertTrue(result.getFailed().isEmpty());
+    }
+
+    private FileTransmission transmission(long respondentId) {
+        FileTransmission transmission = new FileTransmission();
+        transmission.setRespondentId(respondentId);
+        transmission.setFileName("/sdcard/akvoflow/file" + respondentId + ".jpg");
+        return transmission;
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.service;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.akvo.flow.domain.Survey;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class FormDownloadSchedulerTest {
+
+    private static final String CASCADE = "cascade-123-v1.sqlite";
+    private static final String OTHER_CASCADE = "cascade-456-v1.sqlite";
+    private static final String HELP_URL = "http://example.com/help.png";
+
+    private final FakeDownloader downloader = new FakeDownloader();
+    private final RecordingListener listener = new RecordingListener();
+
+    @Test
+    public void download_ShouldDownloadSharedResourceOnce() {
+        downloader.resources.put("1", resources(CASCADE));
+        downloader.resources.put("2", resources(CASCADE));
+        downloader.resources.put("3", resources(CASCADE, OTHER_CASCADE));
+
+        assertTrue(schedule(forms("1", "2"), forms("3")));
+
+        assertEquals(1, downloader.count(CASCADE));
+        assertEquals(1, downloader.count(OTHER_CASCADE));
+        assertEquals(2, listener.downloadedForms.size());
+        assertEquals(3, listener.resourcesDownloaded.size());
+        for (Boolean success : listener.resourcesDownloaded.values()) {
+            assertTrue(success);
+        }
+    }
+
+    @Test
+    public void download_ShouldNotShareFormResources() {
+        downloader.resources.put("1", resources(HELP_URL));
+        downloader.resources.put("2", resources(HELP_URL));
+
+        assertTrue(schedule(forms("1", "2"), forms()));
+
+        assertEquals(1, downloader.count("1|" + HELP_URL));
+        assertEquals(1, downloader.count("2|" + HELP_URL));
+        assertEquals(0, downloader.count(HELP_URL));
+        assertTrue(listener.resourcesDownloaded.get("1"));
+        assertTrue(listener.resourcesDownloaded.get("2"));
+    }
+
+    @Test
+    public void download_ShouldFailEveryFormDependingOnFailedResource() {
+        downloader.resources.put("1", resources(CASCADE, HELP_URL));
+        downloader.resources.put("2", resources(CASCADE));
+        downloader.resources.put("3", resources(OTHER_CASCADE));
+        downloader.failingResources.add(CASCADE);
+
+        assertTrue(schedule(forms("1", "2", "3"), forms()));
+
+        assertEquals(Collections.singletonList(CASCADE), listener.failedResources);
+        assertFalse(listener.resourcesDownloaded.get("1"));
+        assertFalse(listener.resourcesDownloaded.get("2"));
+        assertTrue(listener.resourcesDownloaded.get("3"));
+        // The other resources of the form are still downloaded
+        assertEquals(1, downloader.count("1|" + HELP_URL));
+    }
+
+    @Test
+    public void download_ShouldNotFailInstalledFormWhichCanNotBeParsed() {
+        downloader.resources.put("1", resources(CASCADE));
+        downloader.failingForms.add("1");
+        downloader.failingForms.add("2");
+
+        assertTrue(schedule(forms("2"), forms("1")));
+
+        // Only the form being updated is reported as failed
+        assertEquals(Collections.singletonList("2"), listener.failedForms);
+        assertTrue(listener.pendingForms.isEmpty());
+        assertTrue(listener.resourcesDownloaded.isEmpty());
+        assertEquals(0, downloader.count(CASCADE));
+    }
+
+    @Test
+    public void download_ShouldStopWorkersWhenInterrupted() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch workerInterrupted = new CountDownLatch(1);
+        final AtomicBoolean result = new AtomicBoolean(true);
+        final FormDownloadScheduler scheduler = new FormDownloadScheduler(2,
+                new FakeDownloader() {
+                    @Nullable
+                    @Override
+                    public Set<String> downloadForm(@NonNull Survey form) throws Exception {
+                        started.countDown();
+                        try {
+                            new CountDownLatch(1).await();
+                        } catch (InterruptedException e) {
+                            workerInterrupted.countDown();
+                            throw e;
+                        }
+                        return null;
+                    }
+                }, listener);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                result.set(scheduler.download(forms("1"), forms()));
+            }
+        });
+
+        thread.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        thread.interrupt();
+        thread.join(5000);
+
+        assertFalse(thread.isAlive());
+        assertFalse(result.get());
+        // The pool has been shut down, interrupting the running download
+        assertTrue(workerInterrupted.await(5, TimeUnit.SECONDS));
+        assertTrue(listener.downloadedForms.isEmpty());
+    }
+
+    private boolean schedule(List<Survey> outdatedForms, List<Survey> installedForms) {
+        return new FormDownloadScheduler(3, downloader, listener).download(outdatedForms,
+                installedForms);
+    }
+
+    private static List<Survey> forms(String... ids) {
+        List<Survey> forms = new ArrayList<>();
+        for (String id : ids) {
+            Survey form = new Survey();
+            form.setId(id);
+            forms.add(form);
+        }
+        return forms;
+    }
+
+    private static Set<String> resources(String... resources) {
+        return new HashSet<>(Arrays.asList(resources));
+    }
+
+    /**
+     * Returns the configured resources of each form, and counts the resource downloads.
+     * Form resources are counted as formId|url.
+     */
+    private static class FakeDownloader implements FormDownloadScheduler.Downloader {
+
+        final Map<String, Set<String>> resources = new HashMap<>();
+        final Set<String> failingForms = new HashSet<>();
+        final Set<String> failingResources = new HashSet<>();
+        private final Map<String, Integer> downloads = new HashMap<>();
+
+        @Nullable
+        @Override
+        public Set<String> downloadForm(@NonNull Survey form) throws Exception {
+            return loadResources(form);
+        }
+
+        @Nullable
+        @Override
+        public Set<String> loadResources(@NonNull Survey form) throws Exception {
+            if (failingForms.contains(form.getId())) {
+                throw new IOException("Could not parse form " + form.getId());
+            }
+            Set<String> formResources = resources.get(form.getId());
+            return formResources != null ? formResources : new HashSet<String>();
+        }
+
+        @Override
+        public void downloadFormResource(@NonNull String formId, @NonNull String url)
+                throws Exception {
+            download(formId + "|" + url);
+        }
+
+        @Override
+        public void downloadSharedResource(@NonNull String resource) throws Exception {
+            download(resource);
+        }
+
+        synchronized int count(String resource) {
+            Integer count = downloads.get(resource);
+            return count != null ? count : 0;
+        }
+
+        private void download(String resource) throws IOException {
+            synchronized (this) {
+                downloads.put(resource, count(resource) + 1);
+            }
+            if (failingResources.contains(resource)) {
+                throw new IOException("Could not download " + resource);
+            }
+        }
+    }
+
+    /**
+     * Records the events. They are all delivered on the thread running the scheduler.
+     */
+    private static class RecordingListener implements FormDownloadScheduler.Listener {
+
+        final List<String> downloadedForms = new ArrayList<>();
+        final List<String> failedForms = new ArrayList<>();
+        final List<String> pendingForms = new ArrayList<>();
+        final List<String> failedResources = new ArrayList<>();
+        final Map<String, Boolean> resourcesDownloaded = new LinkedHashMap<>();
+
+        @Override
+        public void onFormDownloaded(@NonNull Survey form) {
+            downloadedForms.add(form.getId());
+        }
+
+        @Override
+        public void onFormFailed(@NonNull Survey form, @NonNull Exception error) {
+            failedForms.add(form.getId());
+        }
+
+        @Override
+        public void onResourcesPending(@NonNull String formId) {
+            pendingForms.add(formId);
+        }
+
+        @Override
+        public void onResourceFailed(@NonNull String resource, @NonNull Exception error) {
+            failedResources.add(resource);
+        }
+
+        @Override
+        public void onResourcesDownloaded(@NonNull String formId, boolean success) {
+            resourcesDownloaded.put(formId, success);
+        }
+    }
+}
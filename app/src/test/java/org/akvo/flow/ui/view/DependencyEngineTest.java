@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.ui.view;
+
+import org.akvo.flow.domain.Dependency;
+import org.akvo.flow.domain.DependencyGraph;
+import org.akvo.flow.domain.Question;
+import org.akvo.flow.domain.QuestionGroup;
+import org.akvo.flow.domain.QuestionResponse;
+import org.akvo.flow.event.SurveyListener;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DependencyEngineTest {
+
+    private final Map<String, QuestionResponse> responses = new HashMap<>();
+    private final Map<String, Boolean> satisfied = new HashMap<>();
+    private final List<String> evaluated = new ArrayList<>();
+    private final List<String> stored = new ArrayList<>();
+
+    private SurveyListener surveyListener;
+
+    @Before
+    public void setUp() {
+        surveyListener = mock(SurveyListener.class);
+        when(surveyListener.getResponses()).thenReturn(responses);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                String id = (String) invocation.getArguments()[0];
+                boolean value = (Boolean) invocation.getArguments()[1];
+                stored.add(id);
+                responses.put(id, new QuestionResponse.QuestionResponseBuilder()
+                        .createFromQuestionResponse(responses.get(id), value));
+                return null;
+            }
+        }).when(surveyListener).setIncludeFlag(anyString(), anyBoolean());
+    }
+
+    @Test
+    public void onResponseChanged_ShouldEvaluateChainOnceParentsFirst() {
+        QuestionGroup group = new QuestionGroup();
+        group.addQuestion(question("c", "yes", "b"));
+        group.addQuestion(question("b", "yes", "a"));
+        group.addQuestion(question("a", null));
+        DependencyEngine engine = createEngine(group);
+        respond("a", "yes");
+        respond("b", "yes");
+        register(engine, group, "b", "c");
+
+        respond("a", "no");
+        engine.onResponseChanged("a");
+
+        assertEquals(Arrays.asList("b", "c"), evaluated);
+        assertFalse(satisfied.get("b"));
+        assertFalse(satisfied.get("c"));
+
+        evaluated.clear();
+        respond("a", "yes");
+        engine.onResponseChanged("a");
+
+        assertEquals(Arrays.asList("b", "c"), evaluated);
+        assertTrue(satisfied.get("b"));
+        assertTrue(satisfied.get("c"));
+    }
+
+    @Test
+    public void onResponseChanged_ShouldEvaluateDiamondOnce() {
+        QuestionGroup group = new QuestionGroup();
+        group.addQuestion(question("d", "yes", "b", "c"));
+        group.addQuestion(question("a", null));
+        group.addQuestion(question("b", "yes", "a"));
+        group.addQuestion(question("c", "yes", "a"));
+        DependencyEngine engine = createEngine(group);
+        respond("a", "yes");
+        respond("b", "yes");
+        respond("c", "yes");
+        register(engine, group, "b", "c", "d");
+        assertTrue(engine.isSatisfied("d"));
+
+        respond("a", "no");
+        engine.onResponseChanged("a");
+
+        assertEquals(3, evaluated.size());
+        assertTrue(evaluated.containsAll(Arrays.asList("b", "c")));
+        assertEquals("d", evaluated.get(2));
+        assertFalse(satisfied.get("d"));
+    }
+
+    @Test
+    public void onResponseChanged_ShouldOnlyEvaluateDependents() {
+        QuestionGroup group = new QuestionGroup();
+        group.addQuestion(question("a", null));
+        group.addQuestion(question("b", "yes", "a"));
+        group.addQuestion(question("c", null));
+        group.addQuestion(question("d", "yes", "c"));
+        DependencyEngine engine = createEngine(group);
+        respond("a", "yes");
+        register(engine, group, "b", "d");
+
+        engine.onResponseChanged("c");
+        assertEquals(Collections.singletonList("d"), evaluated);
+
+        evaluated.clear();
+        engine.onResponseChanged("b");
+        assertTrue(evaluated.isEmpty());
+    }
+
+    @Test
+    public void register_ShouldHideUnsatisfiedQuestions() {
+        QuestionGroup group = new QuestionGroup();
+        group.addQuestion(question("a", null));
+        group.addQuestion(question("b", "yes", "a"));
+        group.addQuestion(question("c", "no", "a"));
+        DependencyEngine engine = createEngine(group);
+        respond("a", "yes");
+
+        QuestionView b = view(engine, group.getQuestions().get(1));
+        QuestionView c = view(engine, group.getQuestions().get(2));
+        engine.register(b);
+        engine.register(c);
+
+        verify(b).setDependenciesSatisfied(true);
+        verify(c).setDependenciesSatisfied(false);
+
+        evaluated.clear();
+        engine.unregister(c);
+        engine.onResponseChanged("a");
+        assertEquals(Collections.singletonList("b"), evaluated);
+    }
+
+    @Test
+    public void onResponseChanged_ShouldExcludePendingDependents() {
+        QuestionGroup group = new QuestionGroup();
+        group.addQuestion(question("a", null));
+        group.addQuestion(question("b", "yes", "a"));
+        group.addQuestion(question("c", "yes", "b"));
+        DependencyEngine engine = createEngine(group);
+        respond("a", "yes");
+        respond("b", "yes");
+        respond("c", "yes");
+        engine.track("b");
+        engine.track("c");
+        assertTrue(stored.isEmpty());
+
+        respond("a", "no");
+        engine.onResponseChanged("a");
+
+        assertEquals(Arrays.asList("b", "c"), stored);
+        assertFalse(responses.get("b").getIncludeFlag());
+        assertFalse(responses.get("c").getIncludeFlag());
+
+        stored.clear();
+        respond("a", "yes");
+        engine.onResponseChanged("a");
+
+        assertEquals(Arrays.asList("b", "c"), stored);
+        assertTrue(responses.get("b").getIncludeFlag());
+        assertTrue(responses.get("c").getIncludeFlag());
+    }
+
+    @Test
+    public void track_ShouldExcludeStoredResponseOfUnsatisfiedQuestion() {
+        QuestionGroup group = new QuestionGroup();
+        group.addQuestion(question("a", null));
+        group.addQuestion(question("b", "yes", "a"));
+        group.addQuestion(question("c", "yes", "b"));
+        DependencyEngine engine = createEngine(group);
+        respond("a", "no");
+        respond("b", "yes");
+        respond("c", "yes");
+        register(engine, group, "c");
+        evaluated.clear();
+
+        engine.track("b");
+
+        assertEquals(Collections.singletonList("b"), stored);
+        assertFalse(responses.get("b").getIncludeFlag());
+        assertEquals(Collections.singletonList("c"), evaluated);
+        assertFalse(satisfied.get("c"));
+    }
+
+    @Test
+    public void register_ShouldApplyStateOfPendingQuestionOnceBuilt() {
+        QuestionGroup group = new QuestionGroup();
+        group.addQuestion(question("a", null));
+        group.addQuestion(question("b", "yes", "a"));
+        DependencyEngine engine = createEngine(group);
+        respond("a", "yes");
+        respond("b", "yes");
+        engine.track("b");
+
+        respond("a", "no");
+        engine.onResponseChanged("a");
+        assertEquals(Collections.singletonList("b"), stored);
+
+        // Lazily built view, rehydrated with the excluded response
+        stored.clear();
+        QuestionView b = view(engine, group.getQuestions().get(1));
+        engine.register(b);
+
+        verify(b).setDependenciesSatisfied(false);
+        assertTrue(stored.isEmpty());
+
+        respond("a", "yes");
+        engine.onResponseChanged("a");
+
+        assertTrue(satisfied.get("b"));
+        assertTrue(responses.get("b").getIncludeFlag());
+        assertTrue(stored.isEmpty());
+    }
+
+    @Test
+    public void untrack_ShouldStopUpdatingPendingQuestion() {
+        QuestionGroup group = new QuestionGroup();
+        group.addQuestion(question("a", null));
+        group.addQuestion(question("b", "yes", "a"));
+        DependencyEngine engine = createEngine(group);
+        respond("a", "yes");
+        respond("b", "yes");
+        engine.track("b");
+        engine.untrack("b");
+
+        respond("a", "no");
+        engine.onResponseChanged("a");
+
+        assertTrue(stored.isEmpty());
+        assertTrue(responses.get("b").getIncludeFlag());
+    }
+
+    private DependencyEngine createEngine(QuestionGroup group) {
+        return new DependencyEngine(new DependencyGraph(Collections.singletonList(group)),
+                surveyListener);
+    }
+
+    private void register(DependencyEngine engine, QuestionGroup group, String... ids) {
+        List<String> registered = Arrays.asList(ids);
+        for (Question question : group.getQuestions()) {
+            if (registered.contains(question.getId())) {
+                engine.register(view(engine, question));
+            }
+        }
+    }
+
+    /**
+     * Mock view behaving like the real ones: hiding a question excludes its response, which
+     * is notified back to the engine while it is still evaluating.
+     */
+    private QuestionView view(final DependencyEngine engine, final Question question) {
+        QuestionView view = mock(QuestionView.class);
+        when(view.getQuestion()).thenReturn(question);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                String id = question.getId();
+                boolean value = (Boolean) invocation.getArguments()[0];
+                evaluated.add(id);
+                satisfied.put(id, value);
+                QuestionResponse response = responses.get(id);
+                if (response != null && response.getIncludeFlag() != value) {
+                    responses.put(id, new QuestionResponse.QuestionResponseBuilder()
+                            .createFromQuestionResponse(response, value));
+                    engine.onResponseChanged(id);
+                }
+                return null;
+            }
+        }).when(view).setDependenciesSatisfied(anyBoolean());
+        return view;
+    }
+
+    private void respond(String questionId, String value) {
+        responses.put(questionId, new QuestionResponse.QuestionResponseBuilder()
+                .setQuestionId(questionId)
+                .setValue(value)
+                .createQuestionResponse());
+    }
+
+    private Question question(String id, String answer, String... parents) {
+        Question question = new Question();
+        question.setId(id);
+        for (String parent : parents) {
+            Dependency dependency = new Dependency();
+            dependency.setQuestion(parent);
+            dependency.setAnswer(answer);
+            question.addDependency(dependency);
+        }
+        return question;
+    }
+}
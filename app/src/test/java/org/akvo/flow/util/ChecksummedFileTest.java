@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.util;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks the bytes read from disk per uploaded byte with ChecksummedFile, with and without
+ * a cached checksum.
+ */
+public class ChecksummedFileTest {
+
+    private static final int FILE_SIZE = 4 * 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private byte[] expectedMd5;
+
+    @Before
+    public void setUp() throws Exception {
+        byte[] content = new byte[FILE_SIZE];
+        new Random(42).nextBytes(content);
+        file = folder.newFile("media.jpg");
+        OutputStream out = new FileOutputStream(file);
+        out.write(content);
+        out.close();
+        expectedMd5 = MessageDigest.getInstance("MD5").digest(content);
+    }
+
+    @Test
+    public void uploadShouldReadFileTwiceWithoutCachedChecksum() throws Exception {
+        ChecksummedFile checksummedFile = new ChecksummedFile(file, null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(FILE_SIZE);
+
+        assertTrue(checksummedFile.isChecksumPending());
+        assertTrue(Arrays.equals(expectedMd5, checksummedFile.getMd5()));
+        checksummedFile.writeTo(out);
+
+        double ratio = checksummedFile.getBytesRead() / (double) out.size();
+        assertEquals(2.0, ratio, 0.0);
+    }
+
+    @Test
+    public void uploadShouldReadFileOnceWithCachedChecksum() throws Exception {
+        ChecksummedFile checksummedFile = new ChecksummedFile(file, expectedMd5);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(FILE_SIZE);
+
+        assertTrue(Arrays.equals(expectedMd5, checksummedFile.getMd5()));
+        checksummedFile.writeTo(out);
+
+        double ratio = checksummedFile.getBytesRead() / (double) out.size();
+        assertEquals(1.0, ratio, 0.0);
+        assertEquals(FILE_SIZE, out.size());
+    }
+
+    @Test
+    public void invalidatedChecksumShouldBeComputedAgain() throws Exception {
+        ChecksummedFile checksummedFile = new ChecksummedFile(file, new byte[16]);
+
+        checksummedFile.invalidateChecksum();
+
+        assertTrue(checksummedFile.isChecksumPending());
+        assertTrue(Arrays.equals(expectedMd5, checksummedFile.getMd5()));
+    }
+}
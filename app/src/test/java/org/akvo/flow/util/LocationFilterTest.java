@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+
+public class LocationFilterTest {
+
+    private static final double LATITUDE = 52.37;
+    private static final double LONGITUDE = 4.89;
+    private static final double METERS_PER_DEGREE = 111320;
+    private static final float TARGET_ACCURACY = 20f;
+
+    private LocationFilter filter;
+    private Random random;
+    private long time;
+
+    @Before
+    public void setup() {
+        filter = new LocationFilter(TARGET_ACCURACY);
+        random = new Random(42);
+        time = 0;
+    }
+
+    @Test
+    public void add_ShouldAverageStationaryFixes() throws Exception {
+        double fixErrors = 0;
+        for (int i = 0; i < 10; i++) {
+            fixErrors += addNoisyFix(LATITUDE, LONGITUDE, 10f);
+        }
+        LocationFilter.Estimate estimate = filter.getEstimate();
+        assertNotNull(estimate);
+        assertEquals(10, estimate.getSamples());
+        assertTrue(distance(estimate, LATITUDE, LONGITUDE) < fixErrors / 10);
+        assertTrue(filter.isStable());
+    }
+
+    @Test
+    public void add_ShouldNotBeStableWhenInaccurate() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            addNoisyFix(LATITUDE, LONGITUDE, 80f);
+        }
+        assertFalse(filter.isStable());
+    }
+
+    @Test
+    public void add_ShouldRejectSingleOutlier() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            addNoisyFix(LATITUDE, LONGITUDE, 5f);
+        }
+        LocationFilter.Estimate before = filter.getEstimate();
+
+        // Multipath jump, 300 meters north
+        boolean accepted = filter.add(time += 1000, LATITUDE + 300 / METERS_PER_DEGREE,
+                LONGITUDE, 0, 5f, Float.NaN);
+
+        assertFalse(accepted);
+        assertTrue(before == filter.getEstimate());
+    }
+
+    @Test
+    public void add_ShouldFollowConsistentOutliers() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            addNoisyFix(LATITUDE, LONGITUDE, 5f);
+        }
+        double latitude = LATITUDE + 300 / METERS_PER_DEGREE;
+        for (int i = 0; i < 3; i++) {
+            addNoisyFix(latitude, LONGITUDE, 5f);
+        }
+        LocationFilter.Estimate estimate = filter.getEstimate();
+        assertNotNull(estimate);
+        assertEquals(3, estimate.getSamples());
+        assertTrue(distance(estimate, latitude, LONGITUDE) < 10);
+        assertFalse(filter.isStable());
+    }
+
+    @Test
+    public void add_ShouldRestartWhenMoving() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            addNoisyFix(LATITUDE, LONGITUDE, 5f);
+        }
+        filter.add(time += 1000, LATITUDE, LONGITUDE, 0, 5f, 1.5f);
+        LocationFilter.Estimate estimate = filter.getEstimate();
+        assertNotNull(estimate);
+        assertEquals(1, estimate.getSamples());
+    }
+
+    @Test
+    public void add_ShouldExpireOldFixes() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            addNoisyFix(LATITUDE, LONGITUDE, 5f);
+        }
+        time += LocationFilter.DEFAULT_WINDOW_MS;
+        addNoisyFix(LATITUDE, LONGITUDE, 5f);
+        LocationFilter.Estimate estimate = filter.getEstimate();
+        assertNotNull(estimate);
+        assertEquals(1, estimate.getSamples());
+    }
+
+    /**
+     * @return the error of the added fix, in meters
+     */
+    private double addNoisyFix(double latitude, double longitude, float accuracy) {
+        // Reported accuracy is the 68% radius, i.e. about 1.5 sigma per axis
+        double sigma = accuracy / 1.5;
+        double dy = random.nextGaussian() * sigma;
+        double dx = random.nextGaussian() * sigma;
+        filter.add(time += 1000, latitude + dy / METERS_PER_DEGREE,
+                longitude + dx / METERS_PER_DEGREE / Math.cos(Math.toRadians(latitude)), 0,
+                accuracy, Float.NaN);
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private static double distance(LocationFilter.Estimate estimate, double latitude,
+            double longitude) {
+        double dx = (estimate.getLongitude() - longitude) * METERS_PER_DEGREE
+                * Math.cos(Math.toRadians(latitude));
+        double dy = (estimate.getLatitude() - latitude) * METERS_PER_DEGREE;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+}
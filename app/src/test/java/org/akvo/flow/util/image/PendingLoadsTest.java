@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.util.image;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class PendingLoadsTest {
+
+    @Test
+    public void add_ShouldShareTheOngoingLoad() {
+        PendingLoads<String> loads = new PendingLoads<>();
+        Runnable first = new Callback();
+        Runnable second = new Callback();
+        Runnable other = new Callback();
+
+        assertFalse(loads.isLoading("a"));
+        assertTrue(loads.add("a", first));
+        assertFalse(loads.add("a", second));
+        assertTrue(loads.add("b", other));
+        assertTrue(loads.isLoading("a"));
+
+        assertEquals(Arrays.asList(first, second), loads.complete("a"));
+        assertFalse(loads.isLoading("a"));
+        assertTrue(loads.isLoading("b"));
+    }
+
+    @Test
+    public void complete_ShouldAllowTheKeyToBeLoadedAgain() {
+        PendingLoads<String> loads = new PendingLoads<>();
+        Runnable first = new Callback();
+        Runnable second = new Callback();
+
+        assertTrue(loads.add("a", first));
+        assertEquals(Collections.singletonList(first), loads.complete("a"));
+
+        assertTrue(loads.complete("a").isEmpty());
+
+        // A later request starts a new load
+        assertTrue(loads.add("a", second));
+        assertEquals(Collections.singletonList(second), loads.complete("a"));
+    }
+
+    private static class Callback implements Runnable {
+
+        @Override
+        public void run() {
+        }
+    }
+}
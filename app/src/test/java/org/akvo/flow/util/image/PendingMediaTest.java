@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.util.image;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+public class PendingMediaTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File tmpDir;
+    private File mediaDir;
+
+    @Before
+    public void setUp() throws IOException {
+        tmpDir = folder.newFolder("tmp");
+        mediaDir = folder.newFolder("media");
+    }
+
+    @Test
+    public void claim_ShouldNameTheFileAfterItsDestination() throws IOException {
+        File source = createFile(tmpDir, "image.jpg", 3);
+
+        PendingMedia image = PendingMedia.image(tmpDir, new File(mediaDir, "wfp_1.jpg"), 1024)
+                .claim(source);
+
+        assertEquals("pending_image1024_wfp_1.jpg", image.file.getName());
+        assertEquals(tmpDir, image.file.getParentFile());
+        assertTrue(image.file.exists());
+        assertFalse(source.exists());
+
+        source = createFile(tmpDir, "video.mp4", 3);
+        PendingMedia video = PendingMedia.video(tmpDir, new File(mediaDir, "wfp_2.mp4"))
+                .claim(source);
+
+        assertEquals("pending_video_wfp_2.mp4", video.file.getName());
+        assertTrue(video.file.exists());
+    }
+
+    @Test
+    public void claim_ShouldKeepTheSourceIfItCannotBeMoved() {
+        File source = new File(tmpDir, "image.jpg");// Never written by the camera
+        File destination = new File(mediaDir, "wfp_1.jpg");
+
+        PendingMedia image = PendingMedia.image(tmpDir, destination, 1024).claim(source);
+
+        assertEquals(source, image.file);
+        assertEquals(destination, image.destination);
+        assertEquals(1024, image.maxImgSize);
+    }
+
+    @Test
+    public void parse_ShouldRestoreTheClaimedMedia() {
+        File destination = new File(mediaDir, "wfp_1_a.jpg");
+        PendingMedia claimed = PendingMedia.image(tmpDir, destination, 320);
+
+        PendingMedia image = PendingMedia.parse(claimed.file, mediaDir);
+
+        assertNotNull(image);
+        assertFalse(image.video);
+        assertEquals(320, image.maxImgSize);
+        assertEquals(destination, image.destination);
+
+        PendingMedia video = PendingMedia.parse(
+                PendingMedia.video(tmpDir, new File(mediaDir, "wfp_2.mp4")).file, mediaDir);
+
+        assertNotNull(video);
+        assertTrue(video.video);
+        assertEquals(new File(mediaDir, "wfp_2.mp4"), video.destination);
+    }
+
+    @Test
+    public void parse_ShouldIgnoreOtherFiles() {
+        assertNull(PendingMedia.parse(new File(tmpDir, "image.jpg"), mediaDir));
+        assertNull(PendingMedia.parse(new File(tmpDir, "pending_imagex_a.jpg"), mediaDir));
+        assertNull(PendingMedia.parse(new File(tmpDir, "pending_image_a.jpg"), mediaDir));
+        assertNull(PendingMedia.parse(new File(tmpDir, "pending_audio_a.mp3"), mediaDir));
+    }
+
+    @Test
+    public void list_ShouldSkipTheFilesAlreadyClaimed() throws IOException {
+        PendingMedia stopped = PendingMedia.image(tmpDir, new File(mediaDir, "a.jpg"), 1024)
+                .claim(createFile(tmpDir, "image.jpg", 3));
+        PendingMedia queued = PendingMedia.video(tmpDir, new File(mediaDir, "b.mp4"))
+                .claim(createFile(tmpDir, "video.mp4", 3));
+        createFile(tmpDir, "image.jpg", 3);
+        Set<String> claimed = new HashSet<>(Collections.singletonList(queued.file.getName()));
+
+        List<PendingMedia> media = PendingMedia.list(tmpDir, mediaDir, claimed);
+
+        assertEquals(1, media.size());
+        assertEquals(stopped.file, media.get(0).file);
+        assertEquals(new File(mediaDir, "a.jpg"), media.get(0).destination);
+        assertTrue(PendingMedia.list(new File(tmpDir, "missing"), mediaDir, claimed).isEmpty());
+    }
+
+    @Test
+    public void moveToDestination_ShouldKeepTheImageAsIs() throws IOException {
+        PendingMedia image = PendingMedia.image(tmpDir, new File(mediaDir, "a.jpg"), 1024)
+                .claim(createFile(tmpDir, "image.jpg", 5));
+
+        assertTrue(image.moveToDestination());
+
+        assertFalse(image.file.exists());
+        assertEquals(5, image.destination.length());
+        assertTrue(PendingMedia.list(tmpDir, mediaDir, Collections.<String>emptySet())
+                .isEmpty());
+    }
+
+    @Test
+    public void moveToDestination_ShouldKeepThePendingFileOnFailure() throws IOException {
+        PendingMedia image = PendingMedia.image(tmpDir, new File(tmpDir, "missing/a.jpg"), 1024)
+                .claim(createFile(tmpDir, "image.jpg", 5));
+
+        assertFalse(image.moveToDestination());
+
+        // Recovered on the next start
+        assertTrue(image.file.exists());
+        assertEquals(1, PendingMedia.list(tmpDir, mediaDir, Collections.<String>emptySet())
+                .size());
+    }
+
+    private File createFile(File dir, String name, int length) throws IOException {
+        File file = new File(dir, name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[length]);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.util.image;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+
+public class ThumbnailCacheTest {
+
+    @Test
+    public void getKey_ShouldDependOnPathAndLastModifiedTime() {
+        String key = ThumbnailCache.getKey("/media/a.jpg", 1000);
+
+        assertEquals("/media/a.jpg:1000", key);
+        assertEquals(key, ThumbnailCache.getKey("/media/a.jpg", 1000));
+        assertFalse(key.equals(ThumbnailCache.getKey("/media/a.jpg", 2000)));
+        assertFalse(key.equals(ThumbnailCache.getKey("/other/a.jpg", 1000)));
+    }
+}
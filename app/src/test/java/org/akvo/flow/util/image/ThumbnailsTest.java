@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.util.image;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class ThumbnailsTest {
+
+    private static final String PATH = "/storage/akvoflow/media/0a1b2c.jpg";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        dir = folder.getRoot();
+    }
+
+    @Test
+    public void getPrefix_ShouldStripTheExtensionAndHashThePath() {
+        String prefix = Thumbnails.getPrefix(PATH);
+
+        assertEquals("0a1b2c_" + Integer.toHexString(PATH.hashCode()) + "_", prefix);
+        assertTrue(Thumbnails.getPrefix("0a1b2c.mp4").startsWith("0a1b2c_"));
+        assertTrue(Thumbnails.getPrefix("/a/v1.2.jpg").startsWith("v1.2_"));
+        assertTrue(Thumbnails.getPrefix("/a/.nomedia").startsWith(".nomedia_"));
+        // Same name in another folder
+        assertFalse(prefix.equals(Thumbnails.getPrefix("/storage/other/0a1b2c.jpg")));
+    }
+
+    @Test
+    public void getFileName_ShouldChangeWithTheLastModifiedTime() {
+        String name = Thumbnails.getFileName(PATH, 1500000000000L);
+
+        assertEquals(Thumbnails.getPrefix(PATH) + "1500000000000.jpg", name);
+        assertFalse(name.equals(Thumbnails.getFileName(PATH, 1500000001000L)));
+        assertTrue(Thumbnails.getFileName(PATH, 1500000001000L)
+                .startsWith(Thumbnails.getPrefix(PATH)));
+    }
+
+    @Test
+    public void rename_ShouldFollowTheLastModifiedTime() throws IOException {
+        File thumbnail = create(PATH, 1000);
+
+        assertTrue(Thumbnails.rename(dir, PATH, 1000, 2000));
+        assertFalse(thumbnail.exists());
+        assertEquals(Collections.singletonList(Thumbnails.getFileName(PATH, 2000)), list());
+    }
+
+    @Test
+    public void rename_ShouldKeepTheThumbnailIfTheTimeIsUnchanged() throws IOException {
+        File thumbnail = create(PATH, 1000);
+
+        assertTrue(Thumbnails.rename(dir, PATH, 1000, 1000));
+        assertTrue(thumbnail.exists());
+        assertEquals(Collections.singletonList(thumbnail.getName()), list());
+    }
+
+    @Test
+    public void rename_ShouldFailWithoutAThumbnail() throws IOException {
+        create(PATH, 1000);
+
+        assertFalse(Thumbnails.rename(dir, PATH, 500, 2000));
+        assertFalse(Thumbnails.rename(dir, "/storage/other/0a1b2c.jpg", 1000, 2000));
+        assertEquals(Collections.singletonList(Thumbnails.getFileName(PATH, 1000)), list());
+    }
+
+    @Test
+    public void deleteOutdated_ShouldOnlyDeleteThumbnailsOfTheFile() throws IOException {
+        String other = "/storage/other/0a1b2c.jpg";
+        create(PATH, 1000);
+        create(PATH, 2000);
+        create(other, 1000);
+
+        Thumbnails.deleteOutdated(dir, PATH);
+
+        assertEquals(Collections.singletonList(Thumbnails.getFileName(other, 1000)), list());
+    }
+
+    private File create(String path, long lastModified) throws IOException {
+        return folder.newFile(Thumbnails.getFileName(path, lastModified));
+    }
+
+    private List<String> list() {
+        String[] names = dir.list();
+        Arrays.sort(names);
+        return Arrays.asList(names);
+    }
+}
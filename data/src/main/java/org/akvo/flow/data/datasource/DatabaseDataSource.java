@@ -31,22 +31,33 @@ import org.akvo.flow.data.entity.ApiDataPoint;
 import org.akvo.flow.data.entity.ApiQuestionAnswer;
 import org.akvo.flow.data.entity.ApiSurveyInstance;
 import org.akvo.flow.database.Constants;
-import org.akvo.flow.database.RecordColumns;
-import org.akvo.flow.database.ResponseColumns;
-import org.akvo.flow.database.SurveyInstanceColumns;
+import org.akvo.flow.database.DatabaseLockStats;
 import org.akvo.flow.database.SurveyInstanceStatus;
 import org.akvo.flow.database.SyncTimeColumns;
-import org.akvo.flow.database.TransmissionStatus;
 import org.akvo.flow.database.britedb.BriteSurveyDbAdapter;
+import org.akvo.flow.database.britedb.DataPointBulkWriter;
+import org.akvo.flow.database.britedb.DataPointPageQuery;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 
 import io.reactivex.Observable;
 
+import timber.log.Timber;
+
 public class DatabaseDataSource {
 
+    /**
+     * Maximum number of data points held in memory, and written in a single transaction, while
+     * a sync page is being streamed
+     */
+    private static final int SYNC_CHUNK_SIZE = 50;
+
     private final BriteSurveyDbAdapter briteSurveyDbAdapter;
 
     @Inject
@@ -65,6 +76,15 @@ public class DatabaseDataSource {
 
     }
 
+    public Observable<Cursor> getDataPointsInArea(long surveyGroupId, double south, double west,
+            double north, double east) {
+        return briteSurveyDbAdapter.getDataPointsInArea(surveyGroupId, south, west, north, east);
+    }
+
+    public Observable<Cursor> searchDataPoints(long surveyGroupId, @NonNull String text) {
+        return briteSurveyDbAdapter.searchDataPoints(surveyGroupId, text);
+    }
+
     private boolean isRequestFiltered(@Nullable Integer orderBy) {
         return orderBy != null && (orderBy == Constants.ORDER_BY_DISTANCE ||
                 orderBy ==  Constants.ORDER_BY_DATE ||
@@ -72,36 +92,89 @@ public class DatabaseDataSource {
                 orderBy ==  Constants.ORDER_BY_NAME);
     }
 
+    public Cursor getDataPointsPage(@NonNull Long surveyGroupId, @Nullable Double latitude,
+            @Nullable Double longitude, @Nullable Integer orderBy, @Nullable String afterKey,
+            long afterId, @Nullable String untilKey, long untilId, int limit) {
+        DataPointPageQuery pageQuery = new DataPointPageQuery(surveyGroupId,
+                orderBy == null ? Constants.ORDER_BY_NONE : orderBy, latitude, longitude);
+        if (afterKey != null) {
+            pageQuery.after(afterKey, afterId);
+        }
+        if (untilKey != null) {
+            pageQuery.until(untilKey, untilId);
+        }
+        return briteSurveyDbAdapter.getDataPointsPage(pageQuery.limit(limit));
+    }
+
+    public Observable<Cursor> getDataPointsCount(long surveyGroupId) {
+        return briteSurveyDbAdapter.getDataPointsCount(surveyGroupId);
+    }
+
     public Cursor getSyncedTime(long surveyGroupId) {
         return briteSurveyDbAdapter.getSyncTime(surveyGroupId);
     }
 
+    /**
+     * Write the data points as they are read from the iterator. Data points are committed in
+     * chunks, each one with the sync time of its last data point, so that the transaction is
+     * never kept open while waiting for the network.
+     */
+    public void syncDataPoints(@NonNull Iterator<ApiDataPoint> apiDataPoints) {
+        List<ApiDataPoint> chunk = new ArrayList<>(SYNC_CHUNK_SIZE);
+        while (apiDataPoints.hasNext()) {
+            chunk.add(apiDataPoints.next());
+            if (chunk.size() == SYNC_CHUNK_SIZE) {
+                syncDataPoints(chunk);
+                chunk.clear();
+            }
+        }
+        syncDataPoints(chunk);
+        Timber.d("Data points synced. %s, %s", DatabaseLockStats.WRITERS,
+                DatabaseLockStats.READERS);
+    }
+
+    /**
+     * Write a page of data points. Survey instance ids are resolved for the whole page up front,
+     * response iterations are computed in memory, and empty records are deleted once at the end.
+     */
     public void syncDataPoints(List<ApiDataPoint> apiDataPoints) {
         if (apiDataPoints == null || apiDataPoints.size() == 0) {
             return;
         }
         BriteDatabase.Transaction transaction = briteSurveyDbAdapter.beginTransaction();
+        DataPointBulkWriter writer = briteSurveyDbAdapter.newDataPointBulkWriter();
         try {
+            Map<String, Long> surveyInstanceIds = writer
+                    .getSurveyInstanceIds(getSurveyInstanceUuids(apiDataPoints));
+            long syncDate = System.currentTimeMillis();
             for (ApiDataPoint dataPoint : apiDataPoints) {
                 final String id = dataPoint.getId();
-                ContentValues values = new ContentValues();
-                values.put(RecordColumns.RECORD_ID, id);
-                values.put(RecordColumns.SURVEY_GROUP_ID, dataPoint.getSurveyGroupId());
-                values.put(RecordColumns.NAME, dataPoint.getDisplayName());
-                values.put(RecordColumns.LATITUDE, dataPoint.getLatitude());
-                values.put(RecordColumns.LONGITUDE, dataPoint.getLongitude());
-
-                syncSurveyInstances(dataPoint.getSurveyInstances(), id);
-
-                briteSurveyDbAdapter.updateRecord(id, values, dataPoint.getLastModified());
+                syncSurveyInstances(writer, dataPoint.getSurveyInstances(), id,
+                        surveyInstanceIds, syncDate);
+                writer.writeRecord(id, dataPoint.getSurveyGroupId(), dataPoint.getDisplayName(),
+                        dataPoint.getLatitude(), dataPoint.getLongitude(),
+                        dataPoint.getLastModified());
             }
+            writer.deleteEmptyRecords();
             updateLastUpdatedDateTime(apiDataPoints);
             transaction.markSuccessful();
         } finally {
+            writer.close();
             transaction.end();
         }
     }
 
+    @NonNull
+    private List<String> getSurveyInstanceUuids(@NonNull List<ApiDataPoint> apiDataPoints) {
+        List<String> uuids = new ArrayList<>();
+        for (ApiDataPoint dataPoint : apiDataPoints) {
+            for (ApiSurveyInstance surveyInstance : dataPoint.getSurveyInstances()) {
+                uuids.add(surveyInstance.getUuid());
+            }
+        }
+        return uuids;
+    }
+
     /**
      * JSON array responses are ordered to have the latest updated datapoint last so
      * we record it to make the next query using it
@@ -128,57 +201,53 @@ public class DatabaseDataSource {
         briteSurveyDbAdapter.insertSyncedTime(values);
     }
 
-    private void syncSurveyInstances(List<ApiSurveyInstance> surveyInstances, String dataPointId) {
+    private void syncSurveyInstances(DataPointBulkWriter writer,
+            List<ApiSurveyInstance> surveyInstances, String dataPointId,
+            Map<String, Long> surveyInstanceIds, long syncDate) {
         for (ApiSurveyInstance surveyInstance : surveyInstances) {
+            String uuid = surveyInstance.getUuid();
+            long id = writer.writeSurveyInstance(surveyInstanceIds.get(uuid), uuid,
+                    surveyInstance.getSurveyId(), surveyInstance.getCollectionDate(), dataPointId,
+                    SurveyInstanceStatus.DOWNLOADED, syncDate, surveyInstance.getSubmitter());
+            surveyInstanceIds.put(uuid, id);
 
-            ContentValues values = new ContentValues();
-            values.put(SurveyInstanceColumns.SURVEY_ID, surveyInstance.getSurveyId());
-            values.put(SurveyInstanceColumns.SUBMITTED_DATE, surveyInstance.getCollectionDate());
-            values.put(SurveyInstanceColumns.RECORD_ID, dataPointId);
-            values.put(SurveyInstanceColumns.STATUS, SurveyInstanceStatus.DOWNLOADED);
-            values.put(SurveyInstanceColumns.SYNC_DATE, System.currentTimeMillis());
-            values.put(SurveyInstanceColumns.SUBMITTER, surveyInstance.getSubmitter());
-
-            long id = briteSurveyDbAdapter.syncSurveyInstance(values, surveyInstance.getUuid());
-
-            syncResponses(surveyInstance.getQasList(), id);
+            syncResponses(writer, surveyInstance.getQasList(), id);
 
             // The filename is a unique column in the transmission table, and as we do not have
             // a file to hold this data, we set the value to the instance UUID
-            briteSurveyDbAdapter
-                    .createTransmission(id, String.valueOf(surveyInstance.getSurveyId()),
-                            surveyInstance.getUuid(),
-                            TransmissionStatus.SYNCED);
+            writer.insertSyncedTransmission(id, String.valueOf(surveyInstance.getSurveyId()),
+                    uuid);
         }
-        briteSurveyDbAdapter.deleteEmptyRecords();
-    }
-
-    private void syncResponses(List<ApiQuestionAnswer> responses, long surveyInstanceId) {
-        deleteResponses(responses, surveyInstanceId);
-        insertResponses(responses, surveyInstanceId);
     }
 
-    private void deleteResponses(List<ApiQuestionAnswer> responses, long surveyInstanceId) {
+    /**
+     * Replace the responses to the downloaded questions. Questions answered more than once
+     * (repeated question groups) get iterations 0..n-1, in the order they were downloaded.
+     */
+    private void syncResponses(DataPointBulkWriter writer, List<ApiQuestionAnswer> responses,
+            long surveyInstanceId) {
+        Map<String, Integer> answerCount = new HashMap<>();
         for (ApiQuestionAnswer response : responses) {
-            briteSurveyDbAdapter.deleteResponses(surveyInstanceId, response.getQuestionId());
+            String questionId = response.getQuestionId();
+            Integer count = answerCount.get(questionId);
+            if (count == null) {
+                writer.deleteResponses(surveyInstanceId, questionId);
+                count = 0;
+            }
+            answerCount.put(questionId, count + 1);
         }
-    }
 
-    private void insertResponses(List<ApiQuestionAnswer> responses, long surveyInstanceId) {
+        Map<String, Integer> lastIteration = new HashMap<>();
         for (ApiQuestionAnswer response : responses) {
-
-            ContentValues values = new ContentValues();
-            values.put(ResponseColumns.ANSWER, response.getAnswer());
-            values.put(ResponseColumns.TYPE, response.getType());
-            values.put(ResponseColumns.QUESTION_ID, response.getQuestionId());
-            /*
-             * true by default when parsing api response
-             * Not sure what this fields is used for ??
-             */
-            values.put(ResponseColumns.INCLUDE, true);
-            values.put(ResponseColumns.SURVEY_INSTANCE_ID, surveyInstanceId);
-
-            briteSurveyDbAdapter.syncResponse(surveyInstanceId, values, response.getQuestionId());
+            String questionId = response.getQuestionId();
+            Integer iteration = null;
+            if (answerCount.get(questionId) > 1) {
+                Integer previous = lastIteration.get(questionId);
+                iteration = previous == null ? 0 : previous + 1;
+                lastIteration.put(questionId, iteration);
+            }
+            writer.insertResponse(surveyInstanceId, questionId, response.getAnswer(),
+                    response.getType(), iteration);
         }
     }
 }
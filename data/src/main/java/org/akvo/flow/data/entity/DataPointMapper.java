@@ -24,8 +24,12 @@ import android.database.Cursor;
 import android.support.annotation.NonNull;
 
 import org.akvo.flow.database.SurveyDbAdapter;
+import org.akvo.flow.database.RecordColumns;
 import org.akvo.flow.database.SurveyInstanceColumns;
+import org.akvo.flow.database.britedb.DataPointPageQuery;
 import org.akvo.flow.domain.entity.DataPoint;
+import org.akvo.flow.domain.entity.DataPointPage;
+import org.akvo.flow.domain.entity.DataPointPageKey;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -75,4 +79,22 @@ public class DataPointMapper {
         }
         return items;
     }
+
+    /**
+     * Maps the rows of a page query, keeping the position of the last one
+     */
+    @NonNull
+    public DataPointPage getDataPointPage(Cursor cursor) {
+        List<DataPoint> items = new ArrayList<>();
+        DataPointPageKey lastKey = null;
+        if (cursor != null) {
+            if (cursor.moveToLast()) {
+                lastKey = new DataPointPageKey(
+                        cursor.getString(cursor.getColumnIndexOrThrow(DataPointPageQuery.PAGE_KEY)),
+                        cursor.getLong(cursor.getColumnIndexOrThrow(RecordColumns._ID)));
+            }
+            items = getDataPoints(cursor);
+        }
+        return new DataPointPage(items, lastKey);
+    }
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.data.net;
+
+import android.support.annotation.NonNull;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import org.akvo.flow.data.entity.ApiDataPoint;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Streams the data points of a sync page, one at a time, as they are read from the response.
+ * Only the data point being parsed is held in memory, no matter the size of the page.
+ * Read errors are thrown as unchecked JsonIOException, as required by the Iterator interface.
+ */
+public class ApiDataPointReader implements Iterator<ApiDataPoint>, Closeable {
+
+    private static final String DATA_POINTS = "surveyedLocaleData";
+
+    private final JsonReader reader;
+    private final Gson gson;
+
+    private boolean started;
+    private boolean finished;
+
+    public ApiDataPointReader(@NonNull Reader in, @NonNull Gson gson) {
+        this.reader = new JsonReader(in);
+        this.gson = gson;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (finished) {
+            return false;
+        }
+        try {
+            if (!started) {
+                started = true;
+                if (!moveToDataPoints()) {
+                    finished = true;
+                    return false;
+                }
+            }
+            if (reader.hasNext()) {
+                return true;
+            }
+            reader.endArray();
+            finished = true;
+            return false;
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    @Override
+    public ApiDataPoint next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return gson.fromJson(reader, ApiDataPoint.class);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Skip the response fields until the beginning of the data points array
+     *
+     * @return false if the response contains no data points
+     */
+    private boolean moveToDataPoints() throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (DATA_POINTS.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                return true;
+            }
+            reader.skipValue();
+        }
+        reader.endObject();
+        return false;
+    }
+}
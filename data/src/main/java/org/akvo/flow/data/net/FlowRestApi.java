@@ -23,12 +23,11 @@ package org.akvo.flow.data.net;
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
 
-import org.akvo.flow.data.entity.ApiLocaleResult;
-
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import io.reactivex.Flowable;
+import okhttp3.ResponseBody;
 
 @Singleton
 public class FlowRestApi {
@@ -48,7 +47,11 @@ public class FlowRestApi {
         this.encoder = encoder;
     }
 
-    public Flowable<ApiLocaleResult> loadNewDataPoints(long surveyGroup,
+    /**
+     * The response body is not buffered, it must be read with an {@link ApiDataPointReader}
+     * and closed by the caller
+     */
+    public Flowable<ResponseBody> loadNewDataPoints(long surveyGroup,
             @NonNull String timestamp) {
         String lastUpdated = !TextUtils.isEmpty(timestamp) ? timestamp : "0";
         String phoneNumber = encoder.encodeParam(this.phoneNumber);
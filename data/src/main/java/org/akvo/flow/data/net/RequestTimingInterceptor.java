@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.data.net;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import okhttp3.Connection;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import timber.log.Timber;
+
+/**
+ * Network interceptor logging the time taken by each request, and whether it was sent over a
+ * newly opened connection or a pooled one. The time is measured until the response headers
+ * are received. The connection setup (including the TLS handshake) happens before network
+ * interceptors are invoked, so its savings show up in the connection count instead.
+ */
+@Singleton
+public class RequestTimingInterceptor implements Interceptor {
+
+    private final Set<Connection> connections = Collections
+            .newSetFromMap(new WeakHashMap<Connection, Boolean>());
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicLong totalTime = new AtomicLong();
+
+    @Inject
+    public RequestTimingInterceptor() {
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        boolean newConnection = onConnectionUsed(chain.connection());
+        long start = System.nanoTime();
+        Response response = chain.proceed(request);
+        long time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        requestCount.incrementAndGet();
+        totalTime.addAndGet(time);
+        Timber.d("%s %s: %d ms, %s connection (%s)", request.method(), request.url().encodedPath(),
+                time, newConnection ? "new" : "pooled", response.protocol());
+        return response;
+    }
+
+    /**
+     * @return true if this is the first request sent over the given connection
+     */
+    private boolean onConnectionUsed(Connection connection) {
+        if (connection == null) {
+            return false;
+        }
+        boolean added;
+        synchronized (connections) {
+            added = connections.add(connection);
+        }
+        if (added) {
+            connectionCount.incrementAndGet();
+        }
+        return added;
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return number of connections opened so far
+     */
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * @return accumulated request time, in milliseconds
+     */
+    public long getTotalTime() {
+        return totalTime.get();
+    }
+}
@@ -20,55 +20,81 @@
 
 package org.akvo.flow.data.net;
 
+import android.support.annotation.VisibleForTesting;
+
 import java.text.SimpleDateFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import okhttp3.Cache;
 import okhttp3.OkHttpClient;
 import okhttp3.logging.HttpLoggingInterceptor;
 import retrofit2.Retrofit;
 import retrofit2.adapter.rxjava2.RxJava2CallAdapterFactory;
 import retrofit2.converter.gson.GsonConverterFactory;
 
+/**
+ * Creates the Retrofit services used to talk to the Flow API. All of them share a single
+ * Retrofit instance, backed by the application wide OkHttpClient, so connections, TLS sessions
+ * and the dispatcher are reused across calls. Service proxies are cached per interface.
+ */
 @Singleton
 public class RestServiceFactory {
 
-    private static final int CONNECTION_TIMEOUT = 10;
+    public static final int CONNECTION_TIMEOUT = 10;
     /**
      * Requests to GAE take a long time especially when there are a lot of datapoints
      */
     public static final int NO_TIMEOUT = 0;
 
-    private final HttpLoggingInterceptor loggingInterceptor;
-    private final SimpleDateFormat dateFormat;
-    private final Encoder encoder;
-    private final String key;
-    private final String baseUrl;
+    private final OkHttpClient apiClient;
+    private final Retrofit retrofit;
+    private final Map<Class<?>, Object> services = new ConcurrentHashMap<>();
 
+    /**
+     * @param httpClient shared client. The API specific interceptors are added to a derived
+     *                   client, which keeps using the same connection pool and dispatcher
+     * @param cache      response cache for the API endpoints which allow it. It must be the
+     *                   only Cache instance opened on its directory
+     */
     @Inject
-    public RestServiceFactory(HttpLoggingInterceptor loggingInterceptor,
-            SimpleDateFormat simpleDateFormat, Encoder encoder, String key, String baseUrl) {
-        this.loggingInterceptor = loggingInterceptor;
-        this.dateFormat = simpleDateFormat;
-        this.encoder = encoder;
-        this.key = key;
-        this.baseUrl = baseUrl;
-    }
-
-    public <T> T createRetrofitService(final Class<T> clazz) {
-        OkHttpClient.Builder httpClient = new OkHttpClient.Builder();
-        httpClient.addInterceptor(loggingInterceptor);
-        httpClient.connectTimeout(CONNECTION_TIMEOUT, TimeUnit.SECONDS);
-        httpClient.readTimeout(NO_TIMEOUT, TimeUnit.SECONDS);
-        httpClient.addInterceptor(new HMACInterceptor(key, dateFormat, encoder));
-        Retrofit retrofit = new Retrofit.Builder()
+    public RestServiceFactory(OkHttpClient httpClient, Cache cache,
+            HttpLoggingInterceptor loggingInterceptor, SimpleDateFormat simpleDateFormat,
+            Encoder encoder, String key, String baseUrl) {
+        this.apiClient = httpClient.newBuilder()
+                .cache(cache)
+                .addInterceptor(loggingInterceptor)
+                .addInterceptor(new HMACInterceptor(key, simpleDateFormat, encoder))
+                .readTimeout(NO_TIMEOUT, TimeUnit.SECONDS)
+                .build();
+        this.retrofit = new Retrofit.Builder()
                 .baseUrl(baseUrl)
                 .addCallAdapterFactory(RxJava2CallAdapterFactory.create())
                 .addConverterFactory(GsonConverterFactory.create())
-                .client(httpClient.build())
+                .client(apiClient)
                 .build();
-        return retrofit.create(clazz);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T createRetrofitService(final Class<T> clazz) {
+        Object service = services.get(clazz);
+        if (service == null) {
+            // Concurrent callers may create the proxy twice, which is harmless
+            service = retrofit.create(clazz);
+            services.put(clazz, service);
+        }
+        return (T) service;
+    }
+
+    /**
+     * @return the client all the services of this factory send their requests with
+     */
+    @VisibleForTesting
+    OkHttpClient getApiClient() {
+        return apiClient;
     }
 }
@@ -22,22 +22,29 @@ package org.akvo.flow.data.repository;
 
 import android.database.Cursor;
 
+import com.google.gson.Gson;
+
 import org.akvo.flow.data.datasource.DataSourceFactory;
 import org.akvo.flow.data.entity.ApiDataPoint;
-import org.akvo.flow.data.entity.ApiLocaleResult;
 import org.akvo.flow.data.entity.ApiSurveyInstance;
 import org.akvo.flow.data.entity.DataPointMapper;
 import org.akvo.flow.data.entity.SyncedTimeMapper;
+import org.akvo.flow.data.net.ApiDataPointReader;
 import org.akvo.flow.data.net.FlowRestApi;
 import org.akvo.flow.domain.entity.DataPoint;
+import org.akvo.flow.domain.entity.DataPointPage;
+import org.akvo.flow.domain.entity.DataPointPageKey;
 import org.akvo.flow.domain.exception.AssignmentRequiredException;
 import org.akvo.flow.domain.repository.SurveyRepository;
 import org.reactivestreams.Publisher;
 
 import java.net.HttpURLConnection;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
@@ -45,12 +52,10 @@ import javax.inject.Inject;
 
 import io.reactivex.Flowable;
 import io.reactivex.Observable;
-import io.reactivex.Single;
-import io.reactivex.SingleSource;
 import io.reactivex.annotations.NonNull;
-import io.reactivex.functions.Consumer;
 import io.reactivex.functions.Function;
 import io.reactivex.functions.Predicate;
+import okhttp3.ResponseBody;
 import retrofit2.HttpException;
 
 public class SurveyDataRepository implements SurveyRepository {
@@ -59,6 +64,7 @@ public class SurveyDataRepository implements SurveyRepository {
     private final DataPointMapper dataPointMapper;
     private final SyncedTimeMapper syncedTimeMapper;
     private final FlowRestApi restApi;
+    private final Gson gson = new Gson();
 
     @Inject
     public SurveyDataRepository(DataSourceFactory dataSourceFactory,
@@ -83,6 +89,66 @@ public class SurveyDataRepository implements SurveyRepository {
                         });
     }
 
+    @Override
+    public Observable<DataPointPage> getDataPointsPage(final Long surveyGroupId,
+            final Double latitude, final Double longitude, final Integer orderBy,
+            final DataPointPageKey after, final DataPointPageKey until, final int limit) {
+        return Observable.fromCallable(new Callable<DataPointPage>() {
+            @Override
+            public DataPointPage call() throws Exception {
+                Cursor cursor = dataSourceFactory.getDataBaseDataSource()
+                        .getDataPointsPage(surveyGroupId, latitude, longitude, orderBy,
+                                after == null ? null : after.getSortKey(),
+                                after == null ? 0 : after.getRowId(),
+                                until == null ? null : until.getSortKey(),
+                                until == null ? 0 : until.getRowId(), limit);
+                return dataPointMapper.getDataPointPage(cursor);
+            }
+        });
+    }
+
+    @Override
+    public Observable<Integer> getDataPointsCount(Long surveyGroupId) {
+        return dataSourceFactory.getDataBaseDataSource().getDataPointsCount(surveyGroupId)
+                .map(new Function<Cursor, Integer>() {
+                    @Override
+                    public Integer apply(Cursor cursor) {
+                        int count = 0;
+                        if (cursor != null) {
+                            if (cursor.moveToFirst()) {
+                                count = cursor.getInt(0);
+                            }
+                            cursor.close();
+                        }
+                        return count;
+                    }
+                });
+    }
+
+    @Override
+    public Observable<List<DataPoint>> getDataPointsInArea(Long surveyGroupId, double south,
+            double west, double north, double east) {
+        return dataSourceFactory.getDataBaseDataSource()
+                .getDataPointsInArea(surveyGroupId, south, west, north, east)
+                .map(new Function<Cursor, List<DataPoint>>() {
+                    @Override
+                    public List<DataPoint> apply(Cursor cursor) {
+                        return dataPointMapper.getDataPoints(cursor);
+                    }
+                });
+    }
+
+    @Override
+    public Observable<List<DataPoint>> searchDataPoints(Long surveyGroupId, String text) {
+        return dataSourceFactory.getDataBaseDataSource().searchDataPoints(surveyGroupId, text)
+                .map(new Function<Cursor, List<DataPoint>>() {
+                    @Override
+                    public List<DataPoint> apply(Cursor cursor) {
+                        return dataPointMapper.getDataPoints(cursor);
+                    }
+                });
+    }
+
     @Override
     public Flowable<Integer> syncRemoteDataPoints(final long surveyGroupId) {
         return syncDataPoints(surveyGroupId)
@@ -112,13 +178,6 @@ public class SurveyDataRepository implements SurveyRepository {
     private Flowable<Integer> syncDataPoints(final long surveyGroupId) {
         final State state = new State(getSyncedTime(surveyGroupId));
         return loadNewDataPoints(surveyGroupId, state)
-                .doOnNext(new Consumer<State>() {
-                    @Override
-                    public void accept(@NonNull State state) throws Exception {
-                        List<ApiDataPoint> lastBatch = state.getLastBatch();
-                        dataSourceFactory.getDataBaseDataSource().syncDataPoints(lastBatch);
-                    }
-                })
                 .repeatWhen(new Function<Flowable<Object>, Publisher<?>>() {
                     @Override
                     public Publisher<?> apply(@NonNull Flowable<Object> flowable) throws Exception {
@@ -140,85 +199,66 @@ public class SurveyDataRepository implements SurveyRepository {
                 .map(new Function<State, Integer>() {
                     @Override
                     public Integer apply(State state) {
-                        return state.retrievedItems;
+                        return state.getRetrievedItems();
                     }
                 });
     }
 
+    /**
+     * Each page is parsed while it is being downloaded, and its data points are written to the
+     * database as they arrive, so the whole page is never held in memory
+     */
     private Flowable<State> loadNewDataPoints(final long surveyGroupId,
             final State state) {
-        return Flowable.defer(new Callable<Flowable<ApiLocaleResult>>() {
+        return Flowable.defer(new Callable<Flowable<ResponseBody>>() {
             @Override
-            public Flowable<ApiLocaleResult> call() throws Exception {
+            public Flowable<ResponseBody> call() throws Exception {
                 return restApi.loadNewDataPoints(surveyGroupId,
                         state.getTimestamp());
             }
-        }).map(new Function<ApiLocaleResult, List<ApiDataPoint>>() {
+        }).map(new Function<ResponseBody, State>() {
             @Override
-            public List<ApiDataPoint> apply(@NonNull ApiLocaleResult apiLocaleResult)
-                    throws Exception {
-                if (apiLocaleResult == null || apiLocaleResult.getDataPoints() == null) {
-                    return Collections.emptyList();
+            public State apply(@NonNull ResponseBody responseBody) throws Exception {
+                ApiDataPointReader reader = new ApiDataPointReader(responseBody.charStream(),
+                        gson);
+                try {
+                    Batch batch = state.newBatch(reader);
+                    dataSourceFactory.getDataBaseDataSource().syncDataPoints(batch);
+                    state.update(batch);
+                } finally {
+                    reader.close();
                 }
-                List<ApiDataPoint> dataPoints = apiLocaleResult.getDataPoints();
-                dataPoints.removeAll(state.getLastBatch()); //remove duplicates
-                return dataPoints;
-            }
-        }).concatMap(new Function<List<ApiDataPoint>, Flowable<State>>() {
-            @Override
-            public Flowable<State> apply(@NonNull List<ApiDataPoint> dataPoints)
-                    throws Exception {
-                return filterDataPoints(dataPoints, state);
+                return state;
             }
         });
     }
 
-    private Flowable<State> filterDataPoints(@NonNull List<ApiDataPoint> dataPoints,
-            final State state) {
-        return Flowable.fromIterable(dataPoints)
-                .filter(new Predicate<ApiDataPoint>() {
-                    @Override
-                    public boolean test(@NonNull ApiDataPoint apiDataPoint) throws Exception {
-                        List<ApiSurveyInstance> instances = apiDataPoint.getSurveyInstances();
-                        return instances != null && !instances.isEmpty();
-                    }
-                })
-                .toList()
-                .flatMap(new Function<List<ApiDataPoint>, SingleSource<State>>() {
-                    @Override
-                    public SingleSource<State> apply(@NonNull List<ApiDataPoint> points)
-                            throws Exception {
-                        state.update(points);
-                        return Single.just(state);
-                    }
-                })
-                .toFlowable();
-    }
-
-    public class State {
+    public static class State {
 
+        /**
+         * Ids of the data points retrieved in the last page, used to discard duplicates
+         */
         @NonNull
-        private final List<ApiDataPoint> lastBatch;
+        private final Set<String> lastBatch;
 
         private String timestamp;
         private int retrievedItems = 0;
 
         State(String timestamp) {
             this.timestamp = timestamp;
-            this.lastBatch = new ArrayList<>();
+            this.lastBatch = new HashSet<>();
         }
 
-        void update(List<ApiDataPoint> dataPoints) {
-            if (dataPoints == null) {
-                return;
-            }
+        Batch newBatch(Iterator<ApiDataPoint> dataPoints) {
+            return new Batch(dataPoints, lastBatch);
+        }
+
+        void update(Batch batch) {
             lastBatch.clear();
-            lastBatch.addAll(dataPoints);
-            retrievedItems += dataPoints.size();
-            int size = lastBatch.size();
-            if (size != 0) {
-                ApiDataPoint lastDataPoint = lastBatch.get(size - 1);
-                timestamp = String.valueOf(lastDataPoint.getLastModified());
+            lastBatch.addAll(batch.ids);
+            retrievedItems += batch.ids.size();
+            if (batch.lastModified != null) {
+                timestamp = String.valueOf(batch.lastModified);
             }
         }
 
@@ -226,8 +266,65 @@ public class SurveyDataRepository implements SurveyRepository {
             return timestamp;
         }
 
-        List<ApiDataPoint> getLastBatch() {
+        Set<String> getLastBatch() {
             return lastBatch;
         }
+
+        int getRetrievedItems() {
+            return retrievedItems;
+        }
+    }
+
+    /**
+     * Data points of a page, without the ones already retrieved in the previous page or
+     * having no survey instances. Keeps track of the ids and the latest timestamp of the data
+     * points consumed so far.
+     */
+    static class Batch implements Iterator<ApiDataPoint> {
+
+        private final Iterator<ApiDataPoint> dataPoints;
+        private final Set<String> previousIds;
+        private final List<String> ids = new ArrayList<>();
+
+        private ApiDataPoint next;
+        private Long lastModified;
+
+        Batch(Iterator<ApiDataPoint> dataPoints, Set<String> previousIds) {
+            this.dataPoints = dataPoints;
+            this.previousIds = previousIds;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && dataPoints.hasNext()) {
+                ApiDataPoint dataPoint = dataPoints.next();
+                if (!previousIds.contains(dataPoint.getId()) && hasSurveyInstances(dataPoint)) {
+                    next = dataPoint;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public ApiDataPoint next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ApiDataPoint dataPoint = next;
+            next = null;
+            ids.add(dataPoint.getId());
+            lastModified = dataPoint.getLastModified();
+            return dataPoint;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private boolean hasSurveyInstances(ApiDataPoint dataPoint) {
+            List<ApiSurveyInstance> instances = dataPoint.getSurveyInstances();
+            return instances != null && !instances.isEmpty();
+        }
     }
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.data.net;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class ApiDataPointReaderTest {
+
+    private static final String DATA_POINT_A = "{\"id\":\"a\",\"lastUpdateDateTime\":1,"
+            + "\"surveyInstances\":[]}";
+    private static final String DATA_POINT_B = "{\"id\":\"b\",\"lastUpdateDateTime\":2,"
+            + "\"surveyInstances\":[]}";
+
+    @Test
+    public void readerShouldSkipFieldsAroundDataPoints() {
+        ApiDataPointReader reader = createReader("{\"resultCount\":2,\"surveyedLocaleData\":["
+                + DATA_POINT_A + "," + DATA_POINT_B + "],\"offset\":0}");
+
+        assertEquals("a", reader.next().getId());
+        assertEquals(2, reader.next().getLastModified());
+        assertFalse(reader.hasNext());
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void emptyPageShouldHaveNoDataPoints() {
+        assertFalse(createReader("{\"resultCount\":0,\"surveyedLocaleData\":[]}").hasNext());
+        assertFalse(createReader("{\"resultCount\":0,\"surveyedLocaleData\":null}").hasNext());
+        assertFalse(createReader("{\"resultCount\":0}").hasNext());
+        assertFalse(createReader("{}").hasNext());
+    }
+
+    @Test
+    public void partialPageShouldFailAfterLastCompleteDataPoint() {
+        ApiDataPointReader reader = createReader("{\"surveyedLocaleData\":[" + DATA_POINT_A
+                + ",");
+
+        assertEquals("a", reader.next().getId());
+        try {
+            reader.hasNext();
+            fail("Truncated page should not end the data points silently");
+        } catch (JsonIOException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void partialDataPointShouldFail() {
+        ApiDataPointReader reader = createReader("{\"surveyedLocaleData\":[" + DATA_POINT_A
+                + ",{\"id\":\"b\",");
+
+        assertEquals("a", reader.next().getId());
+        assertTrue(reader.hasNext());
+        try {
+            reader.next();
+            fail("Truncated data point should not be returned");
+        } catch (JsonSyntaxException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void malformedPageShouldFail() {
+        ApiDataPointReader reader = createReader("{\"surveyedLocaleData\":[" + DATA_POINT_A
+                + " " + DATA_POINT_B + "]}");
+
+        assertEquals("a", reader.next().getId());
+        try {
+            reader.hasNext();
+            fail("Malformed page should not end the data points silently");
+        } catch (JsonIOException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void malformedDataPointShouldFail() {
+        ApiDataPointReader reader = createReader("{\"surveyedLocaleData\":[42]}");
+
+        assertTrue(reader.hasNext());
+        try {
+            reader.next();
+            fail("A number is not a data point");
+        } catch (JsonSyntaxException e) {
+            // Expected
+        }
+    }
+
+    private ApiDataPointReader createReader(String page) {
+        return new ApiDataPointReader(new StringReader(page), new Gson());
+    }
+}
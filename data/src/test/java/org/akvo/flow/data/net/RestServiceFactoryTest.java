@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.data.net;
+
+import com.google.gson.Gson;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+import okhttp3.ResponseBody;
+import okhttp3.logging.HttpLoggingInterceptor;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+public class RestServiceFactoryTest {
+
+    private static final int REQUESTS = 5;
+    private static final String RESULT = "{\"resultCount\":2,\"surveyedLocaleData\":["
+            + "{\"id\":\"a\",\"surveyInstances\":[]},{\"id\":\"b\",\"surveyInstances\":[]}"
+            + "],\"offset\":0}";
+
+    @Rule
+    public TemporaryFolder cacheFolder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private Cache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        cache = new Cache(cacheFolder.getRoot(), 1024 * 1024);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+        cache.close();
+    }
+
+    @Test
+    public void createRetrofitServiceShouldReuseServiceProxies() {
+        RestServiceFactory factory = createServiceFactory(new OkHttpClient());
+
+        assertSame(factory.createRetrofitService(DataPointSyncService.class),
+                factory.createRetrofitService(DataPointSyncService.class));
+    }
+
+    @Test
+    public void sharedClientShouldReuseConnections() throws IOException {
+        RequestTimingInterceptor timingInterceptor = new RequestTimingInterceptor();
+        OkHttpClient httpClient = new OkHttpClient.Builder()
+                .addNetworkInterceptor(timingInterceptor)
+                .build();
+        RestServiceFactory factory = createServiceFactory(httpClient);
+
+        for (int i = 0; i < REQUESTS; i++) {
+            loadDataPoints(factory);
+        }
+
+        assertEquals(REQUESTS, timingInterceptor.getRequestCount());
+        assertEquals(1, timingInterceptor.getConnectionCount());
+    }
+
+    @Test
+    public void servicesShouldShareOneClientPerFactory() {
+        OkHttpClient httpClient = new OkHttpClient();
+        RestServiceFactory factory = createServiceFactory(httpClient);
+
+        factory.createRetrofitService(DataPointSyncService.class);
+
+        OkHttpClient apiClient = factory.getApiClient();
+        assertSame(apiClient, factory.getApiClient());
+        assertSame(httpClient.connectionPool(), apiClient.connectionPool());
+        assertSame(httpClient.dispatcher(), apiClient.dispatcher());
+    }
+
+    @Test
+    public void apiClientShouldHaveConfiguredTimeoutsAndInterceptors() {
+        RequestTimingInterceptor timingInterceptor = new RequestTimingInterceptor();
+        OkHttpClient httpClient = new OkHttpClient.Builder()
+                .connectTimeout(RestServiceFactory.CONNECTION_TIMEOUT, TimeUnit.SECONDS)
+                .readTimeout(RestServiceFactory.CONNECTION_TIMEOUT, TimeUnit.SECONDS)
+                .addNetworkInterceptor(timingInterceptor)
+                .build();
+        HttpLoggingInterceptor loggingInterceptor = new HttpLoggingInterceptor();
+        RestServiceFactory factory = createServiceFactory(httpClient, loggingInterceptor);
+
+        OkHttpClient apiClient = factory.getApiClient();
+        assertEquals(TimeUnit.SECONDS.toMillis(RestServiceFactory.CONNECTION_TIMEOUT),
+                apiClient.connectTimeoutMillis());
+        assertEquals(RestServiceFactory.NO_TIMEOUT, apiClient.readTimeoutMillis());
+        assertEquals(2, apiClient.interceptors().size());
+        assertSame(loggingInterceptor, apiClient.interceptors().get(0));
+        assertTrue(apiClient.interceptors().get(1) instanceof HMACInterceptor);
+        assertEquals(1, apiClient.networkInterceptors().size());
+        assertSame(timingInterceptor, apiClient.networkInterceptors().get(0));
+        // The shared client is left untouched
+        assertTrue(httpClient.interceptors().isEmpty());
+        assertNull(httpClient.cache());
+    }
+
+    @Test
+    public void factoriesShouldShareTheInjectedCache() {
+        RestServiceFactory factory = createServiceFactory(new OkHttpClient());
+        RestServiceFactory otherFactory = createServiceFactory(new OkHttpClient());
+
+        assertSame(cache, factory.getApiClient().cache());
+        assertSame(cache, otherFactory.getApiClient().cache());
+    }
+
+    private void loadDataPoints(RestServiceFactory factory) throws IOException {
+        server.enqueue(new MockResponse().setBody(RESULT));
+        ResponseBody responseBody = factory.createRetrofitService(DataPointSyncService.class)
+                .loadNewDataPoints("androidId", "imei", "0", "", "1")
+                .blockingFirst();
+        ApiDataPointReader reader = new ApiDataPointReader(responseBody.charStream(),
+                new Gson());
+        try {
+            assertEquals("a", reader.next().getId());
+            assertEquals("b", reader.next().getId());
+            assertFalse(reader.hasNext());
+        } finally {
+            reader.close();
+        }
+    }
+
+    private RestServiceFactory createServiceFactory(OkHttpClient httpClient) {
+        return createServiceFactory(httpClient, new HttpLoggingInterceptor());
+    }
+
+    private RestServiceFactory createServiceFactory(OkHttpClient httpClient,
+            HttpLoggingInterceptor loggingInterceptor) {
+        return new RestServiceFactory(httpClient, cache, loggingInterceptor,
+                new SimpleDateFormat("yyyy/MM/dd", Locale.US), new Encoder(), "key",
+                server.url("/").toString());
+    }
+}
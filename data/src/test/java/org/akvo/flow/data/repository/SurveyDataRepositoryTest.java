@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.data.repository;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+
+import org.akvo.flow.data.entity.ApiDataPoint;
+import org.akvo.flow.data.net.ApiDataPointReader;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Feeds pages of data points through the sync State, the way syncDataPoints does, and
+ * records the data points which would be written to the database.
+ */
+public class SurveyDataRepositoryTest {
+
+    private final List<String> written = new ArrayList<>();
+
+    @Test
+    public void duplicatesAcrossPagesShouldBeWrittenOnce() {
+        SurveyDataRepository.State state = new SurveyDataRepository.State("0");
+
+        syncPage(state, page(dataPoint("a", 1), dataPoint("b", 2)));
+        assertEquals("2", state.getTimestamp());
+
+        // The next page starts at the last timestamp, so 'b' is sent again
+        syncPage(state, page(dataPoint("b", 2), dataPoint("c", 3), dataPoint("d", 3)));
+
+        assertEquals(4, written.size());
+        assertEquals("a", written.get(0));
+        assertEquals("b", written.get(1));
+        assertEquals("c", written.get(2));
+        assertEquals("d", written.get(3));
+        assertEquals(4, state.getRetrievedItems());
+        assertEquals("3", state.getTimestamp());
+    }
+
+    @Test
+    public void pageWithOnlyDuplicatesShouldEndSync() {
+        SurveyDataRepository.State state = new SurveyDataRepository.State("0");
+        syncPage(state, page(dataPoint("a", 1), dataPoint("b", 2)));
+
+        syncPage(state, page(dataPoint("b", 2)));
+
+        assertEquals(2, written.size());
+        assertTrue(state.getLastBatch().isEmpty());
+        assertEquals("2", state.getTimestamp());
+        assertEquals(2, state.getRetrievedItems());
+    }
+
+    @Test
+    public void emptyPageShouldKeepCursor() {
+        SurveyDataRepository.State state = new SurveyDataRepository.State("5");
+
+        syncPage(state, "{\"resultCount\":0,\"surveyedLocaleData\":[]}");
+
+        assertTrue(written.isEmpty());
+        assertTrue(state.getLastBatch().isEmpty());
+        assertEquals("5", state.getTimestamp());
+    }
+
+    @Test
+    public void dataPointsWithoutInstancesShouldBeSkipped() {
+        SurveyDataRepository.State state = new SurveyDataRepository.State("0");
+
+        syncPage(state, page(dataPoint("a", 1),
+                "{\"id\":\"b\",\"lastUpdateDateTime\":2,\"surveyInstances\":[]}",
+                "{\"id\":\"c\",\"lastUpdateDateTime\":3}"));
+
+        assertEquals(1, written.size());
+        assertEquals("a", written.get(0));
+        assertEquals("1", state.getTimestamp());
+    }
+
+    @Test
+    public void failedPageShouldNotAdvanceCursor() {
+        SurveyDataRepository.State state = new SurveyDataRepository.State("0");
+        syncPage(state, page(dataPoint("a", 1), dataPoint("b", 2)));
+        String truncated = page(dataPoint("b", 2), dataPoint("c", 3));
+        truncated = truncated.substring(0, truncated.indexOf("],\"offset\""));
+
+        try {
+            syncPage(state, truncated);
+            fail("Truncated page should fail");
+        } catch (JsonIOException e) {
+            // Expected
+        }
+
+        assertEquals("2", state.getTimestamp());
+        assertEquals(2, state.getLastBatch().size());
+
+        // The page is requested again. Data points written before the failure are written
+        // again (replacing the records), the ones from the previous page are still skipped
+        written.clear();
+        syncPage(state, page(dataPoint("b", 2), dataPoint("c", 3)));
+        assertEquals(1, written.size());
+        assertEquals("c", written.get(0));
+        assertEquals("3", state.getTimestamp());
+    }
+
+    private void syncPage(SurveyDataRepository.State state, String page) {
+        ApiDataPointReader reader = new ApiDataPointReader(new StringReader(page), new Gson());
+        SurveyDataRepository.Batch batch = state.newBatch(reader);
+        while (batch.hasNext()) {
+            ApiDataPoint dataPoint = batch.next();
+            written.add(dataPoint.getId());
+        }
+        state.update(batch);
+    }
+
+    private static String page(String... dataPoints) {
+        StringBuilder page = new StringBuilder("{\"resultCount\":").append(dataPoints.length)
+                .append(",\"surveyedLocaleData\":[");
+        for (int i = 0; i < dataPoints.length; i++) {
+            page.append(i > 0 ? "," : "").append(dataPoints[i]);
+        }
+        return page.append("],\"offset\":0}").toString();
+    }
+
+    private static String dataPoint(String id, long lastModified) {
+        return "{\"id\":\"" + id + "\",\"lastUpdateDateTime\":" + lastModified
+                + ",\"surveyInstances\":[{\"uuid\":\"" + id + "-1\"}]}";
+    }
+}
@@ -20,10 +20,12 @@
 
 package org.akvo.flow.database;
 
+import android.annotation.TargetApi;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 import android.util.Pair;
 
 import org.akvo.flow.database.migration.MigrationListener;
@@ -51,7 +53,36 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static final int VER_PREFERENCES_MIGRATE = 83;
     public static final int VER_LANGUAGES_MIGRATE = 84;
     public static final int VER_RESPONSE_ITERATION = 85;
-    static final int DATABASE_VERSION = VER_RESPONSE_ITERATION;
+    public static final int VER_MULTIPART_UPLOAD = 86;
+    public static final int VER_UPLOAD_CHECKSUM = 87;
+    public static final int VER_TRANSMISSION_QUEUE = 88;
+    public static final int VER_QUERY_INDEXES = 89;
+    public static final int VER_SEARCH_INDEX = 90;
+    public static final int VER_SPATIAL_GRID = 91;
+    public static final int VER_UPLOAD_FILE = 92;
+    static final int DATABASE_VERSION = VER_UPLOAD_FILE;
+
+    /**
+     * Transmissions waiting to be uploaded, including stalled IN_PROGRESS ones. Queries on the
+     * upload queue must use this exact expression, otherwise SQLite won't pick the partial
+     * index built on it.
+     */
+    static final String PENDING_TRANSMISSIONS = TransmissionColumns.STATUS + " IN ("
+            + TransmissionStatus.QUEUED + ", " + TransmissionStatus.IN_PROGRESS + ", "
+            + TransmissionStatus.FAILED + ")";
+
+    /**
+     * Upload queue order: new files first, then the ones being retried, each in creation order.
+     * The queue index already returns the rows in this order, so no sorting is needed.
+     */
+    static final String PENDING_TRANSMISSIONS_ORDER = TransmissionColumns.STATUS + ", "
+            + TransmissionColumns._ID;
+
+    /**
+     * Page cache size, in pages. Big enough to keep the record and survey_instance indexes
+     * in memory while the data point list is being scrolled.
+     */
+    private static final int CACHE_SIZE_PAGES = 2000;
 
     private static SQLiteDatabase database;
     private static final Object LOCK_OBJ = new Object();
@@ -64,6 +95,39 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
         this.languageTable = languageTable;
         this.migrationListener = migrationListener;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            // Readers get their own connections, so they don't wait for the sync writes
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    /**
+     * Only called on Jelly Bean and newer versions. Older ones are configured in onOpen()
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            configure(db, db.isWriteAheadLoggingEnabled());
+        }
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            boolean writeAheadLogging = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                    && db.enableWriteAheadLogging();
+            configure(db, writeAheadLogging);
+        }
+    }
+
+    private void configure(SQLiteDatabase db, boolean writeAheadLogging) {
+        if (writeAheadLogging) {
+            // With WAL, NORMAL only syncs on checkpoints and is still safe against corruption
+            db.execSQL("PRAGMA synchronous = NORMAL");
+        }
+        db.execSQL("PRAGMA cache_size = " + CACHE_SIZE_PAGES);
     }
 
     @Override
@@ -131,6 +195,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 + RecordColumns.LATITUDE + " REAL,"// REFERENCES ...
                 + RecordColumns.LONGITUDE + " REAL,"// REFERENCES ...
                 + RecordColumns.LAST_MODIFIED + " INTEGER NOT NULL DEFAULT 0,"
+                + RecordColumns.GRID_CELL + " INTEGER,"
                 + "UNIQUE (" + RecordColumns.RECORD_ID + ") ON CONFLICT REPLACE)");
 
         db.execSQL("CREATE TABLE " + Tables.TRANSMISSION + " ("
@@ -141,6 +206,10 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 + TransmissionColumns.STATUS + " INTEGER,"
                 + TransmissionColumns.START_DATE + " INTEGER,"
                 + TransmissionColumns.END_DATE + " INTEGER,"
+                + TransmissionColumns.UPLOAD_ID + " TEXT,"
+                + TransmissionColumns.UPLOAD_PARTS + " TEXT,"
+                + TransmissionColumns.MD5 + " TEXT,"
+                + TransmissionColumns.UPLOAD_FILE + " TEXT,"
                 + "UNIQUE (" + TransmissionColumns.FILENAME + ") ON CONFLICT REPLACE)");
 
         db.execSQL("CREATE TABLE " + Tables.SYNC_TIME + " ("
@@ -150,6 +219,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 + "UNIQUE (" + SyncTimeColumns.SURVEY_GROUP_ID + ") ON CONFLICT REPLACE)");
         languageTable.onCreate(db);
         createIndexes(db);
+        RecordSearchIndex.create(db);
     }
 
     @Override
@@ -208,6 +278,44 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         responseMigrationHelper.migrateResponses(responseMigrationData, db);
     }
 
+    public void upgradeFromResponseIteration(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + Tables.TRANSMISSION
+                + " ADD COLUMN " + TransmissionColumns.UPLOAD_ID + " TEXT");
+        db.execSQL("ALTER TABLE " + Tables.TRANSMISSION
+                + " ADD COLUMN " + TransmissionColumns.UPLOAD_PARTS + " TEXT");
+    }
+
+    public void upgradeFromMultipartUpload(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + Tables.TRANSMISSION
+                + " ADD COLUMN " + TransmissionColumns.MD5 + " TEXT");
+    }
+
+    public void upgradeFromUploadChecksum(SQLiteDatabase db) {
+        createTransmissionQueueIndex(db);
+    }
+
+    public void upgradeFromTransmissionQueue(SQLiteDatabase db) {
+        createQueryIndexes(db);
+    }
+
+    public void upgradeFromQueryIndexes(SQLiteDatabase db) {
+        RecordSearchIndex.create(db);
+        RecordSearchIndex.rebuild(db);
+    }
+
+    public void upgradeFromSearchIndex(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + Tables.RECORD
+                + " ADD COLUMN " + RecordColumns.GRID_CELL + " INTEGER");
+        db.execSQL("UPDATE " + Tables.RECORD + " SET " + RecordColumns.GRID_CELL + " = "
+                + GeoGrid.getCellSql(RecordColumns.LATITUDE, RecordColumns.LONGITUDE));
+        createGridIndex(db);
+    }
+
+    public void upgradeFromSpatialGrid(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + Tables.TRANSMISSION
+                + " ADD COLUMN " + TransmissionColumns.UPLOAD_FILE + " TEXT");
+    }
+
     @Override
     public SQLiteDatabase getWritableDatabase() {
         synchronized (LOCK_OBJ) {
@@ -250,9 +358,53 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 + "(" + SurveyInstanceColumns.STATUS + ")");
         db.execSQL("CREATE INDEX response_modified_idx ON " + Tables.SURVEY_INSTANCE
                 + "(" + SurveyInstanceColumns.SUBMITTED_DATE + ")");
+        createTransmissionQueueIndex(db);
+        createQueryIndexes(db);
+        createGridIndex(db);
+    }
+
+    /**
+     * Used by the map area and the distance sort order, see {@link GeoGrid}
+     */
+    private void createGridIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS record_grid_idx ON " + Tables.RECORD + "("
+                + RecordColumns.SURVEY_GROUP_ID + ", " + RecordColumns.GRID_CELL + ")");
+    }
+
+    /**
+     * Indexes for the data point list, the map, the form instance lists and the transmission
+     * history lookups. Their query plans are checked in QueryPlanTest.
+     */
+    private void createQueryIndexes(SQLiteDatabase db) {
+        // Filtering by survey group and grouping by record follow the index order
+        db.execSQL("CREATE INDEX IF NOT EXISTS record_survey_group_idx ON " + Tables.RECORD
+                + "(" + RecordColumns.SURVEY_GROUP_ID + ", " + RecordColumns.RECORD_ID + ")");
+        // Covers the record join of the data point list, which only reads the status
+        db.execSQL("CREATE INDEX IF NOT EXISTS survey_instance_record_idx ON "
+                + Tables.SURVEY_INSTANCE + "(" + SurveyInstanceColumns.RECORD_ID + ", "
+                + SurveyInstanceColumns.SURVEY_ID + ", " + SurveyInstanceColumns.STATUS + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS transmission_survey_instance_idx ON "
+                + Tables.TRANSMISSION + "(" + TransmissionColumns.SURVEY_INSTANCE_ID + ")");
+    }
+
+    /**
+     * The transmission table keeps the whole upload history, while the sync service only ever
+     * reads the pending entries. Partial indexes need SQLite 3.8.0, which ships since Lollipop.
+     * Older devices get a regular index on the status column.
+     */
+    private void createTransmissionQueueIndex(SQLiteDatabase db) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS transmission_queue_idx ON "
+                    + Tables.TRANSMISSION + "(" + TransmissionColumns.STATUS + ")"
+                    + " WHERE " + PENDING_TRANSMISSIONS);
+        } else {
+            db.execSQL("CREATE INDEX IF NOT EXISTS transmission_queue_idx ON "
+                    + Tables.TRANSMISSION + "(" + TransmissionColumns.STATUS + ")");
+        }
     }
 
     public void dropAllTables(SQLiteDatabase db) {
+        RecordSearchIndex.drop(db);
         db.execSQL("DROP TABLE IF EXISTS " + Tables.RESPONSE);
         db.execSQL("DROP TABLE IF EXISTS " + Tables.SYNC_TIME);
         db.execSQL("DROP TABLE IF EXISTS " + Tables.SURVEY);
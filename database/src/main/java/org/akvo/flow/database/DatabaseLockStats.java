@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.database;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import timber.log.Timber;
+
+/**
+ * Keeps track of the time spent waiting for the survey database. Writers are measured until
+ * their transaction gets the database lock, readers until their cursor is filled with the first
+ * rows, so the latter includes the query execution too.
+ * Only explicit transactions, started from SurveyDbAdapter or BriteSurveyDbAdapter, count as
+ * writers. Single statements run outside a transaction are not measured.
+ */
+public class DatabaseLockStats {
+
+    public static final DatabaseLockStats READERS = new DatabaseLockStats("readers");
+    public static final DatabaseLockStats WRITERS = new DatabaseLockStats("writers");
+
+    /**
+     * Waits longer than this are logged right away
+     */
+    private static final long SLOW_WAIT_MS = 200;
+
+    private final String name;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    private DatabaseLockStats(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param startNanos the System.nanoTime() value read before the blocking call
+     */
+    public void record(long startNanos) {
+        long waited = System.nanoTime() - startNanos;
+        count.incrementAndGet();
+        totalNanos.addAndGet(waited);
+        long max = maxNanos.get();
+        while (waited > max && !maxNanos.compareAndSet(max, waited)) {
+            max = maxNanos.get();
+        }
+        long waitedMs = TimeUnit.NANOSECONDS.toMillis(waited);
+        if (waitedMs > SLOW_WAIT_MS) {
+            Timber.w("Database %s waited %d ms", name, waitedMs);
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalNanos.get());
+    }
+
+    public long getMaxMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+    }
+
+    public void reset() {
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s: %d waits, %d ms total, %d ms max", name,
+                getCount(), getTotalMillis(), getMaxMillis());
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.database;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * Fixed grid of CELL_SIZE degrees used as a spatial index for the records. Cells are numbered
+ * row by row from the south west corner, so the cells of an area are a few ranges of the
+ * indexed grid_cell column, one range per row.
+ */
+public class GeoGrid {
+
+    /**
+     * About 11 km at the equator
+     */
+    static final double CELL_SIZE = 0.1;
+
+    private static final int ROWS = 1800;
+    private static final int COLUMNS = 3600;
+
+    /**
+     * Each row of an area is a separate index lookup. Larger areas are better served by a
+     * plain scan of the survey group.
+     */
+    private static final int MAX_AREA_ROWS = 64;
+
+    @Nullable
+    public static Long getCell(@Nullable Double latitude, @Nullable Double longitude) {
+        if (latitude == null || longitude == null || Math.abs(latitude) > 90
+                || Math.abs(longitude) > 180) {
+            return null;
+        }
+        return (long) getRow(latitude) * COLUMNS + getColumn(longitude);
+    }
+
+    private static int getRow(double latitude) {
+        return Math.min(ROWS - 1, (int) ((latitude + 90) / CELL_SIZE));
+    }
+
+    private static int getColumn(double longitude) {
+        return Math.min(COLUMNS - 1, (int) ((longitude + 180) / CELL_SIZE));
+    }
+
+    /**
+     * Same computation as {@link #getCell(Double, Double)}, for the given columns. Used to fill
+     * the grid of the existing records.
+     */
+    static String getCellSql(String latitudeColumn, String longitudeColumn) {
+        return "CASE WHEN " + latitudeColumn + " BETWEEN -90 AND 90 AND " + longitudeColumn
+                + " BETWEEN -180 AND 180 THEN MIN(" + (ROWS - 1) + ", CAST((" + latitudeColumn
+                + " + 90) / " + CELL_SIZE + " AS INTEGER)) * " + COLUMNS + " + MIN("
+                + (COLUMNS - 1) + ", CAST((" + longitudeColumn + " + 180) / " + CELL_SIZE
+                + " AS INTEGER)) END";
+    }
+
+    /**
+     * @return the cells overlapping the given bounds, or null if the area is too large or
+     * crosses the antimeridian
+     */
+    @Nullable
+    public static Area getArea(double south, double west, double north, double east) {
+        if (west > east) {
+            return null;
+        }
+        south = Math.max(-90, south);
+        north = Math.min(90, north);
+        west = Math.max(-180, west);
+        east = Math.min(180, east);
+        return getArea(getRow(south), getColumn(west), getRow(north), getColumn(east));
+    }
+
+    /**
+     * @return the square of cells reaching radius cells around the given point, or null if it
+     * is too large or does not fit in the grid
+     */
+    @Nullable
+    public static Area getSquare(double latitude, double longitude, int radius) {
+        int row = getRow(latitude);
+        int column = getColumn(longitude);
+        if (row - radius < 0 || row + radius >= ROWS || column - radius < 0
+                || column + radius >= COLUMNS) {
+            return null;
+        }
+        return getArea(row - radius, column - radius, row + radius, column + radius);
+    }
+
+    @Nullable
+    private static Area getArea(int firstRow, int firstColumn, int lastRow, int lastColumn) {
+        if (lastRow - firstRow >= MAX_AREA_ROWS) {
+            return null;
+        }
+        return new Area(firstRow, firstColumn, lastRow, lastColumn);
+    }
+
+    /**
+     * Any point closer than the returned distance to the given point is inside the square of
+     * that radius. Distances are in degrees, with the longitude scaled by the cosine of the
+     * latitude, as in the distance sort order.
+     */
+    public static double getCoveredDistance(double latitude, int radius) {
+        return radius * CELL_SIZE * Math.cos(Math.toRadians(latitude));
+    }
+
+    /**
+     * @return the smallest radius covering the given distance around the given point
+     */
+    public static int getRadius(double latitude, double distance) {
+        double cellDistance = getCoveredDistance(latitude, 1);
+        if (cellDistance <= 0) {
+            return ROWS;
+        }
+        return (int) Math.min(ROWS, Math.ceil(distance / cellDistance));
+    }
+
+    /**
+     * Rectangle of cells
+     */
+    public static class Area {
+
+        private final int firstRow;
+        private final int firstColumn;
+        private final int lastRow;
+        private final int lastColumn;
+
+        Area(int firstRow, int firstColumn, int lastRow, int lastColumn) {
+            this.firstRow = firstRow;
+            this.firstColumn = firstColumn;
+            this.lastRow = lastRow;
+            this.lastColumn = lastColumn;
+        }
+
+        /**
+         * Condition selecting the records of a survey group inside the area. Each row is a
+         * separate term so SQLite can look them up in the survey group and grid index.
+         *
+         * @param table alias of the record table
+         */
+        @NonNull
+        public String getCondition(@NonNull String table) {
+            StringBuilder condition = new StringBuilder("(");
+            for (int row = firstRow; row <= lastRow; row++) {
+                if (row > firstRow) {
+                    condition.append(" OR ");
+                }
+                condition.append("(").append(table).append(".")
+                        .append(RecordColumns.SURVEY_GROUP_ID).append(" = ? AND ")
+                        .append(table).append(".").append(RecordColumns.GRID_CELL)
+                        .append(" BETWEEN ? AND ?)");
+            }
+            return condition.append(")").toString();
+        }
+
+        /**
+         * Append the arguments of {@link #getCondition(String)}
+         */
+        public void addArgs(long surveyGroupId, @NonNull List<String> args) {
+            String surveyGroup = String.valueOf(surveyGroupId);
+            for (int row = firstRow; row <= lastRow; row++) {
+                args.add(surveyGroup);
+                args.add(String.valueOf((long) row * COLUMNS + firstColumn));
+                args.add(String.valueOf((long) row * COLUMNS + lastColumn));
+            }
+        }
+    }
+}
@@ -28,4 +28,5 @@ public class RecordColumns {
     public static final String LATITUDE = "latitude";
     public static final String LONGITUDE = "longitude";
     public static final String LAST_MODIFIED = "last_modified";
+    public static final String GRID_CELL = "grid_cell";// GeoGrid cell of the location
 }
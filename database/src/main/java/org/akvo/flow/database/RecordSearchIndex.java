@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Full text index of the data points, used by the data point search. Each entry holds the
+ * record id, the record name and the answers of its free text questions, and shares its docid
+ * with the _id of the record.
+ * FTS3 is used as it is available on every supported Android version. Deleted records are
+ * removed by a trigger, but records replaced with ON CONFLICT REPLACE keep their old entry, so
+ * any code inserting or replacing records must call {@link #delete(String)} before writing them
+ * and {@link #index(String)} afterwards.
+ */
+public class RecordSearchIndex {
+
+    public static final String TABLE = "record_search";
+
+    /**
+     * Answers indexed along with the name. Other response types hold JSON, file paths or
+     * coordinates, which are not worth searching.
+     */
+    private static final String SEARCHABLE_RESPONSE_TYPE = "VALUE";
+
+    private static final String INDEX_RECORDS_SQL = "INSERT INTO " + TABLE
+            + " (docid, " + Columns.RECORD_ID + ", " + Columns.NAME + ", " + Columns.ANSWERS + ")"
+            + " SELECT sl." + RecordColumns._ID + ", sl." + RecordColumns.RECORD_ID + ", sl."
+            + RecordColumns.NAME + ", (SELECT group_concat(r." + ResponseColumns.ANSWER + ", ' ')"
+            + " FROM " + Tables.SURVEY_INSTANCE + " AS si JOIN " + Tables.RESPONSE + " AS r"
+            + " ON r." + ResponseColumns.SURVEY_INSTANCE_ID + " = si." + SurveyInstanceColumns._ID
+            + " WHERE si." + SurveyInstanceColumns.RECORD_ID + " = sl." + RecordColumns.RECORD_ID
+            + " AND r." + ResponseColumns.TYPE + " = '" + SEARCHABLE_RESPONSE_TYPE + "')"
+            + " FROM " + Tables.RECORD + " AS sl";
+
+    private final SQLiteStatement deleteEntry;
+    private final SQLiteStatement insertEntry;
+
+    public RecordSearchIndex(@NonNull SQLiteDatabase database) {
+        deleteEntry = database.compileStatement("DELETE FROM " + TABLE + " WHERE docid ="
+                + " (SELECT " + RecordColumns._ID + " FROM " + Tables.RECORD
+                + " WHERE " + RecordColumns.RECORD_ID + " = ?)");
+        insertEntry = database.compileStatement(INDEX_RECORDS_SQL
+                + " WHERE sl." + RecordColumns.RECORD_ID + " = ?");
+    }
+
+    /**
+     * Remove the entry of the given record, if any
+     */
+    public void delete(@NonNull String recordId) {
+        deleteEntry.bindString(1, recordId);
+        deleteEntry.execute();
+    }
+
+    /**
+     * Index the current name and answers of the given record. Any previous entry must have
+     * been deleted already.
+     */
+    public void index(@NonNull String recordId) {
+        insertEntry.bindString(1, recordId);
+        insertEntry.execute();
+    }
+
+    /**
+     * Replace the entry of a record which was updated in place
+     */
+    public void update(@NonNull String recordId) {
+        delete(recordId);
+        index(recordId);
+    }
+
+    public void close() {
+        deleteEntry.close();
+        insertEntry.close();
+    }
+
+    static void create(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE + " USING fts3("
+                + Columns.RECORD_ID + ", " + Columns.NAME + ", " + Columns.ANSWERS + ")");
+        db.execSQL("CREATE TRIGGER " + TABLE + "_delete AFTER DELETE ON " + Tables.RECORD
+                + " BEGIN DELETE FROM " + TABLE + " WHERE docid = old." + RecordColumns._ID
+                + "; END");
+    }
+
+    /**
+     * Index all the existing records at once
+     */
+    static void rebuild(SQLiteDatabase db) {
+        db.execSQL("DELETE FROM " + TABLE);
+        db.execSQL(INDEX_RECORDS_SQL);
+    }
+
+    static void drop(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER IF EXISTS " + TABLE + "_delete");
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE);
+    }
+
+    /**
+     * Turn the text typed by the user into a MATCH expression: every word must match the
+     * beginning of a word of the id, the name or the answers. FTS operators and punctuation
+     * typed by the user are ignored.
+     *
+     * @return the expression, or null if the text contains no words
+     */
+    @Nullable
+    public static String getMatchQuery(@Nullable String text) {
+        List<String> words = getWords(text);
+        if (words.isEmpty()) {
+            return null;
+        }
+        StringBuilder query = new StringBuilder();
+        for (String word : words) {
+            if (query.length() > 0) {
+                query.append(' ');
+            }
+            query.append(word).append('*');
+        }
+        return query.toString();
+    }
+
+    /**
+     * @return the first word of the text, used to rank the results, or null if there is none
+     */
+    @Nullable
+    public static String getFirstWord(@Nullable String text) {
+        List<String> words = getWords(text);
+        return words.isEmpty() ? null : words.get(0);
+    }
+
+    /**
+     * Split the text in lower case words, made of letters and digits
+     */
+    @NonNull
+    static List<String> getWords(@Nullable String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                // The FTS3 tokenizer only folds ASCII, and upper case words may be operators
+                word.append(Character.toLowerCase(c));
+            } else if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (word.length() > 0) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    public interface Columns {
+        String RECORD_ID = "record_id";
+        String NAME = "name";
+        String ANSWERS = "answers";
+    }
+}
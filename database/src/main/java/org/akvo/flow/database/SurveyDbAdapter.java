@@ -46,7 +46,7 @@ public class SurveyDbAdapter {
     private static final String SURVEY_INSTANCE_JOIN_RESPONSE_USER = "survey_instance "
             + "LEFT OUTER JOIN response ON survey_instance._id=response.survey_instance_id "
             + "LEFT OUTER JOIN user ON survey_instance.user_id=user._id";
-    private static final String SURVEY_INSTANCE_JOIN_SURVEY = "survey_instance "
+    static final String SURVEY_INSTANCE_JOIN_SURVEY = "survey_instance "
             + "JOIN survey ON survey_instance.survey_id = survey.survey_id "
             + "JOIN survey_group ON survey.survey_group_id=survey_group.survey_group_id";
     private static final String SURVEY_INSTANCE_JOIN_SURVEY_AND_RESPONSE = "survey_instance "
@@ -284,6 +284,23 @@ public class SurveyDbAdapter {
         return insertedResponseId;
     }
 
+    /**
+     * Begins an exclusive transaction, recording how long it waited for the lock
+     */
+    public void beginTransaction() {
+        long start = System.nanoTime();
+        database.beginTransaction();
+        DatabaseLockStats.WRITERS.record(start);
+    }
+
+    public void setTransactionSuccessful() {
+        database.setTransactionSuccessful();
+    }
+
+    public void endTransaction() {
+        database.endTransaction();
+    }
+
     /**
      * Inserts new response
      * @param initialValues
@@ -438,16 +455,25 @@ public class SurveyDbAdapter {
     }
 
     public void createTransmission(long surveyInstanceId, String formID, String filename) {
-        createTransmission(surveyInstanceId, formID, filename, TransmissionStatus.QUEUED);
+        createTransmission(surveyInstanceId, formID, filename, null);
+    }
+
+    /**
+     * @param md5 hex encoded checksum of the file, if it was computed while writing it
+     */
+    public void createTransmission(long surveyInstanceId, String formID, String filename,
+            String md5) {
+        createTransmission(surveyInstanceId, formID, filename, TransmissionStatus.QUEUED, md5);
     }
 
     private void createTransmission(long surveyInstanceId, String formID, String filename,
-            int status) {
+            int status, String md5) {
         ContentValues values = new ContentValues();
         values.put(TransmissionColumns.SURVEY_INSTANCE_ID, surveyInstanceId);
         values.put(TransmissionColumns.SURVEY_ID, formID);
         values.put(TransmissionColumns.FILENAME, filename);
         values.put(TransmissionColumns.STATUS, status);
+        values.put(TransmissionColumns.MD5, md5);
         if (TransmissionStatus.SYNCED == status) {
             final String date = String.valueOf(System.currentTimeMillis());
             values.put(TransmissionColumns.START_DATE, date);
@@ -478,23 +504,38 @@ public class SurveyDbAdapter {
                         TransmissionColumns._ID, TransmissionColumns.SURVEY_INSTANCE_ID,
                         TransmissionColumns.SURVEY_ID, TransmissionColumns.STATUS,
                         TransmissionColumns.FILENAME, TransmissionColumns.START_DATE,
-                        TransmissionColumns.END_DATE
+                        TransmissionColumns.END_DATE, TransmissionColumns.MD5
                 },
                 TransmissionColumns.SURVEY_INSTANCE_ID + " = ?",
                 new String[] { String.valueOf(surveyInstanceId) },
                 null, null, null);
     }
 
-    public Cursor getUnSyncedTransmissions(String[] selectionArgs) {
+    public Cursor getMultipartUpload(String fileName) {
+        return database.query(Tables.TRANSMISSION,
+                new String[] {
+                        TransmissionColumns.UPLOAD_ID, TransmissionColumns.UPLOAD_PARTS,
+                        TransmissionColumns.UPLOAD_FILE
+                },
+                TransmissionColumns.FILENAME + " = ?",
+                new String[] { fileName },
+                null, null, null);
+    }
+
+    /**
+     * Transmissions waiting to be uploaded. FAILED and stalled IN_PROGRESS files are retried too,
+     * after the QUEUED ones.
+     */
+    public Cursor getUnSyncedTransmissions() {
         return database.query(Tables.TRANSMISSION,
                 new String[] {
                         TransmissionColumns._ID, TransmissionColumns.SURVEY_INSTANCE_ID,
                         TransmissionColumns.SURVEY_ID, TransmissionColumns.STATUS,
                         TransmissionColumns.FILENAME, TransmissionColumns.START_DATE,
-                        TransmissionColumns.END_DATE
+                        TransmissionColumns.END_DATE, TransmissionColumns.MD5
                 },
-                TransmissionColumns.STATUS + " IN (?, ?, ?)",
-                selectionArgs, null, null, null);
+                DatabaseHelper.PENDING_TRANSMISSIONS,
+                null, null, null, DatabaseHelper.PENDING_TRANSMISSIONS_ORDER);
     }
 
     /**
@@ -594,10 +635,24 @@ public class SurveyDbAdapter {
         values.put(RecordColumns.RECORD_ID, recordUid);
         values.put(RecordColumns.SURVEY_GROUP_ID, surveyGroupId);
         database.insert(Tables.RECORD, null, values);
+        updateSearchIndex(recordUid);
 
         return recordUid;
     }
 
+    /**
+     * Index the current name and answers of the record, so it can be found by the data point
+     * search. To be called once the record responses are saved.
+     */
+    public void updateSearchIndex(String recordId) {
+        RecordSearchIndex searchIndex = new RecordSearchIndex(database);
+        try {
+            searchIndex.update(recordId);
+        } finally {
+            searchIndex.close();
+        }
+    }
+
     public Cursor getSurveyedLocale(String surveyedLocaleId) {
         return database.query(Tables.RECORD, RecordQuery.PROJECTION,
                 RecordColumns.RECORD_ID + " = ?",
@@ -781,6 +836,7 @@ public class SurveyDbAdapter {
         database.update(Tables.RECORD, surveyedLocaleValues,
                 RecordColumns.RECORD_ID + " = ?",
                 new String[] { surveyedLocaleId });
+        updateSearchIndex(surveyedLocaleId);
     }
 
     /**
@@ -28,4 +28,8 @@ public class TransmissionColumns {
     public static final String STATUS = "status";// separate table/constants?
     public static final String START_DATE = "start_date";// do we really need this column?
     public static final String END_DATE = "end_date";
+    public static final String UPLOAD_ID = "upload_id";// S3 multipart upload id, if any
+    public static final String UPLOAD_PARTS = "upload_parts";// ETags of the confirmed parts
+    public static final String UPLOAD_FILE = "upload_file";// Size and mtime of the uploaded file
+    public static final String MD5 = "md5";// Cached file checksum, computed when written
 }
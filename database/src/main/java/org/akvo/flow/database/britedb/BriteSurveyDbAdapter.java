@@ -22,18 +22,18 @@ package org.akvo.flow.database.britedb;
 
 import android.content.ContentValues;
 import android.database.Cursor;
-import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 
 import com.squareup.sqlbrite2.BriteDatabase;
 import com.squareup.sqlbrite2.SqlBrite;
 
+import org.akvo.flow.database.DatabaseLockStats;
+import org.akvo.flow.database.GeoGrid;
 import org.akvo.flow.database.RecordColumns;
-import org.akvo.flow.database.ResponseColumns;
+import org.akvo.flow.database.RecordSearchIndex;
 import org.akvo.flow.database.SurveyInstanceColumns;
 import org.akvo.flow.database.SyncTimeColumns;
 import org.akvo.flow.database.Tables;
-import org.akvo.flow.database.TransmissionColumns;
-import org.akvo.flow.database.TransmissionStatus;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -48,7 +48,32 @@ import static org.akvo.flow.database.Constants.ORDER_BY_STATUS;
 
 public class BriteSurveyDbAdapter {
 
-    private static final int DOES_NOT_EXIST = -1;
+    @VisibleForTesting
+    public static final String DATA_POINTS_QUERY =
+            "SELECT * FROM " + Tables.RECORD + " WHERE " + RecordColumns.SURVEY_GROUP_ID + " = ?";
+
+    private static final int MAX_SEARCH_RESULTS = 500;
+
+    /**
+     * Data points matching a full text search, the ones whose id or name starts with the first
+     * word first. Arguments are the MATCH expression, the survey group id, twice the LIKE
+     * pattern for the start of the id or name, and the pattern for any other word of the name.
+     */
+    @VisibleForTesting
+    public static final String SEARCH_DATA_POINTS_QUERY = "SELECT sl.*,"
+            + " MIN(r." + SurveyInstanceColumns.STATUS + ") AS " + SurveyInstanceColumns.STATUS
+            + " FROM " + RecordSearchIndex.TABLE + " JOIN " + Tables.RECORD + " AS sl"
+            + " ON sl." + RecordColumns._ID + " = " + RecordSearchIndex.TABLE + ".docid"
+            + " LEFT JOIN " + Tables.SURVEY_INSTANCE + " AS r"
+            + " ON sl." + RecordColumns.RECORD_ID + " = r." + SurveyInstanceColumns.RECORD_ID
+            + " WHERE " + RecordSearchIndex.TABLE + " MATCH ?"
+            + " AND sl." + RecordColumns.SURVEY_GROUP_ID + " = ?"
+            + " GROUP BY sl." + RecordColumns.RECORD_ID
+            + " ORDER BY CASE WHEN sl." + RecordColumns.RECORD_ID + " LIKE ?"
+            + " OR sl." + RecordColumns.NAME + " LIKE ? THEN 0"
+            + " WHEN sl." + RecordColumns.NAME + " LIKE ? THEN 1 ELSE 2 END,"
+            + " sl." + RecordColumns.NAME + " COLLATE NOCASE"
+            + " LIMIT " + MAX_SEARCH_RESULTS;
 
     private final BriteDatabase briteDatabase;
 
@@ -61,6 +86,29 @@ public class BriteSurveyDbAdapter {
      */
     public Observable<Cursor> getFilteredDataPoints(long surveyGroupId, Double latitude,
             Double longitude, int orderBy) {
+        String[] whereValues = new String[] { String.valueOf(surveyGroupId) };
+        List<String> tables = new ArrayList<>(2);
+        tables.add(Tables.RECORD);
+        tables.add(Tables.SURVEY_INSTANCE);
+        return briteDatabase
+                .createQuery(tables, getFilteredDataPointsQuery(latitude, longitude, orderBy),
+                        whereValues)
+                .concatMap(
+                        new Function<SqlBrite.Query, Observable<Cursor>>() {
+                            @Override
+                            public Observable<Cursor> apply(SqlBrite.Query query) {
+                                return Observable.just(runQuery(query));
+                            }
+                        });
+    }
+
+    /**
+     * Data points of a survey group, with the lowest status of their form instances. The only
+     * argument is the survey group id.
+     */
+    @VisibleForTesting
+    public static String getFilteredDataPointsQuery(Double latitude, Double longitude,
+            int orderBy) {
         String queryString = "SELECT sl.*,"
                 + " MIN(r." + SurveyInstanceColumns.STATUS + ") as " + SurveyInstanceColumns.STATUS
                 + " FROM "
@@ -89,25 +137,13 @@ public class BriteSurveyDbAdapter {
                 break;
         }
 
-        String[] whereValues = new String[] { String.valueOf(surveyGroupId) };
-        List<String> tables = new ArrayList<>(2);
-        tables.add(Tables.RECORD);
-        tables.add(Tables.SURVEY_INSTANCE);
-        return briteDatabase
-                .createQuery(tables, queryString + whereClause + groupBy + orderByStr, whereValues)
-                .concatMap(
-                        new Function<SqlBrite.Query, Observable<Cursor>>() {
-                            @Override
-                            public Observable<Cursor> apply(SqlBrite.Query query) {
-                                return Observable.just(query.run());
-                            }
-                        });
+        return queryString + whereClause + groupBy + orderByStr;
     }
 
     /**
      * Uses a simple planar approximation of distance
      */
-    private String getOrderByDistanceString(Double latitude, Double longitude) {
+    private static String getOrderByDistanceString(Double latitude, Double longitude) {
         Double fudge = correctDistanceForShortening(latitude);
 
         String orderBy = " ORDER BY CASE WHEN " + RecordColumns.LATITUDE
@@ -125,24 +161,193 @@ public class BriteSurveyDbAdapter {
      * @param latitude
      * @return
      */
-    private double correctDistanceForShortening(Double latitude) {
+    private static double correctDistanceForShortening(Double latitude) {
         return Math.pow(Math.cos(Math.toRadians(latitude)), 2);
     }
 
     public Observable<Cursor> getDataPoints(long surveyGroupId) {
-        String sqlQuery =
-                "SELECT * FROM " + Tables.RECORD + " WHERE " + RecordColumns.SURVEY_GROUP_ID
-                        + " = ?";
-        return briteDatabase.createQuery(Tables.RECORD, sqlQuery,
+        return briteDatabase.createQuery(Tables.RECORD, DATA_POINTS_QUERY,
                 String.valueOf(surveyGroupId)).concatMap(
                 new Function<SqlBrite.Query, Observable<? extends Cursor>>() {
                     @Override
                     public Observable<? extends Cursor> apply(SqlBrite.Query query) {
-                        return Observable.just(query.run());
+                        return Observable.just(runQuery(query));
+                    }
+                });
+    }
+
+    /**
+     * Search the data points of a survey group by id, name or answers. Every word of the text
+     * must match the beginning of a word in any of them.
+     */
+    public Observable<Cursor> searchDataPoints(long surveyGroupId, String text) {
+        String matchQuery = RecordSearchIndex.getMatchQuery(text);
+        if (matchQuery == null) {
+            return getDataPoints(surveyGroupId);
+        }
+        String firstWord = RecordSearchIndex.getFirstWord(text);
+        List<String> tables = new ArrayList<>(2);
+        tables.add(Tables.RECORD);
+        tables.add(Tables.SURVEY_INSTANCE);
+        return briteDatabase.createQuery(tables, SEARCH_DATA_POINTS_QUERY, matchQuery,
+                String.valueOf(surveyGroupId), firstWord + "%", firstWord + "%",
+                "% " + firstWord + "%")
+                .concatMap(new Function<SqlBrite.Query, Observable<Cursor>>() {
+                    @Override
+                    public Observable<Cursor> apply(SqlBrite.Query query) {
+                        return Observable.just(runQuery(query));
                     }
                 });
     }
 
+    /**
+     * Load a single page of data points. This is a one-shot query: use
+     * {@link #getDataPointsCount(long)} to be notified of the changes.
+     * Pages sorted by distance are first looked up in the grid cells around the location,
+     * widening the area until it is known to hold the whole page.
+     */
+    public Cursor getDataPointsPage(DataPointPageQuery pageQuery) {
+        if (!pageQuery.isNearest()) {
+            return queryDataPointsPage(pageQuery);
+        }
+        double latitude = pageQuery.getLatitude();
+        String afterKey = pageQuery.getAfterKey();
+        int radius = 1;
+        if (afterKey != null) {
+            double afterDistance = DataPointPageQuery.getDistance(Long.parseLong(afterKey));
+            radius = Math.max(1, GeoGrid.getRadius(latitude, afterDistance));
+        }
+        while (true) {
+            GeoGrid.Area area = GeoGrid.getSquare(latitude, pageQuery.getLongitude(), radius);
+            Cursor cursor = queryDataPointsPage(pageQuery.inArea(area));
+            if (area == null || isPageInside(pageQuery, cursor,
+                    DataPointPageQuery.getDistanceKey(
+                            GeoGrid.getCoveredDistance(latitude, radius)))) {
+                return cursor;
+            }
+            if (cursor != null) {
+                cursor.close();
+            }
+            radius *= 2;
+        }
+    }
+
+    /**
+     * @return true if no point further than coveredKey belongs to the page, so no point
+     * outside the area could have been part of it
+     */
+    private boolean isPageInside(DataPointPageQuery pageQuery, Cursor cursor, long coveredKey) {
+        String untilKey = pageQuery.getUntilKey();
+        if (untilKey != null) {
+            return Long.parseLong(untilKey) < coveredKey;
+        }
+        if (cursor == null || cursor.getCount() < pageQuery.getLimit()
+                || !cursor.moveToLast()) {
+            return false;
+        }
+        int keyColumn = cursor.getColumnIndexOrThrow(DataPointPageQuery.PAGE_KEY);
+        return cursor.getLong(keyColumn) < coveredKey;
+    }
+
+    private Cursor queryDataPointsPage(DataPointPageQuery pageQuery) {
+        long start = System.nanoTime();
+        Cursor cursor = briteDatabase.query(pageQuery.getSql(), pageQuery.getArgs());
+        if (cursor != null) {
+            cursor.getCount();
+        }
+        DatabaseLockStats.READERS.record(start);
+        return cursor;
+    }
+
+    /**
+     * Data points of a survey group located inside the given bounds. West may be greater than
+     * east if the bounds cross the antimeridian.
+     */
+    public Observable<Cursor> getDataPointsInArea(long surveyGroupId, double south, double west,
+            double north, double east) {
+        List<String> args = new ArrayList<>();
+        String sql = getDataPointsInAreaQuery(surveyGroupId, south, west, north, east, args);
+        List<String> tables = new ArrayList<>(2);
+        tables.add(Tables.RECORD);
+        tables.add(Tables.SURVEY_INSTANCE);
+        return briteDatabase.createQuery(tables, sql, args.toArray(new String[args.size()]))
+                .concatMap(new Function<SqlBrite.Query, Observable<Cursor>>() {
+                    @Override
+                    public Observable<Cursor> apply(SqlBrite.Query query) {
+                        return Observable.just(runQuery(query));
+                    }
+                });
+    }
+
+    /**
+     * Same columns as the filtered data points query. Arguments are added to the given list.
+     */
+    @VisibleForTesting
+    public static String getDataPointsInAreaQuery(long surveyGroupId, double south, double west,
+            double north, double east, List<String> args) {
+        GeoGrid.Area area = GeoGrid.getArea(south, west, north, east);
+        String where;
+        if (area != null) {
+            where = area.getCondition("sl");
+            area.addArgs(surveyGroupId, args);
+        } else {
+            where = "sl." + RecordColumns.SURVEY_GROUP_ID + " = ?";
+            args.add(String.valueOf(surveyGroupId));
+        }
+        where += " AND sl." + RecordColumns.LATITUDE + " BETWEEN ? AND ?";
+        args.add(String.valueOf(south));
+        args.add(String.valueOf(north));
+        if (west <= east) {
+            where += " AND sl." + RecordColumns.LONGITUDE + " BETWEEN ? AND ?";
+        } else {
+            where += " AND (sl." + RecordColumns.LONGITUDE + " >= ? OR sl."
+                    + RecordColumns.LONGITUDE + " <= ?)";
+        }
+        args.add(String.valueOf(west));
+        args.add(String.valueOf(east));
+        return "SELECT sl.*,"
+                + " MIN(r." + SurveyInstanceColumns.STATUS + ") AS " + SurveyInstanceColumns.STATUS
+                + " FROM " + Tables.RECORD + " AS sl LEFT JOIN " + Tables.SURVEY_INSTANCE
+                + " AS r ON sl." + RecordColumns.RECORD_ID + " = r."
+                + SurveyInstanceColumns.RECORD_ID
+                + " WHERE " + where
+                + " GROUP BY sl." + RecordColumns.RECORD_ID;
+    }
+
+    /**
+     * Number of data points of a survey group, queried again every time the data points or
+     * their form instances change
+     */
+    public Observable<Cursor> getDataPointsCount(long surveyGroupId) {
+        List<String> tables = new ArrayList<>(2);
+        tables.add(Tables.RECORD);
+        tables.add(Tables.SURVEY_INSTANCE);
+        return briteDatabase.createQuery(tables,
+                "SELECT COUNT(*) FROM " + Tables.RECORD + " WHERE "
+                        + RecordColumns.SURVEY_GROUP_ID + " = ?",
+                String.valueOf(surveyGroupId)).concatMap(
+                new Function<SqlBrite.Query, Observable<Cursor>>() {
+                    @Override
+                    public Observable<Cursor> apply(SqlBrite.Query query) {
+                        return Observable.just(runQuery(query));
+                    }
+                });
+    }
+
+    /**
+     * Run the query and fill the first cursor window, so the time spent waiting for the
+     * database is accounted here and not when the UI first reads the cursor
+     */
+    private Cursor runQuery(SqlBrite.Query query) {
+        long start = System.nanoTime();
+        Cursor cursor = query.run();
+        if (cursor != null) {
+            cursor.getCount();
+        }
+        DatabaseLockStats.READERS.record(start);
+        return cursor;
+    }
+
     /**
      * Update the last modification date, if necessary
      */
@@ -159,12 +364,6 @@ public class BriteSurveyDbAdapter {
                 datapointId);
     }
 
-    public void updateRecord(String id, ContentValues values, long lastModified) {
-        briteDatabase.insert(Tables.RECORD, values);
-        // Update the record last modification date, if necessary
-        updateRecordModifiedDate(id, lastModified);
-    }
-
     /**
      * Get the synchronization time for a particular survey group.
      *
@@ -183,110 +382,22 @@ public class BriteSurveyDbAdapter {
         briteDatabase.insert(Tables.SYNC_TIME, values);
     }
 
-    public long syncSurveyInstance(ContentValues values, String surveyInstanceUuid) {
-        String sql =
-                "SELECT " + SurveyInstanceColumns._ID + "," + SurveyInstanceColumns.UUID + " FROM "
-                        + Tables.SURVEY_INSTANCE + " WHERE " + SurveyInstanceColumns.UUID + " = ?";
-        Cursor cursor = briteDatabase.query(sql, surveyInstanceUuid);
-
-        long id = DOES_NOT_EXIST;
-        if (cursor != null) {
-            if (cursor.moveToFirst()) {
-                id = cursor.getLong(0);
-            }
-            cursor.close();
-        }
-        if (id != DOES_NOT_EXIST) {
-            briteDatabase.update(Tables.SURVEY_INSTANCE, values, SurveyInstanceColumns.UUID
-                    + " = ?", surveyInstanceUuid);
-        } else {
-            values.put(SurveyInstanceColumns.UUID, surveyInstanceUuid);
-            id = briteDatabase.insert(Tables.SURVEY_INSTANCE, values);
-        }
-        return id;
-    }
-
+    /**
+     * Writes are serialized by SQLite on the single primary connection. The time spent waiting
+     * for it is recorded in {@link DatabaseLockStats#WRITERS}.
+     */
     public BriteDatabase.Transaction beginTransaction() {
-        return briteDatabase.newTransaction();
-    }
-
-    public void syncResponse(long surveyInstanceId, ContentValues values, String questionId) {
-        Cursor cursor = getLastExistingResponse(surveyInstanceId, questionId);
-        boolean anotherIterationExists = cursor != null && cursor.moveToFirst();
-        if (anotherIterationExists) {
-            int iteration = cursor.getInt(cursor.getColumnIndexOrThrow(ResponseColumns.ITERATION));
-            boolean isFirstIterationFound = iteration == -1;
-            if (isFirstIterationFound) {
-                updateIterationOfFirstResponse(surveyInstanceId, questionId);
-                iteration = 0;
-            }
-            values.put(ResponseColumns.ITERATION, iteration + 1);
-            briteDatabase.insert(Tables.RESPONSE, values);
-        } else {
-            briteDatabase.insert(Tables.RESPONSE, values);
-        }
-        if (cursor != null) {
-            cursor.close();
-        }
-    }
-
-    private void updateIterationOfFirstResponse(long surveyInstanceId, String questionId) {
-        ContentValues contentValues = new ContentValues();
-        contentValues.put(ResponseColumns.ITERATION, 0);
-        briteDatabase.update(Tables.RESPONSE, contentValues,
-                ResponseColumns.SURVEY_INSTANCE_ID + " = ? AND "
-                        + ResponseColumns.QUESTION_ID + " = ?",
-                String.valueOf(surveyInstanceId), questionId);
-    }
-
-    public void deleteResponses(long surveyInstanceId, String questionId) {
-        briteDatabase.delete(Tables.RESPONSE,
-                ResponseColumns.SURVEY_INSTANCE_ID + " = ? AND " + ResponseColumns.QUESTION_ID
-                        + " = ?", new String[] { surveyInstanceId + "", questionId });
-    }
-
-    private Cursor getLastExistingResponse(long surveyInstanceId, @Nullable String questionId) {
-        if (questionId == null) {
-            return null;
-        }
-        String sql =
-                "SELECT " + ResponseColumns.SURVEY_INSTANCE_ID
-                        + ","
-                        + ResponseColumns.QUESTION_ID
-                        + ","
-                        + ResponseColumns.ITERATION
-                        + " FROM " + Tables.RESPONSE + " WHERE "
-                        + ResponseColumns.SURVEY_INSTANCE_ID + " = ? AND "
-                        + ResponseColumns.QUESTION_ID + " = ? ORDER BY "
-                        + ResponseColumns.ITERATION
-                        + " DESC LIMIT 1";
-        Cursor cursor = briteDatabase
-                .query(sql, String.valueOf(surveyInstanceId), questionId);
-        return cursor;
-    }
-
-    public void createTransmission(long surveyInstanceId, String formID, String filename,
-            int status) {
-        ContentValues values = new ContentValues();
-        values.put(TransmissionColumns.SURVEY_INSTANCE_ID, surveyInstanceId);
-        values.put(TransmissionColumns.SURVEY_ID, formID);
-        values.put(TransmissionColumns.FILENAME, filename);
-        values.put(TransmissionColumns.STATUS, status);
-        if (TransmissionStatus.SYNCED == status) {
-            final String date = String.valueOf(System.currentTimeMillis());
-            values.put(TransmissionColumns.START_DATE, date);
-            values.put(TransmissionColumns.END_DATE, date);
-        }
-        briteDatabase.insert(Tables.TRANSMISSION, values);
+        long start = System.nanoTime();
+        BriteDatabase.Transaction transaction = briteDatabase.newTransaction();
+        DatabaseLockStats.WRITERS.record(start);
+        return transaction;
     }
 
     /**
-     * Delete any Record that contains no SurveyInstance
+     * Create a writer for the downloaded data points. It must only be used within a
+     * transaction, and closed before the transaction ends.
      */
-    public void deleteEmptyRecords() {
-        briteDatabase.execute("DELETE FROM " + Tables.RECORD
-                + " WHERE " + RecordColumns.RECORD_ID + " NOT IN "
-                + "(SELECT DISTINCT " + SurveyInstanceColumns.RECORD_ID
-                + " FROM " + Tables.SURVEY_INSTANCE + ")");
+    public DataPointBulkWriter newDataPointBulkWriter() {
+        return new DataPointBulkWriter(briteDatabase);
     }
 }
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.database.britedb;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.squareup.sqlbrite2.BriteDatabase;
+
+import org.akvo.flow.database.GeoGrid;
+import org.akvo.flow.database.RecordColumns;
+import org.akvo.flow.database.RecordSearchIndex;
+import org.akvo.flow.database.ResponseColumns;
+import org.akvo.flow.database.SurveyInstanceColumns;
+import org.akvo.flow.database.Tables;
+import org.akvo.flow.database.TransmissionColumns;
+import org.akvo.flow.database.TransmissionStatus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes downloaded data points with precompiled statements, reused for every row. It must be
+ * used within a transaction. The statements run directly against the database, so table
+ * observers are not notified for each row: {@link #deleteEmptyRecords()} triggers all the synced
+ * tables once, and BriteDatabase delivers that notification when the transaction is committed.
+ */
+public class DataPointBulkWriter {
+
+    /**
+     * SQLite allows up to 999 host parameters per statement
+     */
+    private static final int MAX_QUERY_ARGS = 500;
+
+    private static final Set<String> SYNC_TABLES = new HashSet<>(Arrays.asList(Tables.RECORD,
+            Tables.SURVEY_INSTANCE, Tables.RESPONSE, Tables.TRANSMISSION));
+
+    private final BriteDatabase briteDatabase;
+    private final SQLiteDatabase database;
+    private final List<SQLiteStatement> statements = new ArrayList<>();
+
+    private final SQLiteStatement insertRecord;
+    private final SQLiteStatement insertSurveyInstance;
+    private final SQLiteStatement updateSurveyInstance;
+    private final SQLiteStatement deleteResponses;
+    private final SQLiteStatement insertResponse;
+    private final SQLiteStatement insertIteratedResponse;
+    private final SQLiteStatement insertTransmission;
+    private final RecordSearchIndex searchIndex;
+
+    DataPointBulkWriter(BriteDatabase briteDatabase) {
+        this.briteDatabase = briteDatabase;
+        this.database = briteDatabase.getWritableDatabase();
+        insertRecord = compile("INSERT INTO " + Tables.RECORD + " ("
+                + RecordColumns.RECORD_ID + "," + RecordColumns.SURVEY_GROUP_ID + ","
+                + RecordColumns.NAME + "," + RecordColumns.LATITUDE + ","
+                + RecordColumns.LONGITUDE + "," + RecordColumns.LAST_MODIFIED + ","
+                + RecordColumns.GRID_CELL + ") VALUES (?,?,?,?,?,?,?)");
+        insertSurveyInstance = compile("INSERT INTO " + Tables.SURVEY_INSTANCE + " ("
+                + SurveyInstanceColumns.SURVEY_ID + "," + SurveyInstanceColumns.SUBMITTED_DATE + ","
+                + SurveyInstanceColumns.RECORD_ID + "," + SurveyInstanceColumns.STATUS + ","
+                + SurveyInstanceColumns.SYNC_DATE + "," + SurveyInstanceColumns.SUBMITTER + ","
+                + SurveyInstanceColumns.UUID + ") VALUES (?,?,?,?,?,?,?)");
+        updateSurveyInstance = compile("UPDATE " + Tables.SURVEY_INSTANCE + " SET "
+                + SurveyInstanceColumns.SURVEY_ID + " = ?,"
+                + SurveyInstanceColumns.SUBMITTED_DATE + " = ?,"
+                + SurveyInstanceColumns.RECORD_ID + " = ?,"
+                + SurveyInstanceColumns.STATUS + " = ?,"
+                + SurveyInstanceColumns.SYNC_DATE + " = ?,"
+                + SurveyInstanceColumns.SUBMITTER + " = ?"
+                + " WHERE " + SurveyInstanceColumns._ID + " = ?");
+        deleteResponses = compile("DELETE FROM " + Tables.RESPONSE + " WHERE "
+                + ResponseColumns.SURVEY_INSTANCE_ID + " = ? AND "
+                + ResponseColumns.QUESTION_ID + " = ?");
+        // Responses without iteration keep the column default
+        insertResponse = compile("INSERT INTO " + Tables.RESPONSE + " ("
+                + ResponseColumns.SURVEY_INSTANCE_ID + "," + ResponseColumns.QUESTION_ID + ","
+                + ResponseColumns.ANSWER + "," + ResponseColumns.TYPE + ","
+                + ResponseColumns.INCLUDE + ") VALUES (?,?,?,?,1)");
+        insertIteratedResponse = compile("INSERT INTO " + Tables.RESPONSE + " ("
+                + ResponseColumns.SURVEY_INSTANCE_ID + "," + ResponseColumns.QUESTION_ID + ","
+                + ResponseColumns.ANSWER + "," + ResponseColumns.TYPE + ","
+                + ResponseColumns.INCLUDE + "," + ResponseColumns.ITERATION
+                + ") VALUES (?,?,?,?,1,?)");
+        insertTransmission = compile("INSERT INTO " + Tables.TRANSMISSION + " ("
+                + TransmissionColumns.SURVEY_INSTANCE_ID + "," + TransmissionColumns.SURVEY_ID + ","
+                + TransmissionColumns.FILENAME + "," + TransmissionColumns.STATUS + ","
+                + TransmissionColumns.START_DATE + "," + TransmissionColumns.END_DATE
+                + ") VALUES (?,?,?,?,?,?)");
+        searchIndex = new RecordSearchIndex(database);
+    }
+
+    private SQLiteStatement compile(String sql) {
+        SQLiteStatement statement = database.compileStatement(sql);
+        statements.add(statement);
+        return statement;
+    }
+
+    /**
+     * Resolve the local ids of the given survey instances with as few queries as possible
+     *
+     * @return map of uuid to survey instance id, for the survey instances already stored
+     */
+    @NonNull
+    public Map<String, Long> getSurveyInstanceIds(@NonNull Collection<String> uuids) {
+        Map<String, Long> ids = new HashMap<>();
+        List<String> args = new ArrayList<>(MAX_QUERY_ARGS);
+        for (String uuid : uuids) {
+            args.add(uuid);
+            if (args.size() == MAX_QUERY_ARGS) {
+                querySurveyInstanceIds(args, ids);
+                args.clear();
+            }
+        }
+        if (!args.isEmpty()) {
+            querySurveyInstanceIds(args, ids);
+        }
+        return ids;
+    }
+
+    private void querySurveyInstanceIds(List<String> uuids, Map<String, Long> ids) {
+        StringBuilder sql = new StringBuilder("SELECT " + SurveyInstanceColumns._ID + ","
+                + SurveyInstanceColumns.UUID + " FROM " + Tables.SURVEY_INSTANCE + " WHERE "
+                + SurveyInstanceColumns.UUID + " IN (");
+        for (int i = 0; i < uuids.size(); i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        sql.append(")");
+        Cursor cursor = database.rawQuery(sql.toString(), uuids.toArray(new String[uuids.size()]));
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                ids.put(cursor.getString(1), cursor.getLong(0));
+            }
+            cursor.close();
+        }
+    }
+
+    /**
+     * Insert or replace the record. Replacing resets the last modification date, so it is
+     * always set to the downloaded one. The record is indexed for search along with the
+     * responses written so far, so it must be written after its survey instances.
+     */
+    public void writeRecord(String recordId, long surveyGroupId, String name,
+            @Nullable Double latitude, @Nullable Double longitude, long lastModified) {
+        bindString(insertRecord, 1, recordId);
+        insertRecord.bindLong(2, surveyGroupId);
+        bindString(insertRecord, 3, name);
+        bindDouble(insertRecord, 4, latitude);
+        bindDouble(insertRecord, 5, longitude);
+        insertRecord.bindLong(6, Math.max(lastModified, 0));
+        bindLong(insertRecord, 7, GeoGrid.getCell(latitude, longitude));
+        // Replacing the record changes its _id, which the search entry is keyed on
+        searchIndex.delete(recordId);
+        insertRecord.executeInsert();
+        searchIndex.index(recordId);
+    }
+
+    /**
+     * @param id local id of the survey instance, or null if it does not exist yet
+     * @return the local id of the survey instance
+     */
+    public long writeSurveyInstance(@Nullable Long id, String uuid, long surveyId,
+            long submittedDate, String recordId, int status, long syncDate,
+            @Nullable String submitter) {
+        SQLiteStatement statement = id != null ? updateSurveyInstance : insertSurveyInstance;
+        statement.bindLong(1, surveyId);
+        statement.bindLong(2, submittedDate);
+        bindString(statement, 3, recordId);
+        statement.bindLong(4, status);
+        statement.bindLong(5, syncDate);
+        bindString(statement, 6, submitter);
+        if (id != null) {
+            statement.bindLong(7, id);
+            statement.execute();
+            return id;
+        }
+        bindString(statement, 7, uuid);
+        return statement.executeInsert();
+    }
+
+    public void deleteResponses(long surveyInstanceId, String questionId) {
+        deleteResponses.bindLong(1, surveyInstanceId);
+        bindString(deleteResponses, 2, questionId);
+        deleteResponses.execute();
+    }
+
+    /**
+     * @param iteration iteration of the response, or null if the question is answered once
+     */
+    public void insertResponse(long surveyInstanceId, String questionId, String answer,
+            String type, @Nullable Integer iteration) {
+        SQLiteStatement statement = iteration != null ? insertIteratedResponse : insertResponse;
+        statement.bindLong(1, surveyInstanceId);
+        bindString(statement, 2, questionId);
+        bindString(statement, 3, answer);
+        bindString(statement, 4, type);
+        if (iteration != null) {
+            statement.bindLong(5, iteration);
+        }
+        statement.executeInsert();
+    }
+
+    public void insertSyncedTransmission(long surveyInstanceId, String formId, String filename) {
+        long date = System.currentTimeMillis();
+        insertTransmission.bindLong(1, surveyInstanceId);
+        bindString(insertTransmission, 2, formId);
+        bindString(insertTransmission, 3, filename);
+        insertTransmission.bindLong(4, TransmissionStatus.SYNCED);
+        insertTransmission.bindLong(5, date);
+        insertTransmission.bindLong(6, date);
+        insertTransmission.executeInsert();
+    }
+
+    /**
+     * Delete any Record that contains no SurveyInstance, notifying the observers of all the
+     * synced tables
+     */
+    public void deleteEmptyRecords() {
+        briteDatabase.executeAndTrigger(SYNC_TABLES, "DELETE FROM " + Tables.RECORD
+                + " WHERE " + RecordColumns.RECORD_ID + " NOT IN "
+                + "(SELECT DISTINCT " + SurveyInstanceColumns.RECORD_ID
+                + " FROM " + Tables.SURVEY_INSTANCE + ")");
+    }
+
+    public void close() {
+        for (SQLiteStatement statement : statements) {
+            statement.close();
+        }
+        statements.clear();
+        searchIndex.close();
+    }
+
+    private static void bindString(SQLiteStatement statement, int index, @Nullable String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    private static void bindLong(SQLiteStatement statement, int index, @Nullable Long value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindLong(index, value);
+        }
+    }
+
+    private static void bindDouble(SQLiteStatement statement, int index, @Nullable Double value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindDouble(index, value);
+        }
+    }
+}
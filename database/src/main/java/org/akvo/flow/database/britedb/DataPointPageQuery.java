@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.database.britedb;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.akvo.flow.database.GeoGrid;
+import org.akvo.flow.database.RecordColumns;
+import org.akvo.flow.database.SurveyInstanceColumns;
+import org.akvo.flow.database.Tables;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.akvo.flow.database.Constants.ORDER_BY_DATE;
+import static org.akvo.flow.database.Constants.ORDER_BY_DISTANCE;
+import static org.akvo.flow.database.Constants.ORDER_BY_NAME;
+import static org.akvo.flow.database.Constants.ORDER_BY_STATUS;
+
+/**
+ * Keyset pagination for the data point list. Every sort order is reduced to a single sort key,
+ * with the record row id as tie breaker, so a page is read from the position of a known row
+ * instead of counting all the rows before it.
+ * A page starts after the (key, id) pair of the last row of the previous page, and may end at
+ * the (key, id) pair of its own last row, so it can be reloaded after the data changes without
+ * shifting the pages around it.
+ */
+public class DataPointPageQuery {
+
+    /**
+     * Column holding the sort key of each row. Read it as a String, and pass it back as is.
+     */
+    public static final String PAGE_KEY = "page_key";
+
+    /**
+     * Locations are compared as squared degrees. Scaling them keeps 12 decimals in an integer,
+     * which can be passed around as a String without losing precision.
+     */
+    private static final double DISTANCE_SCALE = 1e12;
+    private static final String UNKNOWN_DISTANCE = String.valueOf(Long.MAX_VALUE);
+
+    private final long surveyGroupId;
+    private final String sortKey;
+    private final boolean textKey;
+    private final boolean aggregateKey;
+    private final boolean nearest;
+    private final double latitude;
+    private final double longitude;
+
+    private String afterKey;
+    private long afterId;
+    private String untilKey;
+    private long untilId;
+    private int limit;
+    private GeoGrid.Area area;
+
+    public DataPointPageQuery(long surveyGroupId, int orderBy, @Nullable Double latitude,
+            @Nullable Double longitude) {
+        this.surveyGroupId = surveyGroupId;
+        this.nearest = orderBy == ORDER_BY_DISTANCE && latitude != null && longitude != null;
+        this.latitude = nearest ? latitude : 0;
+        this.longitude = nearest ? longitude : 0;
+        this.aggregateKey = orderBy == ORDER_BY_STATUS;
+        switch (orderBy) {
+            case ORDER_BY_NAME:
+                sortKey = "COALESCE(sl." + RecordColumns.NAME + ", '') COLLATE NOCASE";
+                textKey = true;
+                break;
+            case ORDER_BY_DATE:
+                sortKey = "-sl." + RecordColumns.LAST_MODIFIED;
+                textKey = false;
+                break;
+            case ORDER_BY_STATUS:
+                sortKey = "IFNULL(MIN(r." + SurveyInstanceColumns.STATUS + "), -1)";
+                textKey = false;
+                break;
+            case ORDER_BY_DISTANCE:
+                if (latitude != null && longitude != null) {
+                    sortKey = getDistanceKey(latitude, longitude);
+                } else {
+                    sortKey = "sl." + RecordColumns._ID;
+                }
+                textKey = false;
+                break;
+            default:
+                sortKey = "sl." + RecordColumns._ID;
+                textKey = false;
+                break;
+        }
+    }
+
+    /**
+     * Same planar approximation used by the unpaged query. Points without location go last.
+     */
+    private static String getDistanceKey(double latitude, double longitude) {
+        double fudge = Math.pow(Math.cos(Math.toRadians(latitude)), 2);
+        String lat = "sl." + RecordColumns.LATITUDE;
+        String lon = "sl." + RecordColumns.LONGITUDE;
+        return "CASE WHEN " + lat + " IS NULL OR " + lon + " IS NULL THEN " + UNKNOWN_DISTANCE
+                + " ELSE CAST(((" + latitude + " - " + lat + ") * (" + latitude + " - " + lat
+                + ") + (" + longitude + " - " + lon + ") * (" + longitude + " - " + lon
+                + ") * " + fudge + ") * " + (long) DISTANCE_SCALE + " AS INTEGER) END";
+    }
+
+    /**
+     * @return the sort key of the points at the given distance, in degrees
+     */
+    public static long getDistanceKey(double distance) {
+        return (long) (distance * distance * DISTANCE_SCALE);
+    }
+
+    /**
+     * @return the distance, in degrees, of the points with the given sort key
+     */
+    public static double getDistance(long distanceKey) {
+        return Math.sqrt(distanceKey / DISTANCE_SCALE);
+    }
+
+    /**
+     * @return true if the rows are sorted by distance to a known location
+     */
+    public boolean isNearest() {
+        return nearest;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    @Nullable
+    public String getAfterKey() {
+        return afterKey;
+    }
+
+    @Nullable
+    public String getUntilKey() {
+        return untilKey;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Only return the rows after the given one
+     */
+    public DataPointPageQuery after(@NonNull String key, long id) {
+        this.afterKey = key;
+        this.afterId = id;
+        return this;
+    }
+
+    /**
+     * Only return the rows up to the given one, included
+     */
+    public DataPointPageQuery until(@NonNull String key, long id) {
+        this.untilKey = key;
+        this.untilId = id;
+        return this;
+    }
+
+    public DataPointPageQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Only return the rows located inside the given grid area, or all of them if null
+     */
+    public DataPointPageQuery inArea(@Nullable GeoGrid.Area area) {
+        this.area = area;
+        return this;
+    }
+
+    @NonNull
+    public String getSql() {
+        StringBuilder sql = new StringBuilder("SELECT sl.*, MIN(r.")
+                .append(SurveyInstanceColumns.STATUS).append(") AS ")
+                .append(SurveyInstanceColumns.STATUS).append(", ")
+                .append(sortKey).append(" AS ").append(PAGE_KEY)
+                .append(" FROM ").append(Tables.RECORD).append(" AS sl LEFT JOIN ")
+                .append(Tables.SURVEY_INSTANCE).append(" AS r ON sl.")
+                .append(RecordColumns.RECORD_ID).append(" = r.")
+                .append(SurveyInstanceColumns.RECORD_ID)
+                .append(" WHERE ")
+                .append(area != null ? area.getCondition("sl")
+                        : "sl." + RecordColumns.SURVEY_GROUP_ID + " = ?");
+
+        // Aggregated keys can only be compared once the rows are grouped. Any other key is
+        // compared before, so the rows outside the page are not joined and grouped at all.
+        String bounds = getBounds(aggregateKey ? PAGE_KEY : sortKey);
+        if (!aggregateKey && bounds != null) {
+            sql.append(" AND ").append(bounds);
+        }
+        sql.append(" GROUP BY sl.").append(RecordColumns.RECORD_ID);
+        if (aggregateKey && bounds != null) {
+            sql.append(" HAVING ").append(bounds);
+        }
+        sql.append(" ORDER BY ").append(PAGE_KEY).append(", sl.").append(RecordColumns._ID);
+        if (limit > 0) {
+            sql.append(" LIMIT ").append(limit);
+        }
+        return sql.toString();
+    }
+
+    @Nullable
+    private String getBounds(String key) {
+        String keyArg = textKey ? "?" : "CAST(? AS INTEGER)";
+        String idColumn = "sl." + RecordColumns._ID;
+        StringBuilder bounds = new StringBuilder();
+        if (afterKey != null) {
+            bounds.append("(").append(key).append(" > ").append(keyArg)
+                    .append(" OR (").append(key).append(" = ").append(keyArg)
+                    .append(" AND ").append(idColumn).append(" > ?))");
+        }
+        if (untilKey != null) {
+            bounds.append(afterKey != null ? " AND " : "")
+                    .append("(").append(key).append(" < ").append(keyArg)
+                    .append(" OR (").append(key).append(" = ").append(keyArg)
+                    .append(" AND ").append(idColumn).append(" <= ?))");
+        }
+        return bounds.length() > 0 ? bounds.toString() : null;
+    }
+
+    @NonNull
+    public String[] getArgs() {
+        List<String> args = new ArrayList<>();
+        if (area != null) {
+            area.addArgs(surveyGroupId, args);
+        } else {
+            args.add(String.valueOf(surveyGroupId));
+        }
+        if (afterKey != null) {
+            args.add(afterKey);
+            args.add(afterKey);
+            args.add(String.valueOf(afterId));
+        }
+        if (untilKey != null) {
+            args.add(untilKey);
+            args.add(untilKey);
+            args.add(String.valueOf(untilId));
+        }
+        return args.toArray(new String[args.size()]);
+    }
+}
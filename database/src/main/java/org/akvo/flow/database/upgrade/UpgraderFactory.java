@@ -49,6 +49,20 @@ public class UpgraderFactory {
                     databaseUpgrader.addUpgrader(new PreferencesUpgrader(helper, db));
                 case DatabaseHelper.VER_LANGUAGES_MIGRATE:
                     databaseUpgrader.addUpgrader(new LanguagesUpgrader(helper, db));
+                case DatabaseHelper.VER_RESPONSE_ITERATION:
+                    databaseUpgrader.addUpgrader(new ResponseIterationUpgrader(helper, db));
+                case DatabaseHelper.VER_MULTIPART_UPLOAD:
+                    databaseUpgrader.addUpgrader(new MultipartUploadUpgrader(helper, db));
+                case DatabaseHelper.VER_UPLOAD_CHECKSUM:
+                    databaseUpgrader.addUpgrader(new UploadChecksumUpgrader(helper, db));
+                case DatabaseHelper.VER_TRANSMISSION_QUEUE:
+                    databaseUpgrader.addUpgrader(new TransmissionQueueUpgrader(helper, db));
+                case DatabaseHelper.VER_QUERY_INDEXES:
+                    databaseUpgrader.addUpgrader(new QueryIndexesUpgrader(helper, db));
+                case DatabaseHelper.VER_SEARCH_INDEX:
+                    databaseUpgrader.addUpgrader(new SearchIndexUpgrader(helper, db));
+                case DatabaseHelper.VER_SPATIAL_GRID:
+                    databaseUpgrader.addUpgrader(new SpatialGridUpgrader(helper, db));
                 default:
                     break;
             }
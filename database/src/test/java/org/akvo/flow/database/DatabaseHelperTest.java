@@ -80,6 +80,13 @@ public class DatabaseHelperTest {
         verify(helper, times(1)).upgradeFromCaddisfly(mockDb);
         verify(helper, times(1)).upgradeFromPreferences(mockDb);
         verify(helper, times(1)).upgradeFromLanguages(mockDb);
+        verify(helper, times(1)).upgradeFromResponseIteration(mockDb);
+        verify(helper, times(1)).upgradeFromMultipartUpload(mockDb);
+        verify(helper, times(1)).upgradeFromUploadChecksum(mockDb);
+        verify(helper, times(1)).upgradeFromTransmissionQueue(mockDb);
+        verify(helper, times(1)).upgradeFromQueryIndexes(mockDb);
+        verify(helper, times(1)).upgradeFromSearchIndex(mockDb);
+        verify(helper, times(1)).upgradeFromSpatialGrid(mockDb);
     }
 
     private void configureDatabaseHelper(DatabaseHelper helper) {
@@ -90,6 +97,8 @@ public class DatabaseHelperTest {
         doNothing().when(helper).upgradeFromCaddisfly(any(SQLiteDatabase.class));
         doNothing().when(helper).upgradeFromPreferences(any(SQLiteDatabase.class));
         doNothing().when(helper).upgradeFromLanguages(any(SQLiteDatabase.class));
+        doNothing().when(helper).upgradeFromResponseIteration(any(SQLiteDatabase.class));
+        doNothing().when(helper).upgradeFromMultipartUpload(any(SQLiteDatabase.class));
     }
 
     @Test
@@ -107,6 +116,13 @@ public class DatabaseHelperTest {
         verify(helper, times(1)).upgradeFromCaddisfly(mockDb);
         verify(helper, times(1)).upgradeFromPreferences(mockDb);
         verify(helper, times(1)).upgradeFromLanguages(mockDb);
+        verify(helper, times(1)).upgradeFromResponseIteration(mockDb);
+        verify(helper, times(1)).upgradeFromMultipartUpload(mockDb);
+        verify(helper, times(1)).upgradeFromUploadChecksum(mockDb);
+        verify(helper, times(1)).upgradeFromTransmissionQueue(mockDb);
+        verify(helper, times(1)).upgradeFromQueryIndexes(mockDb);
+        verify(helper, times(1)).upgradeFromSearchIndex(mockDb);
+        verify(helper, times(1)).upgradeFromSpatialGrid(mockDb);
     }
 
     @Test
@@ -124,6 +140,13 @@ public class DatabaseHelperTest {
         verify(helper, times(1)).upgradeFromCaddisfly(mockDb);
         verify(helper, times(1)).upgradeFromPreferences(mockDb);
         verify(helper, times(1)).upgradeFromLanguages(mockDb);
+        verify(helper, times(1)).upgradeFromResponseIteration(mockDb);
+        verify(helper, times(1)).upgradeFromMultipartUpload(mockDb);
+        verify(helper, times(1)).upgradeFromUploadChecksum(mockDb);
+        verify(helper, times(1)).upgradeFromTransmissionQueue(mockDb);
+        verify(helper, times(1)).upgradeFromQueryIndexes(mockDb);
+        verify(helper, times(1)).upgradeFromSearchIndex(mockDb);
+        verify(helper, times(1)).upgradeFromSpatialGrid(mockDb);
     }
 
     @Test
@@ -141,6 +164,13 @@ public class DatabaseHelperTest {
         verify(helper, times(1)).upgradeFromCaddisfly(mockDb);
         verify(helper, times(1)).upgradeFromPreferences(mockDb);
         verify(helper, times(1)).upgradeFromLanguages(mockDb);
+        verify(helper, times(1)).upgradeFromResponseIteration(mockDb);
+        verify(helper, times(1)).upgradeFromMultipartUpload(mockDb);
+        verify(helper, times(1)).upgradeFromUploadChecksum(mockDb);
+        verify(helper, times(1)).upgradeFromTransmissionQueue(mockDb);
+        verify(helper, times(1)).upgradeFromQueryIndexes(mockDb);
+        verify(helper, times(1)).upgradeFromSearchIndex(mockDb);
+        verify(helper, times(1)).upgradeFromSpatialGrid(mockDb);
     }
 
     @Test
@@ -158,6 +188,13 @@ public class DatabaseHelperTest {
         verify(helper, times(1)).upgradeFromCaddisfly(mockDb);
         verify(helper, times(1)).upgradeFromPreferences(mockDb);
         verify(helper, times(1)).upgradeFromLanguages(mockDb);
+        verify(helper, times(1)).upgradeFromResponseIteration(mockDb);
+        verify(helper, times(1)).upgradeFromMultipartUpload(mockDb);
+        verify(helper, times(1)).upgradeFromUploadChecksum(mockDb);
+        verify(helper, times(1)).upgradeFromTransmissionQueue(mockDb);
+        verify(helper, times(1)).upgradeFromQueryIndexes(mockDb);
+        verify(helper, times(1)).upgradeFromSearchIndex(mockDb);
+        verify(helper, times(1)).upgradeFromSpatialGrid(mockDb);
     }
 
     @Test
@@ -175,6 +212,13 @@ public class DatabaseHelperTest {
         verify(helper, times(0)).upgradeFromCaddisfly(mockDb);
         verify(helper, times(1)).upgradeFromPreferences(mockDb);
         verify(helper, times(1)).upgradeFromLanguages(mockDb);
+        verify(helper, times(1)).upgradeFromResponseIteration(mockDb);
+        verify(helper, times(1)).upgradeFromMultipartUpload(mockDb);
+        verify(helper, times(1)).upgradeFromUploadChecksum(mockDb);
+        verify(helper, times(1)).upgradeFromTransmissionQueue(mockDb);
+        verify(helper, times(1)).upgradeFromQueryIndexes(mockDb);
+        verify(helper, times(1)).upgradeFromSearchIndex(mockDb);
+        verify(helper, times(1)).upgradeFromSpatialGrid(mockDb);
     }
 
     @Test
@@ -192,5 +236,12 @@ public class DatabaseHelperTest {
         verify(helper, times(0)).upgradeFromCaddisfly(mockDb);
         verify(helper, times(0)).upgradeFromPreferences(mockDb);
         verify(helper, times(1)).upgradeFromLanguages(mockDb);
+        verify(helper, times(1)).upgradeFromResponseIteration(mockDb);
+        verify(helper, times(1)).upgradeFromMultipartUpload(mockDb);
+        verify(helper, times(1)).upgradeFromUploadChecksum(mockDb);
+        verify(helper, times(1)).upgradeFromTransmissionQueue(mockDb);
+        verify(helper, times(1)).upgradeFromQueryIndexes(mockDb);
+        verify(helper, times(1)).upgradeFromSearchIndex(mockDb);
+        verify(helper, times(1)).upgradeFromSpatialGrid(mockDb);
     }
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.squareup.sqlbrite2.BriteDatabase;
+import com.squareup.sqlbrite2.SqlBrite;
+
+import org.akvo.flow.database.britedb.BriteSurveyDbAdapter;
+import org.akvo.flow.database.britedb.DataPointPageQuery;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import io.reactivex.schedulers.Schedulers;
+
+import static junit.framework.Assert.assertEquals;
+import static org.akvo.flow.database.Constants.ORDER_BY_DISTANCE;
+
+/**
+ * Nearest first page timings on 20k generated records spread over a 10x10 degree region, with
+ * the grid search and with a plain distance sort of the whole survey group. Results are printed
+ * to the standard output.
+ * Excluded from the default test run, use ./gradlew :database:testDebugUnitTest -Pbenchmark
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class GeoGridBenchmark {
+
+    private static final long SURVEY_GROUP_ID = 1L;
+    private static final int RECORDS = 20000;
+    private static final int SEARCHES = 50;
+    private static final int PAGE_SIZE = 50;
+
+    private DatabaseHelper helper;
+    private BriteDatabase briteDatabase;
+
+    @Before
+    public void setUp() {
+        helper = new DatabaseHelper(RuntimeEnvironment.application, new LanguageTable(), null);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        Random random = new Random(42);
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < RECORDS; i++) {
+                double latitude = 35 + random.nextDouble() * 10;
+                double longitude = -5 + random.nextDouble() * 10;
+                ContentValues values = new ContentValues();
+                values.put(RecordColumns.RECORD_ID, "rec-" + i);
+                values.put(RecordColumns.SURVEY_GROUP_ID, SURVEY_GROUP_ID);
+                values.put(RecordColumns.LATITUDE, latitude);
+                values.put(RecordColumns.LONGITUDE, longitude);
+                values.put(RecordColumns.GRID_CELL, GeoGrid.getCell(latitude, longitude));
+                db.insert(Tables.RECORD, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        briteDatabase = new SqlBrite.Builder().build()
+                .wrapDatabaseHelper(helper, Schedulers.trampoline());
+    }
+
+    @After
+    public void tearDown() {
+        briteDatabase.close();
+    }
+
+    @Test
+    public void nearestPage() {
+        BriteSurveyDbAdapter adapter = new BriteSurveyDbAdapter(briteDatabase);
+        Random random = new Random(1);
+        long gridTime = 0;
+        long sortTime = 0;
+        for (int i = 0; i < SEARCHES; i++) {
+            double latitude = 36 + random.nextDouble() * 8;
+            double longitude = -4 + random.nextDouble() * 8;
+
+            long t0 = System.nanoTime();
+            List<Long> grid = read(adapter.getDataPointsPage(newQuery(latitude, longitude)));
+            gridTime += System.nanoTime() - t0;
+
+            DataPointPageQuery sortQuery = newQuery(latitude, longitude);
+            t0 = System.nanoTime();
+            List<Long> sorted = read(briteDatabase.query(sortQuery.getSql(),
+                    sortQuery.getArgs()));
+            sortTime += System.nanoTime() - t0;
+
+            assertEquals(PAGE_SIZE, grid.size());
+            assertEquals(sorted, grid);
+        }
+        System.out.println(String.format("%s: %d nearest pages over %d records. Grid: %d ms."
+                        + " Distance sort: %d ms", GeoGridBenchmark.class.getSimpleName(),
+                SEARCHES, RECORDS, gridTime / 1000000, sortTime / 1000000));
+    }
+
+    private DataPointPageQuery newQuery(double latitude, double longitude) {
+        return new DataPointPageQuery(SURVEY_GROUP_ID, ORDER_BY_DISTANCE, latitude, longitude)
+                .limit(PAGE_SIZE);
+    }
+
+    private List<Long> read(Cursor cursor) {
+        List<Long> ids = new ArrayList<>();
+        try {
+            int idColumn = cursor.getColumnIndexOrThrow(RecordColumns._ID);
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(idColumn));
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class GeoGridTest {
+
+    private static final int COLUMNS = 3600;
+    private static final long LAST_ROW = 1799;
+    private static final long LAST_COLUMN = COLUMNS - 1;
+
+    private DatabaseHelper helper;
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        helper = new DatabaseHelper(RuntimeEnvironment.application, new LanguageTable(), null);
+        db = helper.getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+    }
+
+    @Test
+    public void getCell_ShouldNumberCellsFromSouthWest() {
+        assertEquals(Long.valueOf(0), GeoGrid.getCell(-90.0, -180.0));
+        assertEquals(Long.valueOf(900 * COLUMNS + 1800), GeoGrid.getCell(0.0, 0.0));
+        assertEquals(Long.valueOf(900 * COLUMNS + 1799), GeoGrid.getCell(0.05, -0.05));
+        assertEquals(Long.valueOf(899 * COLUMNS + 1800), GeoGrid.getCell(-0.05, 0.05));
+    }
+
+    @Test
+    public void getCell_ShouldKeepPolesAndAntimeridianInsideTheGrid() {
+        assertEquals(Long.valueOf(LAST_ROW * COLUMNS + 1800), GeoGrid.getCell(90.0, 0.0));
+        assertEquals(Long.valueOf(1800), GeoGrid.getCell(-90.0, 0.0));
+        assertEquals(Long.valueOf(900 * COLUMNS + LAST_COLUMN), GeoGrid.getCell(0.0, 180.0));
+        assertEquals(Long.valueOf(900 * COLUMNS), GeoGrid.getCell(0.0, -180.0));
+        // Both sides of the antimeridian are at the ends of the same row
+        assertEquals(Long.valueOf(900 * COLUMNS + LAST_COLUMN), GeoGrid.getCell(0.0, 179.99));
+        assertEquals(Long.valueOf(900 * COLUMNS), GeoGrid.getCell(0.0, -179.99));
+    }
+
+    @Test
+    public void getCell_ShouldIgnoreInvalidLocations() {
+        assertNull(GeoGrid.getCell(null, 0.0));
+        assertNull(GeoGrid.getCell(0.0, null));
+        assertNull(GeoGrid.getCell(90.01, 0.0));
+        assertNull(GeoGrid.getCell(0.0, -180.01));
+    }
+
+    @Test
+    public void getCellSql_ShouldMatchGetCell() {
+        List<double[]> points = new ArrayList<>();
+        points.add(new double[] { 90, 180 });
+        points.add(new double[] { -90, -180 });
+        points.add(new double[] { 0, 0 });
+        points.add(new double[] { 89.99999, -179.99999 });
+        points.add(new double[] { 41.38, 2.17 });
+        points.add(new double[] { -33.9, 151.2 });
+        points.add(new double[] { 90.5, 0 });
+        points.add(new double[] { 0, 181 });
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            points.add(new double[] {
+                    random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180
+            });
+        }
+
+        db.execSQL("CREATE TEMP TABLE point (latitude REAL, longitude REAL)");
+        for (double[] point : points) {
+            db.execSQL("INSERT INTO point VALUES (?, ?)", new Object[] { point[0], point[1] });
+        }
+
+        Cursor cursor = db.rawQuery("SELECT latitude, longitude, "
+                + GeoGrid.getCellSql("latitude", "longitude") + " FROM point", null);
+        try {
+            assertEquals(points.size(), cursor.getCount());
+            while (cursor.moveToNext()) {
+                double latitude = cursor.getDouble(0);
+                double longitude = cursor.getDouble(1);
+                Long cell = cursor.isNull(2) ? null : cursor.getLong(2);
+                assertEquals(latitude + ", " + longitude, GeoGrid.getCell(latitude, longitude),
+                        cell);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void getArea_ShouldRejectAntimeridianAndLargeAreas() {
+        assertNull(GeoGrid.getArea(0, 179, 1, -179));
+        assertNotNull(GeoGrid.getArea(0, 0, 6.35, 1));
+        // 64 rows
+        assertNull(GeoGrid.getArea(0, 0, 6.45, 1));
+        assertNull(GeoGrid.getArea(-90, -180, 90, 180));
+    }
+
+    @Test
+    public void getArea_ShouldHaveOneRangePerRow() {
+        GeoGrid.Area area = GeoGrid.getArea(0.05, 0.05, 0.25, 0.15);
+        assertNotNull(area);
+
+        List<String> args = new ArrayList<>();
+        area.addArgs(7L, args);
+
+        String condition = area.getCondition("sl");
+        assertEquals(3, condition.split(" OR ").length);
+        assertEquals(condition.length() - condition.replace("?", "").length(), args.size());
+        assertEquals("7", args.get(0));
+        assertEquals(String.valueOf(900 * COLUMNS + 1800), args.get(1));
+        assertEquals(String.valueOf(900 * COLUMNS + 1801), args.get(2));
+        assertEquals(String.valueOf(902 * COLUMNS + 1800), args.get(7));
+        assertEquals(String.valueOf(902 * COLUMNS + 1801), args.get(8));
+    }
+
+    @Test
+    public void getSquare_ShouldNotWrapAroundTheGrid() {
+        assertNotNull(GeoGrid.getSquare(0, 0, 1));
+        // Poles
+        assertNull(GeoGrid.getSquare(89.95, 0, 1));
+        assertNull(GeoGrid.getSquare(-89.95, 0, 1));
+        // Antimeridian
+        assertNull(GeoGrid.getSquare(0, 179.95, 1));
+        assertNull(GeoGrid.getSquare(0, -179.95, 1));
+    }
+
+    @Test
+    public void getSquare_ShouldBeNullFor64RowsOrMore() {
+        assertNotNull(GeoGrid.getSquare(0, 0, 31));
+        assertNull(GeoGrid.getSquare(0, 0, 32));
+    }
+
+    @Test
+    public void getCoveredDistance_ShouldShrinkWithLatitude() {
+        assertEquals(0.2, GeoGrid.getCoveredDistance(0, 2), 1e-9);
+        assertEquals(0.1, GeoGrid.getCoveredDistance(60, 2), 1e-9);
+        assertEquals(0.1, GeoGrid.getCoveredDistance(-60, 2), 1e-9);
+        assertEquals(0, GeoGrid.getCoveredDistance(90, 2), 1e-9);
+    }
+
+    @Test
+    public void getCoveredDistance_ShouldOnlyCoverPointsInsideTheSquare() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            double latitude = random.nextDouble() * 160 - 80;
+            double longitude = random.nextDouble() * 340 - 170;
+            int radius = 1 + random.nextInt(8);
+            double covered = GeoGrid.getCoveredDistance(latitude, radius);
+            double fudge = Math.cos(Math.toRadians(latitude));
+
+            // A point just within the covered distance, in the same metric as the sort order
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double pointLatitude = latitude + 0.999 * covered * Math.sin(angle);
+            double pointLongitude = longitude + 0.999 * covered * Math.cos(angle) / fudge;
+
+            long center = GeoGrid.getCell(latitude, longitude);
+            long cell = GeoGrid.getCell(pointLatitude, pointLongitude);
+            assertTrue(Math.abs(cell / COLUMNS - center / COLUMNS) <= radius);
+            assertTrue(Math.abs(cell % COLUMNS - center % COLUMNS) <= radius);
+        }
+    }
+
+    @Test
+    public void getRadius_ShouldCoverTheDistance() {
+        assertEquals(3, GeoGrid.getRadius(0, 0.25));
+        assertEquals(1, GeoGrid.getRadius(45, 0.01));
+        assertTrue(GeoGrid.getCoveredDistance(45, GeoGrid.getRadius(45, 1.3)) >= 1.3);
+        // The poles cannot be covered by any square
+        assertEquals(1800, GeoGrid.getRadius(90, 0.1));
+    }
+}
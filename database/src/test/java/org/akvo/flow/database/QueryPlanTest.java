@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+
+import org.akvo.flow.database.britedb.BriteSurveyDbAdapter;
+import org.akvo.flow.database.britedb.DataPointPageQuery;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static junit.framework.Assert.assertTrue;
+import static org.akvo.flow.database.Constants.ORDER_BY_DATE;
+import static org.akvo.flow.database.Constants.ORDER_BY_DISTANCE;
+import static org.akvo.flow.database.Constants.ORDER_BY_NAME;
+import static org.akvo.flow.database.Constants.ORDER_BY_NONE;
+import static org.akvo.flow.database.Constants.ORDER_BY_STATUS;
+
+/**
+ * Checks the query plans of the hot queries against a freshly created database. Any of them
+ * scanning one of the tables which grow with the collected data means an index is missing.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class QueryPlanTest {
+
+    private static final List<String> LARGE_TABLES = Arrays.asList(Tables.RECORD,
+            Tables.SURVEY_INSTANCE, Tables.RESPONSE, Tables.TRANSMISSION);
+
+    private static final Pattern FULL_SCAN = Pattern.compile("^SCAN (?:TABLE )?(\\w+)");
+
+    private DatabaseHelper helper;
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        helper = new DatabaseHelper(RuntimeEnvironment.application, new LanguageTable(), null);
+        db = helper.getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+    }
+
+    @Test
+    public void dataPointQueriesShouldNotScanLargeTables() {
+        assertNoFullScan(BriteSurveyDbAdapter.DATA_POINTS_QUERY);
+        for (int orderBy : new int[] {
+                ORDER_BY_NONE, ORDER_BY_DATE, ORDER_BY_DISTANCE, ORDER_BY_STATUS, ORDER_BY_NAME
+        }) {
+            assertNoFullScan(BriteSurveyDbAdapter.getFilteredDataPointsQuery(41.38, 2.17, orderBy));
+        }
+    }
+
+    @Test
+    public void searchQueryShouldNotScanLargeTables() {
+        assertNoFullScan(BriteSurveyDbAdapter.SEARCH_DATA_POINTS_QUERY);
+    }
+
+    @Test
+    public void areaQueriesShouldUseTheGridIndex() {
+        List<String> args = new ArrayList<>();
+        assertUsesIndex("record_grid_idx",
+                BriteSurveyDbAdapter.getDataPointsInAreaQuery(1L, 41.0, 2.0, 42.0, 2.5, args));
+        DataPointPageQuery nearest = new DataPointPageQuery(1L, ORDER_BY_DISTANCE, 41.38, 2.17)
+                .inArea(GeoGrid.getSquare(41.38, 2.17, 2))
+                .limit(50);
+        assertUsesIndex("record_grid_idx", nearest.getSql());
+    }
+
+    @Test
+    public void formInstanceQueriesShouldNotScanLargeTables() {
+        assertNoFullScan(query(SurveyDbAdapter.SURVEY_INSTANCE_JOIN_SURVEY,
+                SurveyDbAdapter.FormInstanceQuery.PROJECTION,
+                Tables.SURVEY_INSTANCE + "." + SurveyInstanceColumns.RECORD_ID + "= ?",
+                "CASE WHEN survey.survey_id = survey_group.register_survey_id THEN 0 ELSE 1 END, "
+                        + SurveyInstanceColumns.START_DATE + " DESC"));
+        assertNoFullScan(query(Tables.SURVEY_INSTANCE,
+                new String[] { SurveyInstanceColumns._ID },
+                Tables.SURVEY_INSTANCE + "." + SurveyInstanceColumns.SURVEY_ID + "= ?"
+                        + " AND " + SurveyInstanceColumns.STATUS + "= ?"
+                        + " AND " + SurveyInstanceColumns.RECORD_ID + "= ?",
+                SurveyInstanceColumns.START_DATE + " DESC"));
+        assertNoFullScan(query(Tables.SURVEY_INSTANCE,
+                new String[] { SurveyInstanceColumns._ID },
+                SurveyInstanceColumns.RECORD_ID + "= ? AND " + SurveyInstanceColumns.SURVEY_ID
+                        + "= ? AND " + SurveyInstanceColumns.SUBMITTED_DATE + " IS NOT NULL",
+                SurveyInstanceColumns.SUBMITTED_DATE + " DESC"));
+        assertNoFullScan(query(Tables.SURVEY_INSTANCE,
+                new String[] { SurveyInstanceColumns._ID, SurveyInstanceColumns.UUID },
+                SurveyInstanceColumns.STATUS + " = ?", null));
+    }
+
+    @Test
+    public void responseQueriesShouldNotScanLargeTables() {
+        assertNoFullScan(query(Tables.RESPONSE, SurveyDbAdapter.RESPONSE_COLUMNS,
+                ResponseColumns.SURVEY_INSTANCE_ID + " = ?", null));
+        assertNoFullScan(query(Tables.RESPONSE, SurveyDbAdapter.RESPONSE_COLUMNS,
+                ResponseColumns.SURVEY_INSTANCE_ID + " = ? AND " + ResponseColumns.QUESTION_ID
+                        + " =? AND " + "CAST(" + ResponseColumns.ITERATION + " as TEXT) = ? ",
+                null));
+    }
+
+    @Test
+    public void transmissionQueriesShouldNotScanLargeTables() {
+        String[] columns = { TransmissionColumns._ID, TransmissionColumns.FILENAME };
+        assertUsesIndex("transmission_queue_idx", query(Tables.TRANSMISSION, columns,
+                DatabaseHelper.PENDING_TRANSMISSIONS, DatabaseHelper.PENDING_TRANSMISSIONS_ORDER));
+        assertNoFullScan(query(Tables.TRANSMISSION, columns,
+                TransmissionColumns.SURVEY_INSTANCE_ID + " = ?", null));
+        assertNoFullScan(query(Tables.TRANSMISSION, columns,
+                TransmissionColumns.FILENAME + " = ?", null));
+    }
+
+    private String query(String tables, String[] columns, String where, String orderBy) {
+        return SQLiteQueryBuilder.buildQueryString(false, tables, columns, where, null, null,
+                orderBy, null);
+    }
+
+    private void assertNoFullScan(String sql) {
+        List<String> plan = explain(sql);
+        for (String step : plan) {
+            Matcher matcher = FULL_SCAN.matcher(step);
+            assertTrue("Full scan in " + plan + " for: " + sql,
+                    !matcher.find() || !LARGE_TABLES.contains(matcher.group(1)));
+        }
+    }
+
+    private void assertUsesIndex(String index, String sql) {
+        assertNoFullScan(sql);
+        List<String> plan = explain(sql);
+        assertTrue(index + " not used in " + plan + " for: " + sql,
+                plan.toString().contains(index));
+    }
+
+    private List<String> explain(String sql) {
+        // Plans don't depend on the argument values, only on their positions
+        String[] args = new String[sql.length() - sql.replace("?", "").length()];
+        Arrays.fill(args, "1");
+        List<String> plan = new ArrayList<>();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        try {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.add(cursor.getString(detail));
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Search timings on 10k generated records, with the full text index and with the LIKE scan it
+ * replaced. Results are printed to the standard output.
+ * Excluded from the default test run, use ./gradlew :database:testDebugUnitTest -Pbenchmark
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class RecordSearchIndexBenchmark {
+
+    private static final int RECORDS = 10000;
+    private static final int SEARCHES = 200;
+    private static final String[] WORDS = {
+            "village", "well", "school", "market", "clinic", "pump", "north", "south",
+            "river", "borehole", "church", "spring", "tank", "latrine", "road", "hill"
+    };
+
+    private DatabaseHelper helper;
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        helper = new DatabaseHelper(RuntimeEnvironment.application, new LanguageTable(), null);
+        db = helper.getWritableDatabase();
+        Random random = new Random(42);
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < RECORDS; i++) {
+                ContentValues values = new ContentValues();
+                values.put(RecordColumns.RECORD_ID, "rec-" + i);
+                values.put(RecordColumns.SURVEY_GROUP_ID, 1L);
+                values.put(RecordColumns.NAME, WORDS[random.nextInt(WORDS.length)] + " "
+                        + WORDS[random.nextInt(WORDS.length)] + " " + i);
+                db.insert(Tables.RECORD, null, values);
+            }
+            RecordSearchIndex.rebuild(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+    }
+
+    @Test
+    public void search() {
+        Random random = new Random(1);
+        List<String> prefixes = new ArrayList<>();
+        for (int i = 0; i < SEARCHES; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            prefixes.add(word.substring(0, 2 + random.nextInt(word.length() - 1)));
+        }
+
+        long t0 = System.nanoTime();
+        int scanned = 0;
+        for (String prefix : prefixes) {
+            scanned += query("SELECT " + RecordColumns._ID + " FROM " + Tables.RECORD
+                    + " WHERE " + RecordColumns.NAME + " LIKE ? OR " + RecordColumns.NAME
+                    + " LIKE ?", prefix + "%", "% " + prefix + "%").size();
+        }
+        long scanTime = System.nanoTime() - t0;
+
+        t0 = System.nanoTime();
+        int matched = 0;
+        for (String prefix : prefixes) {
+            matched += query("SELECT docid FROM " + RecordSearchIndex.TABLE + " WHERE "
+                    + RecordSearchIndex.Columns.NAME + " MATCH ?",
+                    RecordSearchIndex.getMatchQuery(prefix)).size();
+        }
+        long indexTime = System.nanoTime() - t0;
+
+        assertEquals(scanned, matched);
+        System.out.println(String.format("%s: %d searches over %d records. LIKE: %d ms. FTS: %d ms",
+                RecordSearchIndexBenchmark.class.getSimpleName(), SEARCHES, RECORDS,
+                scanTime / 1000000, indexTime / 1000000));
+    }
+
+    private Set<Long> query(String sql, String... args) {
+        Set<Long> ids = new HashSet<>();
+        Cursor cursor = db.rawQuery(sql, args);
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class RecordSearchIndexTest {
+
+    private DatabaseHelper helper;
+    private SQLiteDatabase db;
+    private RecordSearchIndex searchIndex;
+
+    @Before
+    public void setUp() {
+        helper = new DatabaseHelper(RuntimeEnvironment.application, new LanguageTable(), null);
+        db = helper.getWritableDatabase();
+        searchIndex = new RecordSearchIndex(db);
+    }
+
+    @After
+    public void tearDown() {
+        searchIndex.close();
+        helper.close();
+    }
+
+    @Test
+    public void getWords_ShouldSplitOnPunctuationAndSpaces() {
+        assertEquals(Arrays.asList("well", "42", "north", "side"),
+                RecordSearchIndex.getWords("  Well #42, north-side. "));
+        assertEquals(Collections.<String>emptyList(), RecordSearchIndex.getWords(" -*\"() "));
+        assertEquals(Collections.<String>emptyList(), RecordSearchIndex.getWords(null));
+    }
+
+    @Test
+    public void getWords_ShouldOnlyFoldAsciiLetters() {
+        // The FTS3 simple tokenizer folds ASCII only, so other letters are kept as typed
+        assertEquals(Arrays.asList("s\u00e3o", "tom\u00e9"),
+                RecordSearchIndex.getWords("S\u00e3O Tom\u00e9"));
+    }
+
+    @Test
+    public void getMatchQuery_ShouldTurnOperatorsIntoPrefixes() {
+        assertEquals("well* or* pump*", RecordSearchIndex.getMatchQuery("well OR pump"));
+        assertEquals("near* school* not* closed*",
+                RecordSearchIndex.getMatchQuery("NEAR \"school\" NOT -closed*"));
+        assertEquals("record* id* well*", RecordSearchIndex.getMatchQuery("record_id:well"));
+        assertNull(RecordSearchIndex.getMatchQuery("* - \""));
+        assertNull(RecordSearchIndex.getMatchQuery(null));
+    }
+
+    @Test
+    public void getFirstWord_ShouldSkipPunctuation() {
+        assertEquals("village", RecordSearchIndex.getFirstWord("(Village) well"));
+        assertNull(RecordSearchIndex.getFirstWord("--"));
+    }
+
+    @Test
+    public void search_ShouldMatchWordPrefixes() {
+        insertRecord("abc-1", "Village well");
+        insertRecord("abc-2", "Wellington school");
+        insertRecord("xyz-3", "Market");
+
+        assertEquals(Arrays.asList("abc-1", "abc-2"), search("wel"));
+        assertEquals(Collections.singletonList("abc-1"), search("vil WELL"));
+        // Record ids are split in words too
+        assertEquals(Collections.singletonList("xyz-3"), search("xyz"));
+        assertEquals(Collections.<String>emptyList(), search("ell"));
+    }
+
+    @Test
+    public void search_ShouldNotFailOnOperators() {
+        insertRecord("abc-1", "Village well");
+        insertRecord("abc-2", "Or school");
+
+        assertEquals(Collections.singletonList("abc-2"), search("OR"));
+        assertEquals(Collections.singletonList("abc-1"), search("\"village\" -well*"));
+        assertEquals(Collections.<String>emptyList(), search("village NOT well"));
+    }
+
+    @Test
+    public void replace_ShouldKeepOneEntryPerRecord() {
+        insertRecord("abc-1", "Old name");
+
+        // Same path as the data point sync: the previous entry is deleted before the record
+        // is replaced, as REPLACE does not fire the delete trigger
+        searchIndex.delete("abc-1");
+        insertRecord("abc-1", "New name");
+
+        assertEquals(Collections.<String>emptyList(), search("old"));
+        assertEquals(Collections.singletonList("abc-1"), search("new"));
+        assertIndexConsistent();
+    }
+
+    @Test
+    public void update_ShouldIndexAnswers() {
+        insertRecord("abc-1", "Village well");
+        insertAnswer("abc-1", "Broken handpump", "VALUE");
+        insertAnswer("abc-1", "/sdcard/photo.jpg", "IMAGE");
+
+        searchIndex.update("abc-1");
+
+        assertEquals(Collections.singletonList("abc-1"), search("handp"));
+        assertEquals(Collections.<String>emptyList(), search("sdcard"));
+        assertIndexConsistent();
+    }
+
+    @Test
+    public void delete_ShouldRemoveEntryOfDeletedRecord() {
+        insertRecord("abc-1", "Village well");
+        insertRecord("abc-2", "Village school");
+
+        db.delete(Tables.RECORD, RecordColumns.RECORD_ID + " = ?", new String[] { "abc-1" });
+
+        assertEquals(Collections.singletonList("abc-2"), search("village"));
+        assertIndexConsistent();
+    }
+
+    private void insertRecord(String recordId, String name) {
+        ContentValues values = new ContentValues();
+        values.put(RecordColumns.RECORD_ID, recordId);
+        values.put(RecordColumns.SURVEY_GROUP_ID, 1L);
+        values.put(RecordColumns.NAME, name);
+        db.insert(Tables.RECORD, null, values);
+        searchIndex.index(recordId);
+    }
+
+    private void insertAnswer(String recordId, String answer, String type) {
+        ContentValues instance = new ContentValues();
+        instance.put(SurveyInstanceColumns.UUID, recordId + "-" + answer);
+        instance.put(SurveyInstanceColumns.SURVEY_ID, "1");
+        instance.put(SurveyInstanceColumns.RECORD_ID, recordId);
+        long instanceId = db.insert(Tables.SURVEY_INSTANCE, null, instance);
+
+        ContentValues response = new ContentValues();
+        response.put(ResponseColumns.SURVEY_INSTANCE_ID, instanceId);
+        response.put(ResponseColumns.QUESTION_ID, "q1");
+        response.put(ResponseColumns.ANSWER, answer);
+        response.put(ResponseColumns.TYPE, type);
+        db.insert(Tables.RESPONSE, null, response);
+    }
+
+    private List<String> search(String text) {
+        List<String> recordIds = new ArrayList<>();
+        String matchQuery = RecordSearchIndex.getMatchQuery(text);
+        Cursor cursor = db.rawQuery("SELECT " + RecordSearchIndex.Columns.RECORD_ID
+                + " FROM " + RecordSearchIndex.TABLE + " WHERE " + RecordSearchIndex.TABLE
+                + " MATCH ? ORDER BY docid", new String[] { matchQuery });
+        try {
+            while (cursor.moveToNext()) {
+                recordIds.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return recordIds;
+    }
+
+    /**
+     * Every record has exactly one entry, sharing its _id
+     */
+    private void assertIndexConsistent() {
+        long records = DatabaseUtils.queryNumEntries(db, Tables.RECORD);
+        assertEquals(records, DatabaseUtils.queryNumEntries(db, RecordSearchIndex.TABLE));
+        assertEquals(records, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM "
+                + Tables.RECORD + " AS sl JOIN " + RecordSearchIndex.TABLE + " AS s"
+                + " ON s.docid = sl." + RecordColumns._ID + " AND s."
+                + RecordSearchIndex.Columns.RECORD_ID + " = sl." + RecordColumns.RECORD_ID, null));
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Pending exports, as read by the sync service from the transmission queue
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class TransmissionQueueTest {
+
+    private SurveyDbAdapter adapter;
+
+    @Before
+    public void setUp() {
+        adapter = new SurveyDbAdapter(RuntimeEnvironment.application, null).open();
+    }
+
+    @After
+    public void tearDown() {
+        adapter.close();
+    }
+
+    @Test
+    public void getUnSyncedTransmissions_ShouldOnlyReturnPendingStatuses() {
+        createTransmission(1, "queued.zip", TransmissionStatus.QUEUED);
+        createTransmission(2, "in_progress.zip", TransmissionStatus.IN_PROGRESS);
+        createTransmission(3, "synced.zip", TransmissionStatus.SYNCED);
+        createTransmission(4, "failed.zip", TransmissionStatus.FAILED);
+        createTransmission(5, "deleted.zip", TransmissionStatus.FORM_DELETED);
+
+        assertEquals(Arrays.asList("queued.zip", "in_progress.zip", "failed.zip"),
+                getUnSyncedFileNames());
+    }
+
+    @Test
+    public void getUnSyncedTransmissions_ShouldReturnQueuedFilesFirst() {
+        createTransmission(1, "failed1.zip", TransmissionStatus.FAILED);
+        createTransmission(2, "queued1.zip", TransmissionStatus.QUEUED);
+        createTransmission(3, "stalled.zip", TransmissionStatus.IN_PROGRESS);
+        createTransmission(4, "failed2.zip", TransmissionStatus.FAILED);
+        createTransmission(5, "queued2.zip", TransmissionStatus.QUEUED);
+
+        assertEquals(Arrays.asList("queued1.zip", "queued2.zip", "stalled.zip", "failed1.zip",
+                "failed2.zip"), getUnSyncedFileNames());
+    }
+
+    @Test
+    public void getUnSyncedTransmissions_ShouldExcludeSyncedFiles() {
+        createTransmission(1, "form1.zip", TransmissionStatus.QUEUED);
+        createTransmission(2, "form2.zip", TransmissionStatus.QUEUED);
+
+        setStatus("form1.zip", TransmissionStatus.SYNCED);
+        assertEquals(Arrays.asList("form2.zip"), getUnSyncedFileNames());
+
+        // Synced files which fail the processing check are uploaded again
+        setStatus("form1.zip", TransmissionStatus.FAILED);
+        setStatus("form2.zip", TransmissionStatus.SYNCED);
+        assertEquals(Arrays.asList("form1.zip"), getUnSyncedFileNames());
+    }
+
+    @Test
+    @Config(manifest = Config.NONE, sdk = 19)
+    public void getUnSyncedTransmissions_ShouldWorkWithoutPartialIndex() {
+        createTransmission(1, "failed.zip", TransmissionStatus.FAILED);
+        createTransmission(2, "synced.zip", TransmissionStatus.SYNCED);
+        createTransmission(3, "queued.zip", TransmissionStatus.QUEUED);
+
+        assertEquals(Arrays.asList("queued.zip", "failed.zip"), getUnSyncedFileNames());
+    }
+
+    private void createTransmission(long surveyInstanceId, String fileName, int status) {
+        adapter.createTransmission(surveyInstanceId, "123", fileName);
+        if (status != TransmissionStatus.QUEUED) {
+            setStatus(fileName, status);
+        }
+    }
+
+    private void setStatus(String fileName, int status) {
+        ContentValues values = new ContentValues();
+        values.put(TransmissionColumns.STATUS, status);
+        adapter.updateTransmission(fileName, values);
+    }
+
+    private List<String> getUnSyncedFileNames() {
+        List<String> fileNames = new ArrayList<>();
+        Cursor cursor = adapter.getUnSyncedTransmissions();
+        try {
+            int fileNameCol = cursor.getColumnIndexOrThrow(TransmissionColumns.FILENAME);
+            while (cursor.moveToNext()) {
+                fileNames.add(cursor.getString(fileNameCol));
+            }
+        } finally {
+            cursor.close();
+        }
+        return fileNames;
+    }
+}
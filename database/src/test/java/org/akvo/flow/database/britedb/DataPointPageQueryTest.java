@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.database.britedb;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.akvo.flow.database.DatabaseHelper;
+import org.akvo.flow.database.LanguageTable;
+import org.akvo.flow.database.RecordColumns;
+import org.akvo.flow.database.SurveyInstanceColumns;
+import org.akvo.flow.database.Tables;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.akvo.flow.database.Constants.ORDER_BY_DATE;
+import static org.akvo.flow.database.Constants.ORDER_BY_DISTANCE;
+import static org.akvo.flow.database.Constants.ORDER_BY_NAME;
+import static org.akvo.flow.database.Constants.ORDER_BY_NONE;
+import static org.akvo.flow.database.Constants.ORDER_BY_STATUS;
+
+/**
+ * Reads the data points of a generated survey page by page, in every sort order, and checks
+ * the pages add up to the unpaged list.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class DataPointPageQueryTest {
+
+    private static final long SURVEY_GROUP_ID = 1L;
+    private static final int DATA_POINTS = 120;
+    private static final int PAGE_SIZE = 7;
+    private static final int[] ORDERS = {
+            ORDER_BY_NONE, ORDER_BY_DATE, ORDER_BY_DISTANCE, ORDER_BY_STATUS, ORDER_BY_NAME
+    };
+
+    private DatabaseHelper helper;
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        helper = new DatabaseHelper(RuntimeEnvironment.application, new LanguageTable(), null);
+        db = helper.getWritableDatabase();
+        Random random = new Random(42);
+        for (int i = 0; i < DATA_POINTS; i++) {
+            // Few distinct names, dates and statuses, so most pages break ties by row id
+            ContentValues record = new ContentValues();
+            record.put(RecordColumns.RECORD_ID, "record-" + i);
+            record.put(RecordColumns.SURVEY_GROUP_ID, i % 10 == 0 ? 2L : SURVEY_GROUP_ID);
+            record.put(RecordColumns.NAME, i % 13 == 0 ? null : "Point " + (char) ('a' + i % 5));
+            record.put(RecordColumns.LAST_MODIFIED, 1000L * (i % 4));
+            if (i % 6 != 0) {
+                record.put(RecordColumns.LATITUDE, 41 + random.nextDouble());
+                record.put(RecordColumns.LONGITUDE, 2 + random.nextDouble());
+            }
+            db.insert(Tables.RECORD, null, record);
+            for (int j = 0; j < i % 3; j++) {
+                ContentValues instance = new ContentValues();
+                instance.put(SurveyInstanceColumns.UUID, "instance-" + i + "-" + j);
+                instance.put(SurveyInstanceColumns.SURVEY_ID, "survey");
+                instance.put(SurveyInstanceColumns.RECORD_ID, "record-" + i);
+                instance.put(SurveyInstanceColumns.STATUS, random.nextInt(4));
+                db.insert(Tables.SURVEY_INSTANCE, null, instance);
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+    }
+
+    @Test
+    public void getSql_ShouldCompareNonAggregatedKeysBeforeGrouping() {
+        for (int orderBy : new int[] { ORDER_BY_DATE, ORDER_BY_DISTANCE, ORDER_BY_NAME }) {
+            String sql = newQuery(orderBy).after("1", 1).until("2", 2).getSql();
+            assertFalse(sql, sql.contains("HAVING"));
+        }
+        String sql = newQuery(ORDER_BY_STATUS).after("1", 1).until("2", 2).getSql();
+        assertTrue(sql, sql.contains(" HAVING "));
+    }
+
+    @Test
+    public void getArgs_ShouldFollowPlaceholders() {
+        for (int orderBy : ORDERS) {
+            DataPointPageQuery query = newQuery(orderBy).after("1", 1).until("2", 2);
+            String sql = query.getSql();
+            assertEquals(sql, sql.length() - sql.replace("?", "").length(),
+                    query.getArgs().length);
+        }
+    }
+
+    @Test
+    public void pagesShouldAddUpToTheWholeList() {
+        for (int orderBy : ORDERS) {
+            List<Row> all = read(newQuery(orderBy));
+            assertEquals(DATA_POINTS - DATA_POINTS / 10, all.size());
+
+            List<Row> paged = new ArrayList<>();
+            List<Row> page = read(newQuery(orderBy).limit(PAGE_SIZE));
+            while (!page.isEmpty()) {
+                paged.addAll(page);
+                Row last = page.get(page.size() - 1);
+                page = read(newQuery(orderBy).after(last.key, last.id).limit(PAGE_SIZE));
+            }
+            assertEquals("Order " + orderBy, ids(all), ids(paged));
+        }
+    }
+
+    @Test
+    public void pagesShouldBeReloadedWithinTheirBounds() {
+        for (int orderBy : ORDERS) {
+            List<Row> first = read(newQuery(orderBy).limit(PAGE_SIZE));
+            Row firstEnd = first.get(first.size() - 1);
+            List<Row> second = read(newQuery(orderBy).after(firstEnd.key, firstEnd.id)
+                    .limit(PAGE_SIZE));
+            Row secondEnd = second.get(second.size() - 1);
+
+            List<Row> reloaded = read(newQuery(orderBy).after(firstEnd.key, firstEnd.id)
+                    .until(secondEnd.key, secondEnd.id));
+            assertEquals("Order " + orderBy, ids(second), ids(reloaded));
+
+            List<Row> truncated = read(newQuery(orderBy).after(firstEnd.key, firstEnd.id)
+                    .until(secondEnd.key, secondEnd.id).limit(3));
+            assertEquals("Order " + orderBy, ids(second.subList(0, 3)), ids(truncated));
+        }
+    }
+
+    private DataPointPageQuery newQuery(int orderBy) {
+        return new DataPointPageQuery(SURVEY_GROUP_ID, orderBy, 41.5, 2.5);
+    }
+
+    private List<Row> read(DataPointPageQuery query) {
+        List<Row> rows = new ArrayList<>();
+        Cursor cursor = db.rawQuery(query.getSql(), query.getArgs());
+        try {
+            int keyColumn = cursor.getColumnIndexOrThrow(DataPointPageQuery.PAGE_KEY);
+            int idColumn = cursor.getColumnIndexOrThrow(RecordColumns._ID);
+            while (cursor.moveToNext()) {
+                rows.add(new Row(cursor.getString(keyColumn), cursor.getLong(idColumn)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return rows;
+    }
+
+    private static List<Long> ids(List<Row> rows) {
+        List<Long> ids = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            ids.add(row.id);
+        }
+        return ids;
+    }
+
+    private static class Row {
+
+        final String key;
+        final long id;
+
+        Row(String key, long id) {
+            this.key = key;
+            this.id = id;
+        }
+    }
+}
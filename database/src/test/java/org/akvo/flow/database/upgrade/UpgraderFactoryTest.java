@@ -39,7 +39,7 @@ public class UpgraderFactoryTest {
         UpgraderFactory upgraderFactory = new UpgraderFactory();
         UpgraderVisitor upgrader = (UpgraderVisitor) upgraderFactory.createUpgrader(77, null, null);
 
-        assertEquals(1, upgrader.getUpgraders().size());
+        assertEquals(2, upgrader.getUpgraders().size());
         assertTrue(upgrader.getUpgraders().get(0) instanceof BeforeLaunchUpgrader);
     }
 
@@ -49,7 +49,7 @@ public class UpgraderFactoryTest {
         UpgraderVisitor upgrader = (UpgraderVisitor) upgraderFactory
                 .createUpgrader(DatabaseHelper.VER_LAUNCH, null, null);
 
-        assertEquals(7, upgrader.getUpgraders().size());
+        assertEquals(14, upgrader.getUpgraders().size());
         assertTrue(containsLaunchUpgrader(upgrader.getUpgraders()));
         assertTrue(containsFormSubmitterUpgrader(upgrader.getUpgraders()));
         assertTrue(containsFormCheckUpgrader(upgrader.getUpgraders()));
@@ -57,6 +57,13 @@ public class UpgraderFactoryTest {
         assertTrue(containsCaddisflyUpgrader(upgrader.getUpgraders()));
         assertTrue(containsPreferencesUpgrader(upgrader.getUpgraders()));
         assertTrue(containsLanguagesUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsResponseIterationUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsMultipartUploadUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsUploadChecksumUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsTransmissionQueueUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsQueryIndexesUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsSearchIndexUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsSpatialGridUpgrader(upgrader.getUpgraders()));
     }
 
     @Test
@@ -65,7 +72,7 @@ public class UpgraderFactoryTest {
         UpgraderVisitor upgrader = (UpgraderVisitor) upgraderFactory
                 .createUpgrader(DatabaseHelper.VER_FORM_SUBMITTER, null, null);
 
-        assertEquals(6, upgrader.getUpgraders().size());
+        assertEquals(13, upgrader.getUpgraders().size());
         assertFalse(containsLaunchUpgrader(upgrader.getUpgraders()));
         assertTrue(containsFormSubmitterUpgrader(upgrader.getUpgraders()));
         assertTrue(containsFormCheckUpgrader(upgrader.getUpgraders()));
@@ -73,6 +80,13 @@ public class UpgraderFactoryTest {
         assertTrue(containsCaddisflyUpgrader(upgrader.getUpgraders()));
         assertTrue(containsPreferencesUpgrader(upgrader.getUpgraders()));
         assertTrue(containsLanguagesUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsResponseIterationUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsMultipartUploadUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsUploadChecksumUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsTransmissionQueueUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsQueryIndexesUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsSearchIndexUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsSpatialGridUpgrader(upgrader.getUpgraders()));
     }
 
     @Test
@@ -81,7 +95,7 @@ public class UpgraderFactoryTest {
         UpgraderVisitor upgrader = (UpgraderVisitor) upgraderFactory
                 .createUpgrader(DatabaseHelper.VER_FORM_DEL_CHECK, null, null);
 
-        assertEquals(5, upgrader.getUpgraders().size());
+        assertEquals(12, upgrader.getUpgraders().size());
         assertFalse(containsLaunchUpgrader(upgrader.getUpgraders()));
         assertFalse(containsFormSubmitterUpgrader(upgrader.getUpgraders()));
         assertTrue(containsFormCheckUpgrader(upgrader.getUpgraders()));
@@ -89,6 +103,13 @@ public class UpgraderFactoryTest {
         assertTrue(containsCaddisflyUpgrader(upgrader.getUpgraders()));
         assertTrue(containsPreferencesUpgrader(upgrader.getUpgraders()));
         assertTrue(containsLanguagesUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsResponseIterationUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsMultipartUploadUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsUploadChecksumUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsTransmissionQueueUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsQueryIndexesUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsSearchIndexUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsSpatialGridUpgrader(upgrader.getUpgraders()));
     }
 
     @Test
@@ -97,7 +118,7 @@ public class UpgraderFactoryTest {
         UpgraderVisitor upgrader = (UpgraderVisitor) upgraderFactory
                 .createUpgrader(DatabaseHelper.VER_FORM_VERSION, null, null);
 
-        assertEquals(4, upgrader.getUpgraders().size());
+        assertEquals(11, upgrader.getUpgraders().size());
         assertFalse(containsLaunchUpgrader(upgrader.getUpgraders()));
         assertFalse(containsFormSubmitterUpgrader(upgrader.getUpgraders()));
         assertFalse(containsFormCheckUpgrader(upgrader.getUpgraders()));
@@ -105,6 +126,13 @@ public class UpgraderFactoryTest {
         assertTrue(containsCaddisflyUpgrader(upgrader.getUpgraders()));
         assertTrue(containsPreferencesUpgrader(upgrader.getUpgraders()));
         assertTrue(containsLanguagesUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsResponseIterationUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsMultipartUploadUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsUploadChecksumUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsTransmissionQueueUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsQueryIndexesUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsSearchIndexUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsSpatialGridUpgrader(upgrader.getUpgraders()));
     }
 
     @Test
@@ -113,7 +141,7 @@ public class UpgraderFactoryTest {
         UpgraderVisitor upgrader = (UpgraderVisitor) upgraderFactory
                 .createUpgrader(DatabaseHelper.VER_CADDISFLY_QN, null, null);
 
-        assertEquals(3, upgrader.getUpgraders().size());
+        assertEquals(10, upgrader.getUpgraders().size());
         assertFalse(containsLaunchUpgrader(upgrader.getUpgraders()));
         assertFalse(containsFormSubmitterUpgrader(upgrader.getUpgraders()));
         assertFalse(containsFormCheckUpgrader(upgrader.getUpgraders()));
@@ -121,6 +149,13 @@ public class UpgraderFactoryTest {
         assertTrue(containsCaddisflyUpgrader(upgrader.getUpgraders()));
         assertTrue(containsPreferencesUpgrader(upgrader.getUpgraders()));
         assertTrue(containsLanguagesUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsResponseIterationUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsMultipartUploadUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsUploadChecksumUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsTransmissionQueueUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsQueryIndexesUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsSearchIndexUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsSpatialGridUpgrader(upgrader.getUpgraders()));
     }
 
     @Test
@@ -129,7 +164,7 @@ public class UpgraderFactoryTest {
         UpgraderVisitor upgrader = (UpgraderVisitor) upgraderFactory
                 .createUpgrader(DatabaseHelper.VER_PREFERENCES_MIGRATE, null, null);
 
-        assertEquals(2, upgrader.getUpgraders().size());
+        assertEquals(9, upgrader.getUpgraders().size());
         assertFalse(containsLaunchUpgrader(upgrader.getUpgraders()));
         assertFalse(containsFormSubmitterUpgrader(upgrader.getUpgraders()));
         assertFalse(containsFormCheckUpgrader(upgrader.getUpgraders()));
@@ -137,15 +172,22 @@ public class UpgraderFactoryTest {
         assertFalse(containsCaddisflyUpgrader(upgrader.getUpgraders()));
         assertTrue(containsPreferencesUpgrader(upgrader.getUpgraders()));
         assertTrue(containsLanguagesUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsResponseIterationUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsMultipartUploadUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsUploadChecksumUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsTransmissionQueueUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsQueryIndexesUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsSearchIndexUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsSpatialGridUpgrader(upgrader.getUpgraders()));
     }
 
     @Test
-    public void createUpgraderShouldCreateNoUpgraderWhenLanguages() {
+    public void createUpgraderShouldCreateCorrectUpgraderWhenLanguages() {
         UpgraderFactory upgraderFactory = new UpgraderFactory();
         UpgraderVisitor upgrader = (UpgraderVisitor) upgraderFactory
                 .createUpgrader(DatabaseHelper.VER_LANGUAGES_MIGRATE, null, null);
 
-        assertEquals(1, upgrader.getUpgraders().size());
+        assertEquals(8, upgrader.getUpgraders().size());
         assertFalse(containsLaunchUpgrader(upgrader.getUpgraders()));
         assertFalse(containsFormSubmitterUpgrader(upgrader.getUpgraders()));
         assertFalse(containsFormCheckUpgrader(upgrader.getUpgraders()));
@@ -153,14 +195,112 @@ public class UpgraderFactoryTest {
         assertFalse(containsCaddisflyUpgrader(upgrader.getUpgraders()));
         assertFalse(containsPreferencesUpgrader(upgrader.getUpgraders()));
         assertTrue(containsLanguagesUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsResponseIterationUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsMultipartUploadUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsUploadChecksumUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsTransmissionQueueUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsQueryIndexesUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsSearchIndexUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsSpatialGridUpgrader(upgrader.getUpgraders()));
     }
 
     @Test
-    public void createUpgraderShouldCreateNoUpgraderWhenResponseIteration() {
+    public void createUpgraderShouldCreateCorrectUpgraderWhenResponseIteration() {
         UpgraderFactory upgraderFactory = new UpgraderFactory();
         UpgraderVisitor upgrader = (UpgraderVisitor) upgraderFactory
                 .createUpgrader(DatabaseHelper.VER_RESPONSE_ITERATION, null, null);
 
+        assertEquals(7, upgrader.getUpgraders().size());
+        assertTrue(containsResponseIterationUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsMultipartUploadUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsUploadChecksumUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsTransmissionQueueUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsQueryIndexesUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsSearchIndexUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsSpatialGridUpgrader(upgrader.getUpgraders()));
+    }
+
+    @Test
+    public void createUpgraderShouldCreateCorrectUpgraderWhenMultipartUpload() {
+        UpgraderFactory upgraderFactory = new UpgraderFactory();
+        UpgraderVisitor upgrader = (UpgraderVisitor) upgraderFactory
+                .createUpgrader(DatabaseHelper.VER_MULTIPART_UPLOAD, null, null);
+
+        assertEquals(6, upgrader.getUpgraders().size());
+        assertTrue(containsMultipartUploadUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsUploadChecksumUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsTransmissionQueueUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsQueryIndexesUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsSearchIndexUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsSpatialGridUpgrader(upgrader.getUpgraders()));
+    }
+
+    @Test
+    public void createUpgraderShouldCreateCorrectUpgraderWhenUploadChecksum() {
+        UpgraderFactory upgraderFactory = new UpgraderFactory();
+        UpgraderVisitor upgrader = (UpgraderVisitor) upgraderFactory
+                .createUpgrader(DatabaseHelper.VER_UPLOAD_CHECKSUM, null, null);
+
+        assertEquals(5, upgrader.getUpgraders().size());
+        assertTrue(containsUploadChecksumUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsTransmissionQueueUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsQueryIndexesUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsSearchIndexUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsSpatialGridUpgrader(upgrader.getUpgraders()));
+    }
+
+    @Test
+    public void createUpgraderShouldCreateCorrectUpgraderWhenTransmissionQueue() {
+        UpgraderFactory upgraderFactory = new UpgraderFactory();
+        UpgraderVisitor upgrader = (UpgraderVisitor) upgraderFactory
+                .createUpgrader(DatabaseHelper.VER_TRANSMISSION_QUEUE, null, null);
+
+        assertEquals(4, upgrader.getUpgraders().size());
+        assertTrue(containsTransmissionQueueUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsQueryIndexesUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsSearchIndexUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsSpatialGridUpgrader(upgrader.getUpgraders()));
+    }
+
+    @Test
+    public void createUpgraderShouldCreateCorrectUpgraderWhenQueryIndexes() {
+        UpgraderFactory upgraderFactory = new UpgraderFactory();
+        UpgraderVisitor upgrader = (UpgraderVisitor) upgraderFactory
+                .createUpgrader(DatabaseHelper.VER_QUERY_INDEXES, null, null);
+
+        assertEquals(3, upgrader.getUpgraders().size());
+        assertTrue(containsQueryIndexesUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsSearchIndexUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsSpatialGridUpgrader(upgrader.getUpgraders()));
+    }
+
+    @Test
+    public void createUpgraderShouldCreateCorrectUpgraderWhenSearchIndex() {
+        UpgraderFactory upgraderFactory = new UpgraderFactory();
+        UpgraderVisitor upgrader = (UpgraderVisitor) upgraderFactory
+                .createUpgrader(DatabaseHelper.VER_SEARCH_INDEX, null, null);
+
+        assertEquals(2, upgrader.getUpgraders().size());
+        assertTrue(containsSearchIndexUpgrader(upgrader.getUpgraders()));
+        assertTrue(containsSpatialGridUpgrader(upgrader.getUpgraders()));
+    }
+
+    @Test
+    public void createUpgraderShouldCreateCorrectUpgraderWhenSpatialGrid() {
+        UpgraderFactory upgraderFactory = new UpgraderFactory();
+        UpgraderVisitor upgrader = (UpgraderVisitor) upgraderFactory
+                .createUpgrader(DatabaseHelper.VER_SPATIAL_GRID, null, null);
+
+        assertEquals(1, upgrader.getUpgraders().size());
+        assertTrue(containsSpatialGridUpgrader(upgrader.getUpgraders()));
+    }
+
+    @Test
+    public void createUpgraderShouldCreateNoUpgraderWhenUploadFile() {
+        UpgraderFactory upgraderFactory = new UpgraderFactory();
+        UpgraderVisitor upgrader = (UpgraderVisitor) upgraderFactory
+                .createUpgrader(DatabaseHelper.VER_UPLOAD_FILE, null, null);
+
         assertEquals(0, upgrader.getUpgraders().size());
     }
 
@@ -226,4 +366,67 @@ public class UpgraderFactoryTest {
         }
         return false;
     }
+
+    private boolean containsResponseIterationUpgrader(List<DatabaseUpgrader> upgraders) {
+        for (DatabaseUpgrader upgrader : upgraders) {
+            if (upgrader instanceof ResponseIterationUpgrader) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean containsMultipartUploadUpgrader(List<DatabaseUpgrader> upgraders) {
+        for (DatabaseUpgrader upgrader : upgraders) {
+            if (upgrader instanceof MultipartUploadUpgrader) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean containsUploadChecksumUpgrader(List<DatabaseUpgrader> upgraders) {
+        for (DatabaseUpgrader upgrader : upgraders) {
+            if (upgrader instanceof UploadChecksumUpgrader) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean containsTransmissionQueueUpgrader(List<DatabaseUpgrader> upgraders) {
+        for (DatabaseUpgrader upgrader : upgraders) {
+            if (upgrader instanceof TransmissionQueueUpgrader) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean containsQueryIndexesUpgrader(List<DatabaseUpgrader> upgraders) {
+        for (DatabaseUpgrader upgrader : upgraders) {
+            if (upgrader instanceof QueryIndexesUpgrader) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean containsSearchIndexUpgrader(List<DatabaseUpgrader> upgraders) {
+        for (DatabaseUpgrader upgrader : upgraders) {
+            if (upgrader instanceof SearchIndexUpgrader) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean containsSpatialGridUpgrader(List<DatabaseUpgrader> upgraders) {
+        for (DatabaseUpgrader upgrader : upgraders) {
+            if (upgrader instanceof SpatialGridUpgrader) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
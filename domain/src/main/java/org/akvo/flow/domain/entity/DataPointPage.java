@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.domain.entity;
+
+import java.util.List;
+
+/**
+ * A window of a sorted data point list, along with the position of its last item, which is
+ * where the next page starts.
+ */
+public class DataPointPage {
+
+    private final List<DataPoint> dataPoints;
+    private final DataPointPageKey lastKey;
+
+    public DataPointPage(List<DataPoint> dataPoints, DataPointPageKey lastKey) {
+        this.dataPoints = dataPoints;
+        this.lastKey = lastKey;
+    }
+
+    public List<DataPoint> getDataPoints() {
+        return dataPoints;
+    }
+
+    /**
+     * @return the position of the last data point, or null if the page is empty
+     */
+    public DataPointPageKey getLastKey() {
+        return lastKey;
+    }
+}
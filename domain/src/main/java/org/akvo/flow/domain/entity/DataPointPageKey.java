@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.domain.entity;
+
+/**
+ * Position of a data point in a sorted list: the value of the sort key, as stored, and the row
+ * id used to break ties between equal keys.
+ */
+public class DataPointPageKey {
+
+    private final String sortKey;
+    private final long rowId;
+
+    public DataPointPageKey(String sortKey, long rowId) {
+        this.sortKey = sortKey;
+        this.rowId = rowId;
+    }
+
+    public String getSortKey() {
+        return sortKey;
+    }
+
+    public long getRowId() {
+        return rowId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        DataPointPageKey that = (DataPointPageKey) o;
+        return rowId == that.rowId
+                && (sortKey != null ? sortKey.equals(that.sortKey) : that.sortKey == null);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = sortKey != null ? sortKey.hashCode() : 0;
+        return 31 * result + (int) (rowId ^ (rowId >>> 32));
+    }
+}
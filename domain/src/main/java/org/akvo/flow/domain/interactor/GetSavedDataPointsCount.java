@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.domain.interactor;
+
+import org.akvo.flow.domain.executor.PostExecutionThread;
+import org.akvo.flow.domain.executor.ThreadExecutor;
+import org.akvo.flow.domain.repository.SurveyRepository;
+
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import io.reactivex.Observable;
+
+/**
+ * Number of saved data points of a survey group. A new value is emitted every time the data
+ * points or their form instances change, so it can be used to know when to reload them.
+ */
+public class GetSavedDataPointsCount extends UseCase {
+
+    public static final String KEY_SURVEY_GROUP_ID = GetSavedDataPoints.KEY_SURVEY_GROUP_ID;
+
+    private final SurveyRepository surveyRepository;
+
+    @Inject
+    protected GetSavedDataPointsCount(ThreadExecutor threadExecutor,
+            PostExecutionThread postExecutionThread, SurveyRepository surveyRepository) {
+        super(threadExecutor, postExecutionThread);
+        this.surveyRepository = surveyRepository;
+    }
+
+    @Override
+    protected <T> Observable buildUseCaseObservable(Map<String, T> parameters) {
+        if (parameters == null || parameters.get(KEY_SURVEY_GROUP_ID) == null) {
+            return Observable.error(new IllegalArgumentException("Missing survey group id"));
+        }
+        return surveyRepository.getDataPointsCount((Long) parameters.get(KEY_SURVEY_GROUP_ID));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2017 Stichting Akvo (Akvo Foundation)
+ *
+ * This file is part of Akvo Flow.
+ *
+ * Akvo Flow is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Akvo Flow is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Akvo Flow.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.akvo.flow.domain.interactor;
+
+import org.akvo.flow.domain.entity.DataPointPageKey;
+import org.akvo.flow.domain.executor.PostExecutionThread;
+import org.akvo.flow.domain.executor.ThreadExecutor;
+import org.akvo.flow.domain.repository.SurveyRepository;
+
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import io.reactivex.Observable;
+
+/**
+ * Loads a single page of the saved data points. Pages start after the KEY_AFTER position, if
+ * any, and contain the items up to the KEY_UNTIL position, at most KEY_LIMIT of them. At least
+ * one of the two bounds is required.
+ */
+public class GetSavedDataPointsPage extends UseCase {
+
+    public static final String KEY_SURVEY_GROUP_ID = GetSavedDataPoints.KEY_SURVEY_GROUP_ID;
+    public static final String KEY_LATITUDE = GetSavedDataPoints.KEY_LATITUDE;
+    public static final String KEY_LONGITUDE = GetSavedDataPoints.KEY_LONGITUDE;
+    public static final String KEY_ORDER_BY = GetSavedDataPoints.KEY_ORDER_BY;
+    public static final String KEY_AFTER = "after";
+    public static final String KEY_UNTIL = "until";
+    public static final String KEY_LIMIT = "limit";
+
+    private final SurveyRepository surveyRepository;
+
+    @Inject
+    protected GetSavedDataPointsPage(ThreadExecutor threadExecutor,
+            PostExecutionThread postExecutionThread, SurveyRepository surveyRepository) {
+        super(threadExecutor, postExecutionThread);
+        this.surveyRepository = surveyRepository;
+    }
+
+    @Override
+    protected <T> Observable buildUseCaseObservable(Map<String, T> parameters) {
+        if (parameters == null || parameters.get(KEY_SURVEY_GROUP_ID) == null) {
+            return Observable.error(new IllegalArgumentException("Missing survey group id"));
+        }
+        Long surveyGroupId = (Long) parameters.get(KEY_SURVEY_GROUP_ID);
+        Double latitude = (Double) parameters.get(KEY_LATITUDE);
+        Double longitude = (Double) parameters.get(KEY_LONGITUDE);
+        Integer orderBy = (Integer) parameters.get(KEY_ORDER_BY);
+        DataPointPageKey after = (DataPointPageKey) parameters.get(KEY_AFTER);
+        DataPointPageKey until = (DataPointPageKey) parameters.get(KEY_UNTIL);
+        Integer limit = (Integer) parameters.get(KEY_LIMIT);
+        if (until == null && limit == null) {
+            return Observable.error(new IllegalArgumentException("Missing page bounds"));
+        }
+        return surveyRepository.getDataPointsPage(surveyGroupId, latitude, longitude, orderBy,
+                after, until, limit == null ? 0 : limit);
+    }
+}
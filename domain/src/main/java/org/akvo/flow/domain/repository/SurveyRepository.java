@@ -21,6 +21,8 @@
 package org.akvo.flow.domain.repository;
 
 import org.akvo.flow.domain.entity.DataPoint;
+import org.akvo.flow.domain.entity.DataPointPage;
+import org.akvo.flow.domain.entity.DataPointPageKey;
 
 import java.util.List;
 
@@ -32,5 +34,16 @@ public interface SurveyRepository {
     Observable<List<DataPoint>> getDataPoints(Long surveyGroupId, Double latitude,
             Double longitude, Integer orderBy);
 
+    Observable<DataPointPage> getDataPointsPage(Long surveyGroupId, Double latitude,
+            Double longitude, Integer orderBy, DataPointPageKey after, DataPointPageKey until,
+            int limit);
+
+    Observable<Integer> getDataPointsCount(Long surveyGroupId);
+
+    Observable<List<DataPoint>> getDataPointsInArea(Long surveyGroupId, double south,
+            double west, double north, double east);
+
+    Observable<List<DataPoint>> searchDataPoints(Long surveyGroupId, String text);
+
     Flowable<Integer> syncRemoteDataPoints(long surveyGroupId);
 }